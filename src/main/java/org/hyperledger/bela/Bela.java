@@ -10,6 +10,7 @@ import com.googlecode.lanterna.gui2.WindowBasedTextGUI;
 import com.googlecode.lanterna.screen.Screen;
 import com.googlecode.lanterna.terminal.DefaultTerminalFactory;
 import kr.pe.kwonnam.slf4jlambda.LambdaLogger;
+import org.hyperledger.bela.cli.BelaCommandLine;
 import org.hyperledger.bela.utils.StorageProviderFactory;
 import org.hyperledger.bela.windows.BlockChainBrowserWindow;
 import org.hyperledger.bela.windows.BonsaiStorageBrowserWindow;
@@ -19,7 +20,9 @@ import org.hyperledger.bela.windows.Constants;
 import org.hyperledger.bela.windows.DatabaseConversionWindow;
 import org.hyperledger.bela.windows.LogoWindow;
 import org.hyperledger.bela.windows.MainWindow;
+import org.hyperledger.bela.windows.MetricsWindow;
 import org.hyperledger.bela.windows.P2PManagementWindow;
+import org.hyperledger.bela.windows.RocksDBStatisticsWindow;
 import org.hyperledger.bela.windows.RocksDBViewer;
 import org.hyperledger.bela.windows.SegmentManipulationWindow;
 import org.hyperledger.bela.windows.SettingsWindow;
@@ -33,6 +36,9 @@ public class Bela {
     private static final LambdaLogger log = getLogger(Bela.class);
 
     public static void main(String[] args) throws Exception {
+        if (BelaCommandLine.isCommand(args)) {
+            System.exit(BelaCommandLine.run(args));
+        }
         final Preferences preferences = Preferences.userNodeForPackage(Bela.class);
         processArgs(preferences, args);
 
@@ -54,9 +60,11 @@ public class Bela {
             mainWindow.registerWindow(new BonsaiTreeVerifierWindow(gui, storageProviderFactory));
             mainWindow.registerWindow(new DatabaseConversionWindow(storageProviderFactory));
             mainWindow.registerWindow(new LogoWindow());
+            mainWindow.registerWindow(new MetricsWindow(gui, storageProviderFactory, preferences));
             mainWindow.registerWindow(new P2PManagementWindow(gui, storageProviderFactory, preferences));
             mainWindow.registerWindow(new RocksDBViewer(gui, storageProviderFactory));
             mainWindow.registerWindow(new SegmentManipulationWindow(gui, storageProviderFactory, preferences));
+            mainWindow.registerWindow(new RocksDBStatisticsWindow(gui, storageProviderFactory));
             mainWindow.registerWindow(new BonsaiStorageBrowserWindow(gui, storageProviderFactory));
             mainWindow.registerWindow(new BonsaiTrieLogLayersViewer(gui, storageProviderFactory));
             final Window window = mainWindow.createWindow();
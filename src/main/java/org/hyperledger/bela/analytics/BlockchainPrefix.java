@@ -0,0 +1,44 @@
+package org.hyperledger.bela.analytics;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import org.apache.tuweni.bytes.Bytes;
+
+/**
+ * Prefixes of the keys of the blockchain segment.
+ */
+public enum BlockchainPrefix {
+    VARIABLES(1),
+    BLOCK_HEADER(2),
+    BLOCK_BODY(3),
+    TRANSACTION_RECEIPTS(4),
+    BLOCK_HASH(5),
+    TOTAL_DIFFICULTY(6),
+    TRANSACTION_LOCATION(7);
+
+    private static final Map<Bytes, BlockchainPrefix> PREFIX_MAPPING = Arrays.stream(values())
+        .collect(Collectors.toMap(BlockchainPrefix::getPrefix, prefix -> prefix));
+
+    private final int prefix;
+
+    BlockchainPrefix(final int prefix) {
+        this.prefix = prefix;
+    }
+
+    public Bytes getPrefix() {
+        return Bytes.of(prefix);
+    }
+
+    /**
+     * First key after the keys with this prefix.
+     */
+    public Bytes getEnd() {
+        return Bytes.of(prefix + 1);
+    }
+
+    public static Optional<BlockchainPrefix> fromBytes(final Bytes prefix) {
+        return Optional.ofNullable(PREFIX_MAPPING.get(prefix));
+    }
+}
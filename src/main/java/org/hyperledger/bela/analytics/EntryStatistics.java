@@ -0,0 +1,122 @@
+package org.hyperledger.bela.analytics;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import org.apache.tuweni.bytes.Bytes;
+
+/**
+ * Sizes of the entries of one class of keys. Not thread safe: every scanning worker keeps its own and they are merged
+ * at the end. Value sizes are kept in power of two buckets, so the percentiles are upper bounds within a factor of 2.
+ */
+public class EntryStatistics {
+    private static final int BUCKETS = 64;
+
+    private final int topN;
+    private long count;
+    private long keyBytes;
+    private long valueBytes;
+    private long maxValueSize;
+    private final long[] valueSizeBuckets = new long[BUCKETS];
+    private final Map<Integer, Long> keyLengths = new TreeMap<>();
+    // smallest of the largest entries on top
+    private final PriorityQueue<Entry> largest = new PriorityQueue<>(Comparator.comparingLong(Entry::valueSize));
+
+    public EntryStatistics(final int topN) {
+        this.topN = topN;
+    }
+
+    public void add(final byte[] key, final int valueSize) {
+        count++;
+        keyBytes += key.length;
+        valueBytes += valueSize;
+        maxValueSize = Math.max(maxValueSize, valueSize);
+        valueSizeBuckets[bucket(valueSize)]++;
+        keyLengths.merge(key.length, 1L, Long::sum);
+        if (topN > 0 && (largest.size() < topN || largest.peek().valueSize() < valueSize)) {
+            largest.add(new Entry(Bytes.wrap(key.clone()), valueSize));
+            if (largest.size() > topN) {
+                largest.poll();
+            }
+        }
+    }
+
+    public void merge(final EntryStatistics other) {
+        count += other.count;
+        keyBytes += other.keyBytes;
+        valueBytes += other.valueBytes;
+        maxValueSize = Math.max(maxValueSize, other.maxValueSize);
+        for (int i = 0; i < BUCKETS; i++) {
+            valueSizeBuckets[i] += other.valueSizeBuckets[i];
+        }
+        other.keyLengths.forEach((length, keys) -> keyLengths.merge(length, keys, Long::sum));
+        for (Entry entry : other.largest) {
+            largest.add(entry);
+            if (largest.size() > topN) {
+                largest.poll();
+            }
+        }
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getValueBytes() {
+        return valueBytes;
+    }
+
+    /**
+     * Upper bound of the value size below which the given fraction of the values are.
+     */
+    public long valueSizePercentile(final double fraction) {
+        if (count == 0) {
+            return 0;
+        }
+        final long rank = (long) Math.ceil(fraction * count);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += valueSizeBuckets[i];
+            if (seen >= rank) {
+                return Math.min(maxValueSize, i == 0 ? 0 : (1L << i) - 1);
+            }
+        }
+        return maxValueSize;
+    }
+
+    public Map<String, Object> toReport() {
+        final Map<String, Object> report = new LinkedHashMap<>();
+        report.put("keys", count);
+        report.put("keyBytes", keyBytes);
+        report.put("valueBytes", valueBytes);
+        report.put("meanValueSize", count == 0 ? 0 : valueBytes / count);
+        report.put("p50ValueSize", valueSizePercentile(0.5));
+        report.put("p90ValueSize", valueSizePercentile(0.9));
+        report.put("p99ValueSize", valueSizePercentile(0.99));
+        report.put("maxValueSize", maxValueSize);
+        report.put("keyLengths", keyLengths);
+        final List<Entry> top = new ArrayList<>(largest);
+        top.sort(Comparator.comparingLong(Entry::valueSize).reversed());
+        final List<Map<String, Object>> topEntries = new ArrayList<>();
+        for (Entry entry : top) {
+            final Map<String, Object> topEntry = new LinkedHashMap<>();
+            topEntry.put("key", entry.key().toHexString());
+            topEntry.put("valueSize", entry.valueSize());
+            topEntries.add(topEntry);
+        }
+        report.put("largest", topEntries);
+        return report;
+    }
+
+    // bucket i holds the sizes below 2^i
+    private static int bucket(final int size) {
+        return size == 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(size));
+    }
+
+    private record Entry(Bytes key, long valueSize) {
+    }
+}
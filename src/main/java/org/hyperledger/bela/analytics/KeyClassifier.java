@@ -0,0 +1,81 @@
+package org.hyperledger.bela.analytics;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Set;
+import org.apache.tuweni.bytes.Bytes;
+import org.hyperledger.besu.ethereum.storage.keyvalue.KeyValueSegmentIdentifier;
+import org.hyperledger.besu.plugin.services.storage.SegmentIdentifier;
+
+/**
+ * Groups the keys of a segment for {@link SegmentAnalytics}, e.g. by blockchain prefix or by trie depth.
+ */
+@FunctionalInterface
+public interface KeyClassifier {
+    KeyClassifier NONE = key -> "all";
+
+    /**
+     * Blockchain keys by their {@link BlockchainPrefix}.
+     */
+    KeyClassifier BLOCKCHAIN_PREFIX = key -> key.length == 0
+            ? "UNKNOWN"
+            : BlockchainPrefix.fromBytes(Bytes.of(key[0])).map(Enum::name).orElse("UNKNOWN");
+
+    /**
+     * Keys starting with an account hash by the first byte of the hash.
+     */
+    KeyClassifier ACCOUNT_HASH_PREFIX = key -> key.length == 0 ? "empty" : Bytes.of(key[0]).toHexString();
+
+    /**
+     * Keys of the bonsai trie branch segment that hold the world state metadata rather than a trie node.
+     */
+    Set<String> BONSAI_METADATA_KEYS = Set.of("worldRoot", "worldBlockHash");
+
+    /**
+     * Bonsai trie branch keys by trie and depth: account trie nodes are keyed by their nibble path, storage trie nodes
+     * by the account hash followed by their nibble path. The metadata keys are classified by their name.
+     */
+    KeyClassifier TRIE_DEPTH = key -> {
+        if (key.length >= 32) {
+            return "storage depth " + (key.length - 32);
+        }
+        if (isNibblePath(key)) {
+            return "account depth " + key.length;
+        }
+        final String name = new String(key, StandardCharsets.UTF_8);
+        return BONSAI_METADATA_KEYS.contains(name) ? name : "UNKNOWN";
+    };
+
+    String classify(byte[] key);
+
+    /**
+     * The natural classifier of a segment, {@link #NONE} when there is none.
+     */
+    static KeyClassifier forSegment(final SegmentIdentifier segment) {
+        if (is(segment, KeyValueSegmentIdentifier.BLOCKCHAIN)) {
+            return BLOCKCHAIN_PREFIX;
+        }
+        if (is(segment, KeyValueSegmentIdentifier.TRIE_BRANCH_STORAGE)) {
+            return TRIE_DEPTH;
+        }
+        if (is(segment, KeyValueSegmentIdentifier.ACCOUNT_INFO_STATE)
+                || is(segment, KeyValueSegmentIdentifier.ACCOUNT_STORAGE_STORAGE)
+                || is(segment, KeyValueSegmentIdentifier.CODE_STORAGE)) {
+            return ACCOUNT_HASH_PREFIX;
+        }
+        return NONE;
+    }
+
+    private static boolean isNibblePath(final byte[] key) {
+        for (byte nibble : key) {
+            if ((nibble & 0xff) > 0x0f) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean is(final SegmentIdentifier segment, final KeyValueSegmentIdentifier identifier) {
+        return Arrays.equals(segment.getId(), identifier.getId());
+    }
+}
@@ -0,0 +1,118 @@
+package org.hyperledger.bela.analytics;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import kr.pe.kwonnam.slf4jlambda.LambdaLogger;
+import org.apache.commons.lang3.tuple.Pair;
+import org.hyperledger.bela.utils.hacks.RocksDBStorageAccess;
+import org.hyperledger.bela.utils.hacks.ScanOptions;
+import org.hyperledger.besu.plugin.services.storage.KeyValueStorage;
+import org.hyperledger.besu.plugin.services.storage.SegmentIdentifier;
+
+import static kr.pe.kwonnam.slf4jlambda.LambdaLoggerFactory.getLogger;
+
+/**
+ * Where the space of a segment goes: key counts, value sizes and the largest entries, broken down by a
+ * {@link KeyClassifier}. The segment is split by the first byte of the keys and the ranges are scanned in parallel.
+ */
+public class SegmentAnalytics {
+    public static final int DEFAULT_TOP_N = 20;
+    private static final LambdaLogger log = getLogger(SegmentAnalytics.class);
+    private static final ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+    private static final int RANGES = 256;
+
+    private final int parallelism;
+    private final int topN;
+    private final LongAdder scannedEntries = new LongAdder();
+
+    public SegmentAnalytics(final int parallelism, final int topN) {
+        if (parallelism < 1 || topN < 0) {
+            throw new IllegalArgumentException("parallelism must be positive and top n not negative");
+        }
+        this.parallelism = parallelism;
+        this.topN = topN;
+    }
+
+    /**
+     * @return the report of the segment, with the totals and the statistics per class of keys
+     */
+    public Report analyze(final SegmentIdentifier segment, final KeyValueStorage storage, final KeyClassifier classifier) {
+        final long start = System.currentTimeMillis();
+        final ForkJoinPool pool = new ForkJoinPool(parallelism);
+        final List<Map<String, EntryStatistics>> rangeStatistics;
+        try {
+            rangeStatistics = pool.submit(() -> IntStream.range(0, RANGES).parallel()
+                    .mapToObj(range -> analyzeRange(storage, classifier, range))
+                    .toList()).join();
+        } finally {
+            pool.shutdown();
+        }
+        final EntryStatistics total = new EntryStatistics(topN);
+        final Map<String, EntryStatistics> byClass = new TreeMap<>();
+        for (Map<String, EntryStatistics> statistics : rangeStatistics) {
+            statistics.forEach((keyClass, classStatistics) -> {
+                total.merge(classStatistics);
+                byClass.computeIfAbsent(keyClass, k -> new EntryStatistics(topN)).merge(classStatistics);
+            });
+        }
+        final long durationMillis = System.currentTimeMillis() - start;
+        log.info("Analyzed {} entries of {} in {} ms", total.getCount(), segment.getName(), durationMillis);
+        return new Report(segment, durationMillis, total, byClass);
+    }
+
+    // keys starting with the byte range, the empty key is in the first range
+    private Map<String, EntryStatistics> analyzeRange(
+            final KeyValueStorage storage, final KeyClassifier classifier, final int range) {
+        final Map<String, EntryStatistics> statistics = new HashMap<>();
+        final byte[] from = range == 0 ? null : new byte[]{(byte) range};
+        final byte[] to = range == RANGES - 1 ? null : new byte[]{(byte) (range + 1)};
+        try (Stream<Pair<byte[], byte[]>> entries = RocksDBStorageAccess.scan(storage, ScanOptions.range(from, to))) {
+            entries.forEach(entry -> {
+                statistics.computeIfAbsent(classifier.classify(entry.getKey()), k -> new EntryStatistics(topN))
+                        .add(entry.getKey(), entry.getValue().length);
+                scannedEntries.increment();
+            });
+        }
+        return statistics;
+    }
+
+    /**
+     * Entries scanned so far, to report progress from another thread.
+     */
+    public long getScannedEntries() {
+        return scannedEntries.sum();
+    }
+
+    public static void writeReport(final Path file, final List<Report> segmentReports) throws IOException {
+        mapper.writeValue(file.toFile(), segmentReports.stream().map(Report::toReport).toList());
+    }
+
+    /**
+     * Statistics of a segment, all its keys and by class of keys.
+     */
+    public record Report(SegmentIdentifier segment, long durationMillis, EntryStatistics total,
+                         Map<String, EntryStatistics> classes) {
+
+        public Map<String, Object> toReport() {
+            final Map<String, Object> report = new LinkedHashMap<>();
+            report.put("segment", segment.getName());
+            report.put("durationMillis", durationMillis);
+            report.put("total", total.toReport());
+            final Map<String, Object> classReports = new LinkedHashMap<>();
+            classes.forEach((keyClass, statistics) -> classReports.put(keyClass, statistics.toReport()));
+            report.put("classes", classReports);
+            return report;
+        }
+    }
+}
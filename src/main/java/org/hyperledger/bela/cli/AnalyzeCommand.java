@@ -0,0 +1,53 @@
+package org.hyperledger.bela.cli;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.hyperledger.bela.analytics.KeyClassifier;
+import org.hyperledger.bela.analytics.SegmentAnalytics;
+import org.hyperledger.bela.utils.StorageProviderFactory;
+import org.hyperledger.besu.ethereum.storage.StorageProvider;
+import org.hyperledger.besu.plugin.services.storage.SegmentIdentifier;
+
+/**
+ * Reports where the space of the segments goes, by class of keys, and writes the full report as json.
+ */
+public class AnalyzeCommand implements BelaCommand {
+
+    @Override
+    public String name() {
+        return "analyze";
+    }
+
+    @Override
+    public String usage() {
+        return "analyze <data-path> [--segment <name>] [--threads <n>] [--top <n>] [--report <file>]";
+    }
+
+    @Override
+    public int run(final StorageProviderFactory storageProviderFactory, final CommandArguments arguments, final JsonLinesOutput out)
+            throws Exception {
+        final SegmentAnalytics analytics = new SegmentAnalytics(
+                arguments.intOption("threads", Runtime.getRuntime().availableProcessors()),
+                arguments.intOption("top", SegmentAnalytics.DEFAULT_TOP_N));
+        final List<SegmentIdentifier> segments = storageProviderFactory.detect().stream()
+                .filter(segment -> arguments.option("segment").map(segment.getName()::equalsIgnoreCase).orElse(true))
+                .toList();
+        if (segments.isEmpty()) {
+            throw new IllegalArgumentException("No segment " + arguments.option("segment").orElse("") + " in the database");
+        }
+        final StorageProvider provider = storageProviderFactory.createProvider(segments);
+        final List<SegmentAnalytics.Report> reports = new ArrayList<>();
+        for (SegmentIdentifier segment : segments) {
+            final SegmentAnalytics.Report report = analytics.analyze(
+                    segment, provider.getStorageBySegmentIdentifier(segment), KeyClassifier.forSegment(segment));
+            reports.add(report);
+            out.emit("segment", "segment", segment.getName(), "total", report.total().toReport());
+        }
+        final Path file = arguments.option("report").map(Path::of)
+                .orElse(storageProviderFactory.getDataPath().resolve("bela-analytics.json"));
+        SegmentAnalytics.writeReport(file, reports);
+        out.emit("report", "file", file.toString());
+        return 0;
+    }
+}
@@ -0,0 +1,33 @@
+package org.hyperledger.bela.cli;
+
+import java.util.Set;
+import org.hyperledger.bela.utils.StorageProviderFactory;
+
+/**
+ * Operation run by {@link BelaCommandLine} without the terminal ui.
+ */
+public interface BelaCommand {
+    /**
+     * Words selecting the command, e.g. "trielog query".
+     */
+    String name();
+
+    String usage();
+
+    default Set<String> flags() {
+        return Set.of();
+    }
+
+    /**
+     * Whether the command writes to the database, the database is opened read only otherwise.
+     */
+    default boolean writes(final CommandArguments arguments) {
+        return false;
+    }
+
+    /**
+     * @return the process exit code
+     */
+    int run(StorageProviderFactory storageProviderFactory, CommandArguments arguments, JsonLinesOutput out)
+            throws Exception;
+}
@@ -0,0 +1,152 @@
+package org.hyperledger.bela.cli;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.prefs.Preferences;
+import kr.pe.kwonnam.slf4jlambda.LambdaLogger;
+import org.hyperledger.bela.config.InMemoryPreferences;
+import org.hyperledger.bela.config.RocksDBTuning;
+import org.hyperledger.bela.utils.MetricsHttpEndpoint;
+import org.hyperledger.bela.utils.StorageProviderFactory;
+
+import static kr.pe.kwonnam.slf4jlambda.LambdaLoggerFactory.getLogger;
+import static org.hyperledger.bela.windows.Constants.DATA_PATH;
+import static org.hyperledger.bela.windows.Constants.DETECT_COLUMNS;
+import static org.hyperledger.bela.windows.Constants.READ_ONLY_DB;
+import static org.hyperledger.bela.windows.Constants.ROCKSDB_BLOCK_CACHE_MB;
+import static org.hyperledger.bela.windows.Constants.ROCKSDB_BLOOM_FILTER;
+import static org.hyperledger.bela.windows.Constants.ROCKSDB_DIRECT_READS;
+import static org.hyperledger.bela.windows.Constants.ROCKSDB_MAX_OPEN_FILES;
+import static org.hyperledger.bela.windows.Constants.ROCKSDB_POINT_LOOKUP_TRIES;
+import static org.hyperledger.bela.windows.Constants.ROCKSDB_READAHEAD_KB;
+import static org.hyperledger.bela.windows.Constants.STORAGE_PATH;
+
+/**
+ * Headless entry point: runs a single {@link BelaCommand} and reports on stdout as json lines, e.g.
+ * {@code bela verify /data/besu --threads 16}.
+ */
+public class BelaCommandLine {
+    private static final LambdaLogger log = getLogger(BelaCommandLine.class);
+    private static final String HELP = "help";
+    private static final List<BelaCommand> COMMANDS = List.of(
+            new VerifyCommand(),
+            new ConvertCommand(),
+            new SizesCommand(),
+            new AnalyzeCommand(),
+            new TrieLogQueryCommand(),
+            new TrieLogIndexCommand(),
+            new TrieLogBenchmarkCommand());
+
+    /**
+     * Whether the arguments select a headless command instead of the terminal ui.
+     */
+    public static boolean isCommand(final String[] args) {
+        return args.length > 0 && (args[0].equals(HELP)
+                || COMMANDS.stream().anyMatch(command -> command.name().split(" ")[0].equals(args[0])));
+    }
+
+    /**
+     * @return the process exit code
+     */
+    public static int run(final String[] args) {
+        final JsonLinesOutput out = new JsonLinesOutput(System.out);
+        final Optional<BelaCommand> command = find(args);
+        if (command.isEmpty()) {
+            printUsage();
+            return args[0].equals(HELP) ? 0 : 2;
+        }
+        final String name = command.get().name();
+        final List<String> rest = Arrays.asList(args).subList(name.split(" ").length, args.length);
+        final long start = System.currentTimeMillis();
+        try {
+            final CommandArguments arguments = CommandArguments.parse(rest, command.get().flags());
+            final String dataPath = arguments.positional(0)
+                    .orElseThrow(() -> new IllegalArgumentException("Missing data path"));
+            // the run is configured in memory, the saved settings of the terminal ui are left alone
+            final Preferences preferences = new InMemoryPreferences();
+            preferences.put(DATA_PATH, dataPath);
+            preferences.put(STORAGE_PATH, arguments.option("storage-path").orElse(dataPath + "/database"));
+            preferences.putBoolean(READ_ONLY_DB, !command.get().writes(arguments));
+            preferences.putBoolean(DETECT_COLUMNS, true);
+            putTuning(preferences, arguments);
+
+            try (StorageProviderFactory storageProviderFactory = new StorageProviderFactory(preferences)) {
+                out.emit("start", "command", name, "dataPath", dataPath);
+                final Optional<StatisticsReporter> statistics = arguments.option("stats-interval")
+                        .map(interval -> new StatisticsReporter(storageProviderFactory, out, Integer.parseInt(interval)));
+                final Optional<MetricsHttpEndpoint> metricsEndpoint = arguments.option("metrics-port").isPresent()
+                        ? Optional.of(new MetricsHttpEndpoint(storageProviderFactory.getMetricsSystem(),
+                        Integer.parseInt(arguments.requiredOption("metrics-port"))))
+                        : Optional.empty();
+                final int exitCode;
+                try {
+                    exitCode = command.get().run(storageProviderFactory, arguments, out);
+                } finally {
+                    statistics.ifPresent(StatisticsReporter::close);
+                    metricsEndpoint.ifPresent(MetricsHttpEndpoint::close);
+                    exportMetrics(storageProviderFactory, arguments);
+                }
+                out.emit("finish", "command", name, "exitCode", exitCode,
+                        "durationMillis", System.currentTimeMillis() - start);
+                return exitCode;
+            }
+        } catch (IllegalArgumentException e) {
+            out.error(e);
+            System.err.println("Usage: bela " + command.get().usage());
+            return 2;
+        } catch (Exception e) {
+            log.error("Command {} failed", name, e);
+            out.error(e);
+            return 1;
+        }
+    }
+
+    /**
+     * The rocksdb tuning options shared by all the commands, the defaults of {@link RocksDBTuning} otherwise.
+     */
+    private static void putTuning(final Preferences preferences, final CommandArguments arguments) {
+        preferences.putLong(ROCKSDB_BLOCK_CACHE_MB, arguments.option("block-cache-mb").map(Long::parseLong)
+                .orElse(RocksDBTuning.DEFAULT_BLOCK_CACHE_MB));
+        preferences.putLong(ROCKSDB_READAHEAD_KB, arguments.option("readahead-kb").map(Long::parseLong)
+                .orElse(RocksDBTuning.DEFAULT_READAHEAD_KB));
+        preferences.putInt(ROCKSDB_MAX_OPEN_FILES, arguments.intOption("max-open-files", RocksDBTuning.DEFAULT_MAX_OPEN_FILES));
+        preferences.putBoolean(ROCKSDB_BLOOM_FILTER, arguments.option("bloom-filter").map(Boolean::parseBoolean)
+                .orElse(RocksDBTuning.DEFAULT.isBloomFilter()));
+        preferences.putBoolean(ROCKSDB_DIRECT_READS, arguments.option("direct-reads").map(Boolean::parseBoolean)
+                .orElse(RocksDBTuning.DEFAULT.isDirectReads()));
+        preferences.putBoolean(ROCKSDB_POINT_LOOKUP_TRIES, arguments.option("point-lookup-tries").map(Boolean::parseBoolean)
+                .orElse(false));
+    }
+
+    /**
+     * Writes the metrics of the run when --metrics-file is given, also when the command failed.
+     */
+    private static void exportMetrics(final StorageProviderFactory storageProviderFactory, final CommandArguments arguments) {
+        arguments.option("metrics-file").ifPresent(file -> {
+            try {
+                storageProviderFactory.getMetricsSystem().exportTo(Path.of(file));
+            } catch (IOException e) {
+                log.error("Could not write the metrics to {}", file, e);
+            }
+        });
+    }
+
+    private static Optional<BelaCommand> find(final String[] args) {
+        return COMMANDS.stream().filter(command -> {
+            final String[] words = command.name().split(" ");
+            return args.length >= words.length && Arrays.equals(words, Arrays.copyOf(args, words.length));
+        }).findFirst();
+    }
+
+    private static void printUsage() {
+        System.err.println("Usage: bela [<data-path> [<genesis-path>]]   starts the terminal ui");
+        COMMANDS.forEach(command -> System.err.println("       bela " + command.usage()));
+        System.err.println("RocksDB tuning options of every command: [--block-cache-mb <mb>] [--readahead-kb <kb>] "
+                + "[--max-open-files <n>] [--bloom-filter true|false] [--direct-reads true|false] [--point-lookup-tries true|false]");
+        System.err.println("RocksDB statistics of every command, as rocksdbStats lines: [--stats-interval <seconds>]");
+        System.err.println("Metrics of every command, in the prometheus text format: [--metrics-file <file>] [--metrics-port <port>]");
+    }
+}
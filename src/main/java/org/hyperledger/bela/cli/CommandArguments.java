@@ -0,0 +1,60 @@
+package org.hyperledger.bela.cli;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Positional arguments and --options of a headless command. Options take a value, either as --name=value or as the
+ * next argument, unless they are one of the flags of the command.
+ */
+public class CommandArguments {
+    private final List<String> positionals = new ArrayList<>();
+    private final Map<String, String> options = new HashMap<>();
+
+    public static CommandArguments parse(final List<String> args, final Set<String> flags) {
+        final CommandArguments arguments = new CommandArguments();
+        for (int i = 0; i < args.size(); i++) {
+            final String arg = args.get(i);
+            if (!arg.startsWith("--")) {
+                arguments.positionals.add(arg);
+                continue;
+            }
+            final String option = arg.substring(2);
+            final int equals = option.indexOf('=');
+            if (equals >= 0) {
+                arguments.options.put(option.substring(0, equals), option.substring(equals + 1));
+            } else if (flags.contains(option)) {
+                arguments.options.put(option, "true");
+            } else if (i + 1 < args.size()) {
+                arguments.options.put(option, args.get(++i));
+            } else {
+                throw new IllegalArgumentException("Missing value for option --" + option);
+            }
+        }
+        return arguments;
+    }
+
+    public Optional<String> positional(final int index) {
+        return index < positionals.size() ? Optional.of(positionals.get(index)) : Optional.empty();
+    }
+
+    public Optional<String> option(final String name) {
+        return Optional.ofNullable(options.get(name));
+    }
+
+    public String requiredOption(final String name) {
+        return option(name).orElseThrow(() -> new IllegalArgumentException("Missing option --" + name));
+    }
+
+    public int intOption(final String name, final int defaultValue) {
+        return option(name).map(Integer::parseInt).orElse(defaultValue);
+    }
+
+    public boolean flag(final String name) {
+        return option(name).map(Boolean::parseBoolean).orElse(false);
+    }
+}
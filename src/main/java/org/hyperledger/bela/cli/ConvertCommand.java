@@ -0,0 +1,63 @@
+package org.hyperledger.bela.cli;
+
+import java.util.Set;
+import org.hyperledger.bela.converter.BatchedWriter;
+import org.hyperledger.bela.converter.ConversionJournal;
+import org.hyperledger.bela.converter.ConversionOutput;
+import org.hyperledger.bela.converter.DatabaseConverter;
+import org.hyperledger.bela.converter.SstFileIngester;
+import org.hyperledger.bela.utils.StorageProviderFactory;
+
+/**
+ * Converts the world state between the forest and bonsai formats.
+ */
+public class ConvertCommand implements BelaCommand {
+
+    @Override
+    public String name() {
+        return "convert";
+    }
+
+    @Override
+    public String usage() {
+        return "convert --to bonsai|forest <data-path> [--threads <n>] [--batch-size-mb <mb>] [--queue-depth <n>] [--run-size-mb <mb>] [--output write_batch|sst_ingestion] [--no-journal]";
+    }
+
+    @Override
+    public Set<String> flags() {
+        return Set.of("no-journal");
+    }
+
+    @Override
+    public boolean writes(final CommandArguments arguments) {
+        return true;
+    }
+
+    @Override
+    public int run(final StorageProviderFactory storageProviderFactory, final CommandArguments arguments, final JsonLinesOutput out) {
+        final String to = arguments.requiredOption("to").toLowerCase();
+        final JsonLinesBonsaiListener listener = new JsonLinesBonsaiListener(out);
+        final DatabaseConverter converter = new DatabaseConverter(storageProviderFactory.createProvider(), listener,
+                arguments.intOption("threads", Runtime.getRuntime().availableProcessors()),
+                arguments.intOption("batch-size-mb", (int) (BatchedWriter.DEFAULT_BATCH_SIZE / (1024 * 1024))) * 1024L * 1024L,
+                arguments.intOption("queue-depth", BatchedWriter.DEFAULT_QUEUE_DEPTH),
+                arguments.intOption("run-size-mb", (int) (SstFileIngester.DEFAULT_RUN_SIZE / (1024 * 1024))) * 1024L * 1024L,
+                arguments.option("output")
+                        .map(output -> ConversionOutput.valueOf(output.toUpperCase()))
+                        .orElse(ConversionOutput.WRITE_BATCH),
+                arguments.flag("no-journal")
+                        ? null
+                        : storageProviderFactory.getDataPath().resolve(ConversionJournal.JOURNAL_FILE_NAME));
+        switch (to) {
+            case "bonsai" -> converter.convertToBonsai();
+            case "forest" -> converter.convertToForest();
+            default -> throw new IllegalArgumentException("Unknown format " + to + ", expected bonsai or forest");
+        }
+        out.emit("converted",
+                "to", to,
+                "accountNodes", listener.getVisitedAccountNodes(),
+                "storageNodes", listener.getVisitedStorageNodes(),
+                "findings", listener.getFindings());
+        return listener.getFindings() == 0 ? 0 : 1;
+    }
+}
@@ -0,0 +1,131 @@
+package org.hyperledger.bela.cli;
+
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+import org.hyperledger.bela.utils.bonsai.BonsaiListener;
+import org.hyperledger.bela.utils.bonsai.BonsaiTraversalTrieType;
+import org.hyperledger.besu.datatypes.Hash;
+
+/**
+ * Reports every finding of a traversal as a "finding" line and counts the visited nodes.
+ */
+public class JsonLinesBonsaiListener implements BonsaiListener {
+    private final JsonLinesOutput out;
+    private final AtomicLong visitedAccountNodes = new AtomicLong();
+    private final AtomicLong visitedStorageNodes = new AtomicLong();
+    private final AtomicLong findings = new AtomicLong();
+
+    public JsonLinesBonsaiListener(final JsonLinesOutput out) {
+        this.out = out;
+    }
+
+    private void finding(final String type, final Object... keyValues) {
+        findings.incrementAndGet();
+        final Object[] fields = new Object[keyValues.length + 2];
+        fields[0] = "type";
+        fields[1] = type;
+        System.arraycopy(keyValues, 0, fields, 2, keyValues.length);
+        out.emit("finding", fields);
+    }
+
+    @Override
+    public void root(final Bytes32 hash) {
+        out.emit("root", "hash", hash);
+    }
+
+    @Override
+    public void missingCodeHash(final Hash codeHash, final Hash accountHash) {
+        finding("missingCodeHash", "codeHash", codeHash, "accountHash", accountHash);
+    }
+
+    @Override
+    public void invalidCode(final Hash accountHash, final Hash codeHash, final Hash foundCodeHash) {
+        finding("invalidCode", "accountHash", accountHash, "codeHash", codeHash, "foundCodeHash", foundCodeHash);
+    }
+
+    @Override
+    public void missingValueForNode(final Bytes32 hash) {
+        finding("missingValueForNode", "hash", hash);
+    }
+
+    @Override
+    public void visited(final BonsaiTraversalTrieType type) {
+        if (type == BonsaiTraversalTrieType.Account) {
+            visitedAccountNodes.incrementAndGet();
+        } else {
+            visitedStorageNodes.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void visited(final BonsaiTraversalTrieType type, final long count) {
+        if (type == BonsaiTraversalTrieType.Account) {
+            visitedAccountNodes.addAndGet(count);
+        } else {
+            visitedStorageNodes.addAndGet(count);
+        }
+    }
+
+    @Override
+    public void missingAccountTrieForHash(final Bytes32 hash, final Bytes location) {
+        finding("missingAccountTrie", "hash", hash, "location", location);
+    }
+
+    @Override
+    public void invalidAccountTrieForHash(final Bytes32 hash, final Bytes location, final Hash foundHashNode) {
+        finding("invalidAccountTrie", "hash", hash, "location", location, "foundHash", foundHashNode);
+    }
+
+    @Override
+    public void missingStorageTrieForHash(final Bytes32 hash, final Bytes location) {
+        finding("missingStorageTrie", "hash", hash, "location", location);
+    }
+
+    @Override
+    public void invalidStorageTrieForHash(final Bytes32 accountHash, final Bytes32 hash, final Bytes location, final Hash foundHashNode) {
+        finding("invalidStorageTrie", "accountHash", accountHash, "hash", hash, "location", location, "foundHash", foundHashNode);
+    }
+
+    @Override
+    public void differentDataInFlatDatabaseForAccount(final Hash accountHash) {
+        finding("flatAccountMismatch", "accountHash", accountHash);
+    }
+
+    @Override
+    public void differentDataInFlatDatabaseForStorage(final Bytes32 accountHash, final Bytes32 slotHash) {
+        finding("flatStorageMismatch", "accountHash", accountHash, "slotHash", slotHash);
+    }
+
+    @Override
+    public void missingAccountInFlatDatabase(final Hash accountHash) {
+        finding("flatAccountMissing", "accountHash", accountHash);
+    }
+
+    @Override
+    public void accountOnlyInFlatDatabase(final Hash accountHash) {
+        finding("flatAccountOnly", "accountHash", accountHash);
+    }
+
+    @Override
+    public void missingStorageInFlatDatabase(final Bytes32 accountHash, final Bytes32 slotHash) {
+        finding("flatStorageMissing", "accountHash", accountHash, "slotHash", slotHash);
+    }
+
+    @Override
+    public void storageOnlyInFlatDatabase(final Bytes32 accountHash, final Bytes32 slotHash) {
+        finding("flatStorageOnly", "accountHash", accountHash, "slotHash", slotHash);
+    }
+
+    public long getVisitedAccountNodes() {
+        return visitedAccountNodes.get();
+    }
+
+    public long getVisitedStorageNodes() {
+        return visitedStorageNodes.get();
+    }
+
+    public long getFindings() {
+        return findings.get();
+    }
+}
@@ -0,0 +1,54 @@
+package org.hyperledger.bela.cli;
+
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.tuweni.bytes.Bytes;
+
+/**
+ * Writes one json object per line, every object has an "event" field naming what it reports. Safe to use from
+ * several threads, lines are never interleaved.
+ */
+public class JsonLinesOutput {
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final PrintStream out;
+
+    public JsonLinesOutput(final PrintStream out) {
+        this.out = out;
+    }
+
+    /**
+     * @param keyValues alternating field names and values, bytes are written as hex strings
+     */
+    public void emit(final String event, final Object... keyValues) {
+        final Map<String, Object> fields = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < keyValues.length; i += 2) {
+            fields.put(String.valueOf(keyValues[i]), keyValues[i + 1]);
+        }
+        emit(event, fields);
+    }
+
+    public void emit(final String event, final Map<String, ?> fields) {
+        final Map<String, Object> line = new LinkedHashMap<>();
+        line.put("event", event);
+        line.put("timestamp", System.currentTimeMillis());
+        fields.forEach((key, value) -> line.put(key, value instanceof Bytes bytes ? bytes.toHexString() : value));
+        final String json;
+        try {
+            json = mapper.writeValueAsString(line);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+        synchronized (this) {
+            out.println(json);
+            out.flush();
+        }
+    }
+
+    public void error(final Throwable throwable) {
+        emit("error", "type", throwable.getClass().getName(), "message", String.valueOf(throwable.getMessage()));
+    }
+}
@@ -0,0 +1,56 @@
+package org.hyperledger.bela.cli;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.hyperledger.bela.utils.StorageProviderFactory;
+import org.hyperledger.bela.windows.LongRocksDbProperty;
+import org.hyperledger.bela.windows.SegmentManipulationWindow;
+import org.hyperledger.besu.ethereum.storage.StorageProvider;
+import org.hyperledger.besu.ethereum.storage.keyvalue.KeyValueSegmentIdentifier;
+import org.hyperledger.besu.plugin.services.storage.SegmentIdentifier;
+
+/**
+ * Reports the rocksdb size properties of every segment of the database, and optionally the size of the blockchain
+ * segment by key prefix.
+ */
+public class SizesCommand implements BelaCommand {
+
+    @Override
+    public String name() {
+        return "sizes";
+    }
+
+    @Override
+    public String usage() {
+        return "sizes <data-path> [--blockchain]";
+    }
+
+    @Override
+    public Set<String> flags() {
+        return Set.of("blockchain");
+    }
+
+    @Override
+    public int run(final StorageProviderFactory storageProviderFactory, final CommandArguments arguments, final JsonLinesOutput out) {
+        final List<SegmentIdentifier> segments = storageProviderFactory.detect();
+        final StorageProvider provider = storageProviderFactory.createProvider(segments);
+        for (SegmentIdentifier segment : segments) {
+            final Map<String, Object> properties = new LinkedHashMap<>();
+            properties.put("segment", segment.getName());
+            for (LongRocksDbProperty property : LongRocksDbProperty.values()) {
+                properties.put(property.getName(), SegmentManipulationWindow.accessLongPropertyForSegment(provider, segment, property));
+            }
+            out.emit("segment", properties);
+        }
+        if (arguments.flag("blockchain") && segments.contains(KeyValueSegmentIdentifier.BLOCKCHAIN)) {
+            final Map<String, Object> sizes = new LinkedHashMap<>();
+            SegmentManipulationWindow.blockchainSizes(
+                            provider.getStorageBySegmentIdentifier(KeyValueSegmentIdentifier.BLOCKCHAIN), () -> {})
+                    .forEach((prefix, size) -> sizes.put(prefix.name(), size));
+            out.emit("blockchainSizes", sizes);
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,59 @@
+package org.hyperledger.bela.cli;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import kr.pe.kwonnam.slf4jlambda.LambdaLogger;
+import org.hyperledger.bela.utils.RocksDBStatisticsSampler;
+import org.hyperledger.bela.utils.StorageProviderFactory;
+import org.hyperledger.besu.ethereum.storage.StorageProvider;
+
+import static kr.pe.kwonnam.slf4jlambda.LambdaLoggerFactory.getLogger;
+
+/**
+ * Emits a "rocksdbStats" line with the rocksdb statistics every interval while a command runs. Nothing is emitted
+ * before the command has opened the database.
+ */
+class StatisticsReporter implements AutoCloseable {
+    private static final LambdaLogger log = getLogger(StatisticsReporter.class);
+
+    private final StorageProviderFactory storageProviderFactory;
+    private final JsonLinesOutput out;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "bela-rocksdb-statistics");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private StorageProvider sampledProvider;
+    private RocksDBStatisticsSampler sampler;
+
+    StatisticsReporter(final StorageProviderFactory storageProviderFactory, final JsonLinesOutput out,
+                       final int intervalSeconds) {
+        if (intervalSeconds < 1) {
+            throw new IllegalArgumentException("--stats-interval must be at least 1 second");
+        }
+        this.storageProviderFactory = storageProviderFactory;
+        this.out = out;
+        scheduler.scheduleAtFixedRate(this::report, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    private void report() {
+        try {
+            // sampled while the database cannot be closed, the statistics are freed with it
+            storageProviderFactory.withOpenProvider(provider -> {
+                if (provider != sampledProvider) {
+                    sampledProvider = provider;
+                    sampler = RocksDBStatisticsSampler.forProvider(sampledProvider).orElse(null);
+                }
+                return sampler == null ? null : sampler.sample();
+            }).ifPresent(sample -> out.emit("rocksdbStats", sample));
+        } catch (Exception e) {
+            log.error("Could not sample the rocksdb statistics", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,99 @@
+package org.hyperledger.bela.cli;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
+import org.apache.commons.lang3.tuple.Pair;
+import org.hyperledger.bela.trielog.TrieLogCodec;
+import org.hyperledger.bela.trielog.TrieLogReader;
+import org.hyperledger.bela.utils.StorageProviderFactory;
+import org.hyperledger.bela.utils.hacks.RocksDBStorageAccess;
+import org.hyperledger.bela.utils.hacks.ScanOptions;
+import org.hyperledger.besu.ethereum.bonsai.TrieLogLayer;
+import org.hyperledger.besu.ethereum.storage.keyvalue.KeyValueSegmentIdentifier;
+import org.hyperledger.besu.plugin.services.storage.KeyValueStorage;
+
+/**
+ * Measures the trie log decoding throughput on the trie logs of the database: looking up besu's decoding method on
+ * every layer the way bela used to, decoding through the {@link TrieLogCodec}, and streaming every change with the
+ * {@link TrieLogReader}. The trie logs are read into memory first so only the decoding is timed.
+ */
+public class TrieLogBenchmarkCommand implements BelaCommand {
+    private static final int DEFAULT_TRIE_LOGS = 10_000;
+    private static final int DEFAULT_ITERATIONS = 5;
+    private static final int WARMUP_ITERATIONS = 2;
+
+    // keeps the decoded results alive so the decoding is not optimized away
+    private static volatile int sink;
+
+    @Override
+    public String name() {
+        return "trielog bench";
+    }
+
+    @Override
+    public String usage() {
+        return "trielog bench <data-path> [--trie-logs <n>] [--iterations <n>]";
+    }
+
+    @Override
+    public int run(final StorageProviderFactory storageProviderFactory, final CommandArguments arguments, final JsonLinesOutput out) {
+        final KeyValueStorage storage = storageProviderFactory.createProvider()
+                .getStorageBySegmentIdentifier(KeyValueSegmentIdentifier.TRIE_LOG_STORAGE);
+        final List<byte[]> trieLogs;
+        try (Stream<Pair<byte[], byte[]>> entries = RocksDBStorageAccess.scan(storage, ScanOptions.fullScan())) {
+            trieLogs = entries.limit(arguments.intOption("trie-logs", DEFAULT_TRIE_LOGS)).map(Pair::getValue).toList();
+        }
+        if (trieLogs.isEmpty()) {
+            out.emit("error", "message", "no trie logs to decode");
+            return 1;
+        }
+        final long bytes = trieLogs.stream().mapToLong(trieLog -> trieLog.length).sum();
+        out.emit("loaded", "trieLogs", trieLogs.size(), "bytes", bytes);
+
+        final int iterations = arguments.intOption("iterations", DEFAULT_ITERATIONS);
+        measure("reflection", trieLogs, bytes, iterations, out, trieLog -> System.identityHashCode(decodeReflectively(trieLog)));
+        measure("codec", trieLogs, bytes, iterations, out, trieLog -> System.identityHashCode(TrieLogCodec.decode(trieLog)));
+        measure("reader", trieLogs, bytes, iterations, out,
+                trieLog -> TrieLogReader.read(trieLog, TrieLogReader.ALL_SECTIONS, new TrieLogReader.Visitor() {
+                }) ? 1 : 0);
+        return 0;
+    }
+
+    private static void measure(final String decoder, final List<byte[]> trieLogs, final long bytes, final int iterations,
+                                final JsonLinesOutput out, final ToIntFunction<byte[]> decode) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            decodeAll(trieLogs, decode);
+        }
+        final long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            decodeAll(trieLogs, decode);
+        }
+        final double seconds = (System.nanoTime() - start) / 1e9;
+        out.emit("decoded", "decoder", decoder, "iterations", iterations, "seconds", seconds,
+                "trieLogsPerSecond", (long) (trieLogs.size() * iterations / seconds),
+                "mbPerSecond", bytes * iterations / seconds / (1024 * 1024));
+    }
+
+    private static void decodeAll(final List<byte[]> trieLogs, final ToIntFunction<byte[]> decode) {
+        int result = 0;
+        for (byte[] trieLog : trieLogs) {
+            result += decode.applyAsInt(trieLog);
+        }
+        sink = result;
+    }
+
+    /**
+     * The decoding bela did before the codec, as the baseline.
+     */
+    private static TrieLogLayer decodeReflectively(final byte[] trieLog) {
+        try {
+            final Method method = TrieLogLayer.class.getDeclaredMethod("fromBytes", byte[].class);
+            method.setAccessible(true);
+            return (TrieLogLayer) method.invoke(null, trieLog);
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package org.hyperledger.bela.cli;
+
+import java.nio.file.Path;
+import java.util.Set;
+import org.hyperledger.bela.trielog.TrieLogIndex;
+import org.hyperledger.bela.utils.StorageProviderFactory;
+import org.hyperledger.besu.ethereum.storage.keyvalue.KeyValueSegmentIdentifier;
+import org.hyperledger.besu.plugin.services.storage.KeyValueStorage;
+
+/**
+ * Builds the {@link TrieLogIndex} of the database, or brings it up to date with the trie logs added since.
+ */
+public class TrieLogIndexCommand implements BelaCommand {
+    private static final long PROGRESS_INTERVAL = 10_000;
+
+    @Override
+    public String name() {
+        return "trielog index";
+    }
+
+    @Override
+    public String usage() {
+        return "trielog index <data-path> [--rebuild]";
+    }
+
+    @Override
+    public Set<String> flags() {
+        return Set.of("rebuild");
+    }
+
+    @Override
+    public int run(final StorageProviderFactory storageProviderFactory, final CommandArguments arguments, final JsonLinesOutput out)
+            throws Exception {
+        final KeyValueStorage storage = storageProviderFactory.createProvider()
+                .getStorageBySegmentIdentifier(KeyValueSegmentIdentifier.TRIE_LOG_STORAGE);
+        final Path dataPath = storageProviderFactory.getDataPath();
+        if (arguments.flag("rebuild")) {
+            TrieLogIndex.delete(dataPath);
+        }
+        try (TrieLogIndex index = TrieLogIndex.open(dataPath)) {
+            final long indexed = index.update(storage, count -> {
+                if (count % PROGRESS_INTERVAL == 0) {
+                    out.emit("progress", "trieLogs", count);
+                }
+            });
+            out.emit("indexed", "trieLogs", indexed, "index", dataPath.resolve(TrieLogIndex.INDEX_DIRECTORY).toString());
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,57 @@
+package org.hyperledger.bela.cli;
+
+import java.util.List;
+import java.util.Optional;
+import org.hyperledger.bela.components.bonsai.queries.BonsaiTrieQuery;
+import org.hyperledger.bela.components.bonsai.queries.TrieQueryContext;
+import org.hyperledger.bela.components.bonsai.queries.TrieQueryValidator;
+import org.hyperledger.bela.trielog.TrieLogIndex;
+import org.hyperledger.bela.trielog.TrieLogQueryEngine;
+import org.hyperledger.bela.utils.StorageProviderFactory;
+import org.hyperledger.besu.datatypes.Hash;
+import org.hyperledger.besu.ethereum.storage.StorageProvider;
+import org.hyperledger.besu.ethereum.storage.keyvalue.KeyValueSegmentIdentifier;
+import org.hyperledger.besu.plugin.services.storage.KeyValueStorage;
+
+/**
+ * Runs one of the {@link BonsaiTrieQuery} over every stored trie log, printing the block hash of each match as it is
+ * found. Queries are answered from the {@link TrieLogIndex} instead when it has been built.
+ */
+public class TrieLogQueryCommand implements BelaCommand {
+
+    @Override
+    public String name() {
+        return "trielog query";
+    }
+
+    @Override
+    public String usage() {
+        return "trielog query <data-path> --target <hash|address|expression> [--query account_storage_change|account_change|expression] [--threads <n>] [--limit <n>]";
+    }
+
+    @Override
+    public int run(final StorageProviderFactory storageProviderFactory, final CommandArguments arguments, final JsonLinesOutput out) {
+        final BonsaiTrieQuery query = arguments.option("query")
+                .map(name -> BonsaiTrieQuery.valueOf(name.toUpperCase()))
+                .orElse(BonsaiTrieQuery.ACCOUNT_STORAGE_CHANGE);
+        final StorageProvider provider = storageProviderFactory.createProvider();
+        final TrieQueryValidator validator = query.createValidator(arguments.requiredOption("target"),
+                TrieQueryContext.forProvider(provider, storageProviderFactory.getMetricsSystem()));
+        final int limit = arguments.intOption("limit", TrieLogQueryEngine.NO_LIMIT);
+        final KeyValueStorage storage = provider.getStorageBySegmentIdentifier(KeyValueSegmentIdentifier.TRIE_LOG_STORAGE);
+
+        final Optional<List<Hash>> indexed = TrieLogIndex.lookupIfIndexed(storageProviderFactory.getDataPath(), storage, validator);
+        if (indexed.isPresent()) {
+            final List<Hash> matches = indexed.get().stream().limit(limit).toList();
+            matches.forEach(blockHash -> out.emit("match", "blockHash", blockHash));
+            out.emit("queried", "query", query.getName(), "indexed", true, "matches", matches.size());
+            return 0;
+        }
+        final TrieLogQueryEngine.Execution execution =
+                new TrieLogQueryEngine(arguments.intOption("threads", Runtime.getRuntime().availableProcessors()))
+                        .start(storage, validator, limit, blockHash -> out.emit("match", "blockHash", blockHash));
+        execution.await();
+        out.emit("queried", "query", query.getName(), "trieLogs", execution.getScanned(), "matches", execution.getMatches());
+        return 0;
+    }
+}
@@ -0,0 +1,69 @@
+package org.hyperledger.bela.cli;
+
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.hyperledger.bela.utils.StorageProviderFactory;
+import org.hyperledger.bela.utils.bonsai.BonsaiTraversal;
+import org.hyperledger.bela.utils.bonsai.BonsaiTraversalCheckpoint;
+import org.hyperledger.bela.utils.bonsai.FlatDatabaseCheck;
+
+/**
+ * Verifies the bonsai world state, exits with 1 when anything was found.
+ */
+public class VerifyCommand implements BelaCommand {
+    private static final long PROGRESS_INTERVAL_SECONDS = 10;
+
+    @Override
+    public String name() {
+        return "verify";
+    }
+
+    @Override
+    public String usage() {
+        return "verify <data-path> [--threads <n>] [--flat-db lookup|merge_join] [--no-checkpoint]";
+    }
+
+    @Override
+    public Set<String> flags() {
+        return Set.of("no-checkpoint");
+    }
+
+    @Override
+    public int run(final StorageProviderFactory storageProviderFactory, final CommandArguments arguments, final JsonLinesOutput out) {
+        final int threads = arguments.intOption("threads", Runtime.getRuntime().availableProcessors());
+        final FlatDatabaseCheck flatDatabaseCheck = arguments.option("flat-db")
+                .map(check -> FlatDatabaseCheck.valueOf(check.toUpperCase()))
+                .orElse(FlatDatabaseCheck.LOOKUP);
+        final JsonLinesBonsaiListener listener = new JsonLinesBonsaiListener(out);
+        final BonsaiTraversal traversal = new BonsaiTraversal(
+                storageProviderFactory.createProvider(),
+                listener,
+                threads,
+                arguments.flag("no-checkpoint")
+                        ? null
+                        : storageProviderFactory.getDataPath().resolve(BonsaiTraversalCheckpoint.CHECKPOINT_FILE_NAME),
+                flatDatabaseCheck);
+
+        final ScheduledExecutorService progress = Executors.newSingleThreadScheduledExecutor();
+        progress.scheduleAtFixedRate(() -> out.emit("progress",
+                        "accountNodes", listener.getVisitedAccountNodes(),
+                        "storageNodes", listener.getVisitedStorageNodes(),
+                        "findings", listener.getFindings()),
+                PROGRESS_INTERVAL_SECONDS, PROGRESS_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        try {
+            traversal.traverse();
+        } finally {
+            progress.shutdownNow();
+        }
+        out.emit("verified",
+                "root", traversal.getRoot(),
+                "threads", traversal.getParallelism(),
+                "flatDatabaseCheck", flatDatabaseCheck,
+                "accountNodes", listener.getVisitedAccountNodes(),
+                "storageNodes", listener.getVisitedStorageNodes(),
+                "findings", listener.getFindings());
+        return listener.getFindings() == 0 ? 0 : 1;
+    }
+}
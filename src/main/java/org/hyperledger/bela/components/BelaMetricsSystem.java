@@ -1,9 +1,25 @@
 package org.hyperledger.bela.components;
 
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.DoubleSupplier;
-import com.googlecode.lanterna.gui2.Label;
+import java.util.function.Function;
+import com.googlecode.lanterna.TerminalSize;
 import com.googlecode.lanterna.gui2.LinearLayout;
 import com.googlecode.lanterna.gui2.Panel;
+import com.googlecode.lanterna.gui2.TextBox;
 import org.hyperledger.besu.plugin.services.MetricsSystem;
 import org.hyperledger.besu.plugin.services.metrics.Counter;
 import org.hyperledger.besu.plugin.services.metrics.LabelledGauge;
@@ -11,41 +27,256 @@ import org.hyperledger.besu.plugin.services.metrics.LabelledMetric;
 import org.hyperledger.besu.plugin.services.metrics.MetricCategory;
 import org.hyperledger.besu.plugin.services.metrics.OperationTimer;
 
+/**
+ * In-process registry of the counters, gauges and timers besu and bela create, rendered in its panel and exportable in
+ * the prometheus text format. Metrics are named like besu names them, the application prefix of the category, the
+ * category and the metric name. Creating a metric again returns the existing one, except gauges whose supplier is
+ * replaced so a reopened database is not pinned by the old one.
+ */
 public class BelaMetricsSystem implements MetricsSystem, BelaComponent<Panel> {
+    private final Map<String, Family<?>> families = new ConcurrentSkipListMap<>();
+    private final TextBox valuesTextBox = new TextBox(new TerminalSize(120, 30));
 
-    MetricsSystem delegate;
-
-    public BelaMetricsSystem(final MetricsSystem delegate) {
-        this.delegate = delegate;
-
+    public BelaMetricsSystem() {
+        valuesTextBox.setReadOnly(true);
+        valuesTextBox.setText("Empty for now...");
     }
 
     @Override
     public Panel createComponent() {
+        refresh();
         Panel panel = new Panel(new LinearLayout());
-        panel.addComponent(new Label("Empty for now..."));
+        panel.addComponent(valuesTextBox);
         return panel;
     }
 
+    /**
+     * Renders the current values in the panel.
+     */
+    public void refresh() {
+        final StringBuilder text = new StringBuilder();
+        families.values().forEach(family -> family.samples().forEach(sample ->
+                text.append(String.format("%-80s %s%n", sample.name() + sample.labels(), format(sample.value())))));
+        valuesTextBox.setText(text.length() == 0 ? "Empty for now..." : text.toString());
+    }
+
     @Override
     public LabelledMetric<Counter> createLabelledCounter(final MetricCategory category, final String name, final String help, final String... labelNames) {
-        return delegate.createLabelledCounter(category, name, help, labelNames);
+        return family(category, name, help, labelNames, CounterFamily.class, CounterFamily::new);
     }
 
     @Override
     public LabelledGauge createLabelledGauge(final MetricCategory category, final String name, final String help, final String... labelNames) {
-        return delegate.createLabelledGauge(category, name, help, labelNames);
+        return family(category, name, help, labelNames, GaugeFamily.class, GaugeFamily::new);
     }
 
     @Override
     public LabelledMetric<OperationTimer> createLabelledTimer(final MetricCategory category, final String name, final String help, final String... labelNames) {
-        return delegate.createLabelledTimer(category, name, help, labelNames);
+        return family(category, name, help, labelNames, TimerFamily.class, TimerFamily::new);
     }
 
     @Override
     public void createGauge(final MetricCategory category, final String name, final String help, final DoubleSupplier valueSupplier) {
-        delegate.createGauge(category, name, help, valueSupplier);
+        createLabelledGauge(category, name, help).labels(valueSupplier);
+    }
+
+    /**
+     * Writes every metric in the prometheus text exposition format.
+     */
+    public void writePrometheus(final Writer writer) throws IOException {
+        for (Family<?> family : families.values()) {
+            writer.write("# HELP " + family.name + " " + family.help.replace("\\", "\\\\").replace("\n", "\\n") + "\n");
+            writer.write("# TYPE " + family.name + " " + family.type() + "\n");
+            for (Sample sample : family.samples()) {
+                writer.write(sample.name() + sample.labels() + " " + format(sample.value()) + "\n");
+            }
+        }
+        writer.flush();
+    }
+
+    /**
+     * Writes the prometheus text to the file, replacing it atomically so a scraper never reads half of it.
+     */
+    public void exportTo(final Path file) throws IOException {
+        final Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            writePrometheus(writer);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private <T extends Family<?>> T family(final MetricCategory category, final String name, final String help,
+                                           final String[] labelNames, final Class<T> type,
+                                           final FamilyConstructor<T> constructor) {
+        final String fullName = category.getApplicationPrefix().orElse("") + category.getName() + "_" + name;
+        final Family<?> family = families.computeIfAbsent(fullName, key -> constructor.create(key, help, labelNames));
+        if (!type.isInstance(family)) {
+            throw new IllegalArgumentException("Metric " + fullName + " already exists as a " + family.type());
+        }
+        return type.cast(family);
+    }
+
+    private static String format(final double value) {
+        return value == Math.rint(value) && !Double.isInfinite(value) ? String.valueOf((long) value) : String.valueOf(value);
+    }
+
+    private interface FamilyConstructor<T> {
+        T create(String name, String help, String[] labelNames);
     }
 
+    private record Sample(String name, String labels, double value) {
+    }
+
+    private abstract static class Family<T> {
+        final String name;
+        final String help;
+        final String[] labelNames;
+        final Map<List<String>, T> children = new ConcurrentHashMap<>();
+
+        Family(final String name, final String help, final String[] labelNames) {
+            this.name = name;
+            this.help = help;
+            this.labelNames = labelNames;
+        }
+
+        abstract String type();
+
+        abstract void addSamples(String labels, T child, List<Sample> samples);
+
+        T child(final String[] labelValues, final Function<List<String>, T> create) {
+            checkLabels(labelValues);
+            return children.computeIfAbsent(List.of(labelValues), create);
+        }
+
+        void checkLabels(final String[] labelValues) {
+            if (labelValues.length != labelNames.length) {
+                throw new IllegalArgumentException("Metric " + name + " has labels " + Arrays.toString(labelNames)
+                        + " but got values " + Arrays.toString(labelValues));
+            }
+        }
+
+        List<Sample> samples() {
+            final List<Sample> samples = new ArrayList<>();
+            children.forEach((labelValues, child) -> addSamples(labels(labelValues), child, samples));
+            return samples;
+        }
 
+        private String labels(final List<String> labelValues) {
+            if (labelValues.isEmpty()) {
+                return "";
+            }
+            final StringBuilder labels = new StringBuilder("{");
+            for (int i = 0; i < labelNames.length; i++) {
+                labels.append(i == 0 ? "" : ",").append(labelNames[i]).append("=\"")
+                        .append(labelValues.get(i).replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+                        .append('"');
+            }
+            return labels.append('}').toString();
+        }
+    }
+
+    private static class CounterFamily extends Family<CounterFamily.Child> implements LabelledMetric<Counter> {
+        CounterFamily(final String name, final String help, final String[] labelNames) {
+            super(name, help, labelNames);
+        }
+
+        @Override
+        public Counter labels(final String... labelValues) {
+            return child(labelValues, key -> new Child());
+        }
+
+        @Override
+        String type() {
+            return "counter";
+        }
+
+        @Override
+        void addSamples(final String labels, final Child child, final List<Sample> samples) {
+            samples.add(new Sample(name, labels, child.count.sum()));
+        }
+
+        static class Child implements Counter {
+            private final LongAdder count = new LongAdder();
+
+            @Override
+            public void inc() {
+                count.increment();
+            }
+
+            @Override
+            public void inc(final long amount) {
+                count.add(amount);
+            }
+        }
+    }
+
+    private static class GaugeFamily extends Family<DoubleSupplier> implements LabelledGauge {
+        GaugeFamily(final String name, final String help, final String[] labelNames) {
+            super(name, help, labelNames);
+        }
+
+        @Override
+        public void labels(final DoubleSupplier valueSupplier, final String... labelValues) {
+            checkLabels(labelValues);
+            children.put(List.of(labelValues), valueSupplier);
+        }
+
+        @Override
+        String type() {
+            return "gauge";
+        }
+
+        @Override
+        void addSamples(final String labels, final DoubleSupplier child, final List<Sample> samples) {
+            double value;
+            try {
+                value = child.getAsDouble();
+            } catch (RuntimeException e) {
+                // the supplier reads a closed database
+                value = Double.NaN;
+            }
+            samples.add(new Sample(name, labels, value));
+        }
+    }
+
+    /**
+     * Timers are exported as summaries without quantiles, the count and the total of the timings in seconds.
+     */
+    private static class TimerFamily extends Family<TimerFamily.Child> implements LabelledMetric<OperationTimer> {
+        TimerFamily(final String name, final String help, final String[] labelNames) {
+            super(name, help, labelNames);
+        }
+
+        @Override
+        public OperationTimer labels(final String... labelValues) {
+            return child(labelValues, key -> new Child());
+        }
+
+        @Override
+        String type() {
+            return "summary";
+        }
+
+        @Override
+        void addSamples(final String labels, final Child child, final List<Sample> samples) {
+            samples.add(new Sample(name + "_count", labels, child.count.sum()));
+            samples.add(new Sample(name + "_sum", labels, child.seconds.sum()));
+        }
+
+        static class Child implements OperationTimer {
+            private final LongAdder count = new LongAdder();
+            private final DoubleAdder seconds = new DoubleAdder();
+
+            @Override
+            public TimingContext startTimer() {
+                final long start = System.nanoTime();
+                return () -> {
+                    final double elapsed = (System.nanoTime() - start) / 1e9;
+                    count.increment();
+                    seconds.add(elapsed);
+                    return elapsed;
+                };
+            }
+        }
+    }
 }
@@ -46,6 +46,17 @@ public abstract class AbstractBonsaiNodeView implements BelaComponent<Panel> {
 
     protected void selectNode(final BonsaiNode newLeaf) {
         updatePath(newLeaf);
+        showNode(newLeaf);
+    }
+
+    /**
+     * Renders the current node again, for nodes whose children are still being found.
+     */
+    public void refreshCurrentNode() {
+        getCurrentNode().ifPresent(this::showNode);
+    }
+
+    private void showNode(final BonsaiNode newLeaf) {
         this.currentNode = newLeaf;
         detailsPanel.removeAllComponents();
         final Component component = newLeaf.createComponent();
@@ -3,8 +3,12 @@ package org.hyperledger.bela.components.bonsai;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import com.googlecode.lanterna.gui2.Label;
+import com.googlecode.lanterna.gui2.LinearLayout;
+import com.googlecode.lanterna.gui2.Panel;
 import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.bytes.Bytes32;
+import org.hyperledger.bela.trie.TrieNodeCache;
 import org.hyperledger.bela.utils.StorageProviderFactory;
 import org.hyperledger.besu.datatypes.Address;
 import org.hyperledger.besu.datatypes.Hash;
@@ -19,6 +23,7 @@ import static org.hyperledger.besu.ethereum.trie.CompactEncoding.bytesToPath;
 
 public class BonsaiStorageView extends AbstractBonsaiNodeView {
     private final StorageProviderFactory storageProviderFactory;
+    private final Label cacheLabel = new Label("");
     private KeyValueStorage accountStorage;
     private KeyValueStorage storageStorage;
     private KeyValueStorage trieBranchStorage;
@@ -28,6 +33,20 @@ public class BonsaiStorageView extends AbstractBonsaiNodeView {
         this.storageProviderFactory = storageProviderFactory;
     }
 
+    @Override
+    public Panel createComponent() {
+        final Panel panel = new Panel(new LinearLayout());
+        panel.addComponent(super.createComponent());
+        panel.addComponent(cacheLabel);
+        return panel;
+    }
+
+    @Override
+    protected void selectNode(final BonsaiNode newLeaf) {
+        super.selectNode(newLeaf);
+        cacheLabel.setText(storageProviderFactory.getTrieNodeCache().toString());
+    }
+
     private void initStorage() {
         if (accountStorage != null) {
             return;
@@ -54,6 +73,11 @@ public class BonsaiStorageView extends AbstractBonsaiNodeView {
     }
 
     public Node<Bytes> getAccountNodeValue(final Bytes32 hash, final Bytes location) {
+        final TrieNodeCache cache = storageProviderFactory.getTrieNodeCache();
+        final Optional<Node<Bytes>> cached = cache.getAccountNode(hash, location);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
         final Optional<Bytes> bytes = trieBranchStorage.get(location.toArrayUnsafe()).map(Bytes::wrap);
         if (bytes.isEmpty()) {
             return null;
@@ -62,7 +86,9 @@ public class BonsaiStorageView extends AbstractBonsaiNodeView {
         if (!foundHashNode.equals(hash)) {
             return null;
         }
-        return TrieNodeDecoder.decode(location, bytes.get());
+        final Node<Bytes> node = TrieNodeDecoder.decode(location, bytes.get());
+        cache.putAccountNode(hash, node);
+        return node;
     }
 
     public Optional<Bytes> getAccountFromFlatDatabase(final Hash accountHash) {
@@ -75,6 +101,11 @@ public class BonsaiStorageView extends AbstractBonsaiNodeView {
 
     public Node<Bytes> getStorageNodeValue(
             final Bytes32 hash, final Bytes32 accountHash, final Bytes location) {
+        final TrieNodeCache cache = storageProviderFactory.getTrieNodeCache();
+        final Optional<Node<Bytes>> cached = cache.getStorageNode(accountHash, hash, location);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
         final Optional<Bytes> bytes =
                 trieBranchStorage
                         .get(Bytes.concatenate(accountHash, location).toArrayUnsafe())
@@ -82,7 +113,12 @@ public class BonsaiStorageView extends AbstractBonsaiNodeView {
         if (bytes.isEmpty()) {
             return null;
         }
-        return TrieNodeDecoder.decode(location, bytes.get());
+        final Node<Bytes> node = TrieNodeDecoder.decode(location, bytes.get());
+        // nodes with an unexpected hash are still shown, flagged by the tree, but not cached
+        if (node.getHash().equals(hash)) {
+            cache.putStorageNode(accountHash, hash, node);
+        }
+        return node;
     }
 
     public boolean nodeIsHashReferencedDescendant(
@@ -1,15 +1,14 @@
 package org.hyperledger.bela.components.bonsai;
 
-import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Stream;
 import com.googlecode.lanterna.gui2.Borders;
 import com.googlecode.lanterna.gui2.Component;
 import com.googlecode.lanterna.gui2.Panel;
 import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.units.bigints.UInt256;
+import org.hyperledger.bela.utils.hacks.TrieLogLayerAccess;
 import org.hyperledger.besu.datatypes.Address;
 import org.hyperledger.besu.datatypes.Hash;
 import org.hyperledger.besu.ethereum.bonsai.BonsaiValue;
@@ -31,7 +30,7 @@ public class BonsaiTrieLogNode extends AbstractBonsaiNode {
     public List<BonsaiNode> getChildren() {
         final List<BonsaiNode> children = new ArrayList<>();
 
-        final List<AccountChangeNode> accounts = streamAccounts().map(account -> {
+        final List<AccountChangeNode> accounts = TrieLogLayerAccess.streamAccountChanges(layer).map(account -> {
             final Address address = account.getKey();
             final StateTrieAccountValue prior = account.getValue().getPrior();
             final StateTrieAccountValue updated = account.getValue().getUpdated();
@@ -42,7 +41,7 @@ public class BonsaiTrieLogNode extends AbstractBonsaiNode {
         } else {
             children.add(new LabelNode("No accounts changes", blockHash.toHexString()));
         }
-        final List<CodeChangeNode> codeChanges = streamCodeChanges().map(codeChange -> {
+        final List<CodeChangeNode> codeChanges = TrieLogLayerAccess.streamCodeChanges(layer).map(codeChange -> {
             final Address address = codeChange.getKey();
             final Bytes prior = codeChange.getValue().getPrior();
             final Bytes updated = codeChange.getValue().getUpdated();
@@ -53,7 +52,7 @@ public class BonsaiTrieLogNode extends AbstractBonsaiNode {
         } else {
             children.add(new LabelNode("No code changes", blockHash.toHexString()));
         }
-        final List<AddressStorageNode> storageChanges = streamStorageChanges().map(storageChange -> {
+        final List<AddressStorageNode> storageChanges = TrieLogLayerAccess.streamStorageChanges(layer).map(storageChange -> {
             final Address address = storageChange.getKey();
             final Map<Hash, BonsaiValue<UInt256>> tree = storageChange.getValue();
             return new AddressStorageNode(address, tree);
@@ -66,39 +65,6 @@ public class BonsaiTrieLogNode extends AbstractBonsaiNode {
         return children;
     }
 
-    private Stream<Map.Entry<Address, BonsaiValue<StateTrieAccountValue>>> streamAccounts() {
-        try {
-            final Method streamAccounts = layer.getClass().getDeclaredMethod("streamAccountChanges");
-            streamAccounts.setAccessible(true);
-            return (Stream<Map.Entry<Address, BonsaiValue<StateTrieAccountValue>>>) streamAccounts.invoke(layer);
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
-        //        return layer.streamAccountChanges();
-    }
-
-    private Stream<Map.Entry<Address, BonsaiValue<Bytes>>> streamCodeChanges() {
-        try {
-            final Method streamAccounts = layer.getClass().getDeclaredMethod("streamCodeChanges");
-            streamAccounts.setAccessible(true);
-            return (Stream<Map.Entry<Address, BonsaiValue<Bytes>>>) streamAccounts.invoke(layer);
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
-        //        return layer.streamCodeChanges();
-    }
-
-    private Stream<Map.Entry<Address, Map<Hash, BonsaiValue<UInt256>>>> streamStorageChanges() {
-        try {
-            final Method streamAccounts = layer.getClass().getDeclaredMethod("streamStorageChanges");
-            streamAccounts.setAccessible(true);
-            return (Stream<Map.Entry<Address, Map<Hash, BonsaiValue<UInt256>>>>) streamAccounts.invoke(layer);
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
-        //        return layer.streamStorageChanges();
-    }
-
     public TrieLogLayer getLayer() {
         return layer;
     }
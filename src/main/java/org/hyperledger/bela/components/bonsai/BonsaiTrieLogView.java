@@ -1,14 +1,19 @@
 package org.hyperledger.bela.components.bonsai;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import kr.pe.kwonnam.slf4jlambda.LambdaLogger;
 import org.apache.tuweni.bytes.Bytes32;
 import org.hyperledger.bela.components.bonsai.queries.TrieQueryValidator;
+import org.hyperledger.bela.trielog.TrieLogCodec;
+import org.hyperledger.bela.trielog.TrieLogIndex;
+import org.hyperledger.bela.trielog.TrieLogQueryEngine;
 import org.hyperledger.bela.utils.StorageProviderFactory;
+import org.hyperledger.bela.utils.hacks.RocksDBStorageAccess;
+import org.hyperledger.bela.utils.hacks.ScanOptions;
 import org.hyperledger.besu.datatypes.Hash;
 import org.hyperledger.besu.ethereum.bonsai.TrieLogLayer;
 import org.hyperledger.besu.ethereum.storage.StorageProvider;
@@ -28,23 +33,11 @@ public class BonsaiTrieLogView extends AbstractBonsaiNodeView {
         this.storageProviderFactory = storageProviderFactory;
     }
 
-    public static Optional<TrieLogLayer> getTrieLog(final KeyValueStorage storage, final Hash blockHash) {
-        return storage.get(blockHash.toArrayUnsafe()).map(bytes -> {
-            try {
-                Method method = TrieLogLayer.class.getDeclaredMethod("fromBytes", byte[].class);
-                method.setAccessible(true);
-                return (TrieLogLayer) method.invoke(null, bytes);
-            } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
-                throw new RuntimeException(e);
-            }
-        });
-    }
-
     public void updateFromHash(final Hash hash) {
 
         final StorageProvider provider = storageProviderFactory.createProvider();
         final KeyValueStorage storage = provider.getStorageBySegmentIdentifier(KeyValueSegmentIdentifier.TRIE_LOG_STORAGE);
-        final Optional<TrieLogLayer> trieLog = getTrieLog(storage, hash);
+        final Optional<TrieLogLayer> trieLog = TrieLogCodec.get(storage, hash);
 
 
         if (trieLog.isPresent()) {
@@ -64,9 +57,12 @@ public class BonsaiTrieLogView extends AbstractBonsaiNodeView {
 
         final StorageProvider provider = storageProviderFactory.createProvider();
         final KeyValueStorage storage = provider.getStorageBySegmentIdentifier(KeyValueSegmentIdentifier.TRIE_LOG_STORAGE);
-        final List<BonsaiNode> blocks = storage.streamKeys().map(entry -> Hash.wrap(Bytes32.wrap(entry)))
-                .map(hash -> new RootTrieLogSearchResult(storage, hash))
-                .collect(Collectors.toList());
+        final List<BonsaiNode> blocks;
+        try (Stream<byte[]> keys = RocksDBStorageAccess.scanKeys(storage, ScanOptions.fullScan())) {
+            blocks = keys.map(entry -> Hash.wrap(Bytes32.wrap(entry)))
+                    .map(hash -> new RootTrieLogSearchResult(storage, hash))
+                    .collect(Collectors.toList());
+        }
         clear();
         selectNode(new SearchResultNode(storage, blocks));
     }
@@ -74,14 +70,12 @@ public class BonsaiTrieLogView extends AbstractBonsaiNodeView {
     public void executeQuery(final TrieQueryValidator validator) {
         final StorageProvider provider = storageProviderFactory.createProvider();
         final KeyValueStorage storage = provider.getStorageBySegmentIdentifier(KeyValueSegmentIdentifier.TRIE_LOG_STORAGE);
-        final List<BonsaiNode> results = storage.streamKeys().map(entry -> Hash.wrap(Bytes32.wrap(entry)))
-                .map(hash -> getTrieLog(storage, hash))
-                .flatMap(Optional::stream)
-                .filter(validator::validate)
-                .map(trieLogLayer -> new RootTrieLogSearchResult(storage, trieLogLayer.getBlockHash()))
-                .collect(Collectors.toList());
-        clear();
-        selectNode(new SearchResultNode(storage, results));
+        final List<Hash> blockHashes = TrieLogIndex.lookupIfIndexed(storageProviderFactory.getDataPath(), storage, validator)
+                .orElseGet(() -> new TrieLogQueryEngine(Runtime.getRuntime().availableProcessors())
+                        .query(storage, validator, TrieLogQueryEngine.NO_LIMIT));
+        shoResults(storage, blockHashes.stream()
+                .<BonsaiNode>map(blockHash -> new RootTrieLogSearchResult(storage, blockHash))
+                .toList());
     }
 
     public void shoResults(final KeyValueStorage storage, final List<BonsaiNode> results) {
@@ -90,4 +84,12 @@ public class BonsaiTrieLogView extends AbstractBonsaiNodeView {
         selectNode(new SearchResultNode(storage, results));
 
     }
+
+    /**
+     * Shows the results of a search still running, see {@link #refreshCurrentNode()}.
+     */
+    public void shoResults(final KeyValueStorage storage, final List<BonsaiNode> results, final Supplier<String> status) {
+        clear();
+        selectNode(new SearchResultNode(storage, results, status));
+    }
 }
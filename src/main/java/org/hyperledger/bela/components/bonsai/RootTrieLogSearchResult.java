@@ -6,6 +6,7 @@ import java.util.Optional;
 import com.googlecode.lanterna.gui2.Borders;
 import com.googlecode.lanterna.gui2.Component;
 import com.googlecode.lanterna.gui2.Panel;
+import org.hyperledger.bela.trielog.TrieLogCodec;
 import org.hyperledger.besu.datatypes.Hash;
 import org.hyperledger.besu.plugin.services.storage.KeyValueStorage;
 
@@ -29,7 +30,7 @@ public class RootTrieLogSearchResult extends AbstractBonsaiNode {
 
     @Override
     public List<BonsaiNode> getChildren() {
-        final Optional<BonsaiTrieLogNode> bonsaiTrieLogNode = BonsaiTrieLogView.getTrieLog(storage, blockHash).map(
+        final Optional<BonsaiTrieLogNode> bonsaiTrieLogNode = TrieLogCodec.get(storage, blockHash).map(
                 l -> new BonsaiTrieLogNode(blockHash, l));
         return (bonsaiTrieLogNode.<List<BonsaiNode>>map(List::of).orElseGet(ArrayList::new));
     }
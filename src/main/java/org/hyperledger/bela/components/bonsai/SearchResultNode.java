@@ -1,6 +1,7 @@
 package org.hyperledger.bela.components.bonsai;
 
 import java.util.List;
+import java.util.function.Supplier;
 import com.googlecode.lanterna.gui2.Borders;
 import com.googlecode.lanterna.gui2.Component;
 import com.googlecode.lanterna.gui2.Panel;
@@ -9,11 +10,25 @@ import org.hyperledger.besu.plugin.services.storage.KeyValueStorage;
 public class SearchResultNode extends AbstractBonsaiNode {
     private final List<BonsaiNode> results;
     private final KeyValueStorage storage;
+    private final Supplier<String> status;
 
     public SearchResultNode(final KeyValueStorage storage, final List<BonsaiNode> results) {
-        super("Search Result " + results.size());
+        this(storage, results, () -> "Done");
+    }
+
+    /**
+     * Result of a search still running, the results list grows while the status reports the progress.
+     */
+    public SearchResultNode(final KeyValueStorage storage, final List<BonsaiNode> results, final Supplier<String> status) {
+        super("Search Result");
         this.results = results;
         this.storage = storage;
+        this.status = status;
+    }
+
+    @Override
+    public String getLabel() {
+        return "Search Result " + results.size();
     }
 
     @Override
@@ -21,12 +36,14 @@ public class SearchResultNode extends AbstractBonsaiNode {
         Panel panel = new Panel();
         panel.addComponent(LabelWithTextBox.labelWithTextBox("Entries", String.valueOf(results.size()))
                 .createComponent());
+        panel.addComponent(LabelWithTextBox.labelWithTextBox("Status", status.get())
+                .createComponent());
         return panel.withBorder(Borders.singleLine("Search result"));
     }
 
     @Override
     public List<BonsaiNode> getChildren() {
-        return results;
+        return List.copyOf(results);
     }
 
     @Override
@@ -7,14 +7,56 @@ import org.hyperledger.besu.datatypes.Hash;
 public enum BonsaiTrieQuery {
     ACCOUNT_STORAGE_CHANGE("Account Storage Change") {
         @Override
-        public TrieQueryValidator createValidator(final WindowBasedTextGUI gui) {
+        public TrieQueryValidator createValidator(final WindowBasedTextGUI gui, final TrieQueryContext context) {
             final String s = TextInputDialog.showDialog(gui, "Target Storage Hash", "Hash", "0x1d6f3716c57c52bcf6609f8e48d02db87f08f0ff0ec48580db7e20ae5dd0d7e3");
             if (s == null) {
                 return null;
             }
-            return new ValidateStorageChange(Hash.fromHexString(s));
+            return createValidator(s, context);
 
         }
+
+        @Override
+        public TrieQueryValidator createValidator(final String target, final TrieQueryContext context) {
+            return new ValidateStorageChange(Hash.fromHexString(target));
+        }
+    },
+    ACCOUNT_CHANGE("Account Change") {
+        @Override
+        public TrieQueryValidator createValidator(final WindowBasedTextGUI gui, final TrieQueryContext context) {
+            final String s = TextInputDialog.showDialog(gui, "Target Account", "Address or account hash", "");
+            if (s == null) {
+                return null;
+            }
+            return createValidator(s, context);
+        }
+
+        /**
+         * @param target an address, hashed to its account hash, or an account hash
+         */
+        @Override
+        public TrieQueryValidator createValidator(final String target, final TrieQueryContext context) {
+            return new ValidateAccountChange(TrieLogQueryParser.accountHash(target));
+        }
+    },
+    EXPRESSION("Expression") {
+        @Override
+        public TrieQueryValidator createValidator(final WindowBasedTextGUI gui, final TrieQueryContext context) {
+            final String s = TextInputDialog.showDialog(gui, "Trie Log Query",
+                    "e.g. blocks(15000000, 15001000) and (balance(0x..) or slot(0x..))", "");
+            if (s == null) {
+                return null;
+            }
+            return createValidator(s, context);
+        }
+
+        /**
+         * @param target a query, see {@link TrieLogQueryParser}
+         */
+        @Override
+        public TrieQueryValidator createValidator(final String target, final TrieQueryContext context) {
+            return TrieLogQueryParser.parse(target, context);
+        }
     };
 
     private final String name;
@@ -27,6 +69,11 @@ public enum BonsaiTrieQuery {
         return name;
     }
 
-    public abstract TrieQueryValidator createValidator(final WindowBasedTextGUI gui);
+    public abstract TrieQueryValidator createValidator(final WindowBasedTextGUI gui, final TrieQueryContext context);
+
+    /**
+     * Creates the validator without asking for its target, for the headless commands.
+     */
+    public abstract TrieQueryValidator createValidator(final String target, final TrieQueryContext context);
 
 }
@@ -0,0 +1,30 @@
+package org.hyperledger.bela.components.bonsai.queries;
+
+import org.hyperledger.bela.trielog.TrieLogEntry;
+import org.hyperledger.besu.ethereum.bonsai.TrieLogLayer;
+
+/**
+ * A composable condition on a trie log, see {@link TrieLogPredicates}. Combinators evaluate the cheapest predicates
+ * first and stop as soon as the result is known, so a trie log is only decoded when a predicate on its content is
+ * reached.
+ */
+public abstract class TrieLogPredicate implements TrieQueryValidator {
+    // relative costs, a combinator costs the sum of its predicates
+    static final int KEY_COST = 0;
+    static final int LOOKUP_COST = 1;
+    static final int DECODE_COST = 10;
+
+    public abstract boolean test(TrieLogEntry entry);
+
+    public abstract int cost();
+
+    @Override
+    public boolean validate(final TrieLogEntry entry) {
+        return test(entry);
+    }
+
+    @Override
+    public boolean validate(final TrieLogLayer layer) {
+        return test(TrieLogEntry.decoded(layer));
+    }
+}
@@ -0,0 +1,433 @@
+package org.hyperledger.bela.components.bonsai.queries;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.units.bigints.UInt256;
+import org.hyperledger.bela.trielog.TrieLogEntry;
+import org.hyperledger.bela.trielog.TrieLogIndex;
+import org.hyperledger.bela.trielog.TrieLogIndexField;
+import org.hyperledger.bela.trielog.TrieLogReader;
+import org.hyperledger.besu.datatypes.Address;
+import org.hyperledger.besu.datatypes.Hash;
+import org.hyperledger.besu.datatypes.Wei;
+import org.hyperledger.besu.ethereum.worldstate.StateTrieAccountValue;
+
+/**
+ * The predicates of the trie log query language, see {@link TrieLogQueryParser} for their syntax. Accounts are given
+ * by account hash and storage slots by slot hash, the way the trie logs key them. Predicates on an account match any
+ * account when it is not given.
+ */
+public class TrieLogPredicates {
+    private static final Set<TrieLogReader.Section> CODE = EnumSet.of(TrieLogReader.Section.CODE);
+    private static final Set<TrieLogReader.Section> ACCOUNT = EnumSet.of(TrieLogReader.Section.ACCOUNT);
+    private static final Set<TrieLogReader.Section> STORAGE = EnumSet.of(TrieLogReader.Section.STORAGE);
+
+    public static TrieLogPredicate accountTouched(final Hash accountHash) {
+        return new AccountTouched(accountHash);
+    }
+
+    public static TrieLogPredicate balanceChanged(final Optional<Hash> accountHash) {
+        return new AccountValueChanged("balance", accountHash, value -> value == null ? Wei.ZERO : value.getBalance());
+    }
+
+    public static TrieLogPredicate nonceChanged(final Optional<Hash> accountHash) {
+        return new AccountValueChanged("nonce", accountHash, value -> value == null ? 0L : value.getNonce());
+    }
+
+    public static TrieLogPredicate codeChanged(final Optional<Hash> accountHash) {
+        return new CodeChanged(accountHash);
+    }
+
+    public static TrieLogPredicate slotWritten(final Hash accountHash, final Optional<Hash> slotHash) {
+        return new SlotWritten(accountHash, slotHash, Optional.empty());
+    }
+
+    public static TrieLogPredicate slotValueEquals(final Hash accountHash, final Hash slotHash, final UInt256 value) {
+        return new SlotWritten(accountHash, Optional.of(slotHash), Optional.of(value));
+    }
+
+    public static TrieLogPredicate storageRoot(final Hash storageRoot) {
+        return new StorageRoot(storageRoot);
+    }
+
+    /**
+     * Trie logs of the blocks numbered from to to, both included. Blocks without a stored header never match.
+     */
+    public static TrieLogPredicate blockNumbers(final long from, final long to, final TrieQueryContext context) {
+        return new BlockNumbers(from, to, context);
+    }
+
+    /**
+     * Trie logs whose block hash is between from, included, and to, excluded. Both bounds are compared as unsigned
+     * bytes and can be shorter than a hash.
+     */
+    public static TrieLogPredicate blockHashRange(final Bytes from, final Bytes to) {
+        return new BlockHashRange(from, to);
+    }
+
+    /**
+     * Trie logs whose encoded size in bytes is between min and max, both included.
+     */
+    public static TrieLogPredicate size(final long min, final long max) {
+        return new Size(min, max);
+    }
+
+    public static TrieLogPredicate and(final List<TrieLogPredicate> predicates) {
+        return new And(predicates);
+    }
+
+    public static TrieLogPredicate or(final List<TrieLogPredicate> predicates) {
+        return new Or(predicates);
+    }
+
+    public static TrieLogPredicate not(final TrieLogPredicate predicate) {
+        return new Not(predicate);
+    }
+
+    private static boolean matches(final Optional<Hash> accountHash, final Address address) {
+        return accountHash.isEmpty() || accountHash.get().equals(Hash.hash(address));
+    }
+
+    private static String argument(final Optional<Hash> accountHash) {
+        return accountHash.map(Bytes::toHexString).orElse("");
+    }
+
+    /**
+     * Predicates on the changes of the trie log, they only read the sections they look at.
+     */
+    private abstract static class LayerPredicate extends TrieLogPredicate {
+        @Override
+        public int cost() {
+            return DECODE_COST;
+        }
+    }
+
+    private static class AccountTouched extends LayerPredicate {
+        private final Hash accountHash;
+        private final ValidateAccountChange validator;
+
+        AccountTouched(final Hash accountHash) {
+            this.accountHash = accountHash;
+            this.validator = new ValidateAccountChange(accountHash);
+        }
+
+        @Override
+        public boolean test(final TrieLogEntry entry) {
+            return validator.validate(entry);
+        }
+
+        @Override
+        public Optional<TrieLogIndex.Lookup> indexLookup() {
+            return Optional.of(new TrieLogIndex.Lookup(TrieLogIndexField.ACCOUNT_HASH, accountHash));
+        }
+
+        @Override
+        public String toString() {
+            return "account(" + accountHash.toHexString() + ")";
+        }
+    }
+
+    private static class AccountValueChanged extends LayerPredicate {
+        private final String name;
+        private final Optional<Hash> accountHash;
+        private final Function<StateTrieAccountValue, Object> field;
+
+        AccountValueChanged(final String name, final Optional<Hash> accountHash,
+                            final Function<StateTrieAccountValue, Object> field) {
+            this.name = name;
+            this.accountHash = accountHash;
+            this.field = field;
+        }
+
+        @Override
+        public boolean test(final TrieLogEntry entry) {
+            return entry.read(ACCOUNT, new TrieLogReader.Visitor() {
+                @Override
+                public boolean visitAddress(final Address address) {
+                    return matches(accountHash, address);
+                }
+
+                @Override
+                public boolean visitAccount(final Address address, final StateTrieAccountValue prior, final StateTrieAccountValue updated) {
+                    return !Objects.equals(field.apply(prior), field.apply(updated));
+                }
+            });
+        }
+
+        @Override
+        public String toString() {
+            return name + "(" + argument(accountHash) + ")";
+        }
+    }
+
+    private static class CodeChanged extends LayerPredicate {
+        private final Optional<Hash> accountHash;
+
+        CodeChanged(final Optional<Hash> accountHash) {
+            this.accountHash = accountHash;
+        }
+
+        @Override
+        public boolean test(final TrieLogEntry entry) {
+            return entry.read(CODE, new TrieLogReader.Visitor() {
+                @Override
+                public boolean visitAddress(final Address address) {
+                    return matches(accountHash, address);
+                }
+
+                @Override
+                public boolean visitCode(final Address address, final Bytes prior, final Bytes updated) {
+                    return !Objects.equals(prior, updated);
+                }
+            });
+        }
+
+        @Override
+        public String toString() {
+            return "code(" + argument(accountHash) + ")";
+        }
+    }
+
+    private static class SlotWritten extends LayerPredicate {
+        private final Hash accountHash;
+        private final Optional<Hash> slotHash;
+        private final Optional<UInt256> value;
+
+        SlotWritten(final Hash accountHash, final Optional<Hash> slotHash, final Optional<UInt256> value) {
+            this.accountHash = accountHash;
+            this.slotHash = slotHash;
+            this.value = value;
+        }
+
+        @Override
+        public boolean test(final TrieLogEntry entry) {
+            return entry.read(STORAGE, new TrieLogReader.Visitor() {
+                @Override
+                public boolean visitAddress(final Address address) {
+                    return accountHash.equals(Hash.hash(address));
+                }
+
+                @Override
+                public boolean visitSlot(final Address address, final Hash slot, final UInt256 prior, final UInt256 updated) {
+                    if (slotHash.isEmpty()) {
+                        return true;
+                    }
+                    return slotHash.get().equals(slot)
+                            && (value.isEmpty() || value.get().equals(updated == null ? UInt256.ZERO : updated));
+                }
+            });
+        }
+
+        @Override
+        public Optional<TrieLogIndex.Lookup> indexLookup() {
+            if (value.isPresent()) {
+                return Optional.empty();
+            }
+            return Optional.of(new TrieLogIndex.Lookup(TrieLogIndexField.STORAGE_SLOT,
+                    slotHash.map(slot -> Bytes.concatenate(accountHash, slot)).orElse(accountHash)));
+        }
+
+        @Override
+        public String toString() {
+            if (value.isPresent()) {
+                return "value(" + accountHash.toHexString() + ", " + slotHash.get().toHexString() + ", " + value.get().toHexString() + ")";
+            }
+            return "slot(" + accountHash.toHexString() + slotHash.map(slot -> ", " + slot.toHexString()).orElse("") + ")";
+        }
+    }
+
+    private static class StorageRoot extends LayerPredicate {
+        private final ValidateStorageChange validator;
+
+        StorageRoot(final Hash storageRoot) {
+            this.validator = new ValidateStorageChange(storageRoot);
+        }
+
+        @Override
+        public boolean test(final TrieLogEntry entry) {
+            return validator.validate(entry);
+        }
+
+        @Override
+        public Optional<TrieLogIndex.Lookup> indexLookup() {
+            return validator.indexLookup();
+        }
+
+        @Override
+        public String toString() {
+            return "storageRoot(" + validator.targetHash.toHexString() + ")";
+        }
+    }
+
+    private static class BlockNumbers extends TrieLogPredicate {
+        private final long from;
+        private final long to;
+        private final TrieQueryContext context;
+
+        BlockNumbers(final long from, final long to, final TrieQueryContext context) {
+            this.from = from;
+            this.to = to;
+            this.context = context;
+        }
+
+        @Override
+        public boolean test(final TrieLogEntry entry) {
+            return context.getBlockNumber(entry.getBlockHash())
+                    .map(number -> number >= from && number <= to)
+                    .orElse(false);
+        }
+
+        @Override
+        public int cost() {
+            return LOOKUP_COST;
+        }
+
+        @Override
+        public String toString() {
+            return "blocks(" + from + ", " + to + ")";
+        }
+    }
+
+    private static class BlockHashRange extends TrieLogPredicate {
+        private final Bytes from;
+        private final Bytes to;
+
+        BlockHashRange(final Bytes from, final Bytes to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public boolean test(final TrieLogEntry entry) {
+            final byte[] blockHash = entry.getBlockHash().toArrayUnsafe();
+            return Arrays.compareUnsigned(blockHash, from.toArrayUnsafe()) >= 0
+                    && Arrays.compareUnsigned(blockHash, to.toArrayUnsafe()) < 0;
+        }
+
+        @Override
+        public int cost() {
+            return KEY_COST;
+        }
+
+        @Override
+        public String toString() {
+            return "hashRange(" + from.toHexString() + ", " + to.toHexString() + ")";
+        }
+    }
+
+    /**
+     * Layers decoded by another validator have no known size and always match.
+     */
+    private static class Size extends TrieLogPredicate {
+        private final long min;
+        private final long max;
+
+        Size(final long min, final long max) {
+            this.min = min;
+            this.max = max;
+        }
+
+        @Override
+        public boolean test(final TrieLogEntry entry) {
+            final int size = entry.getEncodedSize();
+            return size == TrieLogEntry.UNKNOWN_SIZE || (size >= min && size <= max);
+        }
+
+        @Override
+        public int cost() {
+            return KEY_COST;
+        }
+
+        @Override
+        public String toString() {
+            return "size(" + min + ", " + max + ")";
+        }
+    }
+
+    private static class And extends TrieLogPredicate {
+        private final List<TrieLogPredicate> predicates;
+
+        And(final List<TrieLogPredicate> predicates) {
+            this.predicates = predicates.stream().sorted(Comparator.comparingInt(TrieLogPredicate::cost)).toList();
+        }
+
+        @Override
+        public boolean test(final TrieLogEntry entry) {
+            for (TrieLogPredicate predicate : predicates) {
+                if (!predicate.test(entry)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int cost() {
+            return predicates.stream().mapToInt(TrieLogPredicate::cost).sum();
+        }
+
+        @Override
+        public String toString() {
+            return predicates.stream().map(Object::toString).collect(Collectors.joining(" and ", "(", ")"));
+        }
+    }
+
+    private static class Or extends TrieLogPredicate {
+        private final List<TrieLogPredicate> predicates;
+
+        Or(final List<TrieLogPredicate> predicates) {
+            this.predicates = predicates.stream().sorted(Comparator.comparingInt(TrieLogPredicate::cost)).toList();
+        }
+
+        @Override
+        public boolean test(final TrieLogEntry entry) {
+            for (TrieLogPredicate predicate : predicates) {
+                if (predicate.test(entry)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public int cost() {
+            return predicates.stream().mapToInt(TrieLogPredicate::cost).sum();
+        }
+
+        @Override
+        public String toString() {
+            return predicates.stream().map(Object::toString).collect(Collectors.joining(" or ", "(", ")"));
+        }
+    }
+
+    private static class Not extends TrieLogPredicate {
+        private final TrieLogPredicate predicate;
+
+        Not(final TrieLogPredicate predicate) {
+            this.predicate = predicate;
+        }
+
+        @Override
+        public boolean test(final TrieLogEntry entry) {
+            return !predicate.test(entry);
+        }
+
+        @Override
+        public int cost() {
+            return predicate.cost();
+        }
+
+        @Override
+        public String toString() {
+            return "not " + predicate;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package org.hyperledger.bela.components.bonsai.queries;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+import org.apache.tuweni.units.bigints.UInt256;
+import org.hyperledger.besu.datatypes.Address;
+import org.hyperledger.besu.datatypes.Hash;
+
+/**
+ * Parses trie log queries like {@code blocks(15000000, 15001000) and (balance(0x..) or not code())}.
+ * <pre>
+ * query     := and ('or' and)*
+ * and       := unary ('and' unary)*
+ * unary     := 'not' unary | '(' query ')' | predicate
+ * predicate := name '(' [argument (',' argument)*] ')'
+ * </pre>
+ * The predicates are:
+ * <ul>
+ *     <li>account(account): the account, its code or its storage changed</li>
+ *     <li>balance([account]), nonce([account]), code([account]): the balance, nonce or code changed</li>
+ *     <li>slot(account [, slot hash]): a storage slot of the account was written</li>
+ *     <li>value(account, slot hash, value): the slot was written with the value</li>
+ *     <li>storageRoot(hash): an account had the storage root before or after the block</li>
+ *     <li>blocks(from, to): the block number is in the range, both included</li>
+ *     <li>hashRange(from, to): the block hash is in the range, from included</li>
+ *     <li>size(min, max): the encoded trie log size in bytes is in the range, both included</li>
+ * </ul>
+ * An account is an address or an account hash. Keywords and names are case insensitive, {@code &&}, {@code ||} and
+ * {@code !} can be used for and, or and not.
+ */
+public class TrieLogQueryParser {
+    private static final Pattern TOKEN = Pattern.compile("\\s*(&&|\\|\\||!|[(),]|[A-Za-z_]\\w*|0[xX][0-9a-fA-F]*|\\d+)");
+
+    private final List<String> tokens;
+    private final TrieQueryContext context;
+    private int position;
+
+    private TrieLogQueryParser(final List<String> tokens, final TrieQueryContext context) {
+        this.tokens = tokens;
+        this.context = context;
+    }
+
+    /**
+     * @throws IllegalArgumentException when the query is not valid
+     */
+    public static TrieLogPredicate parse(final String query, final TrieQueryContext context) {
+        final TrieLogQueryParser parser = new TrieLogQueryParser(tokenize(query), context);
+        final TrieLogPredicate predicate = parser.query();
+        if (parser.position < parser.tokens.size()) {
+            throw new IllegalArgumentException("Unexpected '" + parser.tokens.get(parser.position) + "' in query");
+        }
+        return predicate;
+    }
+
+    /**
+     * The account hash of an address, or the account hash itself.
+     */
+    public static Hash accountHash(final String account) {
+        final Bytes bytes = Bytes.fromHexString(account.trim());
+        if (bytes.size() == Address.SIZE) {
+            return Hash.hash(bytes);
+        }
+        if (bytes.size() == Bytes32.SIZE) {
+            return Hash.wrap(Bytes32.wrap(bytes));
+        }
+        throw new IllegalArgumentException("Not an address or an account hash: " + account);
+    }
+
+    private static List<String> tokenize(final String query) {
+        final List<String> tokens = new ArrayList<>();
+        final Matcher matcher = TOKEN.matcher(query);
+        int end = 0;
+        while (end < query.length() && matcher.find(end) && matcher.start() == end) {
+            tokens.add(matcher.group(1));
+            end = matcher.end();
+        }
+        if (!query.substring(end).isBlank()) {
+            throw new IllegalArgumentException("Unexpected '" + query.substring(end).trim() + "' in query");
+        }
+        return tokens;
+    }
+
+    private TrieLogPredicate query() {
+        final List<TrieLogPredicate> predicates = new ArrayList<>(List.of(and()));
+        while (accept("or", "||")) {
+            predicates.add(and());
+        }
+        return predicates.size() == 1 ? predicates.get(0) : TrieLogPredicates.or(predicates);
+    }
+
+    private TrieLogPredicate and() {
+        final List<TrieLogPredicate> predicates = new ArrayList<>(List.of(unary()));
+        while (accept("and", "&&")) {
+            predicates.add(unary());
+        }
+        return predicates.size() == 1 ? predicates.get(0) : TrieLogPredicates.and(predicates);
+    }
+
+    private TrieLogPredicate unary() {
+        if (accept("not", "!")) {
+            return TrieLogPredicates.not(unary());
+        }
+        if (accept("(")) {
+            final TrieLogPredicate predicate = query();
+            expect(")");
+            return predicate;
+        }
+        return predicate();
+    }
+
+    private TrieLogPredicate predicate() {
+        final String name = next("a predicate");
+        expect("(");
+        final List<String> arguments = new ArrayList<>();
+        if (!accept(")")) {
+            do {
+                arguments.add(next("an argument"));
+            } while (accept(","));
+            expect(")");
+        }
+        switch (name.toLowerCase(Locale.ROOT)) {
+            case "account":
+                checkArguments(name, arguments, 1, 1);
+                return TrieLogPredicates.accountTouched(accountHash(arguments.get(0)));
+            case "balance":
+                checkArguments(name, arguments, 0, 1);
+                return TrieLogPredicates.balanceChanged(arguments.stream().findFirst().map(TrieLogQueryParser::accountHash));
+            case "nonce":
+                checkArguments(name, arguments, 0, 1);
+                return TrieLogPredicates.nonceChanged(arguments.stream().findFirst().map(TrieLogQueryParser::accountHash));
+            case "code":
+                checkArguments(name, arguments, 0, 1);
+                return TrieLogPredicates.codeChanged(arguments.stream().findFirst().map(TrieLogQueryParser::accountHash));
+            case "slot":
+                checkArguments(name, arguments, 1, 2);
+                return TrieLogPredicates.slotWritten(accountHash(arguments.get(0)),
+                        arguments.stream().skip(1).findFirst().map(Hash::fromHexString));
+            case "value":
+                checkArguments(name, arguments, 3, 3);
+                return TrieLogPredicates.slotValueEquals(accountHash(arguments.get(0)), Hash.fromHexString(arguments.get(1)),
+                        UInt256.fromHexString(hex(arguments.get(2))));
+            case "storageroot":
+                checkArguments(name, arguments, 1, 1);
+                return TrieLogPredicates.storageRoot(Hash.fromHexString(arguments.get(0)));
+            case "blocks":
+                checkArguments(name, arguments, 2, 2);
+                return TrieLogPredicates.blockNumbers(number(arguments.get(0)), number(arguments.get(1)), context);
+            case "hashrange":
+                checkArguments(name, arguments, 2, 2);
+                return TrieLogPredicates.blockHashRange(Bytes.fromHexString(arguments.get(0)), Bytes.fromHexString(arguments.get(1)));
+            case "size":
+                checkArguments(name, arguments, 2, 2);
+                return TrieLogPredicates.size(number(arguments.get(0)), number(arguments.get(1)));
+            default:
+                throw new IllegalArgumentException("Unknown predicate " + name);
+        }
+    }
+
+    private static void checkArguments(final String name, final List<String> arguments, final int min, final int max) {
+        if (arguments.size() < min || arguments.size() > max) {
+            throw new IllegalArgumentException(name + " takes " + (min == max ? min : min + " to " + max)
+                    + " arguments, got " + arguments.size());
+        }
+    }
+
+    private static long number(final String argument) {
+        return argument.startsWith("0x") || argument.startsWith("0X")
+                ? Long.parseLong(argument.substring(2), 16)
+                : Long.parseLong(argument);
+    }
+
+    // values can be given in decimal too
+    private static String hex(final String argument) {
+        return argument.startsWith("0x") || argument.startsWith("0X")
+                ? argument
+                : UInt256.valueOf(new BigInteger(argument)).toHexString();
+    }
+
+    private boolean accept(final String... alternatives) {
+        if (position < tokens.size()) {
+            for (String alternative : alternatives) {
+                if (tokens.get(position).equalsIgnoreCase(alternative)) {
+                    position++;
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void expect(final String token) {
+        if (!accept(token)) {
+            throw new IllegalArgumentException("Expected '" + token + "' but got "
+                    + (position < tokens.size() ? "'" + tokens.get(position) + "'" : "the end of the query"));
+        }
+    }
+
+    private String next(final String what) {
+        if (position >= tokens.size()) {
+            throw new IllegalArgumentException("Expected " + what + " but got the end of the query");
+        }
+        return tokens.get(position++);
+    }
+}
@@ -0,0 +1,33 @@
+package org.hyperledger.bela.components.bonsai.queries;
+
+import java.util.Optional;
+import java.util.function.Supplier;
+import com.google.common.base.Suppliers;
+import org.hyperledger.bela.utils.BlockChainContextFactory;
+import org.hyperledger.besu.datatypes.Hash;
+import org.hyperledger.besu.ethereum.chain.Blockchain;
+import org.hyperledger.besu.ethereum.core.BlockHeader;
+import org.hyperledger.besu.ethereum.storage.StorageProvider;
+import org.hyperledger.besu.plugin.services.MetricsSystem;
+
+/**
+ * What a query needs besides the trie logs, the blockchain is only loaded when a query asks for block numbers.
+ */
+public class TrieQueryContext {
+    private final Supplier<Blockchain> blockchain;
+
+    private TrieQueryContext(final Supplier<Blockchain> blockchain) {
+        this.blockchain = Suppliers.memoize(blockchain::get);
+    }
+
+    public static TrieQueryContext forProvider(final StorageProvider provider, final MetricsSystem metricsSystem) {
+        return new TrieQueryContext(() -> BlockChainContextFactory.createBlockChainContext(provider, metricsSystem).getBlockchain());
+    }
+
+    /**
+     * The number of the block, empty when its header is not stored.
+     */
+    public Optional<Long> getBlockNumber(final Hash blockHash) {
+        return blockchain.get().getBlockHeader(blockHash).map(BlockHeader::getNumber);
+    }
+}
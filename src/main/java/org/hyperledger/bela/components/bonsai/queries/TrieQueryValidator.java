@@ -1,7 +1,25 @@
 package org.hyperledger.bela.components.bonsai.queries;
 
+import java.util.Optional;
+import org.hyperledger.bela.trielog.TrieLogEntry;
+import org.hyperledger.bela.trielog.TrieLogIndex;
 import org.hyperledger.besu.ethereum.bonsai.TrieLogLayer;
 
 public interface TrieQueryValidator {
     boolean validate(TrieLogLayer layer);
+
+    /**
+     * Validates a stored trie log, decoding it by default. Validators that can decide from the block hash or the size
+     * of the trie log, or from some kinds of changes with {@link TrieLogEntry#read}, override it to skip the decoding.
+     */
+    default boolean validate(final TrieLogEntry entry) {
+        return validate(entry.getLayer());
+    }
+
+    /**
+     * The lookup answering the query from the trie log index, empty when every trie log has to be validated.
+     */
+    default Optional<TrieLogIndex.Lookup> indexLookup() {
+        return Optional.empty();
+    }
 }
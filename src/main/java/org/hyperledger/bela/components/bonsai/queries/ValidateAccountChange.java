@@ -0,0 +1,57 @@
+package org.hyperledger.bela.components.bonsai.queries;
+
+import java.util.EnumSet;
+import java.util.Optional;
+import java.util.Set;
+import org.apache.tuweni.units.bigints.UInt256;
+import org.hyperledger.bela.trielog.TrieLogEntry;
+import org.hyperledger.bela.trielog.TrieLogIndex;
+import org.hyperledger.bela.trielog.TrieLogIndexField;
+import org.hyperledger.bela.trielog.TrieLogReader;
+import org.hyperledger.besu.datatypes.Address;
+import org.hyperledger.besu.datatypes.Hash;
+import org.hyperledger.besu.ethereum.bonsai.TrieLogLayer;
+import org.hyperledger.besu.ethereum.worldstate.StateTrieAccountValue;
+
+/**
+ * Matches the trie logs changing the account or its storage.
+ */
+public class ValidateAccountChange implements TrieQueryValidator {
+    private static final Set<TrieLogReader.Section> SECTIONS = EnumSet.of(TrieLogReader.Section.ACCOUNT, TrieLogReader.Section.STORAGE);
+
+    final Hash accountHash;
+
+    public ValidateAccountChange(final Hash accountHash) {
+        this.accountHash = accountHash;
+    }
+
+    @Override
+    public boolean validate(final TrieLogLayer layer) {
+        return validate(TrieLogEntry.decoded(layer));
+    }
+
+    @Override
+    public boolean validate(final TrieLogEntry entry) {
+        return entry.read(SECTIONS, new TrieLogReader.Visitor() {
+            @Override
+            public boolean visitAddress(final Address address) {
+                return accountHash.equals(Hash.hash(address));
+            }
+
+            @Override
+            public boolean visitAccount(final Address address, final StateTrieAccountValue prior, final StateTrieAccountValue updated) {
+                return true;
+            }
+
+            @Override
+            public boolean visitSlot(final Address address, final Hash slotHash, final UInt256 prior, final UInt256 updated) {
+                return true;
+            }
+        });
+    }
+
+    @Override
+    public Optional<TrieLogIndex.Lookup> indexLookup() {
+        return Optional.of(new TrieLogIndex.Lookup(TrieLogIndexField.ACCOUNT_HASH, accountHash));
+    }
+}
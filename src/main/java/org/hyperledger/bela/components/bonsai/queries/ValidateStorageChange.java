@@ -1,8 +1,15 @@
 package org.hyperledger.bela.components.bonsai.queries;
 
+import java.util.EnumSet;
+import java.util.Optional;
+import java.util.Set;
 import kr.pe.kwonnam.slf4jlambda.LambdaLogger;
+import org.hyperledger.bela.trielog.TrieLogEntry;
+import org.hyperledger.bela.trielog.TrieLogIndex;
+import org.hyperledger.bela.trielog.TrieLogIndexField;
+import org.hyperledger.bela.trielog.TrieLogReader;
+import org.hyperledger.besu.datatypes.Address;
 import org.hyperledger.besu.datatypes.Hash;
-import org.hyperledger.besu.ethereum.bonsai.BonsaiValue;
 import org.hyperledger.besu.ethereum.bonsai.TrieLogLayer;
 import org.hyperledger.besu.ethereum.worldstate.StateTrieAccountValue;
 
@@ -10,6 +17,7 @@ import static kr.pe.kwonnam.slf4jlambda.LambdaLoggerFactory.getLogger;
 
 public class ValidateStorageChange implements TrieQueryValidator {
     private static final LambdaLogger log = getLogger(ValidateStorageChange.class);
+    private static final Set<TrieLogReader.Section> SECTIONS = EnumSet.of(TrieLogReader.Section.ACCOUNT);
 
     final Hash targetHash;
 
@@ -19,15 +27,25 @@ public class ValidateStorageChange implements TrieQueryValidator {
 
     @Override
     public boolean validate(final TrieLogLayer layer) {
-        return layer.streamAccountChanges().anyMatch(accountChange -> {
-            final BonsaiValue<StateTrieAccountValue> value = accountChange.getValue();
-            final StateTrieAccountValue prior = value.getPrior();
-            final StateTrieAccountValue updated = value.getUpdated();
-            if ((prior != null && targetHash.equals(prior.getStorageRoot())) || (updated != null && targetHash.equals(updated.getStorageRoot()))) {
-                log.info("Found storage change for account {}", accountChange.getKey());
-                return true;
+        return validate(TrieLogEntry.decoded(layer));
+    }
+
+    @Override
+    public boolean validate(final TrieLogEntry entry) {
+        return entry.read(SECTIONS, new TrieLogReader.Visitor() {
+            @Override
+            public boolean visitAccount(final Address address, final StateTrieAccountValue prior, final StateTrieAccountValue updated) {
+                if ((prior != null && targetHash.equals(prior.getStorageRoot())) || (updated != null && targetHash.equals(updated.getStorageRoot()))) {
+                    log.info("Found storage change for account {}", address);
+                    return true;
+                }
+                return false;
             }
-            return false;
         });
     }
+
+    @Override
+    public Optional<TrieLogIndex.Lookup> indexLookup() {
+        return Optional.of(new TrieLogIndex.Lookup(TrieLogIndexField.STORAGE_ROOT, targetHash));
+    }
 }
@@ -0,0 +1,62 @@
+package org.hyperledger.bela.components.settings;
+
+import java.util.prefs.Preferences;
+import java.util.regex.Pattern;
+import com.googlecode.lanterna.gui2.Component;
+import com.googlecode.lanterna.gui2.Direction;
+import com.googlecode.lanterna.gui2.Label;
+import com.googlecode.lanterna.gui2.LinearLayout;
+import com.googlecode.lanterna.gui2.Panel;
+import com.googlecode.lanterna.gui2.TextBox;
+
+public class NumberSetting extends AbstractSetting<Long> {
+    private final String label;
+    private final String key;
+    private final long defaultValue;
+    private final TextBox numberTextBox;
+
+    public NumberSetting(final String label, final String key, final long defaultValue) {
+        this.label = label;
+        this.key = key;
+        this.defaultValue = defaultValue;
+        numberTextBox = new TextBox(String.valueOf(defaultValue)).setValidationPattern(Pattern.compile("-?[0-9]*"));
+        numberTextBox.setTextChangeListener((text, byUser) -> notifyListeners(getValue()));
+    }
+
+    @Override
+    public Component createComponent() {
+        Panel panel = new Panel(new LinearLayout(Direction.HORIZONTAL));
+        panel.addComponent(new Label(label));
+        panel.addComponent(numberTextBox);
+        return panel;
+    }
+
+    @Override
+    public Long getValue() {
+        try {
+            return Long.parseLong(numberTextBox.getText());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    @Override
+    public void setValue(final Long value) {
+        numberTextBox.setText(String.valueOf(value));
+    }
+
+    @Override
+    public void load(final Preferences preferences) {
+        setValue(preferences.getLong(key, defaultValue));
+    }
+
+    @Override
+    public void save(final Preferences preferences) {
+        preferences.putLong(key, getValue());
+    }
+
+    @Override
+    public void setReadOnly(final boolean readOnly) {
+        numberTextBox.setReadOnly(readOnly);
+    }
+}
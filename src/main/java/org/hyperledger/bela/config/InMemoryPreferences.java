@@ -0,0 +1,69 @@
+package org.hyperledger.bela.config;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.prefs.AbstractPreferences;
+
+/**
+ * Preferences kept in memory for the lifetime of the process. The headless commands configure their run with it, so
+ * they neither change the saved settings of the terminal ui nor see the settings of another command running at the
+ * same time.
+ */
+public class InMemoryPreferences extends AbstractPreferences {
+    private final Map<String, String> values = new ConcurrentHashMap<>();
+    private final Map<String, InMemoryPreferences> children = new ConcurrentHashMap<>();
+
+    public InMemoryPreferences() {
+        this(null, "");
+    }
+
+    private InMemoryPreferences(final InMemoryPreferences parent, final String name) {
+        super(parent, name);
+    }
+
+    @Override
+    protected void putSpi(final String key, final String value) {
+        values.put(key, value);
+    }
+
+    @Override
+    protected String getSpi(final String key) {
+        return values.get(key);
+    }
+
+    @Override
+    protected void removeSpi(final String key) {
+        values.remove(key);
+    }
+
+    @Override
+    protected void removeNodeSpi() {
+        values.clear();
+        if (parent() instanceof InMemoryPreferences parent) {
+            parent.children.remove(name());
+        }
+    }
+
+    @Override
+    protected String[] keysSpi() {
+        return values.keySet().toArray(String[]::new);
+    }
+
+    @Override
+    protected String[] childrenNamesSpi() {
+        return children.keySet().toArray(String[]::new);
+    }
+
+    @Override
+    protected AbstractPreferences childSpi(final String name) {
+        return children.computeIfAbsent(name, key -> new InMemoryPreferences(this, key));
+    }
+
+    @Override
+    protected void syncSpi() {
+    }
+
+    @Override
+    protected void flushSpi() {
+    }
+}
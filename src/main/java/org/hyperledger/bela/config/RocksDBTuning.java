@@ -0,0 +1,117 @@
+package org.hyperledger.bela.config;
+
+import java.util.Objects;
+import java.util.Set;
+import java.util.prefs.Preferences;
+import org.hyperledger.besu.ethereum.storage.keyvalue.KeyValueSegmentIdentifier;
+import org.hyperledger.besu.plugin.services.storage.SegmentIdentifier;
+import org.hyperledger.besu.plugin.services.storage.rocksdb.configuration.RocksDBCLIOptions;
+
+import static org.hyperledger.bela.windows.Constants.ROCKSDB_BLOCK_CACHE_MB;
+import static org.hyperledger.bela.windows.Constants.ROCKSDB_BLOOM_FILTER;
+import static org.hyperledger.bela.windows.Constants.ROCKSDB_DIRECT_READS;
+import static org.hyperledger.bela.windows.Constants.ROCKSDB_MAX_OPEN_FILES;
+import static org.hyperledger.bela.windows.Constants.ROCKSDB_POINT_LOOKUP_TRIES;
+import static org.hyperledger.bela.windows.Constants.ROCKSDB_READAHEAD_KB;
+
+/**
+ * How bela opens rocksdb. Bela reads a database much more than a node does and never serves blocks, so the defaults
+ * favour one large block cache shared by all the column families and long readahead for the scans.
+ */
+public class RocksDBTuning {
+    public static final long DEFAULT_BLOCK_CACHE_MB = 1024;
+    public static final long DEFAULT_READAHEAD_KB = 2048;
+    public static final int DEFAULT_MAX_OPEN_FILES = RocksDBCLIOptions.DEFAULT_MAX_OPEN_FILES;
+    public static final RocksDBTuning DEFAULT = new RocksDBTuning(
+            DEFAULT_BLOCK_CACHE_MB, DEFAULT_READAHEAD_KB, DEFAULT_MAX_OPEN_FILES, true, false, false);
+    // segments only read by key, never scanned
+    private static final Set<SegmentIdentifier> TRIE_SEGMENTS = Set.of(
+            KeyValueSegmentIdentifier.WORLD_STATE, KeyValueSegmentIdentifier.TRIE_BRANCH_STORAGE);
+
+    private final long blockCacheMb;
+    private final long readaheadKb;
+    private final int maxOpenFiles;
+    private final boolean bloomFilter;
+    private final boolean directReads;
+    private final boolean pointLookupTries;
+
+    /**
+     * @param blockCacheMb     size of the block cache shared by all the column families
+     * @param readaheadKb      readahead of the iterators scanning a segment, 0 leaves it to rocksdb
+     * @param maxOpenFiles     table files kept open, -1 keeps them all
+     * @param bloomFilter      uses the bloom filters of the table files for point lookups
+     * @param directReads      reads the table files with direct I/O, bypassing the page cache
+     * @param pointLookupTries optimizes the trie segments for point lookups
+     */
+    public RocksDBTuning(final long blockCacheMb, final long readaheadKb, final int maxOpenFiles,
+                         final boolean bloomFilter, final boolean directReads, final boolean pointLookupTries) {
+        if (blockCacheMb < 0 || readaheadKb < 0 || maxOpenFiles == 0 || maxOpenFiles < -1) {
+            throw new IllegalArgumentException("Invalid rocksdb tuning");
+        }
+        this.blockCacheMb = blockCacheMb;
+        this.readaheadKb = readaheadKb;
+        this.maxOpenFiles = maxOpenFiles;
+        this.bloomFilter = bloomFilter;
+        this.directReads = directReads;
+        this.pointLookupTries = pointLookupTries;
+    }
+
+    public static RocksDBTuning fromPreferences(final Preferences preferences) {
+        return new RocksDBTuning(
+                preferences.getLong(ROCKSDB_BLOCK_CACHE_MB, DEFAULT_BLOCK_CACHE_MB),
+                preferences.getLong(ROCKSDB_READAHEAD_KB, DEFAULT_READAHEAD_KB),
+                preferences.getInt(ROCKSDB_MAX_OPEN_FILES, DEFAULT_MAX_OPEN_FILES),
+                preferences.getBoolean(ROCKSDB_BLOOM_FILTER, DEFAULT.bloomFilter),
+                preferences.getBoolean(ROCKSDB_DIRECT_READS, DEFAULT.directReads),
+                preferences.getBoolean(ROCKSDB_POINT_LOOKUP_TRIES, DEFAULT.pointLookupTries));
+    }
+
+    public long getBlockCacheSize() {
+        return blockCacheMb * 1024 * 1024;
+    }
+
+    public long getReadaheadSize() {
+        return readaheadKb * 1024;
+    }
+
+    public int getMaxOpenFiles() {
+        return maxOpenFiles;
+    }
+
+    public boolean isBloomFilter() {
+        return bloomFilter;
+    }
+
+    public boolean isDirectReads() {
+        return directReads;
+    }
+
+    public boolean isPointLookup(final SegmentIdentifier segment) {
+        return pointLookupTries && TRIE_SEGMENTS.stream().anyMatch(trie -> trie.getName().equals(segment.getName()));
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof RocksDBTuning)) {
+            return false;
+        }
+        final RocksDBTuning that = (RocksDBTuning) o;
+        return blockCacheMb == that.blockCacheMb && readaheadKb == that.readaheadKb && maxOpenFiles == that.maxOpenFiles
+                && bloomFilter == that.bloomFilter && directReads == that.directReads
+                && pointLookupTries == that.pointLookupTries;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(blockCacheMb, readaheadKb, maxOpenFiles, bloomFilter, directReads, pointLookupTries);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("block cache %d MiB, readahead %d KiB, max open files %d, bloom filter %s, direct reads %s, point lookup tries %s",
+                blockCacheMb, readaheadKb, maxOpenFiles, bloomFilter, directReads, pointLookupTries);
+    }
+}
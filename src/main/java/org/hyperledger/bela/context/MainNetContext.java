@@ -63,7 +63,6 @@ import org.hyperledger.besu.ethereum.storage.keyvalue.KeyValueStoragePrefixedKey
 import org.hyperledger.besu.ethereum.worldstate.DataStorageConfiguration;
 import org.hyperledger.besu.ethereum.worldstate.WorldStateArchive;
 import org.hyperledger.besu.evm.internal.EvmConfiguration;
-import org.hyperledger.besu.metrics.noop.NoOpMetricsSystem;
 import org.hyperledger.besu.plugin.data.EnodeURL;
 import org.hyperledger.besu.plugin.services.MetricsSystem;
 import org.hyperledger.besu.plugin.services.storage.KeyValueStorage;
@@ -81,7 +80,6 @@ public class MainNetContext implements BelaContext {
     private P2PNetwork network;
     final StorageProviderFactory storageProviderFactory;
     private EthContext ethContext;
-    private NoOpMetricsSystem metricsSystem;
     private EthProtocolManager protocolManager;
 
     public MainNetContext(final StorageProviderFactory storageProviderFactory) {
@@ -142,11 +140,7 @@ public class MainNetContext implements BelaContext {
 
     @Override
     public MetricsSystem getMetricsSystem() {
-        if (metricsSystem != null){
-            return metricsSystem;
-        }
-        metricsSystem = new NoOpMetricsSystem();
-        return metricsSystem;
+        return storageProviderFactory.getMetricsSystem();
     }
 
     @Override
@@ -334,7 +328,7 @@ public class MainNetContext implements BelaContext {
     private WorldStateArchive getWorldStateArchive() {
         return new BonsaiWorldStateArchive(
             getProvider(), getBlockChain(),
-            new CachedMerkleTrieLoader(new NoOpMetricsSystem()));
+            new CachedMerkleTrieLoader(getMetricsSystem()));
     }
 
     private BonsaiWorldStateKeyValueStorage getWorldStateStorage() {
@@ -343,7 +337,7 @@ public class MainNetContext implements BelaContext {
 
     private MutableBlockchain getBlockChain() {
         return   (MutableBlockchain) DefaultBlockchain
-                .create(getBlockChainStorage(), new NoOpMetricsSystem(), 0L);
+                .create(getBlockChainStorage(), getMetricsSystem(), 0L);
     }
 
     private BlockchainStorage getBlockChainStorage() {
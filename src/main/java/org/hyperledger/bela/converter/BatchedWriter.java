@@ -0,0 +1,185 @@
+package org.hyperledger.bela.converter;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.lang3.tuple.Pair;
+import org.hyperledger.bela.utils.hacks.RocksDBStorageAccess;
+import org.hyperledger.besu.plugin.services.storage.KeyValueStorage;
+
+/**
+ * Collects the puts of a conversion into batches of bounded size that a dedicated writer thread commits in order, so
+ * the trie readers never wait on a commit. Readers block once queueDepth full batches are waiting to be written.
+ */
+public class BatchedWriter implements ConversionWriter {
+    public static final long DEFAULT_BATCH_SIZE = 32 * 1024 * 1024;
+    public static final int DEFAULT_QUEUE_DEPTH = 4;
+    // marks the end of the queue, compared by identity
+    private static final List<Put> END = new ArrayList<>();
+
+    private final long batchSize;
+    private final BlockingQueue<List<Put>> queue;
+    private final Thread writerThread;
+    private final AtomicLong writtenEntries = new AtomicLong();
+    private final AtomicLong writtenBytes = new AtomicLong();
+    private final Object progress = new Object();
+    private volatile Throwable failure;
+    private List<Put> batch = new ArrayList<>();
+    private long pendingBytes;
+    private long enqueuedBatches;
+    private long writtenBatches;
+    private boolean closed;
+
+    public BatchedWriter() {
+        this(DEFAULT_BATCH_SIZE, DEFAULT_QUEUE_DEPTH);
+    }
+
+    /**
+     * @param batchSize  bytes of keys and values collected before a batch is handed to the writer thread
+     * @param queueDepth full batches that can wait for the writer thread before the readers block
+     */
+    public BatchedWriter(final long batchSize, final int queueDepth) {
+        if (batchSize <= 0 || queueDepth <= 0) {
+            throw new IllegalArgumentException("batch size and queue depth must be positive");
+        }
+        this.batchSize = batchSize;
+        this.queue = new ArrayBlockingQueue<>(queueDepth);
+        this.writerThread = new Thread(this::writeBatches, "bela-batched-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    @Override
+    public synchronized void put(final KeyValueStorage storage, final byte[] key, final byte[] value) {
+        if (closed) {
+            throw new IllegalStateException("writer is closed");
+        }
+        checkFailure();
+        batch.add(new Put(storage, key, value));
+        pendingBytes += key.length + value.length;
+        if (pendingBytes >= batchSize) {
+            enqueueBatch();
+        }
+    }
+
+    @Override
+    public void flush() {
+        final long target;
+        synchronized (this) {
+            checkFailure();
+            if (!batch.isEmpty()) {
+                enqueueBatch();
+            }
+            target = enqueuedBatches;
+        }
+        synchronized (progress) {
+            while (writtenBatches < target) {
+                checkFailure();
+                try {
+                    progress.wait(1000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("interrupted while waiting for the writer", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the last partial batch and waits until the writer thread has committed everything.
+     *
+     * @throws IllegalStateException when a batch could not be written
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (!batch.isEmpty()) {
+                enqueueBatch();
+            }
+            enqueue(END);
+        }
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for the writer", e);
+        }
+        checkFailure();
+    }
+
+    public long getWrittenEntries() {
+        return writtenEntries.get();
+    }
+
+    public long getWrittenBytes() {
+        return writtenBytes.get();
+    }
+
+    private void enqueueBatch() {
+        enqueue(batch);
+        enqueuedBatches++;
+        batch = new ArrayList<>();
+        pendingBytes = 0;
+    }
+
+    private void enqueue(final List<Put> puts) {
+        try {
+            // a dead writer never frees room in the queue, so keep checking on it while waiting
+            while (!queue.offer(puts, 1, TimeUnit.SECONDS)) {
+                checkFailure();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for the writer", e);
+        }
+    }
+
+    private void checkFailure() {
+        if (failure != null) {
+            throw new IllegalStateException("writing batch failed", failure);
+        }
+    }
+
+    private void writeBatches() {
+        try {
+            while (true) {
+                final List<Put> puts = queue.take();
+                if (puts == END) {
+                    return;
+                }
+                write(puts);
+                synchronized (progress) {
+                    writtenBatches++;
+                    progress.notifyAll();
+                }
+            }
+        } catch (Throwable t) {
+            failure = t;
+        }
+    }
+
+    private void write(final List<Put> puts) {
+        final Map<KeyValueStorage, List<Pair<byte[], byte[]>>> byStorage = new LinkedHashMap<>();
+        long bytes = 0;
+        for (Put put : puts) {
+            byStorage.computeIfAbsent(put.storage(), storage -> new ArrayList<>())
+                    .add(Pair.of(put.key(), put.value()));
+            bytes += put.key().length + put.value().length;
+        }
+        byStorage.forEach(RocksDBStorageAccess::putAll);
+        writtenEntries.addAndGet(puts.size());
+        writtenBytes.addAndGet(bytes);
+    }
+
+    private record Put(KeyValueStorage storage, byte[] key, byte[] value) {
+    }
+}
@@ -0,0 +1,152 @@
+package org.hyperledger.bela.converter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import kr.pe.kwonnam.slf4jlambda.LambdaLogger;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+import org.hyperledger.bela.trie.TraversalJournal;
+import org.hyperledger.besu.ethereum.trie.CompactEncoding;
+
+import static kr.pe.kwonnam.slf4jlambda.LambdaLoggerFactory.getLogger;
+
+/**
+ * Progress of a {@link DatabaseConverter} persisted to a side file: the account trie subtrees (by nibble path) and the
+ * storage tries that were fully converted. Work is only journaled once the writer has made its entries durable.
+ */
+public class ConversionJournal implements TraversalJournal {
+    public static final String JOURNAL_FILE_NAME = "bela-conversion-journal.json";
+    private static final LambdaLogger log = getLogger(ConversionJournal.class);
+    private static final ObjectMapper mapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    // deeper subtrees are not recorded, they are converted again on resume
+    private static final int MAX_JOURNAL_DEPTH = 4;
+
+    private final Path file;
+    private final Set<Bytes> completed = ConcurrentHashMap.newKeySet();
+    private final Set<Bytes32> completedStorage = ConcurrentHashMap.newKeySet();
+    private String target;
+    private Bytes32 root;
+
+    public ConversionJournal(final Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Restores the progress saved for the same conversion of the given root, or starts from scratch when there is
+     * none.
+     *
+     * @return true when a previous run is being resumed
+     */
+    public boolean start(final String target, final Bytes32 root) {
+        this.target = target;
+        this.root = root;
+        completed.clear();
+        completedStorage.clear();
+        if (!Files.exists(file)) {
+            return false;
+        }
+        try {
+            final State state = mapper.readValue(file.toFile(), State.class);
+            if (!target.equals(state.target) || !root.toHexString().equals(state.root)) {
+                log.info("Ignoring journal {} for a conversion to {} of root {}", file, state.target, state.root);
+                return false;
+            }
+            state.completed.stream().map(Bytes::fromHexString).forEach(completed::add);
+            state.completedStorage.stream().map(Bytes32::fromHexString).forEach(completedStorage::add);
+            log.info("Resuming conversion from journal {} with {} completed subtrees and {} completed storage tries",
+                    file, completed.size(), completedStorage.size());
+            return true;
+        } catch (IOException e) {
+            log.error("Could not read journal {}, starting from scratch", file, e);
+            return false;
+        }
+    }
+
+    @Override
+    public boolean isCompleted(final Bytes location) {
+        for (int i = 0; i <= Math.min(location.size(), MAX_JOURNAL_DEPTH); i++) {
+            if (completed.contains(location.slice(0, i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void markCompleted(final Bytes location) {
+        if (location.size() > MAX_JOURNAL_DEPTH) {
+            return;
+        }
+        completed.add(location);
+        // the children are covered by their parent from now on
+        if (location.size() < MAX_JOURNAL_DEPTH) {
+            for (int nibble = 0; nibble < 16; nibble++) {
+                completed.remove(Bytes.concatenate(location, Bytes.of(nibble)));
+            }
+        }
+    }
+
+    @Override
+    public boolean isStorageCompleted(final Bytes32 accountHash) {
+        return completedStorage.contains(accountHash);
+    }
+
+    @Override
+    public void markStorageCompleted(final Bytes32 accountHash) {
+        completedStorage.add(accountHash);
+    }
+
+    /**
+     * Saves the progress made so far. The flush runs after the progress is captured, so everything journaled is
+     * durable in the target once the file is written.
+     */
+    public synchronized void save(final Runnable flush) {
+        if (root == null) {
+            return;
+        }
+        final State state = new State();
+        state.target = target;
+        state.root = root.toHexString();
+        // storage tries of completed subtrees are never looked at again
+        completedStorage.removeIf(accountHash -> isCompleted(CompactEncoding.bytesToPath(accountHash)));
+        completed.forEach(location -> state.completed.add(location.toHexString()));
+        completedStorage.forEach(accountHash -> state.completedStorage.add(accountHash.toHexString()));
+        try {
+            flush.run();
+        } catch (RuntimeException e) {
+            log.error("Could not flush the converted entries, keeping the previous journal {}", file, e);
+            return;
+        }
+        try {
+            final Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            mapper.writeValue(tmp.toFile(), state);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("Could not write journal {}", file, e);
+        }
+    }
+
+    public void delete() {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.error("Could not delete journal {}", file, e);
+        }
+    }
+
+    public static class State {
+        public String target;
+        public String root;
+        public List<String> completed = new ArrayList<>();
+        public List<String> completedStorage = new ArrayList<>();
+    }
+}
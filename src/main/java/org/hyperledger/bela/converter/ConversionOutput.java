@@ -0,0 +1,16 @@
+package org.hyperledger.bela.converter;
+
+/**
+ * How a {@link DatabaseConverter} stores the converted entries.
+ */
+public enum ConversionOutput {
+    /**
+     * Commits bounded write batches from a dedicated writer thread, see {@link BatchedWriter}.
+     */
+    WRITE_BATCH,
+    /**
+     * Builds sorted sst files and ingests them into the target column families, see {@link SstFileIngester}. Needs a
+     * rocksdb storage.
+     */
+    SST_INGESTION
+}
@@ -0,0 +1,21 @@
+package org.hyperledger.bela.converter;
+
+import org.hyperledger.besu.plugin.services.storage.KeyValueStorage;
+
+/**
+ * Receives the entries of a conversion from any number of reader threads, nothing is guaranteed to be in the target
+ * storage before {@link #close()} returns.
+ */
+public interface ConversionWriter extends AutoCloseable {
+
+    void put(KeyValueStorage storage, byte[] key, byte[] value);
+
+    /**
+     * Blocks until everything put before the call is durable, or at least recoverable by a writer created to resume
+     * the conversion.
+     */
+    void flush();
+
+    @Override
+    void close();
+}
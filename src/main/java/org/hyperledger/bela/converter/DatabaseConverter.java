@@ -1,27 +1,77 @@
 package org.hyperledger.bela.converter;
 
+import javax.annotation.Nullable;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.bytes.Bytes32;
+import org.apache.tuweni.rlp.RLP;
 import org.hyperledger.bela.trie.NodeFoundListener;
 import org.hyperledger.bela.trie.NodeRetriever;
 import org.hyperledger.bela.trie.TrieTraversal;
 import org.hyperledger.bela.utils.bonsai.BonsaiListener;
+import org.hyperledger.bela.utils.hacks.RocksDBStorageAccess;
 import org.hyperledger.besu.datatypes.Hash;
+import org.hyperledger.besu.ethereum.mainnet.MainnetBlockHeaderFunctions;
 import org.hyperledger.besu.ethereum.storage.StorageProvider;
 import org.hyperledger.besu.ethereum.storage.keyvalue.KeyValueSegmentIdentifier;
 import org.hyperledger.besu.ethereum.trie.MerklePatriciaTrie;
 import org.hyperledger.besu.plugin.services.storage.KeyValueStorage;
-import org.hyperledger.besu.plugin.services.storage.KeyValueStorageTransaction;
 
 public class DatabaseConverter {
+    private static final String TARGET_BONSAI = "bonsai";
+    private static final String TARGET_FOREST = "forest";
+    private static final long JOURNAL_INTERVAL_SECONDS = 30;
 
     private final StorageProvider provider;
     private final BonsaiListener listener;
+    private final int parallelism;
+    private final long batchSize;
+    private final int queueDepth;
+    private final long runSize;
+    private final ConversionOutput output;
+    @Nullable
+    private final ConversionJournal journal;
 
     public DatabaseConverter(final StorageProvider storageProvider, BonsaiListener listener) {
+        this(storageProvider, listener, null);
+    }
+
+    /**
+     * @param journalFile side file used to periodically save the progress and to resume from it, null disables the
+     *                    journal
+     */
+    public DatabaseConverter(final StorageProvider storageProvider, final BonsaiListener listener,
+                             @Nullable final Path journalFile) {
+        this(storageProvider, listener, Runtime.getRuntime().availableProcessors(), BatchedWriter.DEFAULT_BATCH_SIZE,
+                BatchedWriter.DEFAULT_QUEUE_DEPTH, SstFileIngester.DEFAULT_RUN_SIZE, ConversionOutput.WRITE_BATCH, journalFile);
+    }
+
+    /**
+     * @param parallelism number of threads reading the source trie
+     * @param batchSize   bytes written per batch to the target segments, unused with sst ingestion
+     * @param queueDepth  full batches waiting for the writer thread before the readers block, unused with sst
+     *                    ingestion
+     * @param runSize     bytes sorted in memory per run with sst ingestion, unused with write batches
+     */
+    public DatabaseConverter(final StorageProvider storageProvider, final BonsaiListener listener,
+                             final int parallelism, final long batchSize, final int queueDepth, final long runSize,
+                             final ConversionOutput output, @Nullable final Path journalFile) {
         this.provider = storageProvider;
         this.listener = listener;
+        this.parallelism = parallelism;
+        this.batchSize = batchSize;
+        this.queueDepth = queueDepth;
+        this.runSize = runSize;
+        this.output = output;
+        this.journal = journalFile == null ? null : new ConversionJournal(journalFile);
     }
 
 
@@ -29,6 +79,11 @@ public class DatabaseConverter {
         KeyValueStorage forestBranchStorage = provider.getStorageBySegmentIdentifier(KeyValueSegmentIdentifier.WORLD_STATE);
         KeyValueStorage trieBranchStorage = provider.getStorageBySegmentIdentifier(KeyValueSegmentIdentifier.TRIE_BRANCH_STORAGE);
         KeyValueStorage codeStorage = provider.getStorageBySegmentIdentifier(KeyValueSegmentIdentifier.CODE_STORAGE);
+        KeyValueStorage accountStorage = provider.getStorageBySegmentIdentifier(KeyValueSegmentIdentifier.ACCOUNT_INFO_STATE);
+        KeyValueStorage storageStorage = provider.getStorageBySegmentIdentifier(KeyValueSegmentIdentifier.ACCOUNT_STORAGE_STORAGE);
+        final Hash root = getStateRoot();
+        final ConversionWriter writer = createWriter(startJournal(TARGET_BONSAI, root),
+                List.of(trieBranchStorage, codeStorage, accountStorage, storageStorage));
         TrieTraversal tr = new TrieTraversal(provider, new NodeRetriever() {
             @Override
             public Optional<Bytes> getAccountNode(Bytes location, Bytes32 hash) {
@@ -53,35 +108,56 @@ public class DatabaseConverter {
             public Optional<Bytes> getCode(Bytes32 accountHash, Bytes32 hash) {
                 return forestBranchStorage.get(hash.toArrayUnsafe()).map(Bytes::wrap);
             }
+
+            @Override
+            public List<Optional<Bytes>> getAccountNodes(List<Bytes> locations, List<Bytes32> hashes) {
+                return multiGet(forestBranchStorage, new ArrayList<>(hashes), hashes);
+            }
+
+            @Override
+            public List<Optional<Bytes>> getStorageNodes(Bytes32 accountHash, List<Bytes> locations, List<Bytes32> hashes) {
+                return multiGet(forestBranchStorage, new ArrayList<>(hashes), hashes);
+            }
         }, new NodeFoundListener() {
             @Override
             public void onAccountNode(Bytes location, Bytes value) {
-                KeyValueStorageTransaction keyValueStorageTransaction = trieBranchStorage.startTransaction();
-                keyValueStorageTransaction.put(location.toArrayUnsafe(), value.toArrayUnsafe());
-                keyValueStorageTransaction.commit();
+                writer.put(trieBranchStorage, location.toArrayUnsafe(), value.toArrayUnsafe());
             }
 
             @Override
             public void onStorageNode(Bytes32 accountHash, Bytes location, Bytes value) {
-                KeyValueStorageTransaction keyValueStorageTransaction = trieBranchStorage.startTransaction();
-                keyValueStorageTransaction.put(Bytes.concatenate(accountHash, location)
-                        .toArrayUnsafe(), value.toArrayUnsafe());
-                keyValueStorageTransaction.commit();
+                writer.put(trieBranchStorage, Bytes.concatenate(accountHash, location).toArrayUnsafe(),
+                        value.toArrayUnsafe());
             }
 
             @Override
             public void onCode(Bytes32 accountHash, Bytes value) {
-                KeyValueStorageTransaction keyValueStorageTransaction = codeStorage.startTransaction();
-                keyValueStorageTransaction.put(accountHash.toArrayUnsafe(), value.toArrayUnsafe());
-                keyValueStorageTransaction.commit();
+                writer.put(codeStorage, accountHash.toArrayUnsafe(), value.toArrayUnsafe());
             }
-        }, listener);
-        tr.start();
+
+            // the flat database lets the converted state serve reads without a rebuild by besu
+            @Override
+            public void onAccount(Bytes32 accountHash, Bytes value) {
+                writer.put(accountStorage, accountHash.toArrayUnsafe(), value.toArrayUnsafe());
+            }
+
+            @Override
+            public void onStorageSlot(Bytes32 accountHash, Bytes32 slotHash, Bytes value) {
+                writer.put(storageStorage, Bytes.concatenate(accountHash, slotHash).toArrayUnsafe(),
+                        Bytes32.leftPad(RLP.decodeValue(value)).toArrayUnsafe());
+            }
+        }, listener, parallelism, journal);
+        verify(run(tr, root, writer), trieBranchStorage, Bytes.EMPTY, root);
+        if (journal != null) {
+            journal.delete();
+        }
     }
 
     public void convertToForest() {
         KeyValueStorage forestBranchStorage = provider.getStorageBySegmentIdentifier(KeyValueSegmentIdentifier.WORLD_STATE);
         KeyValueStorage trieBranchStorage = provider.getStorageBySegmentIdentifier(KeyValueSegmentIdentifier.TRIE_BRANCH_STORAGE);
+        final Hash root = getStateRoot();
+        final ConversionWriter writer = createWriter(startJournal(TARGET_FOREST, root), List.of(forestBranchStorage));
         TrieTraversal tr = new TrieTraversal(provider, new NodeRetriever() {
             @Override
             public Optional<Bytes> getAccountNode(Bytes location, Bytes32 hash) {
@@ -107,29 +183,132 @@ public class DatabaseConverter {
             public Optional<Bytes> getCode(Bytes32 accountHash, Bytes32 hash) {
                 return trieBranchStorage.get(accountHash.toArrayUnsafe()).map(Bytes::wrap);
             }
+
+            @Override
+            public List<Optional<Bytes>> getAccountNodes(List<Bytes> locations, List<Bytes32> hashes) {
+                return multiGet(trieBranchStorage, locations, hashes);
+            }
+
+            @Override
+            public List<Optional<Bytes>> getStorageNodes(Bytes32 accountHash, List<Bytes> locations, List<Bytes32> hashes) {
+                return multiGet(trieBranchStorage, locations.stream()
+                        .map(location -> Bytes.concatenate(accountHash, location))
+                        .collect(Collectors.toList()), hashes);
+            }
         }, new NodeFoundListener() {
             @Override
             public void onAccountNode(Bytes location, Bytes value) {
-                KeyValueStorageTransaction keyValueStorageTransaction = forestBranchStorage.startTransaction();
-                keyValueStorageTransaction.put(Hash.hash(value).toArrayUnsafe(), value.toArrayUnsafe());
-                keyValueStorageTransaction.commit();
+                writer.put(forestBranchStorage, Hash.hash(value).toArrayUnsafe(), value.toArrayUnsafe());
             }
 
             @Override
             public void onStorageNode(Bytes32 accountHash, Bytes location, Bytes value) {
-                KeyValueStorageTransaction keyValueStorageTransaction = forestBranchStorage.startTransaction();
-                keyValueStorageTransaction.put(Hash.hash(value).toArrayUnsafe(), value.toArrayUnsafe());
-                keyValueStorageTransaction.commit();
+                writer.put(forestBranchStorage, Hash.hash(value).toArrayUnsafe(), value.toArrayUnsafe());
             }
 
             @Override
             public void onCode(Bytes32 accountHash, Bytes value) {
-                KeyValueStorageTransaction keyValueStorageTransaction = forestBranchStorage.startTransaction();
-                keyValueStorageTransaction.put(Hash.hash(value).toArrayUnsafe(), value.toArrayUnsafe());
-                keyValueStorageTransaction.commit();
+                writer.put(forestBranchStorage, Hash.hash(value).toArrayUnsafe(), value.toArrayUnsafe());
+            }
+        }, listener, parallelism, journal);
+        verify(run(tr, root, writer), forestBranchStorage, root, root);
+        if (journal != null) {
+            journal.delete();
+        }
+    }
+
+    private Hash getStateRoot() {
+        return TrieTraversal.getStateRoot(provider.getStorageBySegmentIdentifier(KeyValueSegmentIdentifier.BLOCKCHAIN),
+                new MainnetBlockHeaderFunctions());
+    }
+
+    /**
+     * @return true when the journal holds the progress of an interrupted conversion of the same root
+     */
+    private boolean startJournal(final String target, final Hash root) {
+        return journal != null && journal.start(target, root);
+    }
+
+    /**
+     * @param targets every storage the conversion writes to
+     */
+    private ConversionWriter createWriter(final boolean resume, final List<KeyValueStorage> targets) {
+        return switch (output) {
+            case WRITE_BATCH -> new BatchedWriter(batchSize, queueDepth);
+            case SST_INGESTION -> new SstFileIngester(runSize, resume, targets);
+        };
+    }
+
+    /**
+     * Fails the conversion when the traversal found missing or invalid nodes, code or storage tries in the source,
+     * whatever was under them is missing from the target. The converted root node has to be stored under the key and
+     * hash to the source state root too.
+     *
+     * @param complete whether the traversal found and converted the whole source trie
+     */
+    private void verify(final boolean complete, final KeyValueStorage storage, final Bytes key, final Hash root) {
+        if (!complete) {
+            throw new IllegalStateException(String.format("The source state %s has missing or invalid nodes, the "
+                    + "converted state is incomplete and must not be used", root));
+        }
+        final Optional<Hash> convertedRoot = storage.get(key.toArrayUnsafe()).map(Bytes::wrap).map(Hash::hash);
+        if (!convertedRoot.equals(Optional.of(root))) {
+            throw new IllegalStateException(String.format("Converted state root %s does not match the source state root %s",
+                    convertedRoot.map(Hash::toHexString).orElse("missing"), root));
+        }
+        listener.root(root);
+    }
+
+    /**
+     * Traverses the source trie and waits for the writer to commit the last batch, a failed batch fails the
+     * conversion. The journal is saved periodically while the traversal runs.
+     *
+     * @return true when the whole source trie was found and valid
+     */
+    private boolean run(final TrieTraversal traversal, final Hash root, final ConversionWriter writer) {
+        if (journal == null) {
+            try (writer) {
+                return traversal.start(root);
+            }
+        }
+        final ScheduledExecutorService journalWriter = Executors.newSingleThreadScheduledExecutor();
+        journalWriter.scheduleWithFixedDelay(() -> journal.save(writer::flush),
+                JOURNAL_INTERVAL_SECONDS, JOURNAL_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        try (writer) {
+            try {
+                return traversal.start(root);
+            } finally {
+                // a save in progress has to complete before the writer is closed under it
+                journalWriter.shutdown();
+                awaitTermination(journalWriter);
+            }
+        }
+    }
+
+    private static void awaitTermination(final ExecutorService executor) {
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Looks up the trie nodes stored under the keys in one batch, the empty trie node is never stored so it is
+     * resolved from its hash.
+     */
+    private static List<Optional<Bytes>> multiGet(final KeyValueStorage storage, final List<Bytes> keys, final List<Bytes32> hashes) {
+        final List<Optional<Bytes>> values = RocksDBStorageAccess.multiGet(storage,
+                        keys.stream().map(Bytes::toArrayUnsafe).collect(Collectors.toList()))
+                .stream()
+                .map(value -> value.map(Bytes::wrap))
+                .collect(Collectors.toCollection(ArrayList::new));
+        for (int i = 0; i < hashes.size(); i++) {
+            if (hashes.get(i).equals(MerklePatriciaTrie.EMPTY_TRIE_NODE_HASH)) {
+                values.set(i, Optional.of(MerklePatriciaTrie.EMPTY_TRIE_NODE));
             }
-        }, listener);
-        tr.start();
+        }
+        return values;
     }
 
 //    public static void main(final String[] args) {
@@ -0,0 +1,465 @@
+package org.hyperledger.bela.converter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.tuweni.bytes.Bytes;
+import org.hyperledger.bela.utils.hacks.RocksDBStorageAccess;
+import org.hyperledger.besu.plugin.services.storage.KeyValueStorage;
+import org.hyperledger.besu.plugin.services.storage.rocksdb.RocksDbSegmentIdentifier;
+import org.hyperledger.besu.plugin.services.storage.rocksdb.segmented.RocksDBColumnarKeyValueStorage;
+import org.rocksdb.CompressionType;
+import org.rocksdb.EnvOptions;
+import org.rocksdb.Options;
+import org.rocksdb.ReadOptions;
+import org.rocksdb.RocksDBException;
+import org.rocksdb.SstFileReader;
+import org.rocksdb.SstFileReaderIterator;
+import org.rocksdb.SstFileWriter;
+
+/**
+ * Bulk loads the entries of a conversion without going through the write-ahead log and the memtable. The readers
+ * deliver keys in no particular order, so every segment is buffered into sorted runs spilled to sst files, and
+ * {@link #close()} merges the runs into non-overlapping sst files that are ingested into the column family.
+ * <p>
+ * The runs live in a work directory next to the database until they are ingested, so a resumed conversion picks up
+ * the runs spilled by the interrupted one. A key put more than once keeps the value of its last put, also across runs:
+ * runs are ordered by their file names, which follow the order their entries were put in.
+ */
+public class SstFileIngester implements ConversionWriter {
+    public static final long DEFAULT_RUN_SIZE = 256 * 1024 * 1024;
+    private static final long OUTPUT_FILE_SIZE = 256 * 1024 * 1024;
+    // runs merged at once, every run open for a merge holds a file and a native table reader
+    private static final int MERGE_FAN_IN = 64;
+    private static final String MERGED_SUFFIX = "-m";
+    private static final Comparator<Path> RUN_ORDER = Comparator.comparing(run -> run.getFileName().toString());
+    private static final String WORK_DIRECTORY = "bela-ingest";
+    private static final String SST_SUFFIX = ".sst";
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private final long runSize;
+    private final boolean resume;
+    private final Map<KeyValueStorage, Segment> segments = new HashMap<>();
+    private final AtomicInteger fileCounter = new AtomicInteger();
+    // keeps the names of this run apart from, and ordered after, the ones left by an interrupted run
+    private final long fileNamePrefix;
+    private boolean closed;
+
+    public SstFileIngester(final List<KeyValueStorage> targets) {
+        this(DEFAULT_RUN_SIZE, false, targets);
+    }
+
+    /**
+     * @param runSize bytes of keys and values sorted in memory before they are spilled to an sst file
+     * @param resume  keep the runs spilled by an interrupted conversion, they are discarded otherwise
+     * @param targets every storage the conversion writes to, their runs left by an interrupted conversion are ingested
+     *                even when nothing more is put to them
+     * @throws IllegalStateException when resuming finds runs of a segment that is not a target
+     */
+    public SstFileIngester(final long runSize, final boolean resume, final List<KeyValueStorage> targets) {
+        if (runSize <= 0) {
+            throw new IllegalArgumentException("run size must be positive");
+        }
+        this.runSize = runSize;
+        this.resume = resume;
+        for (KeyValueStorage target : targets) {
+            segment(target);
+        }
+        if (resume) {
+            checkNoUnknownRuns();
+        }
+        this.fileNamePrefix = Math.max(System.currentTimeMillis(), latestFileNamePrefix() + 1);
+    }
+
+    @Override
+    public void put(final KeyValueStorage storage, final byte[] key, final byte[] value) {
+        final Segment segment = segment(storage);
+        final List<Pair<byte[], byte[]>> full;
+        final Path run;
+        synchronized (segment) {
+            segment.buffer.add(Pair.of(key, value));
+            segment.bufferedBytes += key.length + value.length;
+            if (segment.bufferedBytes < runSize) {
+                return;
+            }
+            full = segment.takeBuffer();
+            run = newFile(segment);
+            segment.spilling++;
+        }
+        // sorting and writing the run happens outside the lock so the other readers keep filling the next one
+        spill(segment, full, run);
+    }
+
+    /**
+     * Spills the buffered entries of every segment and waits for the spills already running.
+     */
+    @Override
+    public void flush() {
+        final List<Segment> toFlush;
+        synchronized (this) {
+            toFlush = new ArrayList<>(segments.values());
+        }
+        for (Segment segment : toFlush) {
+            final List<Pair<byte[], byte[]>> buffered;
+            final Path run;
+            synchronized (segment) {
+                buffered = segment.takeBuffer();
+                run = newFile(segment);
+                segment.spilling++;
+            }
+            spill(segment, buffered, run);
+            synchronized (segment) {
+                while (segment.spilling > 0) {
+                    try {
+                        segment.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException("interrupted while waiting for sst runs", e);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Spills what is left, merges the runs of every segment and ingests the result.
+     *
+     * @throws IllegalStateException when the sst files could not be built or ingested
+     */
+    @Override
+    public void close() {
+        flush();
+        final List<Segment> toIngest;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            toIngest = new ArrayList<>(segments.values());
+        }
+        for (Segment segment : toIngest) {
+            final List<Path> files = segment.runs.size() <= 1 ? segment.runs : merge(segment);
+            segment.columnar.ingestExternalFiles(segment.handle, files);
+            deleteIfEmpty(segment.directory);
+            deleteIfEmpty(segment.directory.getParent());
+        }
+    }
+
+    private synchronized Segment segment(final KeyValueStorage storage) {
+        if (closed) {
+            throw new IllegalStateException("ingester is closed");
+        }
+        return segments.computeIfAbsent(storage, this::openSegment);
+    }
+
+    private Segment openSegment(final KeyValueStorage storage) {
+        final RocksDBColumnarKeyValueStorage columnar = RocksDBStorageAccess.getColumnarStorage(storage)
+                .orElseThrow(() -> new IllegalArgumentException("sst ingestion needs a rocksdb storage"));
+        final RocksDbSegmentIdentifier handle = RocksDBStorageAccess.getSegmentHandle(storage)
+                .orElseThrow(() -> new IllegalArgumentException("sst ingestion needs a rocksdb storage"));
+        final Segment segment;
+        try {
+            segment = new Segment(columnar, handle, columnar.getDatabaseDir().resolve(WORK_DIRECTORY)
+                    .resolve(Bytes.wrap(handle.get().getName()).toUnprefixedHexString()));
+        } catch (RocksDBException e) {
+            throw new IllegalStateException(e);
+        }
+        try {
+            Files.createDirectories(segment.directory);
+            try (Stream<Path> files = Files.list(segment.directory)) {
+                for (Path file : files.collect(Collectors.toList())) {
+                    if (resume && file.getFileName().toString().endsWith(SST_SUFFIX)) {
+                        segment.runs.add(file);
+                    } else {
+                        Files.delete(file);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return segment;
+    }
+
+    private long latestFileNamePrefix() {
+        return segments.values().stream()
+                .flatMap(segment -> segment.runs.stream())
+                .map(run -> run.getFileName().toString())
+                .mapToLong(name -> Long.parseLong(name.substring(0, name.indexOf('-'))))
+                .max()
+                .orElse(0);
+    }
+
+    /**
+     * Runs are only found for the segments that are opened, runs of any other segment would silently be left out of
+     * the target database.
+     */
+    private void checkNoUnknownRuns() {
+        final Set<Path> known = segments.values().stream().map(segment -> segment.directory).collect(Collectors.toSet());
+        final Set<Path> workDirectories = known.stream().map(Path::getParent).collect(Collectors.toSet());
+        for (Path workDirectory : workDirectories) {
+            try (Stream<Path> directories = Files.list(workDirectory)) {
+                final List<Path> unknown = directories.filter(directory -> !known.contains(directory)).toList();
+                if (!unknown.isEmpty()) {
+                    throw new IllegalStateException("Runs of an interrupted conversion belong to segments it does not "
+                            + "write to: " + unknown);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * @param run file of the run, named when the buffer was taken so the runs keep the order of the puts even when
+     *            they are written concurrently
+     */
+    private void spill(final Segment segment, final List<Pair<byte[], byte[]>> entries, final Path run) {
+        try {
+            if (!entries.isEmpty()) {
+                writeRun(entries, run);
+                synchronized (segment) {
+                    segment.runs.add(run);
+                }
+            }
+        } finally {
+            synchronized (segment) {
+                segment.spilling--;
+                segment.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Sorts the entries with the bytewise comparator rocksdb uses and writes them to a new sst file, a key put more
+     * than once keeps its last value.
+     */
+    private void writeRun(final List<Pair<byte[], byte[]>> entries, final Path file) {
+        // stable, so the last put of a key stays after the others
+        entries.sort((a, b) -> Arrays.compareUnsigned(a.getKey(), b.getKey()));
+        final Path tmp = tmpFile(file);
+        try (final Options options = sstOptions();
+             final EnvOptions envOptions = new EnvOptions();
+             final SstFileWriter writer = new SstFileWriter(envOptions, options)) {
+            writer.open(tmp.toString());
+            for (int i = 0; i < entries.size(); i++) {
+                final Pair<byte[], byte[]> entry = entries.get(i);
+                if (i + 1 < entries.size() && Arrays.equals(entry.getKey(), entries.get(i + 1).getKey())) {
+                    continue;
+                }
+                writer.put(entry.getKey(), entry.getValue());
+            }
+            writer.finish();
+        } catch (RocksDBException e) {
+            throw new IllegalStateException("writing sst file " + file + " failed", e);
+        }
+        // a run is only picked up on resume once it is complete
+        move(tmp, file);
+    }
+
+    /**
+     * Merges the sorted runs into sst files with disjoint key ranges, so they can be ingested straight into the bottom
+     * level instead of piling up in level 0. At most {@link #MERGE_FAN_IN} runs are open at once: more runs are first
+     * merged in groups of consecutive runs, each group into a run that takes its place in the order of the runs.
+     */
+    private List<Path> merge(final Segment segment) {
+        List<Path> runs = segment.runs.stream().sorted(RUN_ORDER).toList();
+        while (runs.size() > MERGE_FAN_IN) {
+            final List<Path> merged = new ArrayList<>();
+            for (int i = 0; i < runs.size(); i += MERGE_FAN_IN) {
+                final List<Path> group = runs.subList(i, Math.min(runs.size(), i + MERGE_FAN_IN));
+                if (group.size() == 1) {
+                    merged.add(group.get(0));
+                    continue;
+                }
+                // sorts right before the last run of the group, which only holds values at least as recent
+                final Path last = group.get(group.size() - 1);
+                final String lastName = last.getFileName().toString();
+                final Path path = last.resolveSibling(
+                        lastName.substring(0, lastName.length() - SST_SUFFIX.length()) + MERGED_SUFFIX + SST_SUFFIX);
+                final List<Path> output = mergeRuns(group, () -> path, Long.MAX_VALUE);
+                group.forEach(SstFileIngester::delete);
+                merged.addAll(output);
+            }
+            runs = merged;
+        }
+        final List<Path> outputs = mergeRuns(runs, () -> newFile(segment), OUTPUT_FILE_SIZE);
+        runs.forEach(SstFileIngester::delete);
+        return outputs;
+    }
+
+    /**
+     * K-way merges runs given in the order of their puts, a key in more than one run keeps its value of the latest
+     * run.
+     *
+     * @param outputFileSize bytes written to an output file before the next one is started
+     */
+    private static List<Path> mergeRuns(final List<Path> runs, final Supplier<Path> nextOutput, final long outputFileSize) {
+        final List<Path> outputs = new ArrayList<>();
+        final List<SstFileReader> readers = new ArrayList<>();
+        final List<SstFileReaderIterator> iterators = new ArrayList<>();
+        final PriorityQueue<Head> heads = new PriorityQueue<>();
+        try (final Options options = sstOptions();
+             final EnvOptions envOptions = new EnvOptions();
+             final ReadOptions readOptions = new ReadOptions().setFillCache(false)) {
+            for (int run = 0; run < runs.size(); run++) {
+                final SstFileReader reader = new SstFileReader(options);
+                readers.add(reader);
+                reader.open(runs.get(run).toString());
+                final SstFileReaderIterator iterator = reader.newIterator(readOptions);
+                iterators.add(iterator);
+                iterator.seekToFirst();
+                if (iterator.isValid()) {
+                    heads.add(new Head(iterator, iterator.key(), run));
+                }
+            }
+
+            SstFileWriter writer = null;
+            Path output = null;
+            long writtenBytes = 0;
+            byte[] lastKey = null;
+            try {
+                while (!heads.isEmpty()) {
+                    final Head head = heads.poll();
+                    final byte[] key = head.key();
+                    // the latest run comes first among equal keys, the older values are skipped
+                    if (lastKey == null || !Arrays.equals(lastKey, key)) {
+                        if (writer == null || writtenBytes >= outputFileSize) {
+                            if (writer != null) {
+                                finish(writer, output);
+                                outputs.add(output);
+                            }
+                            output = nextOutput.get();
+                            writer = new SstFileWriter(envOptions, options);
+                            writer.open(tmpFile(output).toString());
+                            writtenBytes = 0;
+                        }
+                        final byte[] value = head.iterator().value();
+                        writer.put(key, value);
+                        writtenBytes += key.length + value.length;
+                        lastKey = key;
+                    }
+                    head.iterator().next();
+                    if (head.iterator().isValid()) {
+                        heads.add(new Head(head.iterator(), head.iterator().key(), head.run()));
+                    }
+                }
+                if (writer != null) {
+                    finish(writer, output);
+                    outputs.add(output);
+                }
+            } finally {
+                if (writer != null) {
+                    writer.close();
+                }
+            }
+        } catch (RocksDBException e) {
+            throw new IllegalStateException("merging sst runs failed", e);
+        } finally {
+            iterators.forEach(SstFileReaderIterator::close);
+            readers.forEach(SstFileReader::close);
+        }
+        return outputs;
+    }
+
+    private static void finish(final SstFileWriter writer, final Path output) throws RocksDBException {
+        writer.finish();
+        writer.close();
+        move(tmpFile(output), output);
+    }
+
+    private Path newFile(final Segment segment) {
+        return segment.directory.resolve(
+                String.format("%d-%06d%s", fileNamePrefix, fileCounter.incrementAndGet(), SST_SUFFIX));
+    }
+
+    private static Path tmpFile(final Path file) {
+        return file.resolveSibling(file.getFileName() + TMP_SUFFIX);
+    }
+
+    // matches the compression of the column families, see RocksDBColumnarKeyValueStorage
+    private static Options sstOptions() {
+        return new Options().setCompressionType(CompressionType.LZ4_COMPRESSION);
+    }
+
+    private static void move(final Path from, final Path to) {
+        try {
+            Files.move(from, to, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void delete(final Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void deleteIfEmpty(final Path directory) {
+        try {
+            // ingested files were moved into the database, anything still here belongs to another segment
+            if (Files.isDirectory(directory)) {
+                try (Stream<Path> files = Files.list(directory)) {
+                    if (files.findAny().isEmpty()) {
+                        Files.delete(directory);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @param run position of the run in the order of the puts
+     */
+    private record Head(SstFileReaderIterator iterator, byte[] key, int run) implements Comparable<Head> {
+        @Override
+        public int compareTo(final Head other) {
+            final int byKey = Arrays.compareUnsigned(key, other.key);
+            return byKey != 0 ? byKey : Integer.compare(other.run, run);
+        }
+    }
+
+    private static class Segment {
+        private final RocksDBColumnarKeyValueStorage columnar;
+        private final RocksDbSegmentIdentifier handle;
+        private final Path directory;
+        private final List<Path> runs = new ArrayList<>();
+        private List<Pair<byte[], byte[]>> buffer = new ArrayList<>();
+        private long bufferedBytes;
+        private int spilling;
+
+        private Segment(final RocksDBColumnarKeyValueStorage columnar, final RocksDbSegmentIdentifier handle,
+                        final Path directory) {
+            this.columnar = columnar;
+            this.handle = handle;
+            this.directory = directory;
+        }
+
+        private List<Pair<byte[], byte[]>> takeBuffer() {
+            final List<Pair<byte[], byte[]>> taken = buffer;
+            buffer = new ArrayList<>();
+            bufferedBytes = 0;
+            return taken;
+        }
+    }
+}
@@ -10,4 +10,16 @@ public interface NodeFoundListener {
     void onStorageNode(final Bytes32 accountHash, final Bytes location, final Bytes value);
 
     void onCode(final Bytes32 accountHash, final Bytes value);
+
+    /**
+     * Called for every account leaf with its rlp encoded account.
+     */
+    default void onAccount(final Bytes32 accountHash, final Bytes value) {
+    }
+
+    /**
+     * Called for every storage leaf with its rlp encoded slot value.
+     */
+    default void onStorageSlot(final Bytes32 accountHash, final Bytes32 slotHash, final Bytes value) {
+    }
 }
@@ -1,5 +1,7 @@
 package org.hyperledger.bela.trie;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.bytes.Bytes32;
@@ -12,4 +14,26 @@ public interface NodeRetriever {
 
     Optional<Bytes> getCode(final Bytes32 accountHash, final Bytes32 hash);
 
+    /**
+     * Batched version of {@link #getAccountNode}, used to resolve all the children of a branch at once.
+     */
+    default List<Optional<Bytes>> getAccountNodes(final List<Bytes> locations, final List<Bytes32> hashes) {
+        final List<Optional<Bytes>> nodes = new ArrayList<>(locations.size());
+        for (int i = 0; i < locations.size(); i++) {
+            nodes.add(getAccountNode(locations.get(i), hashes.get(i)));
+        }
+        return nodes;
+    }
+
+    /**
+     * Batched version of {@link #getStorageNode}, used to resolve all the children of a branch at once.
+     */
+    default List<Optional<Bytes>> getStorageNodes(final Bytes32 accountHash, final List<Bytes> locations, final List<Bytes32> hashes) {
+        final List<Optional<Bytes>> nodes = new ArrayList<>(locations.size());
+        for (int i = 0; i < locations.size(); i++) {
+            nodes.add(getStorageNode(accountHash, locations.get(i), hashes.get(i)));
+        }
+        return nodes;
+    }
+
 }
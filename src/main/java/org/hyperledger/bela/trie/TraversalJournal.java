@@ -0,0 +1,22 @@
+package org.hyperledger.bela.trie;
+
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+
+/**
+ * Work a {@link TrieTraversal} can skip because a previous run already finished it. Called concurrently from the
+ * traversal workers.
+ */
+public interface TraversalJournal {
+
+    boolean isCompleted(Bytes location);
+
+    /**
+     * Called once the account trie subtree at the location and all the storage tries below it were traversed.
+     */
+    void markCompleted(Bytes location);
+
+    boolean isStorageCompleted(Bytes32 accountHash);
+
+    void markStorageCompleted(Bytes32 accountHash);
+}
@@ -0,0 +1,107 @@
+package org.hyperledger.bela.trie;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+import org.hyperledger.besu.ethereum.trie.Node;
+
+/**
+ * Bounded cache of decoded bonsai trie nodes, keyed by account hash and location. Account trie nodes use an empty
+ * account hash. Entries are evicted once the cached rlp exceeds the maximum weight, and a cached node is only returned
+ * when it has the hash the caller expects.
+ */
+public class TrieNodeCache {
+    public static final long DEFAULT_MAXIMUM_WEIGHT = 64 * 1024 * 1024;
+    // rough heap cost of a decoded node besides its rlp: the node, its children and the key
+    private static final int ENTRY_OVERHEAD = 256;
+
+    private final Cache<Key, Entry> cache;
+    private final AtomicLong weight = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public TrieNodeCache() {
+        this(DEFAULT_MAXIMUM_WEIGHT);
+    }
+
+    public TrieNodeCache(final long maximumWeight) {
+        cache = CacheBuilder.newBuilder()
+                .maximumWeight(maximumWeight)
+                .weigher((Key key, Entry entry) -> entry.weight())
+                .<Key, Entry>removalListener(notification -> weight.addAndGet(-notification.getValue().weight()))
+                .build();
+    }
+
+    public Optional<Node<Bytes>> getAccountNode(final Bytes32 hash, final Bytes location) {
+        return get(new Key(Bytes.EMPTY, location), hash);
+    }
+
+    public void putAccountNode(final Bytes32 hash, final Node<Bytes> node) {
+        put(new Key(Bytes.EMPTY, node.getLocation().orElseThrow()), hash, node);
+    }
+
+    public Optional<Node<Bytes>> getStorageNode(final Bytes32 accountHash, final Bytes32 hash, final Bytes location) {
+        return get(new Key(accountHash, location), hash);
+    }
+
+    public void putStorageNode(final Bytes32 accountHash, final Bytes32 hash, final Node<Bytes> node) {
+        put(new Key(accountHash, node.getLocation().orElseThrow()), hash, node);
+    }
+
+    private Optional<Node<Bytes>> get(final Key key, final Bytes32 hash) {
+        final Entry entry = cache.getIfPresent(key);
+        if (entry == null || !entry.hash().equals(hash)) {
+            misses.increment();
+            return Optional.empty();
+        }
+        hits.increment();
+        return Optional.of(entry.node());
+    }
+
+    private void put(final Key key, final Bytes32 hash, final Node<Bytes> node) {
+        final Entry entry = new Entry(hash, node);
+        weight.addAndGet(entry.weight());
+        cache.put(key, entry);
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getSize() {
+        return cache.size();
+    }
+
+    public long getWeight() {
+        return weight.get();
+    }
+
+    @Override
+    public String toString() {
+        final long hits = getHits();
+        final long total = hits + getMisses();
+        return String.format("Trie node cache: %d nodes, %d KiB, %d hits, %d misses (%.1f%% hit rate)",
+                getSize(), getWeight() / 1024, hits, total - hits, total == 0 ? 0.0 : 100.0 * hits / total);
+    }
+
+    private record Key(Bytes accountHash, Bytes location) {
+    }
+
+    private record Entry(Bytes32 hash, Node<Bytes> node) {
+        int weight() {
+            return ENTRY_OVERHEAD + node.getRlp().size();
+        }
+    }
+}
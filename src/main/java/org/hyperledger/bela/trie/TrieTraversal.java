@@ -2,9 +2,14 @@ package org.hyperledger.bela.trie;
 
 import javax.annotation.Nullable;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
 import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.bytes.Bytes32;
 import org.hyperledger.bela.utils.bonsai.BonsaiListener;
@@ -28,6 +33,8 @@ public class TrieTraversal {
             Bytes.wrap("chainHeadHash".getBytes(StandardCharsets.UTF_8));
     private static final Bytes VARIABLES_PREFIX = Bytes.of(1);
     static final Bytes BLOCK_HEADER_PREFIX = Bytes.of(2);
+    // storage tries are only split across workers near their root, deeper subtrees are walked by a single worker
+    private static final int STORAGE_SPLIT_DEPTH = 2;
 
 
     private final NodeRetriever storageNodeFinder;
@@ -36,13 +43,45 @@ public class TrieTraversal {
     private final KeyValueStorage blockchainStorage;
     private final BlockHeaderFunctions blockHeaderFunctions;
     private final BonsaiListener listener;
+    private final int parallelism;
+    @Nullable
+    private final TraversalJournal journal;
+    private volatile ForkJoinPool pool;
 
     public TrieTraversal(
             final StorageProvider storageProvider,
             final NodeRetriever storageNodeFinder,
             final NodeFoundListener nodeFoundListener,
             final BonsaiListener listener) {
-        this(storageProvider, storageNodeFinder, nodeFoundListener, new MainnetBlockHeaderFunctions(), listener);
+        this(storageProvider, storageNodeFinder, nodeFoundListener, listener, 1);
+    }
+
+    /**
+     * @param parallelism number of fork-join workers reading the tries, the retriever and both listeners are called
+     *                    concurrently when greater than one
+     */
+    public TrieTraversal(
+            final StorageProvider storageProvider,
+            final NodeRetriever storageNodeFinder,
+            final NodeFoundListener nodeFoundListener,
+            final BonsaiListener listener,
+            final int parallelism) {
+        this(storageProvider, storageNodeFinder, nodeFoundListener, listener, parallelism, null);
+    }
+
+    /**
+     * @param journal subtrees and storage tries to skip, and where to record the finished ones, null traverses
+     *                everything
+     */
+    public TrieTraversal(
+            final StorageProvider storageProvider,
+            final NodeRetriever storageNodeFinder,
+            final NodeFoundListener nodeFoundListener,
+            final BonsaiListener listener,
+            final int parallelism,
+            @Nullable final TraversalJournal journal) {
+        this(storageProvider, storageNodeFinder, nodeFoundListener, new MainnetBlockHeaderFunctions(), listener,
+                parallelism, journal);
     }
 
     public TrieTraversal(
@@ -50,23 +89,58 @@ public class TrieTraversal {
             final NodeRetriever storageNodeFinder,
             final NodeFoundListener nodeFoundListener,
             final BlockHeaderFunctions blockHeaderFunctions,
-            final BonsaiListener listener) {
+            final BonsaiListener listener,
+            final int parallelism,
+            @Nullable final TraversalJournal journal) {
         this.storageNodeFinder = storageNodeFinder;
         blockchainStorage = storageProvider.getStorageBySegmentIdentifier(KeyValueSegmentIdentifier.BLOCKCHAIN);
         this.nodeFoundListener = nodeFoundListener;
         this.blockHeaderFunctions = blockHeaderFunctions;
         this.listener = listener;
+        this.parallelism = Math.max(1, parallelism);
+        this.journal = journal;
+    }
+
+    public Hash getStateRoot() {
+        return getStateRoot(blockchainStorage, blockHeaderFunctions);
     }
 
-    public void start() {
-        final Hash rootHash = blockchainStorage.get(Bytes.concatenate(VARIABLES_PREFIX, CHAIN_HEAD_KEY)
+    /**
+     * State root of the chain head block.
+     */
+    public static Hash getStateRoot(final KeyValueStorage blockchainStorage, final BlockHeaderFunctions blockHeaderFunctions) {
+        return blockchainStorage.get(Bytes.concatenate(VARIABLES_PREFIX, CHAIN_HEAD_KEY)
                         .toArrayUnsafe()).map(Bytes32::wrap)
-                .flatMap(blockHash -> get(BLOCK_HEADER_PREFIX, blockHash)
-                        .map(b -> BlockHeader.readFrom(RLP.input(b), blockHeaderFunctions)))
+                .flatMap(blockHash -> blockchainStorage.get(Bytes.concatenate(BLOCK_HEADER_PREFIX, blockHash)
+                                .toArrayUnsafe())
+                        .map(b -> BlockHeader.readFrom(RLP.input(Bytes.wrap(b)), blockHeaderFunctions)))
                 .map(BlockHeader::getStateRoot)
                 .orElseThrow(() -> new RuntimeException("chain head not found"));
+    }
+
+    /**
+     * @return true when every node, code and storage trie was found and valid, see {@link #start(Hash)}
+     */
+    public boolean start() {
+        return start(getStateRoot());
+    }
+
+    /**
+     * @return true when every node, code and storage trie under the root was found and valid, false when the listener
+     * was told about missing or invalid ones
+     */
+    public boolean start(final Hash rootHash) {
         Node<Bytes> root = getAccountNodeValue(rootHash, Bytes.EMPTY);
-        traverseAccountTrie(root);
+        if (parallelism == 1) {
+            return traverseAccountTrie(root);
+        }
+        pool = new ForkJoinPool(parallelism);
+        try {
+            return pool.invoke(ForkJoinTask.adapt(() -> traverseAccountTrie(root)));
+        } finally {
+            pool.shutdownNow();
+            pool = null;
+        }
     }
 
     Optional<Bytes> get(final org.apache.tuweni.bytes.Bytes prefix, final org.apache.tuweni.bytes.Bytes key) {
@@ -75,17 +149,28 @@ public class TrieTraversal {
     }
 
 
-    public void traverseAccountTrie(final Node<Bytes> parentNode) {
+    /**
+     * Traverses the subtree of the node, which is only recorded as completed in the journal when all of it was found
+     * and valid, so a resumed traversal visits and reports the rest again.
+     *
+     * @param parentNode null when it was missing or invalid
+     * @return true when the whole subtree was found and valid
+     */
+    public boolean traverseAccountTrie(final Node<Bytes> parentNode) {
         if (parentNode == null) {
-            return;
+            return false;
         }
         final List<Node<Bytes>> nodes =
                 TrieNodeDecoder.decodeNodes(parentNode.getLocation().orElseThrow(), parentNode.getRlp());
+        final List<Node<Bytes>> references = new ArrayList<>();
+        final List<ForkJoinTask<?>> subTasks = new ArrayList<>();
+        final AtomicBoolean complete = new AtomicBoolean(true);
         nodes.forEach(
                 node -> {
                     if (nodeIsHashReferencedDescendant(parentNode, node)) {
-                        traverseAccountTrie(
-                                getAccountNodeValue(node.getHash(), node.getLocation().orElseThrow()));
+                        if (journal == null || !journal.isCompleted(node.getLocation().orElseThrow())) {
+                            references.add(node);
+                        }
                     } else {
                         if (node.getValue().isPresent()) {
                             final StateTrieAccountValue accountValue =
@@ -97,6 +182,7 @@ public class TrieTraversal {
                                                             Bytes.concatenate(
                                                                     parentNode.getLocation()
                                                                             .orElseThrow(), node.getPath()))));
+                            nodeFoundListener.onAccount(accountHash, node.getValue().orElseThrow());
                             // Add code, if appropriate
                             if (!accountValue.getCodeHash().equals(Hash.EMPTY)) {
                                 // traverse code
@@ -104,47 +190,127 @@ public class TrieTraversal {
                                         storageNodeFinder.getCode(accountHash, accountValue.getCodeHash());
                                 if (code.isEmpty()) {
                                     listener.missingCodeHash(accountValue.getCodeHash(), accountHash);
+                                    complete.set(false);
                                 } else {
                                     final Hash foundCodeHash = Hash.hash(code.orElseThrow());
                                     if (!foundCodeHash.equals(accountValue.getCodeHash())) {
                                         listener.invalidCode(accountHash, accountValue.getCodeHash(), foundCodeHash);
+                                        complete.set(false);
                                     }
                                     nodeFoundListener.onCode(accountHash, code.orElseThrow());
                                 }
                             }
                             // Add storage, if appropriate
-                            if (!accountValue.getStorageRoot().equals(MerklePatriciaTrie.EMPTY_TRIE_NODE_HASH)) {
-                                traverseStorageTrie(
-                                        accountHash,
-                                        getStorageNodeValue(accountValue.getStorageRoot(), accountHash, Bytes.EMPTY));
+                            if (!accountValue.getStorageRoot().equals(MerklePatriciaTrie.EMPTY_TRIE_NODE_HASH)
+                                    && (journal == null || !journal.isStorageCompleted(accountHash))) {
+                                fork(subTasks, () -> {
+                                    if (!traverseStorageTrie(
+                                            accountHash,
+                                            getStorageNodeValue(accountValue.getStorageRoot(), accountHash, Bytes.EMPTY))) {
+                                        complete.set(false);
+                                    } else if (journal != null) {
+                                        journal.markStorageCompleted(accountHash);
+                                    }
+                                });
                             }
                         } else {
                             listener.missingValueForNode(node.getHash());
+                            complete.set(false);
                         }
                     }
                 });
+        final List<Node<Bytes>> children = getAccountNodeValues(references);
+        if (children.size() < references.size()) {
+            complete.set(false);
+        }
+        children.forEach(child -> fork(subTasks, () -> {
+            if (!traverseAccountTrie(child)) {
+                complete.set(false);
+            }
+        }));
+        subTasks.forEach(ForkJoinTask::join);
+        if (complete.get() && journal != null) {
+            journal.markCompleted(parentNode.getLocation().orElseThrow());
+        }
+        return complete.get();
     }
 
 
-    public void traverseStorageTrie(final Bytes32 accountHash, final Node<Bytes> parentNode) {
+    /**
+     * @param parentNode null when it was missing or invalid
+     * @return true when the whole subtree was found and valid
+     */
+    public boolean traverseStorageTrie(final Bytes32 accountHash, final Node<Bytes> parentNode) {
         if (parentNode == null) {
-            return;
+            return false;
         }
         final List<Node<Bytes>> nodes =
                 TrieNodeDecoder.decodeNodes(parentNode.getLocation().orElseThrow(), parentNode.getRlp());
-        nodes.forEach(
-                node -> {
-                    if (nodeIsHashReferencedDescendant(parentNode, node)) {
-                        traverseStorageTrie(
-                                accountHash,
-                                getStorageNodeValue(node.getHash(), accountHash, node.getLocation().orElseThrow()));
+        final List<Node<Bytes>> references = new ArrayList<>();
+        for (Node<Bytes> node : nodes) {
+            if (nodeIsHashReferencedDescendant(parentNode, node)) {
+                references.add(node);
+            } else if (node.getValue().isPresent()) {
+                final Bytes32 slotHash = Bytes32.wrap(CompactEncoding.pathToBytes(
+                        Bytes.concatenate(node.getLocation().orElseThrow(), node.getPath())));
+                nodeFoundListener.onStorageSlot(accountHash, slotHash, node.getValue().orElseThrow());
+            }
+        }
+        final List<ForkJoinTask<?>> subTasks = new ArrayList<>();
+        final List<Node<Bytes>> children = getStorageNodeValues(accountHash, references);
+        final AtomicBoolean complete = new AtomicBoolean(children.size() == references.size());
+        for (Node<Bytes> node : children) {
+            if (parentNode.getLocation().orElseThrow().size() < STORAGE_SPLIT_DEPTH) {
+                fork(subTasks, () -> {
+                    if (!traverseStorageTrie(accountHash, node)) {
+                        complete.set(false);
                     }
                 });
+            } else if (!traverseStorageTrie(accountHash, node)) {
+                complete.set(false);
+            }
+        }
+        subTasks.forEach(ForkJoinTask::join);
+        return complete.get();
+    }
+
+    /**
+     * Runs the work as a forked subtask when this traversal is executing inside its own pool, inline otherwise.
+     */
+    private void fork(final List<ForkJoinTask<?>> subTasks, final Runnable work) {
+        if (pool != null && ForkJoinTask.getPool() == pool) {
+            subTasks.add(ForkJoinTask.adapt(work).fork());
+        } else {
+            work.run();
+        }
     }
 
     @Nullable
     private Node<Bytes> getAccountNodeValue(final Bytes32 hash, final Bytes location) {
-        final Optional<Bytes> bytes = storageNodeFinder.getAccountNode(location, hash);
+        return toAccountNode(hash, location, storageNodeFinder.getAccountNode(location, hash));
+    }
+
+    /**
+     * Resolves the hash referenced children of a node with a single retriever call, invalid or missing ones are
+     * reported and left out.
+     */
+    private List<Node<Bytes>> getAccountNodeValues(final List<Node<Bytes>> references) {
+        final List<Bytes> locations = references.stream().map(node -> node.getLocation().orElseThrow())
+                .collect(Collectors.toList());
+        final List<Optional<Bytes>> values = storageNodeFinder.getAccountNodes(locations,
+                references.stream().map(Node::getHash).collect(Collectors.toList()));
+        final List<Node<Bytes>> nodes = new ArrayList<>(references.size());
+        for (int i = 0; i < references.size(); i++) {
+            final Node<Bytes> node = toAccountNode(references.get(i).getHash(), locations.get(i), values.get(i));
+            if (node != null) {
+                nodes.add(node);
+            }
+        }
+        return nodes;
+    }
+
+    @Nullable
+    private Node<Bytes> toAccountNode(final Bytes32 hash, final Bytes location, final Optional<Bytes> bytes) {
         if (bytes.isEmpty()) {
             listener.missingAccountTrieForHash(hash, location);
             return null;
@@ -161,8 +327,28 @@ public class TrieTraversal {
 
     private Node<Bytes> getStorageNodeValue(
             final Bytes32 hash, final Bytes32 accountHash, final Bytes location) {
-        final Optional<Bytes> bytes =
-                storageNodeFinder.getStorageNode(accountHash, location, hash);
+        return toStorageNode(hash, accountHash, location, storageNodeFinder.getStorageNode(accountHash, location, hash));
+    }
+
+    private List<Node<Bytes>> getStorageNodeValues(final Bytes32 accountHash, final List<Node<Bytes>> references) {
+        final List<Bytes> locations = references.stream().map(node -> node.getLocation().orElseThrow())
+                .collect(Collectors.toList());
+        final List<Optional<Bytes>> values = storageNodeFinder.getStorageNodes(accountHash, locations,
+                references.stream().map(Node::getHash).collect(Collectors.toList()));
+        final List<Node<Bytes>> nodes = new ArrayList<>(references.size());
+        for (int i = 0; i < references.size(); i++) {
+            final Node<Bytes> node =
+                    toStorageNode(references.get(i).getHash(), accountHash, locations.get(i), values.get(i));
+            if (node != null) {
+                nodes.add(node);
+            }
+        }
+        return nodes;
+    }
+
+    @Nullable
+    private Node<Bytes> toStorageNode(
+            final Bytes32 hash, final Bytes32 accountHash, final Bytes location, final Optional<Bytes> bytes) {
         if (bytes.isEmpty()) {
             listener.missingStorageTrieForHash(hash, location);
             return null;
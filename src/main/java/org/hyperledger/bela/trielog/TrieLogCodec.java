@@ -0,0 +1,23 @@
+package org.hyperledger.bela.trielog;
+
+import java.util.Optional;
+import org.hyperledger.bela.utils.hacks.TrieLogLayerAccess;
+import org.hyperledger.besu.datatypes.Hash;
+import org.hyperledger.besu.ethereum.bonsai.TrieLogLayer;
+import org.hyperledger.besu.plugin.services.storage.KeyValueStorage;
+
+/**
+ * Decodes the stored trie logs into layers. Every caller decodes through it, besu's decoding method is resolved once
+ * and reused for every layer. Callers that only look at some of the changes read them with {@link TrieLogReader}
+ * instead.
+ */
+public class TrieLogCodec {
+
+    public static TrieLogLayer decode(final byte[] encoded) {
+        return TrieLogLayerAccess.fromBytes(encoded);
+    }
+
+    public static Optional<TrieLogLayer> get(final KeyValueStorage trieLogStorage, final Hash blockHash) {
+        return trieLogStorage.get(blockHash.toArrayUnsafe()).map(TrieLogCodec::decode);
+    }
+}
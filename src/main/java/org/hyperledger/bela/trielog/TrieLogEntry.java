@@ -0,0 +1,71 @@
+package org.hyperledger.bela.trielog;
+
+import java.util.Set;
+import org.hyperledger.besu.datatypes.Hash;
+import org.hyperledger.besu.ethereum.bonsai.TrieLogLayer;
+
+/**
+ * A stored trie log as seen by a query: its block hash and encoded size are known up front, the layer is only decoded
+ * the first time it is asked for. Queries looking at some kinds of changes {@link #read} them without decoding the
+ * layer. Not thread safe, every worker has its own entries.
+ */
+public class TrieLogEntry {
+    public static final int UNKNOWN_SIZE = -1;
+
+    private final Hash blockHash;
+    private final byte[] encoded;
+    private TrieLogLayer layer;
+
+    public TrieLogEntry(final Hash blockHash, final byte[] encoded) {
+        this.blockHash = blockHash;
+        this.encoded = encoded;
+    }
+
+    private TrieLogEntry(final TrieLogLayer layer) {
+        this.blockHash = layer.getBlockHash();
+        this.encoded = null;
+        this.layer = layer;
+    }
+
+    /**
+     * Entry of a layer that is already decoded, its encoded size is unknown.
+     */
+    public static TrieLogEntry decoded(final TrieLogLayer layer) {
+        return new TrieLogEntry(layer);
+    }
+
+    public Hash getBlockHash() {
+        return blockHash;
+    }
+
+    /**
+     * @return the size of the encoded trie log in bytes, or {@link #UNKNOWN_SIZE}
+     */
+    public int getEncodedSize() {
+        return encoded == null ? UNKNOWN_SIZE : encoded.length;
+    }
+
+    public boolean isDecoded() {
+        return layer != null;
+    }
+
+    public TrieLogLayer getLayer() {
+        if (layer == null) {
+            layer = TrieLogCodec.decode(encoded);
+        }
+        return layer;
+    }
+
+    /**
+     * Streams the sections of the trie log to the visitor, from the layer when it is already decoded and from the
+     * encoded trie log otherwise.
+     *
+     * @return true when the visitor stopped the reading
+     */
+    public boolean read(final Set<TrieLogReader.Section> sections, final TrieLogReader.Visitor visitor) {
+        if (layer != null) {
+            return TrieLogReader.read(layer, sections, visitor);
+        }
+        return TrieLogReader.read(encoded, sections, visitor);
+    }
+}
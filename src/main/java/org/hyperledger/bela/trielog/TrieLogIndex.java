@@ -0,0 +1,284 @@
+package org.hyperledger.bela.trielog;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+import java.util.stream.Stream;
+import kr.pe.kwonnam.slf4jlambda.LambdaLogger;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+import org.apache.tuweni.units.bigints.UInt256;
+import org.hyperledger.bela.components.bonsai.queries.TrieQueryValidator;
+import org.hyperledger.bela.utils.hacks.RocksDBStorageAccess;
+import org.hyperledger.bela.utils.hacks.ScanOptions;
+import org.hyperledger.besu.datatypes.Address;
+import org.hyperledger.besu.datatypes.Hash;
+import org.hyperledger.besu.ethereum.worldstate.StateTrieAccountValue;
+import org.hyperledger.besu.plugin.services.storage.KeyValueStorage;
+import org.rocksdb.Options;
+import org.rocksdb.ReadOptions;
+import org.rocksdb.RocksDB;
+import org.rocksdb.RocksDBException;
+import org.rocksdb.RocksIterator;
+import org.rocksdb.Slice;
+import org.rocksdb.WriteBatch;
+import org.rocksdb.WriteOptions;
+
+import static kr.pe.kwonnam.slf4jlambda.LambdaLoggerFactory.getLogger;
+
+/**
+ * Side index of the trie logs in its own rocksdb next to the besu database, mapping the account hashes, storage slots,
+ * code hashes and storage roots a trie log mentions to its block hash. Keys are the field prefix, the subject and the
+ * block hash, with empty values, so a lookup is a prefix scan.
+ * <p>
+ * The index is built incrementally, only trie logs without a marker are read. Markers of trie logs that were pruned
+ * from the database are removed on update and lookups only return block hashes that still have a marker, their stale
+ * entries are left behind.
+ */
+public class TrieLogIndex implements AutoCloseable {
+    public static final String INDEX_DIRECTORY = "bela-trielog-index";
+    private static final LambdaLogger log = getLogger(TrieLogIndex.class);
+    private static final int TRIE_LOGS_PER_BATCH = 1_000;
+    private static final byte[] EMPTY = new byte[0];
+    // code hashes are read from the accounts
+    private static final Set<TrieLogReader.Section> INDEXED_SECTIONS = EnumSet.of(TrieLogReader.Section.ACCOUNT, TrieLogReader.Section.STORAGE);
+
+    static {
+        RocksDB.loadLibrary();
+    }
+
+    private final Options options;
+    private final RocksDB db;
+    private final WriteOptions writeOptions = new WriteOptions();
+
+    private TrieLogIndex(final Path directory) throws RocksDBException {
+        options = new Options().setCreateIfMissing(true);
+        db = RocksDB.open(options, directory.toString());
+    }
+
+    /**
+     * Opens the index of the database in the data path, creating an empty one when there is none.
+     */
+    public static TrieLogIndex open(final Path dataPath) {
+        try {
+            return new TrieLogIndex(dataPath.resolve(INDEX_DIRECTORY));
+        } catch (RocksDBException e) {
+            throw new IllegalStateException("Could not open the trie log index in " + dataPath, e);
+        }
+    }
+
+    /**
+     * Opens the index of the database in the data path when it has been built.
+     */
+    public static Optional<TrieLogIndex> openIfExists(final Path dataPath) {
+        return Files.isDirectory(dataPath.resolve(INDEX_DIRECTORY)) ? Optional.of(open(dataPath)) : Optional.empty();
+    }
+
+    /**
+     * Answers the query from the index when it has been built and the query has an index lookup. The index is used as
+     * it stands, trie logs added since its last update are not found until it is updated again, and the trie logs
+     * pruned since are left out of the result.
+     */
+    public static Optional<List<Hash>> lookupIfIndexed(final Path dataPath, final KeyValueStorage trieLogStorage,
+                                                       final TrieQueryValidator validator) {
+        final Optional<Lookup> lookup = validator.indexLookup();
+        if (lookup.isEmpty() || dataPath == null) {
+            return Optional.empty();
+        }
+        final Optional<TrieLogIndex> index = openIfExists(dataPath);
+        if (index.isEmpty()) {
+            return Optional.empty();
+        }
+        try (TrieLogIndex trieLogIndex = index.get()) {
+            return Optional.of(trieLogIndex.lookup(lookup.get()).stream()
+                    .filter(blockHash -> trieLogStorage.containsKey(blockHash.toArrayUnsafe()))
+                    .toList());
+        }
+    }
+
+    /**
+     * Indexes the trie logs that are not indexed yet and forgets the ones that are gone from the storage.
+     *
+     * @param progress called with the number of trie logs indexed so far
+     * @return the number of trie logs indexed by this update
+     */
+    public synchronized long update(final KeyValueStorage trieLogStorage, final LongConsumer progress) {
+        final AtomicLong indexed = new AtomicLong();
+        try (Stream<byte[]> keys = RocksDBStorageAccess.scanKeys(trieLogStorage, ScanOptions.fullScan());
+             WriteBatch batch = new WriteBatch()) {
+            final List<byte[]> pending = new ArrayList<>();
+            keys.filter(key -> key.length == Bytes32.SIZE && !isIndexed(key)).forEach(key -> {
+                pending.add(key);
+                if (pending.size() >= TRIE_LOGS_PER_BATCH) {
+                    index(trieLogStorage, pending, batch);
+                    progress.accept(indexed.addAndGet(pending.size()));
+                    pending.clear();
+                }
+            });
+            index(trieLogStorage, pending, batch);
+            progress.accept(indexed.addAndGet(pending.size()));
+        }
+        removeMissing(trieLogStorage);
+        log.info("Indexed {} new trie logs", indexed.get());
+        return indexed.get();
+    }
+
+    private void index(final KeyValueStorage trieLogStorage, final List<byte[]> blockHashes, final WriteBatch batch) {
+        if (blockHashes.isEmpty()) {
+            return;
+        }
+        final List<Optional<byte[]>> values = RocksDBStorageAccess.multiGet(trieLogStorage, blockHashes);
+        try {
+            batch.clear();
+            for (int i = 0; i < blockHashes.size(); i++) {
+                if (values.get(i).isEmpty()) {
+                    continue;
+                }
+                final Bytes blockHash = Bytes.wrap(blockHashes.get(i));
+                for (byte[] key : keys(values.get(i).get(), blockHash)) {
+                    batch.put(key, EMPTY);
+                }
+                batch.put(marker(blockHash), EMPTY);
+            }
+            db.write(writeOptions, batch);
+        } catch (RocksDBException e) {
+            throw new IllegalStateException("Could not write to the trie log index", e);
+        }
+    }
+
+    private static List<byte[]> keys(final byte[] trieLog, final Bytes blockHash) {
+        final List<byte[]> keys = new ArrayList<>();
+        TrieLogReader.read(trieLog, INDEXED_SECTIONS, new TrieLogReader.Visitor() {
+            private Hash accountHash;
+
+            @Override
+            public boolean visitAddress(final Address address) {
+                accountHash = Hash.hash(address);
+                keys.add(key(TrieLogIndexField.ACCOUNT_HASH, accountHash, blockHash));
+                return true;
+            }
+
+            @Override
+            public boolean visitAccount(final Address address, final StateTrieAccountValue prior, final StateTrieAccountValue updated) {
+                for (StateTrieAccountValue value : new StateTrieAccountValue[]{prior, updated}) {
+                    if (value != null) {
+                        keys.add(key(TrieLogIndexField.CODE_HASH, value.getCodeHash(), blockHash));
+                        keys.add(key(TrieLogIndexField.STORAGE_ROOT, value.getStorageRoot(), blockHash));
+                    }
+                }
+                return false;
+            }
+
+            @Override
+            public boolean visitSlot(final Address address, final Hash slotHash, final UInt256 prior, final UInt256 updated) {
+                keys.add(key(TrieLogIndexField.STORAGE_SLOT, Bytes.concatenate(accountHash, slotHash), blockHash));
+                return false;
+            }
+        });
+        return keys;
+    }
+
+    private void removeMissing(final KeyValueStorage trieLogStorage) {
+        final List<byte[]> missing = new ArrayList<>();
+        try (ReadOptions readOptions = new ReadOptions();
+             Slice lowerBound = new Slice(new byte[]{TrieLogIndexField.INDEXED_MARKER});
+             Slice upperBound = new Slice(new byte[]{(byte) (TrieLogIndexField.INDEXED_MARKER + 1)})) {
+            readOptions.setIterateLowerBound(lowerBound).setIterateUpperBound(upperBound);
+            try (RocksIterator iterator = db.newIterator(readOptions)) {
+                for (iterator.seekToFirst(); iterator.isValid(); iterator.next()) {
+                    final byte[] blockHash = Bytes.wrap(iterator.key()).slice(1).toArrayUnsafe();
+                    if (!trieLogStorage.containsKey(blockHash)) {
+                        missing.add(iterator.key());
+                    }
+                }
+            }
+            for (byte[] marker : missing) {
+                db.delete(writeOptions, marker);
+            }
+        } catch (RocksDBException e) {
+            throw new IllegalStateException("Could not update the trie log index", e);
+        }
+        if (!missing.isEmpty()) {
+            log.info("Removed {} pruned trie logs from the index", missing.size());
+        }
+    }
+
+    /**
+     * The block hashes of the indexed trie logs mentioning the subject, a storage slot subject can be an account hash
+     * alone.
+     */
+    public List<Hash> lookup(final Lookup lookup) {
+        final Bytes prefix = Bytes.concatenate(Bytes.of(lookup.field().getPrefix()), lookup.subject());
+        final Set<Hash> blockHashes = new LinkedHashSet<>();
+        try (ReadOptions readOptions = new ReadOptions();
+             Slice lowerBound = new Slice(prefix.toArrayUnsafe())) {
+            readOptions.setIterateLowerBound(lowerBound);
+            try (RocksIterator iterator = db.newIterator(readOptions)) {
+                for (iterator.seekToFirst(); iterator.isValid(); iterator.next()) {
+                    final Bytes key = Bytes.wrap(iterator.key());
+                    if (!key.slice(0, Math.min(key.size(), prefix.size())).equals(prefix)) {
+                        break;
+                    }
+                    final Bytes blockHash = key.slice(key.size() - Bytes32.SIZE);
+                    if (isIndexed(blockHash.toArrayUnsafe())) {
+                        blockHashes.add(Hash.wrap(Bytes32.wrap(blockHash)));
+                    }
+                }
+            }
+        }
+        return new ArrayList<>(blockHashes);
+    }
+
+    private boolean isIndexed(final byte[] blockHash) {
+        try {
+            return db.get(marker(Bytes.wrap(blockHash))) != null;
+        } catch (RocksDBException e) {
+            throw new IllegalStateException("Could not read the trie log index", e);
+        }
+    }
+
+    private static byte[] marker(final Bytes blockHash) {
+        return Bytes.concatenate(Bytes.of(TrieLogIndexField.INDEXED_MARKER), blockHash).toArrayUnsafe();
+    }
+
+    private static byte[] key(final TrieLogIndexField field, final Bytes subject, final Bytes blockHash) {
+        return Bytes.concatenate(Bytes.of(field.getPrefix()), subject, blockHash).toArrayUnsafe();
+    }
+
+    /**
+     * Deletes the index of the database in the data path, it is rebuilt from scratch on the next update.
+     */
+    public static void delete(final Path dataPath) throws IOException {
+        final Path directory = dataPath.resolve(INDEX_DIRECTORY);
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Override
+    public void close() {
+        writeOptions.close();
+        db.close();
+        options.close();
+    }
+
+    /**
+     * An index lookup of the block hashes whose trie logs mention the subject in the field.
+     */
+    public record Lookup(TrieLogIndexField field, Bytes subject) {
+    }
+}
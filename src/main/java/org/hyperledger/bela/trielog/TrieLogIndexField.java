@@ -0,0 +1,31 @@
+package org.hyperledger.bela.trielog;
+
+/**
+ * What a {@link TrieLogIndex} entry maps to block hashes. Every key starts with the prefix of its field, the marker
+ * prefix is kept for the trie logs already indexed.
+ */
+public enum TrieLogIndexField {
+    ACCOUNT_HASH((byte) 1, "account hash"),
+    // account hash followed by slot hash, a lookup of the account hash alone finds every slot of the account
+    STORAGE_SLOT((byte) 2, "storage slot"),
+    CODE_HASH((byte) 3, "code hash"),
+    STORAGE_ROOT((byte) 4, "storage root");
+
+    static final byte INDEXED_MARKER = 0;
+
+    private final byte prefix;
+    private final String name;
+
+    TrieLogIndexField(final byte prefix, final String name) {
+        this.prefix = prefix;
+        this.name = name;
+    }
+
+    public byte getPrefix() {
+        return prefix;
+    }
+
+    public String getName() {
+        return name;
+    }
+}
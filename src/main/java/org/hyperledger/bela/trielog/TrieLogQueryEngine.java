@@ -0,0 +1,169 @@
+package org.hyperledger.bela.trielog;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import kr.pe.kwonnam.slf4jlambda.LambdaLogger;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.tuweni.bytes.Bytes32;
+import org.hyperledger.bela.components.bonsai.queries.TrieQueryValidator;
+import org.hyperledger.bela.utils.hacks.RocksDBStorageAccess;
+import org.hyperledger.bela.utils.hacks.ScanOptions;
+import org.hyperledger.besu.datatypes.Hash;
+import org.hyperledger.besu.plugin.services.storage.KeyValueStorage;
+
+import static kr.pe.kwonnam.slf4jlambda.LambdaLoggerFactory.getLogger;
+
+/**
+ * Runs a {@link TrieQueryValidator} over the trie logs on a pool of workers. The block hash keys are split by their
+ * first byte and every worker scans and validates its ranges, handing the matches to the consumer as they are found.
+ * Trie logs are only decoded when the validator needs their content, see {@link TrieLogEntry}. A query stops early
+ * once cancelled or when it has found its limit of matches.
+ */
+public class TrieLogQueryEngine {
+    public static final int NO_LIMIT = Integer.MAX_VALUE;
+    private static final LambdaLogger log = getLogger(TrieLogQueryEngine.class);
+    private static final int RANGES = 256;
+
+    private final int parallelism;
+
+    public TrieLogQueryEngine(final int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Starts the query in the background. The consumer is called from the workers, at most limit times.
+     */
+    public Execution start(final KeyValueStorage storage, final TrieQueryValidator validator, final int limit,
+                           final Consumer<Hash> onMatch) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit must be positive");
+        }
+        return new Execution(storage, validator, limit, onMatch);
+    }
+
+    /**
+     * Runs the query and waits for its matches.
+     */
+    public List<Hash> query(final KeyValueStorage storage, final TrieQueryValidator validator, final int limit) {
+        final List<Hash> matches = new ArrayList<>();
+        start(storage, validator, limit, match -> {
+            synchronized (matches) {
+                matches.add(match);
+            }
+        }).await();
+        return matches;
+    }
+
+    public class Execution {
+        private final TrieQueryValidator validator;
+        private final int limit;
+        private final Consumer<Hash> onMatch;
+        private final ExecutorService executor;
+        private final List<Future<?>> ranges = new ArrayList<>();
+        private final LongAdder scanned = new LongAdder();
+        private final AtomicInteger matches = new AtomicInteger();
+        private final long start = System.currentTimeMillis();
+        private volatile boolean cancelled;
+
+        private Execution(final KeyValueStorage storage, final TrieQueryValidator validator, final int limit,
+                          final Consumer<Hash> onMatch) {
+            this.validator = validator;
+            this.limit = limit;
+            this.onMatch = onMatch;
+            executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+                final Thread thread = new Thread(runnable, "bela-trielog-query");
+                thread.setDaemon(true);
+                return thread;
+            });
+            for (int range = 0; range < RANGES; range++) {
+                final int r = range;
+                ranges.add(executor.submit(() -> queryRange(storage, r)));
+            }
+            executor.shutdown();
+        }
+
+        // keys starting with the byte range, the empty key is in the first range
+        private void queryRange(final KeyValueStorage storage, final int range) {
+            final byte[] from = range == 0 ? null : new byte[]{(byte) range};
+            final byte[] to = range == RANGES - 1 ? null : new byte[]{(byte) (range + 1)};
+            try (Stream<Pair<byte[], byte[]>> entries = RocksDBStorageAccess.scan(storage, ScanOptions.range(from, to))) {
+                entries.takeWhile(entry -> !isStopped()).forEach(entry -> {
+                    scanned.increment();
+                    final Hash blockHash = Hash.wrap(Bytes32.wrap(entry.getKey()));
+                    if (validator.validate(new TrieLogEntry(blockHash, entry.getValue()))) {
+                        // matches past the limit found by other workers at the same time are dropped
+                        if (matches.incrementAndGet() <= limit) {
+                            onMatch.accept(blockHash);
+                        }
+                    }
+                });
+            } catch (RuntimeException e) {
+                // the result is incomplete anyway, do not keep the other workers busy
+                cancel();
+                throw e;
+            }
+        }
+
+        private boolean isStopped() {
+            return cancelled || matches.get() >= limit;
+        }
+
+        /**
+         * Stops the workers after the trie log each of them is validating.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        /**
+         * Waits for the workers to stop.
+         *
+         * @return true when the query ran to the end or to its limit, false when it was cancelled
+         * @throws IllegalStateException when a worker failed
+         */
+        public boolean await() {
+            try {
+                for (Future<?> range : ranges) {
+                    range.get();
+                }
+            } catch (InterruptedException e) {
+                cancel();
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted while waiting for the query", e);
+            } catch (ExecutionException e) {
+                cancel();
+                throw new IllegalStateException("trie log query failed", e.getCause());
+            }
+            log.info("Trie log query scanned {} trie logs and found {} matches in {} ms",
+                    getScanned(), getMatches(), System.currentTimeMillis() - start);
+            return !cancelled;
+        }
+
+        public boolean isDone() {
+            return executor.isTerminated();
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public long getScanned() {
+            return scanned.sum();
+        }
+
+        public int getMatches() {
+            return Math.min(matches.get(), limit);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package org.hyperledger.bela.trielog;
+
+import java.util.EnumSet;
+import java.util.Set;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.units.bigints.UInt256;
+import org.hyperledger.bela.utils.hacks.TrieLogLayerAccess;
+import org.hyperledger.besu.datatypes.Address;
+import org.hyperledger.besu.datatypes.Hash;
+import org.hyperledger.besu.ethereum.bonsai.TrieLogLayer;
+import org.hyperledger.besu.ethereum.rlp.RLP;
+import org.hyperledger.besu.ethereum.rlp.RLPInput;
+import org.hyperledger.besu.ethereum.worldstate.StateTrieAccountValue;
+
+/**
+ * Streams the changes of an encoded trie log to a {@link Visitor} without building the {@link TrieLogLayer}. Only the
+ * sections asked for are decoded, the others and the addresses the visitor is not interested in are skipped over, and
+ * reading stops at the first change the visitor stops at.
+ * <p>
+ * A trie log is a list of the block hash followed by one list per address holding its code change, account change and
+ * storage changes, each of them rlp null when the address has none. Trailing fields besu adds to these lists, like
+ * the cleared flag, are skipped.
+ */
+public class TrieLogReader {
+    public static final Set<Section> ALL_SECTIONS = EnumSet.allOf(Section.class);
+
+    public enum Section {
+        CODE,
+        ACCOUNT,
+        STORAGE
+    }
+
+    /**
+     * Receives the changes of a trie log, a change method returns true to stop reading. Prior and updated values are
+     * null when the account, code or slot did not exist.
+     */
+    public interface Visitor {
+        /**
+         * Asked before the changes of an address are read, its changes are skipped when it returns false. It can be
+         * asked more than once for the same address.
+         */
+        default boolean visitAddress(final Address address) {
+            return true;
+        }
+
+        default boolean visitCode(final Address address, final Bytes prior, final Bytes updated) {
+            return false;
+        }
+
+        default boolean visitAccount(final Address address, final StateTrieAccountValue prior, final StateTrieAccountValue updated) {
+            return false;
+        }
+
+        default boolean visitSlot(final Address address, final Hash slotHash, final UInt256 prior, final UInt256 updated) {
+            return false;
+        }
+    }
+
+    /**
+     * Reads the sections of an encoded trie log.
+     *
+     * @return true when the visitor stopped the reading
+     */
+    public static boolean read(final byte[] encoded, final Set<Section> sections, final Visitor visitor) {
+        final RLPInput input = RLP.input(Bytes.wrap(encoded));
+        input.enterList();
+        input.skipNext(); // block hash
+        while (!input.isEndOfCurrentList()) {
+            input.enterList();
+            final Address address = Address.wrap(input.readBytes());
+            final boolean wanted = visitor.visitAddress(address);
+            if (wanted && sections.contains(Section.CODE) && !input.nextIsNull()) {
+                input.enterList();
+                final Bytes prior = nullOrBytes(input);
+                final Bytes updated = nullOrBytes(input);
+                input.leaveListLenient();
+                if (visitor.visitCode(address, prior, updated)) {
+                    return true;
+                }
+            } else {
+                input.skipNext();
+            }
+            if (wanted && sections.contains(Section.ACCOUNT) && !input.nextIsNull()) {
+                input.enterList();
+                final StateTrieAccountValue prior = nullOrAccount(input);
+                final StateTrieAccountValue updated = nullOrAccount(input);
+                input.leaveListLenient();
+                if (visitor.visitAccount(address, prior, updated)) {
+                    return true;
+                }
+            } else {
+                input.skipNext();
+            }
+            if (wanted && sections.contains(Section.STORAGE) && !input.nextIsNull()) {
+                input.enterList();
+                while (!input.isEndOfCurrentList()) {
+                    input.enterList();
+                    final Hash slotHash = Hash.wrap(input.readBytes32());
+                    final UInt256 prior = nullOrScalar(input);
+                    final UInt256 updated = nullOrScalar(input);
+                    input.leaveListLenient();
+                    if (visitor.visitSlot(address, slotHash, prior, updated)) {
+                        return true;
+                    }
+                }
+                input.leaveList();
+            } else {
+                input.skipNext();
+            }
+            input.leaveListLenient();
+        }
+        return false;
+    }
+
+    /**
+     * Walks the sections of an already decoded layer the same way, the code, account and storage changes are visited
+     * one section after the other.
+     *
+     * @return true when the visitor stopped the walk
+     */
+    public static boolean read(final TrieLogLayer layer, final Set<Section> sections, final Visitor visitor) {
+        if (sections.contains(Section.CODE) && TrieLogLayerAccess.streamCodeChanges(layer).anyMatch(change ->
+                visitor.visitAddress(change.getKey())
+                        && visitor.visitCode(change.getKey(), change.getValue().getPrior(), change.getValue().getUpdated()))) {
+            return true;
+        }
+        if (sections.contains(Section.ACCOUNT) && TrieLogLayerAccess.streamAccountChanges(layer).anyMatch(change ->
+                visitor.visitAddress(change.getKey())
+                        && visitor.visitAccount(change.getKey(), change.getValue().getPrior(), change.getValue().getUpdated()))) {
+            return true;
+        }
+        return sections.contains(Section.STORAGE) && TrieLogLayerAccess.streamStorageChanges(layer).anyMatch(change ->
+                visitor.visitAddress(change.getKey()) && change.getValue().entrySet().stream().anyMatch(slot ->
+                        visitor.visitSlot(change.getKey(), slot.getKey(), slot.getValue().getPrior(), slot.getValue().getUpdated())));
+    }
+
+    private static Bytes nullOrBytes(final RLPInput input) {
+        if (input.nextIsNull()) {
+            input.skipNext();
+            return null;
+        }
+        return input.readBytes();
+    }
+
+    private static StateTrieAccountValue nullOrAccount(final RLPInput input) {
+        if (input.nextIsNull()) {
+            input.skipNext();
+            return null;
+        }
+        return StateTrieAccountValue.readFrom(input);
+    }
+
+    private static UInt256 nullOrScalar(final RLPInput input) {
+        if (input.nextIsNull()) {
+            input.skipNext();
+            return null;
+        }
+        return input.readUInt256Scalar();
+    }
+}
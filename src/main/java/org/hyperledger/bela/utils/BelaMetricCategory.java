@@ -0,0 +1,27 @@
+package org.hyperledger.bela.utils;
+
+import java.util.Optional;
+import org.hyperledger.besu.plugin.services.metrics.MetricCategory;
+
+/**
+ * Categories of the metrics bela registers itself, exported with a "bela_" prefix next to besu's.
+ */
+public enum BelaMetricCategory implements MetricCategory {
+    TRIE_NODE_CACHE("trie_node_cache");
+
+    private final String name;
+
+    BelaMetricCategory(final String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Optional<String> getApplicationPrefix() {
+        return Optional.of("bela_");
+    }
+}
@@ -14,14 +14,15 @@ import org.hyperledger.besu.ethereum.mainnet.MainnetBlockHeaderFunctions;
 import org.hyperledger.besu.ethereum.storage.StorageProvider;
 import org.hyperledger.besu.ethereum.storage.keyvalue.KeyValueStoragePrefixedKeyBlockchainStorage;
 import org.hyperledger.besu.ethereum.worldstate.DataStorageConfiguration;
-import org.hyperledger.besu.metrics.noop.NoOpMetricsSystem;
+import org.hyperledger.besu.plugin.services.MetricsSystem;
 import org.hyperledger.besu.plugin.services.storage.KeyValueStorage;
 
 import static org.hyperledger.besu.ethereum.storage.keyvalue.KeyValueSegmentIdentifier.BLOCKCHAIN;
 
 public class BlockChainContextFactory {
 
-    public static BlockChainContext createBlockChainContext(final StorageProvider provider) {
+    public static BlockChainContext createBlockChainContext(final StorageProvider provider,
+                                                           final MetricsSystem metricsSystem) {
         final KeyValueStorage keyValueStorage = provider.getStorageBySegmentIdentifier(BLOCKCHAIN);
         final CONSENSUS_TYPE consensusType = ConsensusDetector.detectConsensusMechanism(
                 keyValueStorage);
@@ -34,10 +35,10 @@ public class BlockChainContextFactory {
         var blockchainStorage = new KeyValueStoragePrefixedKeyBlockchainStorage(keyValueStorage,
                 blockHeaderFunction);
         var blockchain = DefaultBlockchain
-                .create(blockchainStorage, new NoOpMetricsSystem(), 0L);
+                .create(blockchainStorage, metricsSystem, 0L);
         var worldStateStorage = new BonsaiWorldStateKeyValueStorage(provider);
         var worldStateArchive = new BonsaiWorldStateArchive(provider, blockchain,
-            new CachedMerkleTrieLoader(new NoOpMetricsSystem()));
+            new CachedMerkleTrieLoader(metricsSystem));
 
         return new BlockChainContext(blockchain, worldStateStorage, worldStateArchive);
     }
@@ -0,0 +1,57 @@
+package org.hyperledger.bela.utils;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import kr.pe.kwonnam.slf4jlambda.LambdaLogger;
+import org.hyperledger.bela.components.BelaMetricsSystem;
+
+import static kr.pe.kwonnam.slf4jlambda.LambdaLoggerFactory.getLogger;
+
+/**
+ * Serves the metrics in the prometheus text format on http://127.0.0.1:port/metrics, only reachable from the machine
+ * bela runs on.
+ */
+public class MetricsHttpEndpoint implements AutoCloseable {
+    private static final LambdaLogger log = getLogger(MetricsHttpEndpoint.class);
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final BelaMetricsSystem metricsSystem;
+    private final HttpServer server;
+
+    public MetricsHttpEndpoint(final BelaMetricsSystem metricsSystem, final int port) throws IOException {
+        this.metricsSystem = metricsSystem;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", this::handle);
+        server.start();
+        log.info("Serving metrics on http://127.0.0.1:{}/metrics", getPort());
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            final StringWriter text = new StringWriter();
+            metricsSystem.writePrometheus(text);
+            final byte[] body = text.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
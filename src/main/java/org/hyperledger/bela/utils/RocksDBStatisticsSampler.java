@@ -0,0 +1,103 @@
+package org.hyperledger.bela.utils;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import org.hyperledger.bela.utils.hacks.RocksDBStorageAccess;
+import org.hyperledger.besu.ethereum.storage.StorageProvider;
+import org.hyperledger.besu.ethereum.storage.keyvalue.KeyValueSegmentIdentifier;
+import org.hyperledger.besu.plugin.services.storage.KeyValueStorage;
+import org.rocksdb.HistogramData;
+import org.rocksdb.HistogramType;
+import org.rocksdb.Statistics;
+import org.rocksdb.TickerType;
+
+/**
+ * Samples the tickers and histograms of a rocksdb {@link Statistics}. Counters are reported as totals since the
+ * database was opened, rates and the block cache hit rate over the time since the previous sample.
+ */
+public class RocksDBStatisticsSampler {
+    private static final TickerType[] TICKERS = {
+            TickerType.BLOCK_CACHE_HIT,
+            TickerType.BLOCK_CACHE_MISS,
+            TickerType.BYTES_READ,
+            TickerType.BYTES_WRITTEN,
+            TickerType.NUMBER_KEYS_READ,
+            TickerType.NUMBER_DB_SEEK,
+            TickerType.COMPACT_READ_BYTES,
+            TickerType.COMPACT_WRITE_BYTES,
+            TickerType.STALL_MICROS};
+    private static final HistogramType[] HISTOGRAMS = {
+            HistogramType.DB_GET,
+            HistogramType.DB_MULTIGET,
+            HistogramType.DB_SEEK,
+            HistogramType.COMPACTION_TIME};
+
+    private final Statistics statistics;
+    private final Map<TickerType, Long> previous = new EnumMap<>(TickerType.class);
+    private long previousTime;
+
+    public RocksDBStatisticsSampler(final Statistics statistics) {
+        this.statistics = statistics;
+    }
+
+    /**
+     * The sampler of the rocksdb database behind the provider, empty when it is not rocksdb.
+     */
+    public static Optional<RocksDBStatisticsSampler> forProvider(final StorageProvider provider) {
+        for (KeyValueSegmentIdentifier segment : KeyValueSegmentIdentifier.values()) {
+            try {
+                final KeyValueStorage storage = provider.getStorageBySegmentIdentifier(segment);
+                final Optional<Statistics> statistics = RocksDBStorageAccess.getStatistics(storage);
+                if (statistics.isPresent()) {
+                    return Optional.of(new RocksDBStatisticsSampler(statistics.get()));
+                }
+            } catch (RuntimeException e) {
+                // segment not opened, the statistics are the same for all of them
+            }
+        }
+        return Optional.empty();
+    }
+
+    public synchronized Map<String, Object> sample() {
+        final long now = System.currentTimeMillis();
+        final Map<TickerType, Long> tickers = new EnumMap<>(TickerType.class);
+        for (TickerType ticker : TICKERS) {
+            tickers.put(ticker, statistics.getTickerCount(ticker));
+        }
+        final Map<String, Object> sample = new LinkedHashMap<>();
+        final long hits = delta(tickers, TickerType.BLOCK_CACHE_HIT);
+        final long lookups = hits + delta(tickers, TickerType.BLOCK_CACHE_MISS);
+        sample.put("blockCacheHitRate", lookups == 0 ? 0.0 : Math.round(1000.0 * hits / lookups) / 10.0);
+        final double seconds = previousTime == 0 ? 0 : (now - previousTime) / 1000.0;
+        sample.put("bytesReadPerSecond", seconds == 0 ? 0 : (long) (delta(tickers, TickerType.BYTES_READ) / seconds));
+        sample.put("keysReadPerSecond", seconds == 0 ? 0 : (long) (delta(tickers, TickerType.NUMBER_KEYS_READ) / seconds));
+        sample.put("seeksPerSecond", seconds == 0 ? 0 : (long) (delta(tickers, TickerType.NUMBER_DB_SEEK) / seconds));
+        tickers.forEach((ticker, count) -> sample.put(name(ticker.name()), count));
+        for (HistogramType histogram : HISTOGRAMS) {
+            final HistogramData data = statistics.getHistogramData(histogram);
+            final String name = name(histogram.name()) + "Micros";
+            sample.put(name + "P50", data.getMedian());
+            sample.put(name + "P95", data.getPercentile95());
+            sample.put(name + "P99", data.getPercentile99());
+        }
+        previous.clear();
+        previous.putAll(tickers);
+        previousTime = now;
+        return sample;
+    }
+
+    private long delta(final Map<TickerType, Long> tickers, final TickerType ticker) {
+        return tickers.get(ticker) - previous.getOrDefault(ticker, 0L);
+    }
+
+    // BLOCK_CACHE_HIT -> blockCacheHit
+    private static String name(final String constant) {
+        final StringBuilder name = new StringBuilder();
+        for (String word : constant.toLowerCase().split("_")) {
+            name.append(name.length() == 0 ? word : Character.toUpperCase(word.charAt(0)) + word.substring(1));
+        }
+        return name.toString();
+    }
+}
@@ -1,31 +1,36 @@
 package org.hyperledger.bela.utils;
 
-import javax.annotation.Nonnull;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
 import java.util.prefs.Preferences;
-import java.util.stream.Collectors;
 import com.googlecode.lanterna.gui2.WindowBasedTextGUI;
 import kr.pe.kwonnam.slf4jlambda.LambdaLogger;
+import org.hyperledger.bela.components.BelaMetricsSystem;
 import org.hyperledger.bela.config.BelaConfigurationImpl;
+import org.hyperledger.bela.config.RocksDBTuning;
 import org.hyperledger.bela.converter.RocksDBKeyValueStorageConverterFactory;
-import org.hyperledger.bela.dialogs.BelaDialog;
 import org.hyperledger.bela.dialogs.NonClosableMessage;
-import org.hyperledger.bela.dialogs.ProgressBarPopup;
+import org.hyperledger.bela.trie.TrieNodeCache;
 import org.hyperledger.bela.utils.hacks.ReadOnlyDatabaseDecider;
+import org.hyperledger.bela.utils.hacks.RocksDBTuningDecider;
 import org.hyperledger.besu.ethereum.storage.StorageProvider;
 import org.hyperledger.besu.ethereum.storage.keyvalue.KeyValueSegmentIdentifier;
 import org.hyperledger.besu.ethereum.storage.keyvalue.KeyValueStorageProviderBuilder;
-import org.hyperledger.besu.metrics.noop.NoOpMetricsSystem;
+import org.hyperledger.besu.plugin.services.storage.KeyValueStorage;
 import org.hyperledger.besu.plugin.services.storage.SegmentIdentifier;
 import org.hyperledger.besu.plugin.services.storage.rocksdb.RocksDBMetricsFactory;
 import org.hyperledger.besu.plugin.services.storage.rocksdb.configuration.RocksDBCLIOptions;
 import org.hyperledger.besu.plugin.services.storage.rocksdb.configuration.RocksDBFactoryConfiguration;
-import org.jetbrains.annotations.NotNull;
+import org.rocksdb.Options;
+import org.rocksdb.RocksDB;
 import org.rocksdb.RocksDBException;
 
 import static kr.pe.kwonnam.slf4jlambda.LambdaLoggerFactory.getLogger;
@@ -42,21 +47,102 @@ public class StorageProviderFactory implements AutoCloseable {
 
     private final Preferences preferences;
     private final WindowBasedTextGUI gui;
+    private final TrieNodeCache trieNodeCache = new TrieNodeCache();
+    private final BelaMetricsSystem metricsSystem = new BelaMetricsSystem();
     private StorageProvider provider;
     private Path dataPath;
     private Path storagePath;
+    private boolean readOnly;
+    private RocksDBTuning tuning;
+    private final Set<SegmentIdentifier> openSegments = new HashSet<>();
+    // leases on the open provider, it is not reopened while any is held
+    private int users;
 
     public StorageProviderFactory(final WindowBasedTextGUI gui, final Preferences preferences) {
         this.preferences=preferences;
         this.gui = gui;
+        metricsSystem.createLongGauge(BelaMetricCategory.TRIE_NODE_CACHE, "hits", "Trie node cache hits", trieNodeCache::getHits);
+        metricsSystem.createLongGauge(BelaMetricCategory.TRIE_NODE_CACHE, "misses", "Trie node cache misses", trieNodeCache::getMisses);
+        metricsSystem.createLongGauge(BelaMetricCategory.TRIE_NODE_CACHE, "nodes", "Trie nodes in the cache", trieNodeCache::getSize);
+        metricsSystem.createLongGauge(BelaMetricCategory.TRIE_NODE_CACHE, "weight_bytes", "Estimated bytes of the cached trie nodes", trieNodeCache::getWeight);
     }
 
+    /**
+     * Factory for the headless commands, no message or progress popups are shown.
+     */
+    public StorageProviderFactory(final Preferences preferences) {
+        this(null, preferences);
+    }
+
+    /**
+     * The provider of the configured database with all of its segments, opened once and shared by every caller.
+     */
     public StorageProvider createProvider() {
-        Path data = Path.of(preferences.get(DATA_PATH, DATA_PATH_DEFAULT));
-        Path storage = Path.of(preferences.get(STORAGE_PATH, STORAGE_PATH_DEFAULT));
-        if (data.equals(dataPath) && storage.equals(storagePath) && provider != null) {
+        return createProvider(List.of(), preferences.getBoolean(READ_ONLY_DB, true));
+    }
+
+    /**
+     * The shared provider when it is open on the configured database with the requested segments, in the requested mode
+     * or read-write. Otherwise the database is reopened with all of its segments, which keeps the block and table caches
+     * of the previous instance from being reused, so it is refused while the provider is leased.
+     *
+     * @param listOfSegments segments the caller needs, on top of the segments present in the database
+     * @throws IllegalStateException when the database has to be reopened while the provider is leased
+     */
+    public synchronized StorageProvider createProvider(final List<SegmentIdentifier> listOfSegments, final boolean readOnly) {
+        final Path data = getDataPath();
+        final Path storage = Path.of(preferences.get(STORAGE_PATH, STORAGE_PATH_DEFAULT));
+        final RocksDBTuning requestedTuning = RocksDBTuning.fromPreferences(preferences);
+        if (provider != null && data.equals(dataPath) && storage.equals(storagePath) && requestedTuning.equals(tuning)
+                && (readOnly || !this.readOnly) && openSegments.containsAll(listOfSegments)) {
             return provider;
         }
+        if (users > 0) {
+            throw new IllegalStateException("The database is in use by " + users + " task(s), stop them before reopening it");
+        }
+        closeProvider();
+
+        final NonClosableMessage nonClosableMessage = gui == null ? null : NonClosableMessage.showMessage(gui, "Creating storage provider...");
+        try {
+            final Set<SegmentIdentifier> segments = new LinkedHashSet<>(preferences.getBoolean(DETECT_COLUMNS, true)
+                    ? detect()
+                    : Arrays.asList(KeyValueSegmentIdentifier.values()));
+            segments.addAll(listOfSegments);
+
+            ReadOnlyDatabaseDecider.getInstance().setReadOnly(readOnly);
+            RocksDBTuningDecider.getInstance().setTuning(requestedTuning);
+            provider = createKeyValueStorageProvider(data, storage, new ArrayList<>(segments), requestedTuning);
+            if (provider == null) {
+                throw new RuntimeException("Could not create provider....");
+            }
+            dataPath = data;
+            storagePath = storage;
+            this.readOnly = readOnly;
+            tuning = requestedTuning;
+            openSegments.addAll(segments);
+            log.info("Opened {} {} with segments {} and {}", storage, readOnly ? "read-only" : "read-write", segments, requestedTuning);
+            return provider;
+        } finally {
+            if (nonClosableMessage != null) {
+                gui.removeWindow(nonClosableMessage);
+            }
+        }
+    }
+
+    /**
+     * Holds the shared provider open until the lease is closed, for tasks running in the background.
+     */
+    public synchronized Lease lease() {
+        final StorageProvider leased = createProvider();
+        users++;
+        return new Lease(leased);
+    }
+
+    private synchronized void release() {
+        users--;
+    }
+
+    private void closeProvider() {
         if (provider != null) {
             try {
                 provider.close();
@@ -64,139 +150,131 @@ public class StorageProviderFactory implements AutoCloseable {
                 throw new RuntimeException(e);
             }
         }
-        dataPath = data;
-        storagePath = storage;
-
-        final NonClosableMessage nonClosableMessage = NonClosableMessage.showMessage(gui, "Creating storage provider...");
-        ReadOnlyDatabaseDecider.getInstance().setReadOnly(preferences.getBoolean(READ_ONLY_DB,true));
-
-        if (preferences.getBoolean(DETECT_COLUMNS, true)) {
-            provider = createKeyValueStorageProvider(dataPath, storagePath, detect());
-        } else {
-            provider = createKeyValueStorageProvider(dataPath, storagePath, Arrays.asList(KeyValueSegmentIdentifier.values()));
-
-        }
-        gui.removeWindow(nonClosableMessage);
-        if (provider == null) {
-            throw new RuntimeException("Could not create provider....");
-        }
-        return provider;
+        provider = null;
+        dataPath = null;
+        storagePath = null;
+        openSegments.clear();
+        trieNodeCache.invalidateAll();
     }
 
-    private static StorageProvider createKeyValueStorageProvider(
-            final Path dataDir, final Path dbDir, final List<SegmentIdentifier> segments) {
+    private StorageProvider createKeyValueStorageProvider(
+            final Path dataDir, final Path dbDir, final List<SegmentIdentifier> segments, final RocksDBTuning tuning) {
         return new KeyValueStorageProviderBuilder()
                 .withStorageFactory(
                         new RocksDBKeyValueStorageConverterFactory(
                                 () ->
                                         new RocksDBFactoryConfiguration(
-                                                RocksDBCLIOptions.DEFAULT_MAX_OPEN_FILES,
+                                                tuning.getMaxOpenFiles(),
                                                 RocksDBCLIOptions.DEFAULT_MAX_BACKGROUND_COMPACTIONS,
                                                 RocksDBCLIOptions.DEFAULT_BACKGROUND_THREAD_COUNT,
-                                                RocksDBCLIOptions.DEFAULT_CACHE_CAPACITY,
+                                                tuning.getBlockCacheSize(),
                                                 RocksDBCLIOptions.DEFAULT_IS_HIGH_SPEC),
                                 segments,
                                 RocksDBMetricsFactory.PUBLIC_ROCKS_DB_METRICS))
                 .withCommonConfiguration(new BelaConfigurationImpl(dataDir, dbDir))
-                .withMetricsSystem(new NoOpMetricsSystem())
+                .withMetricsSystem(metricsSystem)
                 .build();
     }
 
-    public Path getDataPath() {
-        return dataPath;
+    /**
+     * Applies the function to the shared provider when the database is open, without opening it. The database is not
+     * closed or reopened until the function returns, so it can read native rocksdb objects like the statistics. Only
+     * for short reads, every other use of the factory waits for it.
+     *
+     * @return the result of the function, empty when the database is not open or the function returned null
+     */
+    public synchronized <T> Optional<T> withOpenProvider(final Function<StorageProvider, T> function) {
+        return Optional.ofNullable(provider).map(function);
     }
 
-    @Override
-    public void close() throws IOException {
-        if (provider != null) {
-            provider.close();
-        }
-        dataPath = null;
-        storagePath = null;
+    /**
+     * Metrics of the databases opened by this factory and of everything built on them.
+     */
+    public BelaMetricsSystem getMetricsSystem() {
+        return metricsSystem;
     }
 
-    public StorageProvider createProvider(final List<SegmentIdentifier> listOfSegments, final boolean readOnly) {
-        if (provider != null) {
-            try {
-                provider.close();
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-        }
-
-        ReadOnlyDatabaseDecider.getInstance().setReadOnly(readOnly);
-
-        dataPath = Path.of(preferences.get(DATA_PATH, DATA_PATH_DEFAULT));
-        storagePath = Path.of(preferences.get(STORAGE_PATH, STORAGE_PATH_DEFAULT));
-
-        provider = createKeyValueStorageProvider(dataPath, storagePath, listOfSegments);
-        if (provider == null) {
-            throw new RuntimeException("Could not create provider....");
-        }
-        return provider;
+    /**
+     * The configured data directory, known before a provider is opened on it.
+     */
+    public Path getDataPath() {
+        return Path.of(preferences.get(DATA_PATH, DATA_PATH_DEFAULT));
     }
 
-    public List<SegmentIdentifier> detectReadWrite() {
-        try (StorageProvider ignored = createWritableProvider(new ArrayList<>())) {
-            close();
-            return new ArrayList<>();
-        } catch (Exception e) {
-            final List<Byte> columns = parseColumns(e);
-            final KeyValueSegmentIdentifier[] values = KeyValueSegmentIdentifier.values();
-            return columns.stream().map(aByte -> values[aByte - 1]).collect(Collectors.toList());
-        }
+    /**
+     * Decoded trie nodes of the current database, for the storage browser which reads the same nodes over and over.
+     */
+    public TrieNodeCache getTrieNodeCache() {
+        return trieNodeCache;
     }
 
-    private List<SegmentIdentifier> detect() {
-        if (preferences.getBoolean(READ_ONLY_DB,true)) {
-            return detectReadOnly();
-        } else {
-            return detectReadWrite();
+    /**
+     * Closes the shared provider, the next caller reopens the database.
+     *
+     * @throws IllegalStateException when the provider is leased
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (users > 0) {
+            throw new IllegalStateException("The database is in use by " + users + " task(s), stop them before closing it");
         }
+        closeProvider();
     }
 
-    private List<SegmentIdentifier> detectReadOnly() {
-        final SegmentIdentifier[] listOfSegments = KeyValueSegmentIdentifier.values();
-        final ProgressBarPopup progress = ProgressBarPopup.showPopup(gui, "Detecting DB Segments", listOfSegments.length);
+    /**
+     * Lists the segments present in the database from its column families, without opening it.
+     */
+    public List<SegmentIdentifier> detect() {
+        final Path storage = Path.of(preferences.get(STORAGE_PATH, STORAGE_PATH_DEFAULT));
+        final List<byte[]> columnFamilies;
+        RocksDB.loadLibrary();
+        try (Options options = new Options()) {
+            columnFamilies = RocksDB.listColumnFamilies(options, storage.toString());
+        } catch (RocksDBException e) {
+            throw new RuntimeException("Could not list the column families of " + storage, e);
+        }
         final List<SegmentIdentifier> detectedSegments = new ArrayList<>();
-
-        for (SegmentIdentifier segment : listOfSegments) {
-            try (StorageProvider testProvider = createProvider(Collections.singletonList(segment), true)) {
+        for (KeyValueSegmentIdentifier segment : KeyValueSegmentIdentifier.values()) {
+            if (columnFamilies.stream().anyMatch(name -> Arrays.equals(name, segment.getId()))) {
                 detectedSegments.add(segment);
-            } catch (Exception e) {
-                log.info("Could not access segment {} ({})", segment, e.getMessage());
-            } finally {
-                progress.increment();
             }
         }
-        progress.close();
+        log.info("Detected segments {} from {} column families", detectedSegments, columnFamilies.size());
         return detectedSegments;
     }
 
-    private StorageProvider createWritableProvider(final List<SegmentIdentifier> listOfSegments) {
-        return createProvider(listOfSegments, false);
+    public StorageProvider createProvider(final List<SegmentIdentifier> listOfSegments) {
+        return createProvider(listOfSegments,preferences.getBoolean(READ_ONLY_DB,true));
     }
 
-    @NotNull
-    private List<Byte> parseColumns(@Nonnull final Exception e) {
-        Throwable cause = e;
-        while (cause != null && !(cause instanceof RocksDBException)) {
-            cause = cause.getCause();
+    /**
+     * A use of the shared provider, see {@link #lease()}.
+     */
+    public class Lease implements AutoCloseable {
+        private final StorageProvider provider;
+        private boolean closed;
+
+        private Lease(final StorageProvider provider) {
+            this.provider = provider;
         }
-        if (cause == null || cause.getMessage() == null || !cause.getMessage()
-                .startsWith("Column families not opened: ")) {
-            throw new RuntimeException(e);
+
+        public StorageProvider getProvider() {
+            return provider;
         }
-        byte[] bytes = cause.getMessage().getBytes();
-        List<Byte> columns = new ArrayList<>();
-        for (int i = 28 /*Column families not opened: */; i < bytes.length; i += 3 /* ,*/) {
-            columns.add(bytes[i]);
+
+        /**
+         * The view of a single segment of the shared database.
+         */
+        public KeyValueStorage getStorage(final SegmentIdentifier segment) {
+            return provider.getStorageBySegmentIdentifier(segment);
         }
-        log.info("Columns: {}", columns);
-        return columns;
-    }
 
-    public StorageProvider createProvider(final List<SegmentIdentifier> listOfSegments) {
-        return createProvider(listOfSegments,preferences.getBoolean(READ_ONLY_DB,true));
+        @Override
+        public synchronized void close() {
+            if (!closed) {
+                closed = true;
+                release();
+            }
+        }
     }
 }
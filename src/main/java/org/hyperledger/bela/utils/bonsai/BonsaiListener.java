@@ -4,6 +4,10 @@ import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.bytes.Bytes32;
 import org.hyperledger.besu.datatypes.Hash;
 
+/**
+ * Receives the findings of a trie traversal. When the traversal runs with a parallelism greater than one the
+ * callbacks are invoked concurrently from the worker threads.
+ */
 public interface BonsaiListener {
     void root(Bytes32 hash);
 
@@ -15,6 +19,15 @@ public interface BonsaiListener {
 
     void visited(final BonsaiTraversalTrieType type);
 
+    /**
+     * Nodes the interrupted run visited before its checkpoint, reported once when a traversal resumes from it.
+     */
+    default void visited(final BonsaiTraversalTrieType type, final long count) {
+        for (long i = 0; i < count; i++) {
+            visited(type);
+        }
+    }
+
     void missingAccountTrieForHash(Bytes32 hash, Bytes location);
 
     void invalidAccountTrieForHash(Bytes32 hash, Bytes location, Hash foundHashNode);
@@ -26,4 +39,12 @@ public interface BonsaiListener {
     void differentDataInFlatDatabaseForAccount(Hash accountHash);
 
     void differentDataInFlatDatabaseForStorage(Bytes32 accountHash, Bytes32 hash);
+
+    void missingAccountInFlatDatabase(Hash accountHash);
+
+    void accountOnlyInFlatDatabase(Hash accountHash);
+
+    void missingStorageInFlatDatabase(Bytes32 accountHash, Bytes32 slotHash);
+
+    void storageOnlyInFlatDatabase(Bytes32 accountHash, Bytes32 slotHash);
 }
@@ -1,12 +1,27 @@
 package org.hyperledger.bela.utils.bonsai;
 
 import javax.annotation.Nullable;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 import kr.pe.kwonnam.slf4jlambda.LambdaLogger;
 import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.bytes.Bytes32;
+import org.hyperledger.bela.trie.TrieNodeCache;
+import org.hyperledger.bela.utils.hacks.RocksDBStorageAccess;
 import org.hyperledger.besu.datatypes.Hash;
 import org.hyperledger.besu.ethereum.rlp.RLP;
 import org.hyperledger.besu.ethereum.storage.StorageProvider;
@@ -23,23 +38,90 @@ import static org.hyperledger.besu.ethereum.trie.CompactEncoding.bytesToPath;
 
 public class BonsaiTraversal {
     private static final LambdaLogger log = getLogger(BonsaiTraversal.class);
+    // storage tries are only split across workers near their root, deeper subtrees are walked by a single worker
+    private static final int STORAGE_SPLIT_DEPTH = 2;
+    // storage tries estimated above this many slots are split deeper, down to subtrees of about 16^3 slots
+    private static final long LARGE_STORAGE_SLOTS = 1L << 20;
+    private static final int MAX_STORAGE_SPLIT_DEPTH = 5;
+    // a merge-joined split range owns an iterator over the flat storage, at most this many ranges per worker are opened
+    private static final int MERGED_RANGES_PER_WORKER = 16;
+    // a storage trie is only probed for its size when its first levels are (nearly) full branches
+    private static final int PROBED_LEVELS = 2;
+    private static final int FULL_FAN_OUT = 14;
+    private static final long CHECKPOINT_INTERVAL_SECONDS = 30;
     private final KeyValueStorage accountStorage;
     private final KeyValueStorage storageStorage;
     private final KeyValueStorage trieBranchStorage;
     private final BonsaiListener listener;
+    private final BonsaiListener resultListener;
     private final KeyValueStorage codeStorage;
-    int visited = 0;
+    private final int parallelism;
+    private final FlatDatabaseCheck flatDatabaseCheck;
+    private final TrieNodeCache cache;
+    private final BonsaiTraversalCheckpoint checkpoint;
     private Node<Bytes> root;
     private volatile boolean shouldStop = false;
+    private volatile ForkJoinPool pool;
+    private final Map<Bytes32, StorageTrieProgress> largeStorageTries = new ConcurrentHashMap<>();
 
     public BonsaiTraversal(final StorageProvider provider, BonsaiListener listener) {
+        this(provider, listener, 1);
+    }
+
+    /**
+     * @param parallelism number of fork-join workers used to walk the tries, 1 keeps the traversal on the calling thread
+     */
+    public BonsaiTraversal(final StorageProvider provider, BonsaiListener listener, final int parallelism) {
+        this(provider, listener, parallelism, null);
+    }
+
+    /**
+     * @param checkpointFile side file used to periodically save the progress and to resume from it, null disables checkpoints
+     */
+    public BonsaiTraversal(final StorageProvider provider, BonsaiListener listener, final int parallelism, @Nullable final Path checkpointFile) {
+        this(provider, listener, parallelism, checkpointFile, FlatDatabaseCheck.LOOKUP);
+    }
+
+    /**
+     * @param flatDatabaseCheck how the flat database is compared with the trie, a merge join only applies to full traversals
+     */
+    public BonsaiTraversal(
+            final StorageProvider provider,
+            BonsaiListener listener,
+            final int parallelism,
+            @Nullable final Path checkpointFile,
+            final FlatDatabaseCheck flatDatabaseCheck) {
+        this(provider, listener, parallelism, checkpointFile, flatDatabaseCheck, null);
+    }
+
+    /**
+     * @param cache decoded trie nodes of the same database, null reads every node. A traversal reads every node
+     *              once, so a cache only pays off when it is kept across repeated reads of the same nodes
+     */
+    public BonsaiTraversal(
+            final StorageProvider provider,
+            BonsaiListener listener,
+            final int parallelism,
+            @Nullable final Path checkpointFile,
+            final FlatDatabaseCheck flatDatabaseCheck,
+            @Nullable final TrieNodeCache cache) {
         accountStorage = provider.getStorageBySegmentIdentifier(KeyValueSegmentIdentifier.ACCOUNT_INFO_STATE);
         codeStorage = provider.getStorageBySegmentIdentifier(KeyValueSegmentIdentifier.CODE_STORAGE);
         storageStorage = provider.getStorageBySegmentIdentifier(KeyValueSegmentIdentifier.ACCOUNT_STORAGE_STORAGE);
         trieBranchStorage =
                 provider.getStorageBySegmentIdentifier(KeyValueSegmentIdentifier.TRIE_BRANCH_STORAGE);
 
-        this.listener = listener;
+        this.parallelism = Math.max(1, parallelism);
+        this.flatDatabaseCheck = flatDatabaseCheck;
+        this.cache = cache;
+        this.resultListener = listener;
+        if (checkpointFile == null) {
+            this.checkpoint = null;
+            this.listener = listener;
+        } else {
+            this.checkpoint = new BonsaiTraversalCheckpoint(checkpointFile);
+            this.listener = checkpoint.record(listener);
+        }
     }
 
     public void traverse() {
@@ -65,12 +147,105 @@ public class BonsaiTraversal {
             log.info("Root is null");
             return;
         }
-        log.info("Starting from root {}", node.getHash());
+        log.info("Starting from root {} with parallelism {}", node.getHash(), parallelism);
         listener.root(node.getHash());
-        traverseAccountTrie(node);
+        if (checkpoint == null) {
+            run(node);
+            return;
+        }
+        if (checkpoint.start(node.getHash())) {
+            checkpoint.replay(resultListener);
+        }
+        final ScheduledExecutorService checkpointWriter = Executors.newSingleThreadScheduledExecutor();
+        checkpointWriter.scheduleWithFixedDelay(checkpoint::save, CHECKPOINT_INTERVAL_SECONDS, CHECKPOINT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        boolean finished = false;
+        try {
+            run(node);
+            finished = !shouldStop;
+        } finally {
+            checkpointWriter.shutdownNow();
+            if (finished) {
+                checkpoint.delete();
+            } else {
+                checkpoint.save();
+            }
+        }
+    }
+
+    private void run(final Node<Bytes> node) {
+        final Runnable traversal = flatDatabaseCheck == FlatDatabaseCheck.MERGE_JOIN && node.getLocation().orElseThrow().isEmpty()
+                ? () -> traverseMergeJoin(node)
+                : () -> traverseAccountTrie(node);
+        if (parallelism == 1) {
+            traversal.run();
+            return;
+        }
+        pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(ForkJoinTask.adapt(traversal));
+        } finally {
+            pool.shutdownNow();
+            pool = null;
+        }
+    }
+
+    /**
+     * Walks the whole trie in key order next to sequential iterators over the flat database. Each subtree of the root
+     * is a separate task with its own range of the flat database, within a subtree everything is walked in order.
+     */
+    private void traverseMergeJoin(final Node<Bytes> root) {
+        final List<Node<Bytes>> nodes = TrieNodeDecoder.decodeNodes(Bytes.EMPTY, root.getRlp());
+        final Map<Bytes, Node<Bytes>> children = new HashMap<>();
+        nodes.stream()
+                .filter(node -> nodeIsHashReferencedDescendant(root, node))
+                .forEach(child -> children.put(child.getLocation().orElseThrow(), child));
+        if (nodes.size() != children.size() + 1 || children.keySet().stream().anyMatch(location -> location.size() != 1)) {
+            // not a plain branch, the trie is small enough to be merged in one go
+            try (FlatDatabaseRange range = new FlatDatabaseRange(Bytes.EMPTY)) {
+                traverseAccountTrie(root, range);
+            }
+            return;
+        }
+        listener.visited(BonsaiTraversalTrieType.Account);
+        final List<ForkJoinTask<?>> subTasks = new ArrayList<>();
+        for (int nibble = 0; nibble < 16; nibble++) {
+            final Bytes location = Bytes.of(nibble);
+            if (isCompleted(location)) {
+                continue;
+            }
+            final Node<Bytes> child = children.get(location);
+            fork(subTasks, () -> {
+                try (FlatDatabaseRange range = new FlatDatabaseRange(location)) {
+                    final Node<Bytes> subtree = child == null ? null : getAccountNodeValue(child.getHash(), location);
+                    if (subtree != null) {
+                        traverseAccountTrie(subtree, range);
+                    } else if (!shouldStop) {
+                        if (child == null) {
+                            // nothing in the trie for this range, whatever is in the flat database is left over
+                            range.advancePast(location);
+                        } else {
+                            // the subtree could not be read, its flat entries cannot be told apart from left overs
+                            range.skipPast(location);
+                        }
+                        markCompleted(location);
+                    }
+                }
+            });
+        }
+        join(subTasks);
+        if (!shouldStop) {
+            markCompleted(Bytes.EMPTY);
+        }
     }
 
     public void traverseAccountTrie(final Node<Bytes> parentNode) {
+        traverseAccountTrie(parentNode, null);
+    }
+
+    /**
+     * @param range flat database range the leaves are merged with, null looks up every leaf instead
+     */
+    private void traverseAccountTrie(final Node<Bytes> parentNode, @Nullable final FlatDatabaseRange range) {
         if (shouldStop) {
             return;
         }
@@ -78,61 +253,230 @@ public class BonsaiTraversal {
             return;
         }
 
-        final List<Node<Bytes>> nodes =
-                TrieNodeDecoder.decodeNodes(parentNode.getLocation().orElseThrow(), parentNode.getRlp());
-        nodes.forEach(
-                node -> {
-                    if (nodeIsHashReferencedDescendant(parentNode, node)) {
-                        traverseAccountTrie(
-                                getAccountNodeValue(node.getHash(), node.getLocation().orElseThrow()));
-                    } else {
-                        if (node.getValue().isPresent()) {
-                            final StateTrieAccountValue accountValue =
-                                    StateTrieAccountValue.readFrom(RLP.input(node.getValue().orElseThrow()));
-                            final Hash accountHash =
-                                    Hash.wrap(
-                                            Bytes32.wrap(
-                                                    CompactEncoding.pathToBytes(
-                                                            Bytes.concatenate(
-                                                                    parentNode.getLocation()
-                                                                            .orElseThrow(), node.getPath()))));
-                            // check the account in the flat database
-                            final Optional<Bytes> accountInFlatDB = accountStorage.get(accountHash.toArrayUnsafe())
-                                    .map(Bytes::wrap);
-                            if (accountInFlatDB.isPresent() && !accountInFlatDB.get()
-                                    .equals(node.getValue().orElseThrow())) {
-                                listener.differentDataInFlatDatabaseForAccount(accountHash);
-                            }
-                            // Add code, if appropriate
-                            if (!accountValue.getCodeHash().equals(Hash.EMPTY)) {
-                                // traverse code
-                                final Optional<Bytes> code =
-                                        codeStorage.get(accountHash.toArrayUnsafe()).map(Bytes::wrap);
-                                if (code.isEmpty()) {
-                                    listener.missingCodeHash(accountValue.getCodeHash(), accountHash);
-                                } else {
-                                    final Hash foundCodeHash = Hash.hash(code.orElseThrow());
-                                    if (!foundCodeHash.equals(accountValue.getCodeHash())) {
-                                        listener.invalidCode(accountHash, accountValue.getCodeHash(), foundCodeHash);
-                                    }
-                                }
-                            }
-                            // Add storage, if appropriate
-                            if (!accountValue.getStorageRoot().equals(MerklePatriciaTrie.EMPTY_TRIE_NODE_HASH)) {
-                                traverseStorageTrie(
-                                        accountHash,
-                                        getStorageNodeValue(accountValue.getStorageRoot(), accountHash, Bytes.EMPTY));
-                            }
-                        } else if (nodes.size() > 1 && node.getHash().equals(parentNode.getHash())) {
-                            listener.visited(BonsaiTraversalTrieType.Account);
-                        } else {
-                            listener.missingValueForNode(node.getHash());
-                        }
+        final List<Node<Bytes>> nodes = decodeNodes(parentNode, range != null);
+        final List<Node<Bytes>> references = new ArrayList<>();
+        nodes.forEach(node -> {
+            if (nodeIsHashReferencedDescendant(parentNode, node) && !isCompleted(node.getLocation().orElseThrow())) {
+                references.add(node);
+            }
+        });
+        final List<Node<Bytes>> resolved = getAccountNodeValues(references);
+        final List<ForkJoinTask<?>> subTasks = new ArrayList<>();
+        final List<Node<Bytes>> leaves = new ArrayList<>();
+        int next = 0;
+        for (Node<Bytes> node : nodes) {
+            if (nodeIsHashReferencedDescendant(parentNode, node)) {
+                if (next == references.size() || references.get(next) != node) {
+                    // completed in a previous run
+                    if (range != null) {
+                        verifyAccountLeaves(leaves, subTasks, range);
+                        range.skipPast(node.getLocation().orElseThrow());
                     }
-                });
+                    continue;
+                }
+                final Node<Bytes> child = resolved.get(next++);
+                if (child == null) {
+                    if (range != null) {
+                        // the missing subtree is reported, its flat entries are not reported once more as left overs
+                        verifyAccountLeaves(leaves, subTasks, range);
+                        range.skipPast(node.getLocation().orElseThrow());
+                    }
+                    continue;
+                }
+                if (child.getValue().isPresent()) {
+                    // leaves are verified together with their siblings instead of one lookup each
+                    leaves.add(child);
+                } else if (range != null) {
+                    // the merge needs the leaves in key order, the ones before this subtree go first
+                    verifyAccountLeaves(leaves, subTasks, range);
+                    traverseAccountTrie(child, range);
+                } else {
+                    fork(subTasks, () -> traverseAccountTrie(child, null));
+                }
+            } else if (node.getValue().isPresent()) {
+                leaves.add(node);
+            } else if (nodes.size() > 1 && node.getHash().equals(parentNode.getHash())) {
+                listener.visited(BonsaiTraversalTrieType.Account);
+            } else {
+                listener.missingValueForNode(node.getHash());
+            }
+        }
+        verifyAccountLeaves(leaves, subTasks, range);
+        join(subTasks);
+        if (!shouldStop) {
+            if (range != null) {
+                range.advancePast(parentNode.getLocation().orElseThrow());
+            }
+            markCompleted(parentNode.getLocation().orElseThrow());
+        }
+    }
+
+    /**
+     * Verifies the leaves collected so far and clears the list.
+     */
+    private void verifyAccountLeaves(
+            final List<Node<Bytes>> leaves, final List<ForkJoinTask<?>> subTasks, @Nullable final FlatDatabaseRange range) {
+        if (leaves.isEmpty()) {
+            return;
+        }
+        final List<Hash> accountHashes = new ArrayList<>(leaves.size());
+        final List<StateTrieAccountValue> accountValues = new ArrayList<>(leaves.size());
+        for (Node<Bytes> leaf : leaves) {
+            accountHashes.add(
+                    Hash.wrap(
+                            Bytes32.wrap(
+                                    CompactEncoding.pathToBytes(
+                                            Bytes.concatenate(leaf.getLocation().orElseThrow(), leaf.getPath())))));
+            accountValues.add(StateTrieAccountValue.readFrom(RLP.input(leaf.getValue().orElseThrow())));
+        }
+        // check the accounts in the flat database
+        if (range != null) {
+            for (int i = 0; i < leaves.size(); i++) {
+                range.accounts.verify(accountHashes.get(i), leaves.get(i).getValue().orElseThrow());
+            }
+        } else {
+            final List<Optional<Bytes>> accountsInFlatDB =
+                    multiGet(accountStorage, accountHashes.stream().map(Hash::toArrayUnsafe).collect(Collectors.toList()));
+            for (int i = 0; i < leaves.size(); i++) {
+                final Optional<Bytes> accountInFlatDB = accountsInFlatDB.get(i);
+                if (accountInFlatDB.isPresent() && !accountInFlatDB.get().equals(leaves.get(i).getValue().orElseThrow())) {
+                    listener.differentDataInFlatDatabaseForAccount(accountHashes.get(i));
+                }
+            }
+        }
+        final List<Integer> withCode = new ArrayList<>();
+        for (int i = 0; i < leaves.size(); i++) {
+            if (!accountValues.get(i).getCodeHash().equals(Hash.EMPTY)) {
+                withCode.add(i);
+            }
+        }
+        // traverse code
+        final List<Optional<Bytes>> codes =
+                multiGet(codeStorage, withCode.stream().map(i -> accountHashes.get(i).toArrayUnsafe()).collect(Collectors.toList()));
+        for (int c = 0; c < withCode.size(); c++) {
+            final Hash accountHash = accountHashes.get(withCode.get(c));
+            final StateTrieAccountValue accountValue = accountValues.get(withCode.get(c));
+            final Optional<Bytes> code = codes.get(c);
+            if (code.isEmpty()) {
+                listener.missingCodeHash(accountValue.getCodeHash(), accountHash);
+            } else {
+                final Hash foundCodeHash = Hash.hash(code.orElseThrow());
+                if (!foundCodeHash.equals(accountValue.getCodeHash())) {
+                    listener.invalidCode(accountHash, accountValue.getCodeHash(), foundCodeHash);
+                }
+            }
+        }
+        // Add storage, if appropriate
+        for (int i = 0; i < leaves.size(); i++) {
+            final Hash accountHash = accountHashes.get(i);
+            final StateTrieAccountValue accountValue = accountValues.get(i);
+            if (range != null) {
+                // flat storage before this account belongs to no account of the trie
+                range.storage.advanceTo(accountHash);
+            }
+            if (!accountValue.getStorageRoot().equals(MerklePatriciaTrie.EMPTY_TRIE_NODE_HASH)) {
+                if (range != null) {
+                    traverseStorageTrieFromRoot(accountHash, accountValue.getStorageRoot(), range.storage);
+                } else {
+                    fork(subTasks, () -> traverseStorageTrieFromRoot(accountHash, accountValue.getStorageRoot(), null));
+                }
+            }
+        }
+        leaves.clear();
+    }
+
+    private boolean isCompleted(final Bytes location) {
+        return checkpoint != null && checkpoint.isCompleted(location);
+    }
+
+    private void markCompleted(final Bytes location) {
+        if (checkpoint != null) {
+            checkpoint.markCompleted(location);
+        }
     }
 
     public void traverseStorageTrie(final Bytes32 accountHash, final Node<Bytes> parentNode) {
+        traverseStorageTrie(accountHash, parentNode, null, STORAGE_SPLIT_DEPTH, null);
+    }
+
+    /**
+     * Traverses the storage trie of an account. A trie estimated large enough to keep one worker busy long after the
+     * others are done is split deeper across the workers.
+     */
+    private void traverseStorageTrieFromRoot(
+            final Bytes32 accountHash, final Bytes32 storageRoot, @Nullable final FlatDatabaseCursor flatStorage) {
+        final Node<Bytes> rootNode = getStorageNodeValue(storageRoot, accountHash, Bytes.EMPTY);
+        if (rootNode == null) {
+            if (flatStorage != null) {
+                // the missing storage trie is reported, the flat slots of the account are not reported one by one
+                flatStorage.skipTo(storageRangeEnd(accountHash, Bytes.EMPTY));
+            }
+            return;
+        }
+        final long estimatedSlots = parallelism > 1 ? estimateStorageSlots(accountHash, rootNode) : 0;
+        if (estimatedSlots < LARGE_STORAGE_SLOTS) {
+            traverseStorageTrie(accountHash, rootNode, flatStorage, STORAGE_SPLIT_DEPTH, null);
+            return;
+        }
+        // log16 of the estimate, minus the 3 nibbles left to every split subtree
+        final int splitDepth = Math.min(flatStorage != null ? maxMergedSplitDepth() : MAX_STORAGE_SPLIT_DEPTH,
+                Math.max(STORAGE_SPLIT_DEPTH, (63 - Long.numberOfLeadingZeros(estimatedSlots)) / 4 - 3));
+        log.info("Splitting storage trie of account {} with about {} slots down to depth {}", accountHash, estimatedSlots, splitDepth);
+        final StorageTrieProgress progress = new StorageTrieProgress(accountHash, estimatedSlots);
+        largeStorageTries.put(accountHash, progress);
+        try {
+            traverseStorageTrie(accountHash, rootNode, flatStorage, splitDepth, progress);
+        } finally {
+            progress.markDone();
+        }
+    }
+
+    /**
+     * Deepest split of a merge-joined storage trie whose ranges, one flat storage iterator each, do not outnumber
+     * {@link #MERGED_RANGES_PER_WORKER} per worker.
+     */
+    private int maxMergedSplitDepth() {
+        int depth = STORAGE_SPLIT_DEPTH;
+        while (depth < MAX_STORAGE_SPLIT_DEPTH && 1L << 4 * (depth + 1) <= (long) parallelism * MERGED_RANGES_PER_WORKER) {
+            depth++;
+        }
+        return depth;
+    }
+
+    /**
+     * Rough number of slots of a storage trie, 0 when its first levels are not full branches. Slot keys are hashes,
+     * so a trie of n slots has its leaves about log16(n) + 1 nibbles deep, which one path down the trie tells.
+     */
+    private long estimateStorageSlots(final Bytes32 accountHash, @Nullable final Node<Bytes> rootNode) {
+        Node<Bytes> node = rootNode;
+        while (node != null && node.getValue().isEmpty()) {
+            final List<Node<Bytes>> children = node.getChildren().stream()
+                    .filter(child -> !child.getHash().equals(MerklePatriciaTrie.EMPTY_TRIE_NODE_HASH))
+                    .collect(Collectors.toList());
+            if (children.isEmpty()
+                    || (node.getLocation().orElseThrow().size() < PROBED_LEVELS && children.size() < FULL_FAN_OUT)) {
+                return 0;
+            }
+            final Node<Bytes> child = children.get(0);
+            node = child.isReferencedByHash()
+                    ? getStorageNodeValue(child.getHash(), accountHash, child.getLocation().orElseThrow())
+                    : child;
+        }
+        if (node == null) {
+            return 0;
+        }
+        final int leafDepth = node.getLocation().orElseThrow().size();
+        return leafDepth <= 1 ? 0 : 1L << (4 * Math.min(leafDepth - 1, 15));
+    }
+
+    /**
+     * @param flatStorage iterator the leaves are merged with, null looks up every leaf instead
+     * @param splitDepth  nibble depth down to which subtrees are handed to other workers
+     * @param progress    slot counter of a large storage trie, null for the others
+     */
+    private void traverseStorageTrie(
+            final Bytes32 accountHash, final Node<Bytes> parentNode, @Nullable final FlatDatabaseCursor flatStorage,
+            final int splitDepth, @Nullable final StorageTrieProgress progress) {
         if (shouldStop) {
             return;
         }
@@ -141,36 +485,230 @@ public class BonsaiTraversal {
         }
         listener.visited(BonsaiTraversalTrieType.Storage);
 
+        final List<Node<Bytes>> nodes = decodeNodes(parentNode, flatStorage != null);
+        final boolean split = parentNode.getLocation().orElseThrow().size() < splitDepth;
+        if (split && flatStorage != null && progress != null && parentNode.getValue().isEmpty()) {
+            traverseStorageRanges(accountHash, parentNode, nodes, flatStorage, splitDepth, progress);
+        } else {
+            traverseStorageNodes(accountHash, parentNode, nodes, flatStorage, split && flatStorage == null, splitDepth, progress);
+        }
+    }
+
+    /**
+     * Walks the decoded nodes of a storage trie node in order.
+     *
+     * @param split hands the child subtrees to other workers, only possible without a flat storage iterator
+     */
+    private void traverseStorageNodes(
+            final Bytes32 accountHash, final Node<Bytes> parentNode, final List<Node<Bytes>> nodes,
+            @Nullable final FlatDatabaseCursor flatStorage, final boolean split, final int splitDepth,
+            @Nullable final StorageTrieProgress progress) {
+        final List<Node<Bytes>> references = nodes.stream()
+                .filter(node -> nodeIsHashReferencedDescendant(parentNode, node))
+                .collect(Collectors.toList());
+        final List<Node<Bytes>> resolved = getStorageNodeValues(accountHash, references);
+        final List<ForkJoinTask<?>> subTasks = new ArrayList<>();
+        final List<Node<Bytes>> leaves = new ArrayList<>();
+        int next = 0;
+        for (Node<Bytes> node : nodes) {
+            if (nodeIsHashReferencedDescendant(parentNode, node)) {
+                final Node<Bytes> child = resolved.get(next++);
+                if (child == null) {
+                    if (flatStorage != null) {
+                        // the missing subtree is reported, its flat slots are not reported once more as left overs
+                        verifyStorageLeaves(accountHash, leaves, flatStorage, progress);
+                        flatStorage.skipTo(storageRangeEnd(accountHash, node.getLocation().orElseThrow()));
+                    }
+                    continue;
+                }
+                if (child.getValue().isPresent()) {
+                    listener.visited(BonsaiTraversalTrieType.Storage);
+                    leaves.add(child);
+                } else if (split) {
+                    fork(subTasks, () -> traverseStorageTrie(accountHash, child, null, splitDepth, progress));
+                } else {
+                    if (flatStorage != null) {
+                        verifyStorageLeaves(accountHash, leaves, flatStorage, progress);
+                    }
+                    traverseStorageTrie(accountHash, child, flatStorage, splitDepth, progress);
+                }
+            } else if (node.getValue().isPresent()) {
+                leaves.add(node);
+            } else if (nodes.size() > 1 && node.getHash().equals(parentNode.getHash())) {
+                listener.visited(BonsaiTraversalTrieType.Account);
+            } else {
+                listener.missingValueForNode(node.getHash());
+            }
+        }
+        verifyStorageLeaves(accountHash, leaves, flatStorage, progress);
+        join(subTasks);
+    }
+
+    /**
+     * Splits a merge-joined storage trie node by child nibble. Every child range is walked on its own worker, and the
+     * caller's iterator jumps past the whole node. Child branches above the split depth are split again without
+     * touching the flat storage, an iterator over the flat storage of a range is only opened at the split depth or
+     * where the trie cannot be split any further.
+     *
+     * @param flatStorage iterator of the caller, null when the node is itself a range being split
+     */
+    private void traverseStorageRanges(
+            final Bytes32 accountHash, final Node<Bytes> parentNode, final List<Node<Bytes>> nodes,
+            @Nullable final FlatDatabaseCursor flatStorage, final int splitDepth, final StorageTrieProgress progress) {
+        final Bytes location = parentNode.getLocation().orElseThrow();
+        if (flatStorage != null) {
+            // flat storage before the node belongs to no slot of the trie
+            flatStorage.advanceTo(Bytes.concatenate(accountHash, lowerBound(location)));
+        }
+        final List<ForkJoinTask<?>> subTasks = new ArrayList<>();
+        for (int nibble = 0; nibble < 16; nibble++) {
+            final Bytes childLocation = Bytes.concatenate(location, Bytes.of(nibble));
+            final List<Node<Bytes>> children = nodes.stream()
+                    .filter(node -> node.getLocation().orElseThrow().size() > location.size()
+                            && node.getLocation().orElseThrow().slice(0, childLocation.size()).equals(childLocation))
+                    .collect(Collectors.toList());
+            fork(subTasks, () -> {
+                if (childLocation.size() < splitDepth && children.size() == 1
+                        && nodeIsHashReferencedDescendant(parentNode, children.get(0))) {
+                    final Node<Bytes> child = getStorageNodeValue(children.get(0).getHash(), accountHash, childLocation);
+                    if (child == null) {
+                        // reported missing, its flat storage is not reported again as left over
+                        return;
+                    }
+                    if (child.getValue().isEmpty() && child.getLocation().orElseThrow().size() < splitDepth) {
+                        listener.visited(BonsaiTraversalTrieType.Storage);
+                        traverseStorageRanges(accountHash, child, decodeNodes(child, true), null, splitDepth, progress);
+                        return;
+                    }
+                }
+                final Bytes end = storageRangeEnd(accountHash, childLocation);
+                try (FlatDatabaseCursor rangeStorage = storageCursor(
+                        Bytes.concatenate(accountHash, lowerBound(childLocation)).toArrayUnsafe(),
+                        end == null ? null : end.toArrayUnsafe())) {
+                    traverseStorageNodes(accountHash, parentNode, children, rangeStorage, false, splitDepth, progress);
+                    if (!shouldStop) {
+                        rangeStorage.advanceTo(null);
+                    }
+                }
+            });
+        }
+        join(subTasks);
+        if (flatStorage != null) {
+            flatStorage.skipTo(storageRangeEnd(accountHash, location));
+        }
+    }
+
+    /**
+     * Verifies the leaves collected so far and clears the list.
+     */
+    private void verifyStorageLeaves(
+            final Bytes32 accountHash, final List<Node<Bytes>> leaves, @Nullable final FlatDatabaseCursor flatStorage,
+            @Nullable final StorageTrieProgress progress) {
+        if (leaves.isEmpty()) {
+            return;
+        }
+        if (progress != null) {
+            progress.addVisitedSlots(leaves.size());
+        }
+        final List<Bytes> keys = leaves.stream()
+                .map(leaf -> Bytes.concatenate(accountHash, getSlotHash(leaf.getLocation().orElseThrow(), leaf.getPath())))
+                .collect(Collectors.toList());
+        // check the storage in the flat database
+        final List<Optional<Bytes>> storageInFlatDB = flatStorage != null
+                ? null
+                : multiGet(storageStorage, keys.stream().map(Bytes::toArrayUnsafe).collect(Collectors.toList()));
+        for (int i = 0; i < leaves.size(); i++) {
+            final Node<Bytes> leaf = leaves.get(i);
+            final Bytes value = Bytes32.leftPad(org.apache.tuweni.rlp.RLP.decodeValue(leaf.getValue().orElseThrow()));
+            if (flatStorage != null) {
+                flatStorage.verify(keys.get(i), value);
+            } else if (storageInFlatDB.get(i).isPresent() && !storageInFlatDB.get(i).get().equals(value)) {
+                listener.differentDataInFlatDatabaseForStorage(accountHash, leaf.getHash());
+            }
+        }
+        leaves.clear();
+    }
+
+    /**
+     * Decodes a node with its inlined descendants, sorted by location when the merge needs them in key order.
+     */
+    private List<Node<Bytes>> decodeNodes(final Node<Bytes> parentNode, final boolean keyOrder) {
         final List<Node<Bytes>> nodes =
                 TrieNodeDecoder.decodeNodes(parentNode.getLocation().orElseThrow(), parentNode.getRlp());
-        nodes.forEach(
-                node -> {
-                    if (nodeIsHashReferencedDescendant(parentNode, node)) {
-                        traverseStorageTrie(
-                                accountHash,
-                                getStorageNodeValue(node.getHash(), accountHash, node.getLocation().orElseThrow()));
-                    } else {
-                        if (node.getValue().isPresent()) {
-                            // check the storage in the flat database
-                            final Optional<Bytes> storageInFlatDB = storageStorage.get(Bytes.concatenate(accountHash, getSlotHash(node.getLocation()
-                                    .orElseThrow(), node.getPath())).toArrayUnsafe()).map(Bytes::wrap);
-                            final Bytes value = Bytes32.leftPad(org.apache.tuweni.rlp.RLP.decodeValue(node.getValue()
-                                    .orElseThrow()));
-                            if (storageInFlatDB.isPresent() && !storageInFlatDB.get().equals(value)) {
-                                listener.differentDataInFlatDatabaseForStorage(accountHash, node.getHash());
-                            }
-                        } else if (nodes.size() > 1 && node.getHash().equals(parentNode.getHash())) {
-                            listener.visited(BonsaiTraversalTrieType.Account);
-                        } else {
-                            listener.missingValueForNode(node.getHash());
-                        }
-                    }
-                });
+        if (!keyOrder) {
+            return nodes;
+        }
+        final List<Node<Bytes>> sorted = new ArrayList<>(nodes);
+        sorted.sort((a, b) -> Arrays.compareUnsigned(
+                a.getLocation().orElseThrow().toArrayUnsafe(), b.getLocation().orElseThrow().toArrayUnsafe()));
+        return sorted;
+    }
+
+    /**
+     * Runs the work as a forked subtask when this traversal is executing inside its own pool, inline otherwise.
+     */
+    private void fork(final List<ForkJoinTask<?>> subTasks, final Runnable work) {
+        if (pool != null && ForkJoinTask.getPool() == pool) {
+            subTasks.add(ForkJoinTask.adapt(work).fork());
+        } else {
+            work.run();
+        }
+    }
+
+    private void join(final List<ForkJoinTask<?>> subTasks) {
+        subTasks.forEach(ForkJoinTask::join);
+    }
+
+    private List<Optional<Bytes>> multiGet(final KeyValueStorage storage, final List<byte[]> keys) {
+        return RocksDBStorageAccess.multiGet(storage, keys).stream()
+                .map(value -> value.map(Bytes::wrap))
+                .collect(Collectors.toList());
     }
 
     @Nullable
     private Node<Bytes> getAccountNodeValue(final Bytes32 hash, final Bytes location) {
-        final Optional<Bytes> bytes = trieBranchStorage.get(location.toArrayUnsafe()).map(Bytes::wrap);
+        return getAccountNodeValues(List.of(location), List.of(hash)).get(0);
+    }
+
+    /**
+     * Resolves the hash referenced children of a node with a single lookup, invalid or missing ones are reported and
+     * come back as null.
+     */
+    private List<Node<Bytes>> getAccountNodeValues(final List<Node<Bytes>> references) {
+        return getAccountNodeValues(
+                references.stream().map(reference -> reference.getLocation().orElseThrow()).collect(Collectors.toList()),
+                references.stream().map(Node::getHash).collect(Collectors.toList()));
+    }
+
+    private List<Node<Bytes>> getAccountNodeValues(final List<Bytes> locations, final List<Bytes32> hashes) {
+        final List<Node<Bytes>> nodes = new ArrayList<>(Collections.<Node<Bytes>>nCopies(locations.size(), null));
+        // only the nodes missing from the cache are read
+        final List<Integer> misses = new ArrayList<>();
+        for (int i = 0; i < locations.size(); i++) {
+            final Optional<Node<Bytes>> cached =
+                    cache == null ? Optional.empty() : cache.getAccountNode(hashes.get(i), locations.get(i));
+            if (cached.isPresent()) {
+                nodes.set(i, cached.get());
+            } else {
+                misses.add(i);
+            }
+        }
+        final List<Optional<Bytes>> values = multiGet(trieBranchStorage, misses.stream()
+                .map(i -> locations.get(i).toArrayUnsafe())
+                .collect(Collectors.toList()));
+        for (int m = 0; m < misses.size(); m++) {
+            final int i = misses.get(m);
+            final Node<Bytes> node = toAccountNode(hashes.get(i), locations.get(i), values.get(m));
+            if (node != null && cache != null) {
+                cache.putAccountNode(hashes.get(i), node);
+            }
+            nodes.set(i, node);
+        }
+        return nodes;
+    }
+
+    @Nullable
+    private Node<Bytes> toAccountNode(final Bytes32 hash, final Bytes location, final Optional<Bytes> bytes) {
         if (bytes.isEmpty()) {
             listener.missingAccountTrieForHash(hash, location);
             return null;
@@ -185,10 +723,46 @@ public class BonsaiTraversal {
 
     private Node<Bytes> getStorageNodeValue(
             final Bytes32 hash, final Bytes32 accountHash, final Bytes location) {
-        final Optional<Bytes> bytes =
-                trieBranchStorage
-                        .get(Bytes.concatenate(accountHash, location).toArrayUnsafe())
-                        .map(Bytes::wrap);
+        return getStorageNodeValues(accountHash, List.of(location), List.of(hash)).get(0);
+    }
+
+    private List<Node<Bytes>> getStorageNodeValues(final Bytes32 accountHash, final List<Node<Bytes>> references) {
+        return getStorageNodeValues(
+                accountHash,
+                references.stream().map(reference -> reference.getLocation().orElseThrow()).collect(Collectors.toList()),
+                references.stream().map(Node::getHash).collect(Collectors.toList()));
+    }
+
+    private List<Node<Bytes>> getStorageNodeValues(
+            final Bytes32 accountHash, final List<Bytes> locations, final List<Bytes32> hashes) {
+        final List<Node<Bytes>> nodes = new ArrayList<>(Collections.<Node<Bytes>>nCopies(locations.size(), null));
+        final List<Integer> misses = new ArrayList<>();
+        for (int i = 0; i < locations.size(); i++) {
+            final Optional<Node<Bytes>> cached =
+                    cache == null ? Optional.empty() : cache.getStorageNode(accountHash, hashes.get(i), locations.get(i));
+            if (cached.isPresent()) {
+                nodes.set(i, cached.get());
+            } else {
+                misses.add(i);
+            }
+        }
+        final List<Optional<Bytes>> values = multiGet(trieBranchStorage, misses.stream()
+                .map(i -> Bytes.concatenate(accountHash, locations.get(i)).toArrayUnsafe())
+                .collect(Collectors.toList()));
+        for (int m = 0; m < misses.size(); m++) {
+            final int i = misses.get(m);
+            final Node<Bytes> node = toStorageNode(hashes.get(i), accountHash, locations.get(i), values.get(m));
+            if (node != null && cache != null) {
+                cache.putStorageNode(accountHash, hashes.get(i), node);
+            }
+            nodes.set(i, node);
+        }
+        return nodes;
+    }
+
+    @Nullable
+    private Node<Bytes> toStorageNode(
+            final Bytes32 hash, final Bytes32 accountHash, final Bytes location, final Optional<Bytes> bytes) {
         if (bytes.isEmpty()) {
             listener.missingStorageTrieForHash(hash, location);
             return null;
@@ -219,4 +793,120 @@ public class BonsaiTraversal {
         shouldStop = true;
     }
 
+    /**
+     * The storage tries split across the workers because of their size, with their progress.
+     */
+    public List<StorageTrieProgress> getLargeStorageTries() {
+        return new ArrayList<>(largeStorageTries.values());
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public FlatDatabaseCheck getFlatDatabaseCheck() {
+        return flatDatabaseCheck;
+    }
+
+    // first account hash below the nibble path
+    private static Bytes32 lowerBound(final Bytes location) {
+        return Bytes32.wrap(CompactEncoding.pathToBytes(
+                Bytes.concatenate(location, Bytes.wrap(new byte[Bytes32.SIZE * 2 - location.size()]))));
+    }
+
+    // first account hash after the nibble path, empty when the path is the last one of its length
+    private static Optional<Bytes32> upperBound(final Bytes location) {
+        for (int i = location.size() - 1; i >= 0; i--) {
+            if (location.get(i) < 15) {
+                return Optional.of(lowerBound(
+                        Bytes.concatenate(location.slice(0, i), Bytes.of(location.get(i) + 1))));
+            }
+        }
+        return Optional.empty();
+    }
+
+    // first storage key after the nibble path of the account's storage trie, the next account when there is none
+    @Nullable
+    private static Bytes storageRangeEnd(final Bytes32 accountHash, final Bytes location) {
+        return upperBound(location)
+                .<Bytes>map(bound -> Bytes.concatenate(accountHash, bound))
+                .or(() -> upperBound(CompactEncoding.bytesToPath(accountHash).slice(0, Bytes32.SIZE * 2)))
+                .orElse(null);
+    }
+
+    private FlatDatabaseCursor storageCursor(final byte[] from, @Nullable final byte[] to) {
+        return new FlatDatabaseCursor(
+                RocksDBStorageAccess.stream(storageStorage, from, to),
+                new FlatDatabaseCursor.Reporter() {
+                    @Override
+                    public void onlyInFlatDatabase(final Bytes key) {
+                        listener.storageOnlyInFlatDatabase(Bytes32.wrap(key, 0), Bytes32.wrap(key, Bytes32.SIZE));
+                    }
+
+                    @Override
+                    public void onlyInTrie(final Bytes key) {
+                        listener.missingStorageInFlatDatabase(Bytes32.wrap(key, 0), Bytes32.wrap(key, Bytes32.SIZE));
+                    }
+
+                    @Override
+                    public void differentData(final Bytes key) {
+                        listener.differentDataInFlatDatabaseForStorage(Bytes32.wrap(key, 0), Bytes32.wrap(key, Bytes32.SIZE));
+                    }
+                });
+    }
+
+    /**
+     * The flat accounts and flat storage below an account trie subtree. Storage keys start with the account hash, so
+     * both segments are read in the order the account leaves are walked.
+     */
+    private final class FlatDatabaseRange implements AutoCloseable {
+        private final FlatDatabaseCursor accounts;
+        private final FlatDatabaseCursor storage;
+
+        private FlatDatabaseRange(final Bytes location) {
+            final byte[] from = lowerBound(location).toArrayUnsafe();
+            final byte[] to = upperBound(location).map(Bytes::toArrayUnsafe).orElse(null);
+            accounts = new FlatDatabaseCursor(
+                    RocksDBStorageAccess.stream(accountStorage, from, to),
+                    new FlatDatabaseCursor.Reporter() {
+                        @Override
+                        public void onlyInFlatDatabase(final Bytes key) {
+                            listener.accountOnlyInFlatDatabase(Hash.wrap(Bytes32.wrap(key)));
+                        }
+
+                        @Override
+                        public void onlyInTrie(final Bytes key) {
+                            listener.missingAccountInFlatDatabase(Hash.wrap(Bytes32.wrap(key)));
+                        }
+
+                        @Override
+                        public void differentData(final Bytes key) {
+                            listener.differentDataInFlatDatabaseForAccount(Hash.wrap(Bytes32.wrap(key)));
+                        }
+                    });
+            storage = storageCursor(from, to);
+        }
+
+        /**
+         * Reports what is left in the flat database for the subtree once all its leaves were verified.
+         */
+        private void advancePast(final Bytes location) {
+            final Bytes bound = upperBound(location).orElse(null);
+            accounts.advanceTo(bound);
+            storage.advanceTo(bound);
+        }
+
+        private void skipPast(final Bytes location) {
+            final Bytes bound = upperBound(location).orElse(null);
+            accounts.skipTo(bound);
+            storage.skipTo(bound);
+        }
+
+        @Override
+        public void close() {
+            accounts.close();
+            storage.close();
+        }
+    }
+
 }
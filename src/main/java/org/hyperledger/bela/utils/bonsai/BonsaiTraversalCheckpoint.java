@@ -0,0 +1,358 @@
+package org.hyperledger.bela.utils.bonsai;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import kr.pe.kwonnam.slf4jlambda.LambdaLogger;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+import org.hyperledger.besu.datatypes.Hash;
+
+import static kr.pe.kwonnam.slf4jlambda.LambdaLoggerFactory.getLogger;
+
+/**
+ * Progress of a {@link BonsaiTraversal} persisted to a side file: the account trie subtrees (by nibble path) that
+ * were fully verified, the visited counters and every finding reported so far.
+ */
+public class BonsaiTraversalCheckpoint {
+    public static final String CHECKPOINT_FILE_NAME = "bela-verifier-checkpoint.json";
+    private static final LambdaLogger log = getLogger(BonsaiTraversalCheckpoint.class);
+    private static final ObjectMapper mapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    // deeper subtrees are not recorded, they are re-verified on resume
+    private static final int MAX_CHECKPOINT_DEPTH = 4;
+
+    private final Path file;
+    private final Set<Bytes> completed = ConcurrentHashMap.newKeySet();
+    private final List<Finding> findings = Collections.synchronizedList(new ArrayList<>());
+    // findings of the resumed run, already replayed to the listener
+    private final Set<Finding> restored = ConcurrentHashMap.newKeySet();
+    private final AtomicLong visitedAccountNodes = new AtomicLong();
+    private final AtomicLong visitedStorageNodes = new AtomicLong();
+    private Bytes32 root;
+
+    public BonsaiTraversalCheckpoint(final Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Restores the progress saved for the given root, or starts from scratch when there is none.
+     *
+     * @return true when a previous run is being resumed
+     */
+    public boolean start(final Bytes32 root) {
+        this.root = root;
+        completed.clear();
+        findings.clear();
+        restored.clear();
+        visitedAccountNodes.set(0);
+        visitedStorageNodes.set(0);
+        if (!Files.exists(file)) {
+            return false;
+        }
+        try {
+            final State state = mapper.readValue(file.toFile(), State.class);
+            if (!root.toHexString().equals(state.root)) {
+                log.info("Ignoring checkpoint {} for a different root {}", file, state.root);
+                return false;
+            }
+            state.completed.stream().map(Bytes::fromHexString).forEach(completed::add);
+            findings.addAll(state.findings);
+            restored.addAll(state.findings);
+            visitedAccountNodes.set(state.visitedAccountNodes);
+            visitedStorageNodes.set(state.visitedStorageNodes);
+            log.info("Resuming from checkpoint {} with {} completed subtrees and {} findings", file, completed.size(), findings.size());
+            return true;
+        } catch (IOException e) {
+            log.error("Could not read checkpoint {}, starting from scratch", file, e);
+            return false;
+        }
+    }
+
+    public boolean isCompleted(final Bytes location) {
+        for (int i = 0; i <= Math.min(location.size(), MAX_CHECKPOINT_DEPTH); i++) {
+            if (completed.contains(location.slice(0, i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void markCompleted(final Bytes location) {
+        if (location.size() > MAX_CHECKPOINT_DEPTH) {
+            return;
+        }
+        completed.add(location);
+        // the children are covered by their parent from now on
+        if (location.size() < MAX_CHECKPOINT_DEPTH) {
+            for (int nibble = 0; nibble < 16; nibble++) {
+                completed.remove(Bytes.concatenate(location, Bytes.of(nibble)));
+            }
+        }
+    }
+
+    public synchronized void save() {
+        if (root == null) {
+            return;
+        }
+        final State state = new State();
+        state.root = root.toHexString();
+        completed.forEach(location -> state.completed.add(location.toHexString()));
+        synchronized (findings) {
+            state.findings.addAll(findings);
+        }
+        state.visitedAccountNodes = visitedAccountNodes.get();
+        state.visitedStorageNodes = visitedStorageNodes.get();
+        try {
+            final Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            mapper.writeValue(tmp.toFile(), state);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("Could not write checkpoint {}", file, e);
+        }
+    }
+
+    public void delete() {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.error("Could not delete checkpoint {}", file, e);
+        }
+    }
+
+    public List<Finding> getFindings() {
+        synchronized (findings) {
+            return new ArrayList<>(findings);
+        }
+    }
+
+    /**
+     * Reports the visited node counts and the findings of the previous run again, so the listener ends up with the
+     * complete picture.
+     */
+    public void replay(final BonsaiListener listener) {
+        listener.visited(BonsaiTraversalTrieType.Account, visitedAccountNodes.get());
+        listener.visited(BonsaiTraversalTrieType.Storage, visitedStorageNodes.get());
+        getFindings().forEach(finding -> finding.replay(listener));
+    }
+
+    /**
+     * Records a finding of this run, unless it was restored from the resumed run and replayed already. The same
+     * finding found again in this run, like a shared storage subtree under another account, is reported again.
+     *
+     * @return true when the finding is to be reported
+     */
+    private boolean add(final Finding finding) {
+        if (restored.contains(finding)) {
+            return false;
+        }
+        findings.add(finding);
+        return true;
+    }
+
+    /**
+     * Wraps the listener so that every callback is also recorded in this checkpoint. Findings already known from the
+     * resumed run are not reported twice.
+     */
+    public BonsaiListener record(final BonsaiListener delegate) {
+        return new BonsaiListener() {
+            @Override
+            public void root(final Bytes32 hash) {
+                delegate.root(hash);
+            }
+
+            @Override
+            public void missingCodeHash(final Hash codeHash, final Hash accountHash) {
+                if (add(new Finding(FindingType.MISSING_CODE_HASH, codeHash, accountHash))) {
+                    delegate.missingCodeHash(codeHash, accountHash);
+                }
+            }
+
+            @Override
+            public void invalidCode(final Hash accountHash, final Hash codeHash, final Hash foundCodeHash) {
+                if (add(new Finding(FindingType.INVALID_CODE, accountHash, codeHash, foundCodeHash))) {
+                    delegate.invalidCode(accountHash, codeHash, foundCodeHash);
+                }
+            }
+
+            @Override
+            public void missingValueForNode(final Bytes32 hash) {
+                if (add(new Finding(FindingType.MISSING_VALUE_FOR_NODE, hash))) {
+                    delegate.missingValueForNode(hash);
+                }
+            }
+
+            @Override
+            public void visited(final BonsaiTraversalTrieType type) {
+                if (type == BonsaiTraversalTrieType.Account) {
+                    visitedAccountNodes.incrementAndGet();
+                } else {
+                    visitedStorageNodes.incrementAndGet();
+                }
+                delegate.visited(type);
+            }
+
+            @Override
+            public void missingAccountTrieForHash(final Bytes32 hash, final Bytes location) {
+                if (add(new Finding(FindingType.MISSING_ACCOUNT_TRIE, hash, location))) {
+                    delegate.missingAccountTrieForHash(hash, location);
+                }
+            }
+
+            @Override
+            public void invalidAccountTrieForHash(final Bytes32 hash, final Bytes location, final Hash foundHashNode) {
+                if (add(new Finding(FindingType.INVALID_ACCOUNT_TRIE, hash, location, foundHashNode))) {
+                    delegate.invalidAccountTrieForHash(hash, location, foundHashNode);
+                }
+            }
+
+            @Override
+            public void missingStorageTrieForHash(final Bytes32 hash, final Bytes location) {
+                if (add(new Finding(FindingType.MISSING_STORAGE_TRIE, hash, location))) {
+                    delegate.missingStorageTrieForHash(hash, location);
+                }
+            }
+
+            @Override
+            public void invalidStorageTrieForHash(final Bytes32 accountHash, final Bytes32 hash, final Bytes location, final Hash foundHashNode) {
+                if (add(new Finding(FindingType.INVALID_STORAGE_TRIE, accountHash, hash, location, foundHashNode))) {
+                    delegate.invalidStorageTrieForHash(accountHash, hash, location, foundHashNode);
+                }
+            }
+
+            @Override
+            public void differentDataInFlatDatabaseForAccount(final Hash accountHash) {
+                if (add(new Finding(FindingType.FLAT_ACCOUNT_MISMATCH, accountHash))) {
+                    delegate.differentDataInFlatDatabaseForAccount(accountHash);
+                }
+            }
+
+            @Override
+            public void differentDataInFlatDatabaseForStorage(final Bytes32 accountHash, final Bytes32 hash) {
+                if (add(new Finding(FindingType.FLAT_STORAGE_MISMATCH, accountHash, hash))) {
+                    delegate.differentDataInFlatDatabaseForStorage(accountHash, hash);
+                }
+            }
+
+            @Override
+            public void missingAccountInFlatDatabase(final Hash accountHash) {
+                if (add(new Finding(FindingType.FLAT_ACCOUNT_MISSING, accountHash))) {
+                    delegate.missingAccountInFlatDatabase(accountHash);
+                }
+            }
+
+            @Override
+            public void accountOnlyInFlatDatabase(final Hash accountHash) {
+                if (add(new Finding(FindingType.FLAT_ACCOUNT_ONLY, accountHash))) {
+                    delegate.accountOnlyInFlatDatabase(accountHash);
+                }
+            }
+
+            @Override
+            public void missingStorageInFlatDatabase(final Bytes32 accountHash, final Bytes32 slotHash) {
+                if (add(new Finding(FindingType.FLAT_STORAGE_MISSING, accountHash, slotHash))) {
+                    delegate.missingStorageInFlatDatabase(accountHash, slotHash);
+                }
+            }
+
+            @Override
+            public void storageOnlyInFlatDatabase(final Bytes32 accountHash, final Bytes32 slotHash) {
+                if (add(new Finding(FindingType.FLAT_STORAGE_ONLY, accountHash, slotHash))) {
+                    delegate.storageOnlyInFlatDatabase(accountHash, slotHash);
+                }
+            }
+        };
+    }
+
+    public enum FindingType {
+        MISSING_CODE_HASH,
+        INVALID_CODE,
+        MISSING_VALUE_FOR_NODE,
+        MISSING_ACCOUNT_TRIE,
+        INVALID_ACCOUNT_TRIE,
+        MISSING_STORAGE_TRIE,
+        INVALID_STORAGE_TRIE,
+        FLAT_ACCOUNT_MISMATCH,
+        FLAT_STORAGE_MISMATCH,
+        FLAT_ACCOUNT_MISSING,
+        FLAT_ACCOUNT_ONLY,
+        FLAT_STORAGE_MISSING,
+        FLAT_STORAGE_ONLY
+    }
+
+    public static class Finding {
+        public FindingType type;
+        public List<String> args = new ArrayList<>();
+
+        public Finding() {
+        }
+
+        Finding(final FindingType type, final Bytes... args) {
+            this.type = type;
+            for (Bytes arg : args) {
+                this.args.add(arg.toHexString());
+            }
+        }
+
+        void replay(final BonsaiListener listener) {
+            switch (type) {
+                case MISSING_CODE_HASH -> listener.missingCodeHash(hash(0), hash(1));
+                case INVALID_CODE -> listener.invalidCode(hash(0), hash(1), hash(2));
+                case MISSING_VALUE_FOR_NODE -> listener.missingValueForNode(hash(0));
+                case MISSING_ACCOUNT_TRIE -> listener.missingAccountTrieForHash(hash(0), bytes(1));
+                case INVALID_ACCOUNT_TRIE -> listener.invalidAccountTrieForHash(hash(0), bytes(1), hash(2));
+                case MISSING_STORAGE_TRIE -> listener.missingStorageTrieForHash(hash(0), bytes(1));
+                case INVALID_STORAGE_TRIE -> listener.invalidStorageTrieForHash(hash(0), hash(1), bytes(2), hash(3));
+                case FLAT_ACCOUNT_MISMATCH -> listener.differentDataInFlatDatabaseForAccount(hash(0));
+                case FLAT_STORAGE_MISMATCH -> listener.differentDataInFlatDatabaseForStorage(hash(0), hash(1));
+                case FLAT_ACCOUNT_MISSING -> listener.missingAccountInFlatDatabase(hash(0));
+                case FLAT_ACCOUNT_ONLY -> listener.accountOnlyInFlatDatabase(hash(0));
+                case FLAT_STORAGE_MISSING -> listener.missingStorageInFlatDatabase(hash(0), hash(1));
+                case FLAT_STORAGE_ONLY -> listener.storageOnlyInFlatDatabase(hash(0), hash(1));
+            }
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final Finding finding = (Finding) o;
+            return type == finding.type && Objects.equals(args, finding.args);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(type, args);
+        }
+
+        private Hash hash(final int index) {
+            return Hash.fromHexString(args.get(index));
+        }
+
+        private Bytes bytes(final int index) {
+            return Bytes.fromHexString(args.get(index));
+        }
+    }
+
+    public static class State {
+        public String root;
+        public List<String> completed = new ArrayList<>();
+        public List<Finding> findings = new ArrayList<>();
+        public long visitedAccountNodes;
+        public long visitedStorageNodes;
+    }
+}
@@ -20,6 +20,7 @@ package org.hyperledger.bela.utils.bonsai;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.bytes.Bytes32;
 import org.hyperledger.bela.config.BelaConfigurationImpl;
@@ -35,15 +36,17 @@ import org.hyperledger.besu.plugin.services.storage.rocksdb.configuration.RocksD
 
 public class BonsaiTreeVerifier implements BonsaiListener {
 
-    private int visited;
+    private final AtomicLong visited = new AtomicLong();
 
     public static void main(final String[] args) {
         final Path dataDir = Paths.get(args[0]);
-        System.out.println("We are verifying : " + dataDir);
+        final int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        final FlatDatabaseCheck flatDatabaseCheck = args.length > 2 ? FlatDatabaseCheck.valueOf(args[2].toUpperCase()) : FlatDatabaseCheck.LOOKUP;
+        System.out.println("We are verifying : " + dataDir + " using " + threads + " threads and a " + flatDatabaseCheck + " flat database check");
         final StorageProvider provider =
                 createKeyValueStorageProvider(dataDir, dataDir.resolve("database"));
         final BonsaiTreeVerifier listener = new BonsaiTreeVerifier();
-        BonsaiTraversal tr = new BonsaiTraversal(provider, listener);
+        BonsaiTraversal tr = new BonsaiTraversal(provider, listener, threads, dataDir.resolve(BonsaiTraversalCheckpoint.CHECKPOINT_FILE_NAME), flatDatabaseCheck);
         System.out.println();
         System.out.println("ޏ₍ ὸ.ό₎ރ");
         System.out.println(
@@ -61,8 +64,8 @@ public class BonsaiTreeVerifier implements BonsaiListener {
         System.out.println("AAAAAAAAAA!!!!!!!");
     }
 
-    private int getVisited() {
-        return visited;
+    private long getVisited() {
+        return visited.get();
     }
 
     private static StorageProvider createKeyValueStorageProvider(
@@ -111,16 +114,21 @@ public class BonsaiTreeVerifier implements BonsaiListener {
 
     @Override
     public void visited(final BonsaiTraversalTrieType type) {
-        visited++;
-        if (visited % 10000 == 0) {
+        final long count = visited.incrementAndGet();
+        if (count % 10000 == 0) {
             System.out.print(type.getText());
         }
-        if (visited % 1000000 == 0) {
+        if (count % 1000000 == 0) {
             System.out.println();
-            System.out.println("So far processed " + visited + " nodes");
+            System.out.println("So far processed " + count + " nodes");
         }
     }
 
+    @Override
+    public void visited(final BonsaiTraversalTrieType type, final long count) {
+        visited.addAndGet(count);
+    }
+
     @Override
     public void missingAccountTrieForHash(final Bytes32 hash, final Bytes location) {
         System.err.format("missing account trie node for hash %s and location %s", hash, location);
@@ -156,5 +164,25 @@ public class BonsaiTreeVerifier implements BonsaiListener {
         System.err.format("inconsistent data in flat database for account %s on slot %s", accountHash, slotHash);
 
     }
+
+    @Override
+    public void missingAccountInFlatDatabase(final Hash accountHash) {
+        System.err.format("missing account %s in flat database", accountHash);
+    }
+
+    @Override
+    public void accountOnlyInFlatDatabase(final Hash accountHash) {
+        System.err.format("account %s in flat database is not in the trie", accountHash);
+    }
+
+    @Override
+    public void missingStorageInFlatDatabase(final Bytes32 accountHash, final Bytes32 slotHash) {
+        System.err.format("missing slot %s of account %s in flat database", slotHash, accountHash);
+    }
+
+    @Override
+    public void storageOnlyInFlatDatabase(final Bytes32 accountHash, final Bytes32 slotHash) {
+        System.err.format("slot %s of account %s in flat database is not in the trie", slotHash, accountHash);
+    }
 }
 
@@ -0,0 +1,16 @@
+package org.hyperledger.bela.utils.bonsai;
+
+/**
+ * How a {@link BonsaiTraversal} compares the trie leaves with the flat database.
+ */
+public enum FlatDatabaseCheck {
+    /**
+     * Looks up the flat entry of every leaf, only entries that differ from the trie are reported.
+     */
+    LOOKUP,
+    /**
+     * Walks the trie in key order and the flat database with a sequential iterator, reporting entries missing on
+     * either side as well as the ones that differ.
+     */
+    MERGE_JOIN
+}
@@ -0,0 +1,86 @@
+package org.hyperledger.bela.utils.bonsai;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.stream.Stream;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.tuweni.bytes.Bytes;
+
+/**
+ * Sorted iterator over a range of a flat database segment, advanced in lockstep with the trie leaves of the same
+ * range. The leaves have to be verified in ascending key order.
+ */
+public class FlatDatabaseCursor implements AutoCloseable {
+
+    public interface Reporter {
+        void onlyInFlatDatabase(Bytes key);
+
+        void onlyInTrie(Bytes key);
+
+        void differentData(Bytes key);
+    }
+
+    private final Stream<Pair<byte[], byte[]>> stream;
+    private final Iterator<Pair<byte[], byte[]>> iterator;
+    private final Reporter reporter;
+    private Pair<byte[], byte[]> current;
+
+    public FlatDatabaseCursor(final Stream<Pair<byte[], byte[]>> stream, final Reporter reporter) {
+        this.stream = stream;
+        this.iterator = stream.iterator();
+        this.reporter = reporter;
+        advance();
+    }
+
+    /**
+     * Compares the flat entry of a trie leaf, the flat entries skipped to reach it are not in the trie.
+     */
+    public void verify(final Bytes key, final Bytes expectedValue) {
+        advanceTo(key);
+        if (current != null && Arrays.equals(current.getKey(), key.toArrayUnsafe())) {
+            if (!Bytes.wrap(current.getValue()).equals(expectedValue)) {
+                reporter.differentData(key);
+            }
+            advance();
+        } else {
+            reporter.onlyInTrie(key);
+        }
+    }
+
+    /**
+     * Reports the flat entries below the key as missing from the trie.
+     *
+     * @param key exclusive bound, null reports everything left in the range
+     */
+    public void advanceTo(@Nullable final Bytes key) {
+        while (isBelow(key)) {
+            reporter.onlyInFlatDatabase(Bytes.wrap(current.getKey()));
+            advance();
+        }
+    }
+
+    /**
+     * Moves past the flat entries below the key without reporting them, for ranges verified by a previous run.
+     *
+     * @param key exclusive bound, null skips everything left in the range
+     */
+    public void skipTo(@Nullable final Bytes key) {
+        while (isBelow(key)) {
+            advance();
+        }
+    }
+
+    private boolean isBelow(@Nullable final Bytes key) {
+        return current != null && (key == null || Arrays.compareUnsigned(current.getKey(), key.toArrayUnsafe()) < 0);
+    }
+
+    private void advance() {
+        current = iterator.hasNext() ? iterator.next() : null;
+    }
+
+    @Override
+    public void close() {
+        stream.close();
+    }
+}
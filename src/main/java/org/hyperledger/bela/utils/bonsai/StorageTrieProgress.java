@@ -0,0 +1,48 @@
+package org.hyperledger.bela.utils.bonsai;
+
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.tuweni.bytes.Bytes32;
+
+/**
+ * Progress of a storage trie that was estimated large enough to be split across the traversal workers.
+ */
+public class StorageTrieProgress {
+    private final Bytes32 accountHash;
+    private final long estimatedSlots;
+    private final LongAdder visitedSlots = new LongAdder();
+    private volatile boolean done;
+
+    public StorageTrieProgress(final Bytes32 accountHash, final long estimatedSlots) {
+        this.accountHash = accountHash;
+        this.estimatedSlots = estimatedSlots;
+    }
+
+    void addVisitedSlots(final int slots) {
+        visitedSlots.add(slots);
+    }
+
+    void markDone() {
+        done = true;
+    }
+
+    public Bytes32 getAccountHash() {
+        return accountHash;
+    }
+
+    public long getEstimatedSlots() {
+        return estimatedSlots;
+    }
+
+    public long getVisitedSlots() {
+        return visitedSlots.sum();
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %,d of ~%,d slots%s", accountHash, getVisitedSlots(), estimatedSlots, done ? " (done)" : "");
+    }
+}
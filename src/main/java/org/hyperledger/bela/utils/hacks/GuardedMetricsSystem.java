@@ -0,0 +1,70 @@
+package org.hyperledger.bela.utils.hacks;
+
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.DoubleSupplier;
+import org.hyperledger.besu.plugin.services.MetricsSystem;
+import org.hyperledger.besu.plugin.services.metrics.Counter;
+import org.hyperledger.besu.plugin.services.metrics.LabelledGauge;
+import org.hyperledger.besu.plugin.services.metrics.LabelledMetric;
+import org.hyperledger.besu.plugin.services.metrics.MetricCategory;
+import org.hyperledger.besu.plugin.services.metrics.OperationTimer;
+
+/**
+ * Hands the metrics of a rocksdb storage to the registry. The gauges of besu's rocksdb metrics read the native
+ * statistics and properties of the database, which crash the jvm once the database is closed, so they read NaN from
+ * the moment the storage is closed and the storage waits for the reads in progress before closing.
+ */
+public class GuardedMetricsSystem implements MetricsSystem {
+    private final MetricsSystem delegate;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private boolean closed;
+
+    public GuardedMetricsSystem(final MetricsSystem delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public LabelledMetric<Counter> createLabelledCounter(final MetricCategory category, final String name, final String help, final String... labelNames) {
+        return delegate.createLabelledCounter(category, name, help, labelNames);
+    }
+
+    @Override
+    public LabelledGauge createLabelledGauge(final MetricCategory category, final String name, final String help, final String... labelNames) {
+        final LabelledGauge gauge = delegate.createLabelledGauge(category, name, help, labelNames);
+        return (valueSupplier, labelValues) -> gauge.labels(guard(valueSupplier), labelValues);
+    }
+
+    @Override
+    public LabelledMetric<OperationTimer> createLabelledTimer(final MetricCategory category, final String name, final String help, final String... labelNames) {
+        return delegate.createLabelledTimer(category, name, help, labelNames);
+    }
+
+    @Override
+    public void createGauge(final MetricCategory category, final String name, final String help, final DoubleSupplier valueSupplier) {
+        delegate.createGauge(category, name, help, guard(valueSupplier));
+    }
+
+    /**
+     * Stops the gauges from reading the database, once the reads in progress are done.
+     */
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            closed = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private DoubleSupplier guard(final DoubleSupplier valueSupplier) {
+        return () -> {
+            lock.readLock().lock();
+            try {
+                return closed ? Double.NaN : valueSupplier.getAsDouble();
+            } finally {
+                lock.readLock().unlock();
+            }
+        };
+    }
+}
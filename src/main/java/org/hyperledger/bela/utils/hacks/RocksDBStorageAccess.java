@@ -0,0 +1,158 @@
+package org.hyperledger.bela.utils.hacks;
+
+import javax.annotation.Nullable;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import org.apache.commons.lang3.tuple.Pair;
+import org.hyperledger.besu.plugin.services.storage.KeyValueStorage;
+import org.hyperledger.besu.plugin.services.storage.KeyValueStorageTransaction;
+import org.hyperledger.besu.plugin.services.storage.rocksdb.RocksDbSegmentIdentifier;
+import org.hyperledger.besu.plugin.services.storage.rocksdb.segmented.RocksDBColumnarKeyValueStorage;
+import org.hyperledger.besu.services.kvstore.SegmentedKeyValueStorageAdapter;
+import org.rocksdb.Statistics;
+
+/**
+ * Reaches through besu's {@link SegmentedKeyValueStorageAdapter} to the rocksdb storage and column family behind a
+ * {@link KeyValueStorage}, for the operations the plugin api does not expose.
+ */
+public class RocksDBStorageAccess {
+    private static final Field SEGMENT_HANDLE_FIELD = accessibleField("segmentHandle");
+    private static final Field STORAGE_FIELD = accessibleField("storage");
+
+    private static Field accessibleField(final String name) {
+        try {
+            final Field field = SegmentedKeyValueStorageAdapter.class.getDeclaredField(name);
+            field.setAccessible(true);
+            return field;
+        } catch (NoSuchFieldException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static Optional<RocksDBColumnarKeyValueStorage> getColumnarStorage(final KeyValueStorage storage) {
+        if (!(storage instanceof SegmentedKeyValueStorageAdapter)) {
+            return Optional.empty();
+        }
+        try {
+            final Object inner = STORAGE_FIELD.get(storage);
+            return inner instanceof RocksDBColumnarKeyValueStorage columnar ? Optional.of(columnar) : Optional.empty();
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static Optional<RocksDbSegmentIdentifier> getSegmentHandle(final KeyValueStorage storage) {
+        if (!(storage instanceof SegmentedKeyValueStorageAdapter)) {
+            return Optional.empty();
+        }
+        try {
+            final Object handle = SEGMENT_HANDLE_FIELD.get(storage);
+            return handle instanceof RocksDbSegmentIdentifier identifier ? Optional.of(identifier) : Optional.empty();
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * The statistics of the rocksdb database behind the storage, shared by all of its segments.
+     */
+    public static Optional<Statistics> getStatistics(final KeyValueStorage storage) {
+        return getColumnarStorage(storage).map(RocksDBColumnarKeyValueStorage::getStatistics);
+    }
+
+    /**
+     * Batched lookup of the keys, in one rocksdb call when the storage allows it and one get per key otherwise.
+     */
+    public static List<Optional<byte[]>> multiGet(final KeyValueStorage storage, final List<byte[]> keys) {
+        final Optional<RocksDBColumnarKeyValueStorage> columnar = getColumnarStorage(storage);
+        final Optional<RocksDbSegmentIdentifier> segment = getSegmentHandle(storage);
+        if (columnar.isPresent() && segment.isPresent()) {
+            return columnar.get().multiGet(segment.get(), keys);
+        }
+        final List<Optional<byte[]>> values = new ArrayList<>(keys.size());
+        for (byte[] key : keys) {
+            values.add(storage.get(key));
+        }
+        return values;
+    }
+
+    /**
+     * Writes the entries in one rocksdb write batch when the storage allows it and in one transaction otherwise.
+     */
+    public static void putAll(final KeyValueStorage storage, final List<Pair<byte[], byte[]>> entries) {
+        final Optional<RocksDBColumnarKeyValueStorage> columnar = getColumnarStorage(storage);
+        final Optional<RocksDbSegmentIdentifier> segment = getSegmentHandle(storage);
+        if (columnar.isPresent() && segment.isPresent()) {
+            columnar.get().putAll(segment.get(), entries);
+            return;
+        }
+        final KeyValueStorageTransaction transaction = storage.startTransaction();
+        for (Pair<byte[], byte[]> entry : entries) {
+            transaction.put(entry.getKey(), entry.getValue());
+        }
+        transaction.commit();
+    }
+
+    /**
+     * Compacts the keys of the segment between fromKey and the exclusive toKey, see
+     * {@link RocksDBColumnarKeyValueStorage#compactRange}.
+     *
+     * @throws UnsupportedOperationException when the storage is not rocksdb
+     */
+    public static void compactRange(
+            final KeyValueStorage storage, @Nullable final byte[] fromKey, @Nullable final byte[] toKey,
+            final boolean forceBottommost, final int subcompactions) {
+        final RocksDBColumnarKeyValueStorage columnar = getColumnarStorage(storage)
+                .orElseThrow(() -> new UnsupportedOperationException("Only rocksdb segments can be compacted"));
+        final RocksDbSegmentIdentifier segment = getSegmentHandle(storage)
+                .orElseThrow(() -> new UnsupportedOperationException("Only rocksdb segments can be compacted"));
+        columnar.compactRange(segment, fromKey, toKey, forceBottommost, subcompactions);
+    }
+
+    /**
+     * Streams the entries between fromKey and the exclusive toKey in key order. Only rocksdb can seek to the start of
+     * the range, other storages are scanned from their first key.
+     *
+     * @param toKey exclusive upper bound, null streams to the end of the segment
+     */
+    public static Stream<Pair<byte[], byte[]>> stream(
+            final KeyValueStorage storage, final byte[] fromKey, @Nullable final byte[] toKey) {
+        return scan(storage, ScanOptions.range(fromKey, toKey));
+    }
+
+    /**
+     * Streams the entries of a bulk scan in key order, see {@link ScanOptions}. Storages other than rocksdb are
+     * streamed with their defaults and filtered to the range. The stream has to be closed.
+     */
+    public static Stream<Pair<byte[], byte[]>> scan(final KeyValueStorage storage, final ScanOptions scanOptions) {
+        final Optional<RocksDBColumnarKeyValueStorage> columnar = getColumnarStorage(storage);
+        final Optional<RocksDbSegmentIdentifier> segment = getSegmentHandle(storage);
+        if (columnar.isPresent() && segment.isPresent()) {
+            return columnar.get().scan(segment.get(), scanOptions);
+        }
+        return inRange(storage.stream(), Pair::getKey, scanOptions);
+    }
+
+    public static Stream<byte[]> scanKeys(final KeyValueStorage storage, final ScanOptions scanOptions) {
+        final Optional<RocksDBColumnarKeyValueStorage> columnar = getColumnarStorage(storage);
+        final Optional<RocksDbSegmentIdentifier> segment = getSegmentHandle(storage);
+        if (columnar.isPresent() && segment.isPresent()) {
+            return columnar.get().scanKeys(segment.get(), scanOptions);
+        }
+        return inRange(storage.streamKeys(), key -> key, scanOptions);
+    }
+
+    private static <T> Stream<T> inRange(
+            final Stream<T> stream, final Function<T, byte[]> key, final ScanOptions scanOptions) {
+        final byte[] fromKey = scanOptions.getFromKey();
+        final byte[] toKey = scanOptions.getToKey();
+        return stream
+                .dropWhile(entry -> fromKey != null && Arrays.compareUnsigned(key.apply(entry), fromKey) < 0)
+                .takeWhile(entry -> toKey == null || Arrays.compareUnsigned(key.apply(entry), toKey) < 0);
+    }
+}
@@ -0,0 +1,23 @@
+package org.hyperledger.bela.utils.hacks;
+
+import org.hyperledger.bela.config.RocksDBTuning;
+
+/**
+ * Tuning picked up by the next rocksdb instance bela opens, the storage factories have no way to pass it along.
+ */
+public class RocksDBTuningDecider {
+    private static final RocksDBTuningDecider instance = new RocksDBTuningDecider();
+    private volatile RocksDBTuning tuning = RocksDBTuning.DEFAULT;
+
+    public static RocksDBTuningDecider getInstance() {
+        return instance;
+    }
+
+    public RocksDBTuning getTuning() {
+        return tuning;
+    }
+
+    public void setTuning(final RocksDBTuning tuning) {
+        this.tuning = tuning;
+    }
+}
@@ -0,0 +1,72 @@
+package org.hyperledger.bela.utils.hacks;
+
+import javax.annotation.Nullable;
+
+/**
+ * How a segment is scanned in bulk. Scans read ahead and, unless asked otherwise, leave the block cache to the point
+ * lookups, so a pass over a whole segment does not evict the hot trie nodes.
+ */
+public class ScanOptions {
+    @Nullable
+    private final byte[] fromKey;
+    @Nullable
+    private final byte[] toKey;
+    private final boolean fillCache;
+    private final boolean snapshot;
+
+    private ScanOptions(@Nullable final byte[] fromKey, @Nullable final byte[] toKey, final boolean fillCache,
+                        final boolean snapshot) {
+        this.fromKey = fromKey;
+        this.toKey = toKey;
+        this.fillCache = fillCache;
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Every key of the segment.
+     */
+    public static ScanOptions fullScan() {
+        return new ScanOptions(null, null, false, false);
+    }
+
+    /**
+     * The keys from fromKey, inclusive, to toKey, exclusive.
+     *
+     * @param toKey null scans to the end of the segment
+     */
+    public static ScanOptions range(@Nullable final byte[] fromKey, @Nullable final byte[] toKey) {
+        return new ScanOptions(fromKey, toKey, false, false);
+    }
+
+    /**
+     * Keeps the blocks read in the block cache, for scans whose data is read again soon.
+     */
+    public ScanOptions fillingCache() {
+        return new ScanOptions(fromKey, toKey, true, snapshot);
+    }
+
+    /**
+     * Reads from a snapshot taken when the scan starts, so writes made during a long scan are not seen.
+     */
+    public ScanOptions fromSnapshot() {
+        return new ScanOptions(fromKey, toKey, fillCache, true);
+    }
+
+    @Nullable
+    public byte[] getFromKey() {
+        return fromKey;
+    }
+
+    @Nullable
+    public byte[] getToKey() {
+        return toKey;
+    }
+
+    public boolean isFillCache() {
+        return fillCache;
+    }
+
+    public boolean isSnapshot() {
+        return snapshot;
+    }
+}
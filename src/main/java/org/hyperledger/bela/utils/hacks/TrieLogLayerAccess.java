@@ -0,0 +1,77 @@
+package org.hyperledger.bela.utils.hacks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.stream.Stream;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.units.bigints.UInt256;
+import org.hyperledger.besu.datatypes.Address;
+import org.hyperledger.besu.datatypes.Hash;
+import org.hyperledger.besu.ethereum.bonsai.BonsaiValue;
+import org.hyperledger.besu.ethereum.bonsai.TrieLogLayer;
+import org.hyperledger.besu.ethereum.worldstate.StateTrieAccountValue;
+
+/**
+ * Reaches into {@link TrieLogLayer} through reflection, its decoding and stream methods are not public in every besu
+ * version. The methods are resolved once into method handles, so calling them costs about as much as a direct call.
+ */
+@SuppressWarnings("unchecked")
+public class TrieLogLayerAccess {
+    private static final MethodHandle FROM_BYTES = resolveStatic("fromBytes", TrieLogLayer.class, byte[].class);
+    private static final MethodHandle STREAM_ACCOUNT_CHANGES = resolveVirtual("streamAccountChanges", Stream.class);
+    private static final MethodHandle STREAM_CODE_CHANGES = resolveVirtual("streamCodeChanges", Stream.class);
+    private static final MethodHandle STREAM_STORAGE_CHANGES = resolveVirtual("streamStorageChanges", Stream.class);
+
+    public static TrieLogLayer fromBytes(final byte[] bytes) {
+        try {
+            return (TrieLogLayer) FROM_BYTES.invokeExact(bytes);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    public static Stream<Map.Entry<Address, BonsaiValue<StateTrieAccountValue>>> streamAccountChanges(final TrieLogLayer layer) {
+        return (Stream<Map.Entry<Address, BonsaiValue<StateTrieAccountValue>>>) invoke(STREAM_ACCOUNT_CHANGES, layer);
+    }
+
+    public static Stream<Map.Entry<Address, BonsaiValue<Bytes>>> streamCodeChanges(final TrieLogLayer layer) {
+        return (Stream<Map.Entry<Address, BonsaiValue<Bytes>>>) invoke(STREAM_CODE_CHANGES, layer);
+    }
+
+    public static Stream<Map.Entry<Address, Map<Hash, BonsaiValue<UInt256>>>> streamStorageChanges(final TrieLogLayer layer) {
+        return (Stream<Map.Entry<Address, Map<Hash, BonsaiValue<UInt256>>>>) invoke(STREAM_STORAGE_CHANGES, layer);
+    }
+
+    private static Stream<?> invoke(final MethodHandle handle, final TrieLogLayer layer) {
+        try {
+            return (Stream<?>) handle.invokeExact(layer);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    private static MethodHandle resolveVirtual(final String name, final Class<?> returnType) {
+        return unreflect(name).asType(MethodType.methodType(returnType, TrieLogLayer.class));
+    }
+
+    private static MethodHandle resolveStatic(final String name, final Class<?> returnType, final Class<?> parameterType) {
+        return unreflect(name, parameterType).asType(MethodType.methodType(returnType, parameterType));
+    }
+
+    private static MethodHandle unreflect(final String name, final Class<?>... parameterTypes) {
+        try {
+            final Method method = TrieLogLayer.class.getDeclaredMethod(name, parameterTypes);
+            method.setAccessible(true);
+            return MethodHandles.lookup().unreflect(method);
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+}
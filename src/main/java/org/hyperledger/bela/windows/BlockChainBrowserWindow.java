@@ -70,7 +70,8 @@ public class BlockChainBrowserWindow extends AbstractBelaWindow {
 
     @Override
     public Panel createMainPanel() {
-        context = BlockChainContextFactory.createBlockChainContext(storageProviderFactory.createProvider());
+        context = BlockChainContextFactory.createBlockChainContext(storageProviderFactory.createProvider(),
+                storageProviderFactory.getMetricsSystem());
         browser = BlockChainBrowser.fromBlockChainContext(context);
 
         Panel panel = new Panel(new LinearLayout());
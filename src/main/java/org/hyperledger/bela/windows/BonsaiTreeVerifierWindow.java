@@ -1,10 +1,12 @@
 package org.hyperledger.bela.windows;
 
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
 import com.googlecode.lanterna.TerminalSize;
 import com.googlecode.lanterna.gui2.Label;
 import com.googlecode.lanterna.gui2.LinearLayout;
@@ -20,32 +22,45 @@ import org.hyperledger.bela.dialogs.BelaDialog;
 import org.hyperledger.bela.utils.StorageProviderFactory;
 import org.hyperledger.bela.utils.bonsai.BonsaiListener;
 import org.hyperledger.bela.utils.bonsai.BonsaiTraversal;
+import org.hyperledger.bela.utils.bonsai.BonsaiTraversalCheckpoint;
 import org.hyperledger.bela.utils.bonsai.BonsaiTraversalTrieType;
+import org.hyperledger.bela.utils.bonsai.FlatDatabaseCheck;
+import org.hyperledger.bela.utils.bonsai.StorageTrieProgress;
 import org.hyperledger.besu.datatypes.Hash;
-import org.hyperledger.besu.ethereum.storage.StorageProvider;
 
 import static kr.pe.kwonnam.slf4jlambda.LambdaLoggerFactory.getLogger;
+import static org.hyperledger.bela.windows.Constants.KEY_FLAT_DATABASE_CHECK;
 import static org.hyperledger.bela.windows.Constants.KEY_LOOKUP_BY_HASH;
 import static org.hyperledger.bela.windows.Constants.KEY_START;
 import static org.hyperledger.bela.windows.Constants.KEY_STOP;
+import static org.hyperledger.bela.windows.Constants.KEY_THREADS;
 
 public class BonsaiTreeVerifierWindow extends AbstractBelaWindow implements BonsaiListener {
     public static final String NOT_RUNNING = "Not Running...";
     private static final LambdaLogger log = getLogger(BonsaiTreeVerifierWindow.class);
+    private static final int LARGE_STORAGE_REFRESH_INTERVAL = 10_000;
+    private static final int MAX_LARGE_STORAGE_SHOWN = 5;
     private final WindowBasedTextGUI gui;
     private final StorageProviderFactory storageProviderFactory;
     private final ExecutorService executorService = Executors.newSingleThreadExecutor();
     private final Label runningLabel = new Label(NOT_RUNNING);
     private final Label counterLabel = new Label("0");
+    private final Label threadsLabel = new Label("");
+    private final Label flatDatabaseCheckLabel = new Label("");
+    private final Label largeStorageLabel = new Label("");
     private final TextBox logTextBox = new TextBox(new TerminalSize(120, 30));
     private final AtomicReference<BonsaiTraversal> bonsaiTraversal = new AtomicReference<>();
     AtomicInteger visited = new AtomicInteger(0);
     private Future<?> execution;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private FlatDatabaseCheck flatDatabaseCheck = FlatDatabaseCheck.LOOKUP;
 
     public BonsaiTreeVerifierWindow(final WindowBasedTextGUI gui, final StorageProviderFactory storageProviderFactory) {
         this.gui = gui;
         this.storageProviderFactory = storageProviderFactory;
         logTextBox.setReadOnly(true);
+        updateThreadsLabel();
+        updateFlatDatabaseCheckLabel();
     }
 
     @Override
@@ -64,7 +79,39 @@ public class BonsaiTreeVerifierWindow extends AbstractBelaWindow implements Bons
         return new KeyControls()
                 .addControl("Start", KEY_START, this::startVerifier)
                 .addControl("Stop", KEY_STOP, this::stopVerifier)
-                .addControl("Hash?", KEY_LOOKUP_BY_HASH, this::startFromHash);
+                .addControl("Hash?", KEY_LOOKUP_BY_HASH, this::startFromHash)
+                .addControl("Threads", KEY_THREADS, this::changeThreads)
+                .addControl("Flat DB check", KEY_FLAT_DATABASE_CHECK, this::toggleFlatDatabaseCheck);
+    }
+
+    private void toggleFlatDatabaseCheck() {
+        flatDatabaseCheck = flatDatabaseCheck == FlatDatabaseCheck.LOOKUP ? FlatDatabaseCheck.MERGE_JOIN : FlatDatabaseCheck.LOOKUP;
+        updateFlatDatabaseCheckLabel();
+    }
+
+    private void updateFlatDatabaseCheckLabel() {
+        flatDatabaseCheckLabel.setText("Flat database check: " + flatDatabaseCheck);
+    }
+
+    private void changeThreads() {
+        final String s = TextInputDialog.showDialog(gui, "Verifier threads", "Number of threads", String.valueOf(threads));
+        if (s == null) {
+            return;
+        }
+        try {
+            final int value = Integer.parseInt(s.trim());
+            if (value < 1) {
+                throw new IllegalArgumentException("Number of threads must be at least 1");
+            }
+            threads = value;
+            updateThreadsLabel();
+        } catch (Exception e) {
+            BelaDialog.showException(gui, e);
+        }
+    }
+
+    private void updateThreadsLabel() {
+        threadsLabel.setText("Threads: " + threads);
     }
 
     private void startFromHash() {
@@ -89,8 +136,9 @@ public class BonsaiTreeVerifierWindow extends AbstractBelaWindow implements Bons
         Thread.yield();
         logTextBox.setText("");
         visited.set(0);
-        final StorageProvider storageProvider = storageProviderFactory.createProvider();
-        this.bonsaiTraversal.set(new BonsaiTraversal(storageProvider, this));
+        final StorageProviderFactory.Lease lease = storageProviderFactory.lease();
+        // no trie node cache, a traversal reads every node once and the browser's nodes may be stale
+        this.bonsaiTraversal.set(new BonsaiTraversal(lease.getProvider(), this, threads, null, FlatDatabaseCheck.LOOKUP));
         execution = executorService.submit(() -> {
             try {
                 runningLabel.setText("Running...");
@@ -99,6 +147,8 @@ public class BonsaiTreeVerifierWindow extends AbstractBelaWindow implements Bons
             } catch (Exception e) {
                 runningLabel.setText("There was an error...");
                 log.error("There was an error", e);
+            } finally {
+                lease.close();
             }
         });
     }
@@ -108,7 +158,10 @@ public class BonsaiTreeVerifierWindow extends AbstractBelaWindow implements Bons
         Panel panel = new Panel(new LinearLayout());
 
         panel.addComponent(runningLabel);
+        panel.addComponent(threadsLabel);
+        panel.addComponent(flatDatabaseCheckLabel);
         panel.addComponent(counterLabel);
+        panel.addComponent(largeStorageLabel);
         panel.addComponent(logTextBox);
 
         return panel;
@@ -130,11 +183,15 @@ public class BonsaiTreeVerifierWindow extends AbstractBelaWindow implements Bons
         runningLabel.setText("Initialising...");
         Thread.yield();
         counterLabel.setText("0");
+        largeStorageLabel.setText("");
         logTextBox.setText("");
         visited.set(0);
 
-        final StorageProvider provider = storageProviderFactory.createProvider();
-        this.bonsaiTraversal.set(new BonsaiTraversal(provider, this));
+        final StorageProviderFactory.Lease lease = storageProviderFactory.lease();
+        // no trie node cache, a traversal reads every node once and the browser's nodes may be stale
+        this.bonsaiTraversal.set(new BonsaiTraversal(lease.getProvider(), this, threads,
+                storageProviderFactory.getDataPath().resolve(BonsaiTraversalCheckpoint.CHECKPOINT_FILE_NAME),
+                flatDatabaseCheck));
 
         execution = executorService.submit(() -> {
             try {
@@ -145,6 +202,7 @@ public class BonsaiTreeVerifierWindow extends AbstractBelaWindow implements Bons
                 runningLabel.setText("There was an error...");
                 log.error("There was an error", e);
             } finally {
+                lease.close();
                 stopVerifier();
             }
         });
@@ -158,63 +216,122 @@ public class BonsaiTreeVerifierWindow extends AbstractBelaWindow implements Bons
     @Override
     public void missingCodeHash(final Hash codeHash, final Hash accountHash) {
         log.info("Missing code hash {} for account {}", codeHash, accountHash);
-        logTextBox.addLine(String.format("missing code hash %s for account %s", codeHash, accountHash));
+        addLine(String.format("missing code hash %s for account %s", codeHash, accountHash));
     }
 
     @Override
     public void invalidCode(final Hash accountHash, final Hash codeHash, final Hash foundCodeHash) {
         log.info("Invalid code for account {} with code hash {} found code hash {}", accountHash, codeHash, foundCodeHash);
-        logTextBox.addLine(String.format("invalid code for account %s (expected %s and found %s)", accountHash, codeHash, foundCodeHash));
+        addLine(String.format("invalid code for account %s (expected %s and found %s)", accountHash, codeHash, foundCodeHash));
     }
 
     @Override
     public void missingValueForNode(final Bytes32 hash) {
         log.info("Missing value for node {}", hash);
-        logTextBox.addLine("Missing value for node " + hash.toHexString());
+        addLine("Missing value for node " + hash.toHexString());
 
     }
 
     @Override
     public void visited(final BonsaiTraversalTrieType type) {
-        counterLabel.setText(String.valueOf(visited.incrementAndGet()));
+        final int count = visited.incrementAndGet();
+        counterLabel.setText(String.valueOf(count));
+        if (count % LARGE_STORAGE_REFRESH_INTERVAL == 0) {
+            updateLargeStorageLabel();
+        }
         Thread.yield();
     }
 
+    @Override
+    public void visited(final BonsaiTraversalTrieType type, final long count) {
+        counterLabel.setText(String.valueOf(visited.addAndGet((int) count)));
+    }
+
+    private void updateLargeStorageLabel() {
+        final BonsaiTraversal traversal = bonsaiTraversal.get();
+        if (traversal == null) {
+            return;
+        }
+        final List<StorageTrieProgress> largeStorageTries = traversal.getLargeStorageTries();
+        if (largeStorageTries.isEmpty()) {
+            return;
+        }
+        final long done = largeStorageTries.stream().filter(StorageTrieProgress::isDone).count();
+        final String running = largeStorageTries.stream()
+                .filter(progress -> !progress.isDone())
+                .limit(MAX_LARGE_STORAGE_SHOWN)
+                .map(progress -> "\n  " + progress)
+                .collect(Collectors.joining());
+        largeStorageLabel.setText(String.format("Large storage tries: %d done, %d running%s",
+                done, largeStorageTries.size() - done, running));
+    }
+
     @Override
     public void missingAccountTrieForHash(final Bytes32 hash, final Bytes location) {
         log.info("Missing account trie for hash {} at location {}", hash, location);
-        logTextBox.addLine(String.format("missing account trie node for hash %s and location %s", hash, location));
+        addLine(String.format("missing account trie node for hash %s and location %s", hash, location));
 
     }
 
     @Override
     public void invalidAccountTrieForHash(final Bytes32 hash, final Bytes location, final Hash foundHashNode) {
         log.info("Invalid account trie for hash {} at location {} found hash {}", hash, location, foundHashNode);
-        logTextBox.addLine(String.format("invalid account trie node for hash %s and location %s (found %s)", hash, location, foundHashNode));
+        addLine(String.format("invalid account trie node for hash %s and location %s (found %s)", hash, location, foundHashNode));
     }
 
     @Override
     public void missingStorageTrieForHash(final Bytes32 hash, final Bytes location) {
         log.info("Missing storage trie for hash {} at location {}", hash, location);
-        logTextBox.addLine(String.format("missing storage trie node for hash %s and location %s", hash, location));
+        addLine(String.format("missing storage trie node for hash %s and location %s", hash, location));
     }
 
     @Override
     public void invalidStorageTrieForHash(final Bytes32 accountHash, final Bytes32 hash, final Bytes location, final Hash foundHashNode) {
         log.info("Invalid storage trie for account {} hash {} at location {} found hash {}",accountHash, hash, location, foundHashNode);
-        logTextBox.addLine(String.format("invalid storage trie node for account %s hash %s and location %s (found %s)",accountHash, hash, location, foundHashNode));
+        addLine(String.format("invalid storage trie node for account %s hash %s and location %s (found %s)",accountHash, hash, location, foundHashNode));
     }
 
     @Override
     public void differentDataInFlatDatabaseForAccount(final Hash accountHash) {
         log.info("Different data in flat database for account {}", accountHash);
-        logTextBox.addLine(String.format("inconsistent data in flat database for account %s", accountHash));
+        addLine(String.format("inconsistent data in flat database for account %s", accountHash));
     }
 
     @Override
     public void differentDataInFlatDatabaseForStorage(final Bytes32 accountHash, final Bytes32 slotHash) {
         log.info("Different data in flat database for account {} and slot {}", accountHash, slotHash);
-        logTextBox.addLine(String.format("inconsistent data in flat database for account %s on slot %s", accountHash, slotHash));
+        addLine(String.format("inconsistent data in flat database for account %s on slot %s", accountHash, slotHash));
+    }
+
+    @Override
+    public void missingAccountInFlatDatabase(final Hash accountHash) {
+        log.info("Missing account {} in flat database", accountHash);
+        addLine(String.format("missing account %s in flat database", accountHash));
+    }
+
+    @Override
+    public void accountOnlyInFlatDatabase(final Hash accountHash) {
+        log.info("Account {} in flat database is not in the trie", accountHash);
+        addLine(String.format("account %s in flat database is not in the trie", accountHash));
+    }
+
+    @Override
+    public void missingStorageInFlatDatabase(final Bytes32 accountHash, final Bytes32 slotHash) {
+        log.info("Missing slot {} of account {} in flat database", slotHash, accountHash);
+        addLine(String.format("missing slot %s of account %s in flat database", slotHash, accountHash));
+    }
+
+    @Override
+    public void storageOnlyInFlatDatabase(final Bytes32 accountHash, final Bytes32 slotHash) {
+        log.info("Slot {} of account {} in flat database is not in the trie", slotHash, accountHash);
+        addLine(String.format("slot %s of account %s in flat database is not in the trie", slotHash, accountHash));
+    }
+
+    // listener callbacks arrive from every traversal worker
+    private void addLine(final String line) {
+        synchronized (logTextBox) {
+            logTextBox.addLine(line);
+        }
     }
 
     @Override
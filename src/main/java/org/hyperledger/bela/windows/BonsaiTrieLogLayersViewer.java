@@ -3,22 +3,29 @@ package org.hyperledger.bela.windows;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import com.googlecode.lanterna.gui2.Direction;
 import com.googlecode.lanterna.gui2.LinearLayout;
 import com.googlecode.lanterna.gui2.Panel;
 import com.googlecode.lanterna.gui2.WindowBasedTextGUI;
 import com.googlecode.lanterna.gui2.dialogs.TextInputDialog;
 import kr.pe.kwonnam.slf4jlambda.LambdaLogger;
-import org.apache.tuweni.bytes.Bytes32;
 import org.hyperledger.bela.components.KeyControls;
 import org.hyperledger.bela.components.bonsai.BonsaiNode;
 import org.hyperledger.bela.components.bonsai.BonsaiTrieLogView;
 import org.hyperledger.bela.components.bonsai.RootTrieLogSearchResult;
 import org.hyperledger.bela.components.bonsai.queries.BonsaiTrieQuery;
+import org.hyperledger.bela.components.bonsai.queries.TrieQueryContext;
 import org.hyperledger.bela.components.bonsai.queries.TrieQueryValidator;
 import org.hyperledger.bela.dialogs.BelaDialog;
 import org.hyperledger.bela.dialogs.ProgressBarPopup;
+import org.hyperledger.bela.trielog.TrieLogIndex;
+import org.hyperledger.bela.trielog.TrieLogQueryEngine;
 import org.hyperledger.bela.utils.BlockChainContext;
 import org.hyperledger.bela.utils.BlockChainContextFactory;
 import org.hyperledger.bela.utils.StorageProviderFactory;
@@ -32,17 +39,18 @@ import org.hyperledger.besu.ethereum.chain.ChainHead;
 import org.hyperledger.besu.ethereum.storage.StorageProvider;
 import org.hyperledger.besu.ethereum.storage.keyvalue.KeyValueSegmentIdentifier;
 import org.hyperledger.besu.ethereum.worldstate.DataStorageConfiguration;
-import org.hyperledger.besu.metrics.noop.NoOpMetricsSystem;
 import org.hyperledger.besu.plugin.services.storage.KeyValueStorage;
 
 import static kr.pe.kwonnam.slf4jlambda.LambdaLoggerFactory.getLogger;
 import static org.hyperledger.bela.windows.Constants.KEY_HEAD;
+import static org.hyperledger.bela.windows.Constants.KEY_INDEX;
 import static org.hyperledger.bela.windows.Constants.KEY_LOG;
 import static org.hyperledger.bela.windows.Constants.KEY_LOOKUP_BY_HASH;
 import static org.hyperledger.bela.windows.Constants.KEY_QUERY;
 import static org.hyperledger.bela.windows.Constants.KEY_ROLL_BACKWARD;
 import static org.hyperledger.bela.windows.Constants.KEY_ROLL_FORWARD;
 import static org.hyperledger.bela.windows.Constants.KEY_SHOW_ALL;
+import static org.hyperledger.bela.windows.Constants.KEY_STOP;
 
 public class BonsaiTrieLogLayersViewer extends AbstractBelaWindow {
     private static final LambdaLogger log = getLogger(BonsaiTrieLogLayersViewer.class);
@@ -51,6 +59,9 @@ public class BonsaiTrieLogLayersViewer extends AbstractBelaWindow {
     private final StorageProviderFactory storageProviderFactory;
 
     private final BonsaiTrieLogView view;
+    private final ExecutorService queryExecutor = Executors.newSingleThreadExecutor();
+    private TrieLogQueryEngine.Execution execution;
+    private Future<?> indexing;
 
     public BonsaiTrieLogLayersViewer(final WindowBasedTextGUI gui, final StorageProviderFactory storageProviderFactory) {
 
@@ -77,7 +88,9 @@ public class BonsaiTrieLogLayersViewer extends AbstractBelaWindow {
                 .addControl("To Log", KEY_LOG, view::logCurrent)
                 .addControl("Head", KEY_HEAD, this::lookupByChainHead)
                 .addControl("Query", KEY_QUERY, this::query)
+                .addControl("Stop", KEY_STOP, this::stopQuery)
                 .addControl("All", KEY_SHOW_ALL, this::showAll)
+                .addControl("Index", KEY_INDEX, this::updateIndex)
                 .addControl("Roll Forward", KEY_ROLL_FORWARD, this::rollForward)
                 .addControl("Roll Backward", KEY_ROLL_BACKWARD, this::rollBackward);
     }
@@ -89,7 +102,16 @@ public class BonsaiTrieLogLayersViewer extends AbstractBelaWindow {
 
     private void executeQuery(final BonsaiTrieQuery query) {
         try {
-            executeQuery(query.createValidator(gui));
+            final TrieQueryValidator validator = query.createValidator(gui,
+                    TrieQueryContext.forProvider(storageProviderFactory.createProvider(), storageProviderFactory.getMetricsSystem()));
+            if (validator == null) {
+                return;
+            }
+            final String s = TextInputDialog.showDialog(gui, "Maximum matches", "Empty for all", "");
+            if (s == null) {
+                return;
+            }
+            executeQuery(validator, s.isBlank() ? TrieLogQueryEngine.NO_LIMIT : Integer.parseInt(s.trim()));
         } catch (Exception e) {
             log.error("There was an error", e);
             BelaDialog.showException(gui, e);
@@ -98,21 +120,118 @@ public class BonsaiTrieLogLayersViewer extends AbstractBelaWindow {
     }
 
     public void executeQuery(final TrieQueryValidator validator) {
-        final StorageProvider provider = storageProviderFactory.createProvider();
-        final long estimate = SegmentManipulationWindow.accessLongPropertyForSegment(provider, KeyValueSegmentIdentifier.TRIE_LOG_STORAGE, LongRocksDbProperty.ROCKSDB_ESTIMATE_NUM_KEYS);
-        final ProgressBarPopup popup = ProgressBarPopup.showPopup(gui, "Searching", (int) estimate);
-        final KeyValueStorage storage = provider.getStorageBySegmentIdentifier(KeyValueSegmentIdentifier.TRIE_LOG_STORAGE);
-        final List<BonsaiNode> results = storage.streamKeys().map(entry -> Hash.wrap(Bytes32.wrap(entry)))
-                .map(hash -> {
-                    popup.increment();
-                    return BonsaiTrieLogView.getTrieLog(storage, hash);
-                })
-                .flatMap(Optional::stream)
-                .filter(validator::validate)
-                .map(trieLogLayer -> new RootTrieLogSearchResult(storage, trieLogLayer.getBlockHash()))
-                .collect(Collectors.toList());
-        view.shoResults(storage, results);
-        popup.close();
+        executeQuery(validator, TrieLogQueryEngine.NO_LIMIT);
+    }
+
+    /**
+     * Shows the search result right away and adds the matches to it as the query engine finds them, the query runs
+     * in the background until it is done or stopped.
+     */
+    private synchronized void executeQuery(final TrieQueryValidator validator, final int limit) {
+        if (execution != null && !execution.isDone()) {
+            BelaDialog.showMessage(gui, "Already running", "A query is already running, stop it first");
+            return;
+        }
+        final StorageProviderFactory.Lease lease = storageProviderFactory.lease();
+        final KeyValueStorage storage = lease.getStorage(KeyValueSegmentIdentifier.TRIE_LOG_STORAGE);
+        final Optional<List<Hash>> indexed;
+        try {
+            indexed = TrieLogIndex.lookupIfIndexed(storageProviderFactory.getDataPath(), storage, validator);
+        } catch (RuntimeException e) {
+            lease.close();
+            throw e;
+        }
+        if (indexed.isPresent()) {
+            lease.close();
+            view.shoResults(storage, indexed.get().stream()
+                    .limit(limit)
+                    .<BonsaiNode>map(blockHash -> new RootTrieLogSearchResult(storage, blockHash))
+                    .toList());
+            return;
+        }
+        final List<BonsaiNode> results = new CopyOnWriteArrayList<>();
+        final AtomicBoolean refreshPending = new AtomicBoolean();
+        final TrieLogQueryEngine.Execution started = new TrieLogQueryEngine(Runtime.getRuntime().availableProcessors())
+                .start(storage, validator, limit, blockHash -> {
+                    results.add(new RootTrieLogSearchResult(storage, blockHash));
+                    if (refreshPending.compareAndSet(false, true)) {
+                        gui.getGUIThread().invokeLater(() -> {
+                            refreshPending.set(false);
+                            view.refreshCurrentNode();
+                        });
+                    }
+                });
+        execution = started;
+        view.shoResults(storage, results, () -> queryStatus(started));
+        queryExecutor.submit(() -> {
+            try {
+                started.await();
+            } catch (Exception e) {
+                log.error("There was an error", e);
+            } finally {
+                lease.close();
+                gui.getGUIThread().invokeLater(view::refreshCurrentNode);
+            }
+        });
+    }
+
+    private static String queryStatus(final TrieLogQueryEngine.Execution execution) {
+        final String state = !execution.isDone() ? "Running" : execution.isCancelled() ? "Stopped" : "Done";
+        return state + ", " + execution.getScanned() + " trie logs scanned";
+    }
+
+    private synchronized void stopQuery() {
+        if (execution != null) {
+            execution.cancel();
+        }
+    }
+
+    /**
+     * Builds the trie log index, or indexes the trie logs added since it was last updated, in the background.
+     */
+    private synchronized void updateIndex() {
+        if (execution != null && !execution.isDone() || indexing != null && !indexing.isDone()) {
+            BelaDialog.showMessage(gui, "Already running", "A query or indexing is already running, wait for it to finish");
+            return;
+        }
+        try {
+            // held until the index is updated, nothing can close the database while it is read
+            final StorageProviderFactory.Lease lease = storageProviderFactory.lease();
+            final long estimate;
+            try {
+                estimate = SegmentManipulationWindow.accessLongPropertyForSegment(lease.getProvider(),
+                        KeyValueSegmentIdentifier.TRIE_LOG_STORAGE, LongRocksDbProperty.ROCKSDB_ESTIMATE_NUM_KEYS);
+            } catch (RuntimeException e) {
+                lease.close();
+                throw e;
+            }
+            final ProgressBarPopup popup = ProgressBarPopup.showPopup(gui, "Indexing", (int) estimate);
+            final AtomicLong shown = new AtomicLong();
+            indexing = queryExecutor.submit(() -> {
+                try (lease; TrieLogIndex index = TrieLogIndex.open(storageProviderFactory.getDataPath())) {
+                    final long indexed = index.update(lease.getStorage(KeyValueSegmentIdentifier.TRIE_LOG_STORAGE),
+                            count -> gui.getGUIThread().invokeLater(() -> {
+                                while (shown.get() < count) {
+                                    shown.incrementAndGet();
+                                    popup.increment();
+                                }
+                            }));
+                    gui.getGUIThread().invokeLater(() -> {
+                        popup.close();
+                        BelaDialog.showMessage(gui, "Trie log index", "Indexed " + indexed + " new trie logs");
+                    });
+                } catch (Exception e) {
+                    log.error("There was an error", e);
+                    gui.getGUIThread().invokeLater(() -> {
+                        popup.close();
+                        BelaDialog.showException(gui, e);
+                    });
+                }
+            });
+        } catch (Exception e) {
+            log.error("There was an error", e);
+            BelaDialog.showException(gui, e);
+        }
     }
 
     private void showAll() {
@@ -154,12 +273,13 @@ public class BonsaiTrieLogLayersViewer extends AbstractBelaWindow {
 
     private BonsaiWorldStateUpdater getBonsaiWorldStateUpdater() {
         final StorageProvider provider = storageProviderFactory.createProvider();
-        final BlockChainContext blockChainContext = BlockChainContextFactory.createBlockChainContext(provider);
+        final BlockChainContext blockChainContext = BlockChainContextFactory.createBlockChainContext(provider,
+                storageProviderFactory.getMetricsSystem());
 
         final BonsaiWorldStateArchive archive = new BonsaiWorldStateArchive(
             provider,
             blockChainContext.getBlockchain(),
-            new CachedMerkleTrieLoader(new NoOpMetricsSystem()));
+            new CachedMerkleTrieLoader(storageProviderFactory.getMetricsSystem()));
 
         return (BonsaiWorldStateUpdater) archive.getMutable().updater();
 
@@ -167,14 +287,16 @@ public class BonsaiTrieLogLayersViewer extends AbstractBelaWindow {
 
 
     private void lookupByChainHead() {
-        final BlockChainContext blockChainContext = BlockChainContextFactory.createBlockChainContext(storageProviderFactory.createProvider());
+        final BlockChainContext blockChainContext = BlockChainContextFactory.createBlockChainContext(storageProviderFactory.createProvider(),
+                storageProviderFactory.getMetricsSystem());
         final ChainHead chainHead = blockChainContext.getBlockchain().getChainHead();
         updateTrieFromHash(chainHead.getHash());
 
     }
 
     private void lookupByHash() {
-        final BlockChainContext blockChainContext = BlockChainContextFactory.createBlockChainContext(storageProviderFactory.createProvider());
+        final BlockChainContext blockChainContext = BlockChainContextFactory.createBlockChainContext(storageProviderFactory.createProvider(),
+                storageProviderFactory.getMetricsSystem());
         final ChainHead chainHead = blockChainContext.getBlockchain().getChainHead();
         final String s = TextInputDialog.showDialog(gui, "Enter Block Hash", "Hash", chainHead.getHash().toHexString());
         if (s == null) {
@@ -193,5 +315,9 @@ public class BonsaiTrieLogLayersViewer extends AbstractBelaWindow {
         view.updateFromHash(hash);
     }
 
-
+    @Override
+    public void close() {
+        stopQuery();
+        queryExecutor.shutdownNow();
+    }
 }
@@ -16,6 +16,12 @@ public class Constants {
     public static final String DEFAULT_THEME = "default";
     public static final String DETECT_COLUMNS = "detect_columns";
     public static final String FULL_SCREEN_WINDOWS = "full_screen_windows";
+    public static final String ROCKSDB_BLOCK_CACHE_MB = "rocksdb_block_cache_mb";
+    public static final String ROCKSDB_READAHEAD_KB = "rocksdb_readahead_kb";
+    public static final String ROCKSDB_MAX_OPEN_FILES = "rocksdb_max_open_files";
+    public static final String ROCKSDB_BLOOM_FILTER = "rocksdb_bloom_filter";
+    public static final String ROCKSDB_DIRECT_READS = "rocksdb_direct_reads";
+    public static final String ROCKSDB_POINT_LOOKUP_TRIES = "rocksdb_point_lookup_tries";
 
     public static final Character KEY_BACK = 'h';
     public static final Character KEY_FORWARD = 'l';
@@ -36,6 +42,8 @@ public class Constants {
     public static final Character KEY_ROLL_BACKWARD = 'e';
     public static final Character KEY_START = 's';
     public static final Character KEY_STOP = 'x';
+    public static final Character KEY_THREADS = 't';
+    public static final Character KEY_FLAT_DATABASE_CHECK = 'm';
     public static final Character KEY_CONVERT_TO_FOREST = 'f';
     public static final Character KEY_CONVERT_TO_BONSAI = 'b';
     public static final Character KEY_TEST_OPEN_DATABASE = 't';
@@ -44,6 +52,12 @@ public class Constants {
     public static final Character KEY_BLOCKCHAIN_SIZES = 'b';
     public static final Character KEY_PRUNE_COLUMNS = 'p';
     public static final Character KEY_DETECT_COLUMNS = 'd';
+    public static final Character KEY_ANALYZE_SEGMENTS = 'a';
+    public static final Character KEY_COMPACT = 'c';
+    public static final Character KEY_INTERVAL = 'i';
+    public static final Character KEY_EXPORT = 'e';
+    public static final Character KEY_METRICS_ENDPOINT = 'p';
+    public static final Character KEY_INDEX = 'i';
     public static final Character KEY_HEAD = 'h';
     public static final Character KEY_QUERY = '?';
     public static final Character KEY_SHOW_ALL = 'a';
@@ -15,11 +15,13 @@ import kr.pe.kwonnam.slf4jlambda.LambdaLogger;
 import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.bytes.Bytes32;
 import org.hyperledger.bela.components.KeyControls;
+import org.hyperledger.bela.converter.ConversionJournal;
 import org.hyperledger.bela.converter.DatabaseConverter;
 import org.hyperledger.bela.utils.StorageProviderFactory;
 import org.hyperledger.bela.utils.bonsai.BonsaiListener;
 import org.hyperledger.bela.utils.bonsai.BonsaiTraversalTrieType;
 import org.hyperledger.besu.datatypes.Hash;
+import org.hyperledger.besu.ethereum.storage.StorageProvider;
 import org.hyperledger.besu.plugin.services.storage.rocksdb.configuration.DatabaseMetadata;
 
 import static kr.pe.kwonnam.slf4jlambda.LambdaLoggerFactory.getLogger;
@@ -75,8 +77,13 @@ public class DatabaseConversionWindow extends AbstractBelaWindow implements Bons
         if (execution == null) {
             visited.set(0);
             execution = executorService.submit(() -> {
-                new DatabaseConverter(storageProviderFactory.createProvider(), this).convertToBonsai();
-                runningLabel.setText("Converting Worldstate to Bonsai");
+                try (StorageProviderFactory.Lease lease = storageProviderFactory.lease()) {
+                    converter(lease.getProvider()).convertToBonsai();
+                    runningLabel.setText("Converting Worldstate to Bonsai");
+                } catch (RuntimeException e) {
+                    log.error("Conversion to Bonsai failed", e);
+                    logTextBox.addLine("Conversion to Bonsai failed: " + e.getMessage());
+                }
 
             });
             runningLabel.setText("Running...");
@@ -87,14 +94,25 @@ public class DatabaseConversionWindow extends AbstractBelaWindow implements Bons
         if (execution == null) {
             visited.set(0);
             execution = executorService.submit(() -> {
-                new DatabaseConverter(storageProviderFactory.createProvider(), this).convertToForest();
-                runningLabel.setText("Converting Worldstate to Forest");
+                try (StorageProviderFactory.Lease lease = storageProviderFactory.lease()) {
+                    converter(lease.getProvider()).convertToForest();
+                    runningLabel.setText("Converting Worldstate to Forest");
+                } catch (RuntimeException e) {
+                    log.error("Conversion to Forest failed", e);
+                    logTextBox.addLine("Conversion to Forest failed: " + e.getMessage());
+                }
 
             });
             runningLabel.setText("Running...");
         }
     }
 
+    // the journal lets a crashed or restarted conversion continue where it stopped
+    private DatabaseConverter converter(final StorageProvider provider) {
+        return new DatabaseConverter(provider, this,
+                storageProviderFactory.getDataPath().resolve(ConversionJournal.JOURNAL_FILE_NAME));
+    }
+
     private void setDbMetadataVersion(int version) {
         try {
             new DatabaseMetadata(2, Optional.empty())
@@ -162,4 +180,24 @@ public class DatabaseConversionWindow extends AbstractBelaWindow implements Bons
     public void differentDataInFlatDatabaseForStorage(final Bytes32 accountHash, final Bytes32 slotHash) {
         logTextBox.addLine(String.format("inconsistent data in flat database for account %s on slot %s", accountHash, slotHash));
     }
+
+    @Override
+    public void missingAccountInFlatDatabase(final Hash accountHash) {
+        logTextBox.addLine(String.format("missing account %s in flat database", accountHash));
+    }
+
+    @Override
+    public void accountOnlyInFlatDatabase(final Hash accountHash) {
+        logTextBox.addLine(String.format("account %s in flat database is not in the trie", accountHash));
+    }
+
+    @Override
+    public void missingStorageInFlatDatabase(final Bytes32 accountHash, final Bytes32 slotHash) {
+        logTextBox.addLine(String.format("missing slot %s of account %s in flat database", slotHash, accountHash));
+    }
+
+    @Override
+    public void storageOnlyInFlatDatabase(final Bytes32 accountHash, final Bytes32 slotHash) {
+        logTextBox.addLine(String.format("slot %s of account %s in flat database is not in the trie", slotHash, accountHash));
+    }
 }
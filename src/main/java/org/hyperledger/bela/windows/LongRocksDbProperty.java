@@ -0,0 +1,54 @@
+package org.hyperledger.bela.windows;
+
+public enum LongRocksDbProperty {
+
+    TOTAL_SST_FILES_SIZE("rocksdb.total-sst-files-size") {
+        @Override
+        public String format(final long value) {
+            return round(value, GIGABYTE, "GB ") + round(value % GIGABYTE, MEGABYTE, "MB ") + round(value % MEGABYTE, KILOBYTE, "KB ") + round(value % KILOBYTE, 1, "B");
+        }
+    },
+    LIVE_SST_FILES_SIZE("rocksdb.live-sst-files-size") {
+        @Override
+        public String format(final long value) {
+            return round(value, GIGABYTE, "GB ") + round(value % GIGABYTE, MEGABYTE, "MB ") + round(value % MEGABYTE, KILOBYTE, "KB ") + round(value % KILOBYTE, 1, "B");
+        }
+    },
+    SIZE_ALL_MEM_TABLES("rocksdb.size-all-mem-tables") {
+        @Override
+        public String format(final long value) {
+            return round(value, GIGABYTE, "GB ") + round(value % GIGABYTE, MEGABYTE, "MB ") + round(value % MEGABYTE, KILOBYTE, "KB ") + round(value % KILOBYTE, 1, "B");
+        }
+    },
+    ROCKSDB_ESTIMATE_NUM_KEYS("rocksdb.estimate-num-keys"),
+    COMPACTION_PENDING("rocksdb.compaction-pending"),
+    NUM_RUNNING_COMPACTIONS("rocksdb.num-running-compactions"),
+    ESTIMATE_PENDING_COMPACTION_BYTES("rocksdb.estimate-pending-compaction-bytes") {
+        @Override
+        public String format(final long value) {
+            return round(value, GIGABYTE, "GB ") + round(value % GIGABYTE, MEGABYTE, "MB ") + round(value % MEGABYTE, KILOBYTE, "KB ") + round(value % KILOBYTE, 1, "B");
+        }
+    };
+
+
+    private static final long KILOBYTE = 1024;
+    private static final long MEGABYTE = KILOBYTE * 1024;
+    private static final long GIGABYTE = MEGABYTE * 1024;
+    private final String name;
+
+    LongRocksDbProperty(final String name) {
+        this.name = name;
+    }
+
+    private static String round(final long value, final long divisor, final String title) {
+        return value / divisor > 0 ? value / divisor + title : "";
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String format(final long value) {
+        return String.valueOf(value);
+    }
+}
@@ -0,0 +1,133 @@
+package org.hyperledger.bela.windows;
+
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.prefs.Preferences;
+import com.googlecode.lanterna.gui2.Label;
+import com.googlecode.lanterna.gui2.LinearLayout;
+import com.googlecode.lanterna.gui2.Panel;
+import com.googlecode.lanterna.gui2.WindowBasedTextGUI;
+import com.googlecode.lanterna.gui2.dialogs.TextInputDialog;
+import kr.pe.kwonnam.slf4jlambda.LambdaLogger;
+import org.hyperledger.bela.components.BelaMetricsSystem;
+import org.hyperledger.bela.components.KeyControls;
+import org.hyperledger.bela.dialogs.BelaDialog;
+import org.hyperledger.bela.utils.MetricsHttpEndpoint;
+import org.hyperledger.bela.utils.StorageProviderFactory;
+
+import static kr.pe.kwonnam.slf4jlambda.LambdaLoggerFactory.getLogger;
+import static org.hyperledger.bela.windows.Constants.DATA_PATH;
+import static org.hyperledger.bela.windows.Constants.DATA_PATH_DEFAULT;
+import static org.hyperledger.bela.windows.Constants.KEY_EXPORT;
+import static org.hyperledger.bela.windows.Constants.KEY_METRICS_ENDPOINT;
+import static org.hyperledger.bela.windows.Constants.KEY_UPDATE;
+
+/**
+ * Live values of the besu and bela metrics, with an export to a prometheus text file and a local http endpoint to
+ * scrape during long jobs.
+ */
+public class MetricsWindow extends AbstractBelaWindow {
+    public static final String METRICS_FILE_NAME = "bela-metrics.prom";
+    public static final int DEFAULT_PORT = 9545;
+    private static final LambdaLogger log = getLogger(MetricsWindow.class);
+    private static final int REFRESH_SECONDS = 2;
+    private final WindowBasedTextGUI gui;
+    private final BelaMetricsSystem metricsSystem;
+    private final Preferences preferences;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "bela-metrics-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Label endpointLabel = new Label("Http endpoint: not running");
+    private MetricsHttpEndpoint endpoint;
+
+    public MetricsWindow(final WindowBasedTextGUI gui, final StorageProviderFactory storageProviderFactory, final Preferences preferences) {
+        this.gui = gui;
+        this.metricsSystem = storageProviderFactory.getMetricsSystem();
+        this.preferences = preferences;
+        scheduler.scheduleWithFixedDelay(this::refresh, REFRESH_SECONDS, REFRESH_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public String label() {
+        return "Metrics";
+    }
+
+    @Override
+    public MenuGroup group() {
+        return MenuGroup.FILE;
+    }
+
+    @Override
+    public KeyControls createControls() {
+        return new KeyControls()
+                .addControl("Refresh", KEY_UPDATE, metricsSystem::refresh)
+                .addControl("Export", KEY_EXPORT, this::export)
+                .addControl("Http endpoint", KEY_METRICS_ENDPOINT, this::toggleEndpoint);
+    }
+
+    @Override
+    public Panel createMainPanel() {
+        Panel panel = new Panel(new LinearLayout());
+
+        panel.addComponent(endpointLabel);
+        panel.addComponent(metricsSystem.createComponent());
+
+        return panel;
+    }
+
+    private void refresh() {
+        try {
+            metricsSystem.refresh();
+        } catch (Exception e) {
+            log.error("Could not refresh the metrics", e);
+        }
+    }
+
+    private void export() {
+        final String defaultFile = Path.of(preferences.get(DATA_PATH, DATA_PATH_DEFAULT)).resolve(METRICS_FILE_NAME).toString();
+        final String s = TextInputDialog.showDialog(gui, "Export metrics", "Prometheus text file", defaultFile);
+        if (s == null) {
+            return;
+        }
+        try {
+            metricsSystem.exportTo(Path.of(s.trim()));
+            BelaDialog.showMessage(gui, "Export metrics", "Metrics written to " + s.trim());
+        } catch (Exception e) {
+            log.error("Could not export the metrics", e);
+            BelaDialog.showException(gui, e);
+        }
+    }
+
+    private synchronized void toggleEndpoint() {
+        if (endpoint != null) {
+            endpoint.close();
+            endpoint = null;
+            endpointLabel.setText("Http endpoint: not running");
+            return;
+        }
+        final String s = TextInputDialog.showDialog(gui, "Http endpoint", "Port", String.valueOf(DEFAULT_PORT));
+        if (s == null) {
+            return;
+        }
+        try {
+            endpoint = new MetricsHttpEndpoint(metricsSystem, Integer.parseInt(s.trim()));
+            endpointLabel.setText("Http endpoint: http://127.0.0.1:" + endpoint.getPort() + "/metrics");
+        } catch (Exception e) {
+            log.error("Could not start the metrics endpoint", e);
+            BelaDialog.showException(gui, e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        scheduler.shutdownNow();
+        if (endpoint != null) {
+            endpoint.close();
+            endpoint = null;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package org.hyperledger.bela.windows;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import com.googlecode.lanterna.gui2.Label;
+import com.googlecode.lanterna.gui2.LinearLayout;
+import com.googlecode.lanterna.gui2.Panel;
+import com.googlecode.lanterna.gui2.WindowBasedTextGUI;
+import com.googlecode.lanterna.gui2.dialogs.TextInputDialog;
+import kr.pe.kwonnam.slf4jlambda.LambdaLogger;
+import org.hyperledger.bela.components.KeyControls;
+import org.hyperledger.bela.dialogs.BelaDialog;
+import org.hyperledger.bela.utils.RocksDBStatisticsSampler;
+import org.hyperledger.bela.utils.StorageProviderFactory;
+import org.hyperledger.besu.ethereum.storage.StorageProvider;
+
+import static kr.pe.kwonnam.slf4jlambda.LambdaLoggerFactory.getLogger;
+import static org.hyperledger.bela.windows.Constants.KEY_INTERVAL;
+import static org.hyperledger.bela.windows.Constants.KEY_START;
+import static org.hyperledger.bela.windows.Constants.KEY_STOP;
+
+/**
+ * Live view of the rocksdb statistics of the database opened by the other windows, so a running verification,
+ * conversion or compaction can be watched. The database is never opened just to be sampled.
+ */
+public class RocksDBStatisticsWindow extends AbstractBelaWindow {
+    private static final LambdaLogger log = getLogger(RocksDBStatisticsWindow.class);
+    private static final int DEFAULT_INTERVAL_SECONDS = 2;
+    private final WindowBasedTextGUI gui;
+    private final StorageProviderFactory storageProviderFactory;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "bela-rocksdb-statistics");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Label runningLabel = new Label("Not Running...");
+    private final Label intervalLabel = new Label("");
+    private final Label statisticsLabel = new Label("");
+    private ScheduledFuture<?> sampling;
+    private StorageProvider sampledProvider;
+    private RocksDBStatisticsSampler sampler;
+    private int intervalSeconds = DEFAULT_INTERVAL_SECONDS;
+
+    public RocksDBStatisticsWindow(final WindowBasedTextGUI gui, final StorageProviderFactory storageProviderFactory) {
+        this.gui = gui;
+        this.storageProviderFactory = storageProviderFactory;
+        updateIntervalLabel();
+    }
+
+    @Override
+    public String label() {
+        return "RocksDB Statistics";
+    }
+
+    @Override
+    public MenuGroup group() {
+        return MenuGroup.DATABASE;
+    }
+
+    @Override
+    public KeyControls createControls() {
+        return new KeyControls()
+                .addControl("Start", KEY_START, this::start)
+                .addControl("Stop", KEY_STOP, this::stop)
+                .addControl("Interval", KEY_INTERVAL, this::changeInterval);
+    }
+
+    @Override
+    public Panel createMainPanel() {
+        Panel panel = new Panel(new LinearLayout());
+
+        panel.addComponent(runningLabel);
+        panel.addComponent(intervalLabel);
+        panel.addComponent(statisticsLabel);
+
+        return panel;
+    }
+
+    private synchronized void start() {
+        if (sampling != null) {
+            return;
+        }
+        runningLabel.setText("Sampling...");
+        sampling = scheduler.scheduleAtFixedRate(this::refresh, 0, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    private synchronized void stop() {
+        if (sampling != null) {
+            sampling.cancel(false);
+            sampling = null;
+        }
+        runningLabel.setText("Not Running...");
+    }
+
+    private void changeInterval() {
+        final String s = TextInputDialog.showDialog(gui, "Refresh interval", "Seconds between samples", String.valueOf(intervalSeconds));
+        if (s == null) {
+            return;
+        }
+        try {
+            final int value = Integer.parseInt(s.trim());
+            if (value < 1) {
+                throw new IllegalArgumentException("Interval must be at least 1 second");
+            }
+            intervalSeconds = value;
+            updateIntervalLabel();
+            synchronized (this) {
+                if (sampling != null) {
+                    stop();
+                    start();
+                }
+            }
+        } catch (Exception e) {
+            BelaDialog.showException(gui, e);
+        }
+    }
+
+    private void updateIntervalLabel() {
+        intervalLabel.setText("Refresh interval: " + intervalSeconds + "s");
+    }
+
+    private synchronized void refresh() {
+        try {
+            // sampled while the database cannot be closed, the statistics are freed with it
+            final Optional<String> text = storageProviderFactory.withOpenProvider(provider -> {
+                // the statistics belong to the database, a reopened one starts from zero
+                if (provider != sampledProvider) {
+                    sampledProvider = provider;
+                    sampler = RocksDBStatisticsSampler.forProvider(sampledProvider).orElse(null);
+                }
+                return sampler == null ? "The database has no rocksdb statistics" : format(sampler.sample());
+            });
+            if (text.isEmpty()) {
+                sampledProvider = null;
+            }
+            statisticsLabel.setText(text.orElse("The database is not open"));
+        } catch (Exception e) {
+            log.error("Could not sample the rocksdb statistics", e);
+            statisticsLabel.setText("Could not sample the rocksdb statistics: " + e.getMessage());
+        }
+    }
+
+    private static String format(final Map<String, Object> sample) {
+        final StringBuilder text = new StringBuilder();
+        sample.forEach((name, value) -> text.append(String.format("%-32s %s%n", name, value)));
+        return text.toString();
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
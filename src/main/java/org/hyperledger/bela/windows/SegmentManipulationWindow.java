@@ -1,30 +1,46 @@
 package org.hyperledger.bela.windows;
 
 import java.util.HashMap;
-import javax.annotation.Nonnull;
 import java.lang.reflect.Field;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.prefs.Preferences;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import com.googlecode.lanterna.gui2.CheckBox;
+import com.googlecode.lanterna.gui2.Label;
 import com.googlecode.lanterna.gui2.LinearLayout;
 import com.googlecode.lanterna.gui2.Panel;
 import com.googlecode.lanterna.gui2.WindowBasedTextGUI;
+import com.googlecode.lanterna.gui2.dialogs.MessageDialog;
+import com.googlecode.lanterna.gui2.dialogs.MessageDialogButton;
+import com.googlecode.lanterna.gui2.dialogs.TextInputDialog;
 import kr.pe.kwonnam.slf4jlambda.LambdaLogger;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.tuple.Pair;
 import org.apache.tuweni.bytes.Bytes;
+import org.hyperledger.bela.analytics.BlockchainPrefix;
+import org.hyperledger.bela.analytics.KeyClassifier;
+import org.hyperledger.bela.analytics.SegmentAnalytics;
 import org.hyperledger.bela.components.KeyControls;
 import org.hyperledger.bela.dialogs.BelaDialog;
 import org.hyperledger.bela.dialogs.ProgressBarPopup;
 import org.hyperledger.bela.utils.StorageProviderFactory;
+import org.hyperledger.bela.utils.hacks.RocksDBStorageAccess;
+import org.hyperledger.bela.utils.hacks.ScanOptions;
 import org.hyperledger.besu.ethereum.storage.StorageProvider;
 import org.hyperledger.besu.ethereum.storage.keyvalue.KeyValueSegmentIdentifier;
 import org.hyperledger.besu.plugin.services.storage.KeyValueStorage;
@@ -32,64 +48,19 @@ import org.hyperledger.besu.plugin.services.storage.SegmentIdentifier;
 import org.hyperledger.besu.plugin.services.storage.rocksdb.RocksDbSegmentIdentifier;
 import org.hyperledger.besu.plugin.services.storage.rocksdb.segmented.RocksDBColumnarKeyValueStorage;
 import org.hyperledger.besu.services.kvstore.SegmentedKeyValueStorageAdapter;
-import org.jetbrains.annotations.NotNull;
 import org.rocksdb.ColumnFamilyHandle;
 import org.rocksdb.RocksDB;
-import org.rocksdb.RocksDBException;
 import org.rocksdb.TransactionDB;
 
 import static kr.pe.kwonnam.slf4jlambda.LambdaLoggerFactory.getLogger;
+import static org.hyperledger.bela.windows.Constants.KEY_ANALYZE_SEGMENTS;
 import static org.hyperledger.bela.windows.Constants.KEY_BLOCKCHAIN_SIZES;
+import static org.hyperledger.bela.windows.Constants.KEY_COMPACT;
 import static org.hyperledger.bela.windows.Constants.KEY_DETECT_COLUMNS;
 import static org.hyperledger.bela.windows.Constants.KEY_LONG_PROPERTY;
 import static org.hyperledger.bela.windows.Constants.KEY_PRUNE_COLUMNS;
 import static org.hyperledger.bela.windows.Constants.READ_ONLY_DB;
 
-enum LongRocksDbProperty {
-
-    TOTAL_SST_FILES_SIZE("rocksdb.total-sst-files-size") {
-        @Override
-        public String format(final long value) {
-            return round(value, GIGABYTE, "GB ") + round(value % GIGABYTE, MEGABYTE, "MB ") + round(value % MEGABYTE, KILOBYTE, "KB ") + round(value % KILOBYTE, 1, "B");
-        }
-    },
-    LIVE_SST_FILES_SIZE("rocksdb.live-sst-files-size") {
-        @Override
-        public String format(final long value) {
-            return round(value, GIGABYTE, "GB ") + round(value % GIGABYTE, MEGABYTE, "MB ") + round(value % MEGABYTE, KILOBYTE, "KB ") + round(value % KILOBYTE, 1, "B");
-        }
-    },
-    SIZE_ALL_MEM_TABLES("rocksdb.size-all-mem-tables") {
-        @Override
-        public String format(final long value) {
-            return round(value, GIGABYTE, "GB ") + round(value % GIGABYTE, MEGABYTE, "MB ") + round(value % MEGABYTE, KILOBYTE, "KB ") + round(value % KILOBYTE, 1, "B");
-        }
-    },
-    ROCKSDB_ESTIMATE_NUM_KEYS("rocksdb.estimate-num-keys");
-
-
-    private static final long KILOBYTE = 1024;
-    private static final long MEGABYTE = KILOBYTE * 1024;
-    private static final long GIGABYTE = MEGABYTE * 1024;
-    private final String name;
-
-    LongRocksDbProperty(final String name) {
-        this.name = name;
-    }
-
-    private static String round(final long value, final long divisor, final String title) {
-        return value / divisor > 0 ? value / divisor + title : "";
-    }
-
-    public String getName() {
-        return name;
-    }
-
-    public String format(final long value) {
-        return String.valueOf(value);
-    }
-}
-
 public class SegmentManipulationWindow extends AbstractBelaWindow {
     private static final LambdaLogger log = getLogger(SegmentManipulationWindow.class);
 
@@ -98,6 +69,11 @@ public class SegmentManipulationWindow extends AbstractBelaWindow {
     private final Preferences preferences;
     private final StorageProviderFactory storageProviderFactory;
     private final WindowBasedTextGUI gui;
+    private final Label compactionLabel = new Label("");
+    private final ExecutorService compactionExecutor = Executors.newSingleThreadExecutor();
+    private Future<?> compaction;
+    private final ExecutorService analysisExecutor = Executors.newSingleThreadExecutor();
+    private Future<?> analysis;
 
     public SegmentManipulationWindow(final WindowBasedTextGUI gui, final StorageProviderFactory storageProviderFactory, final Preferences preferences) {
         this.gui = gui;
@@ -150,14 +126,23 @@ public class SegmentManipulationWindow extends AbstractBelaWindow {
                 .addControl("Detect", KEY_DETECT_COLUMNS, this::detect)
                 .addControl("LongProp", KEY_LONG_PROPERTY, this::getLongProperty)
                 .addControl("Blockchain Sizes", KEY_BLOCKCHAIN_SIZES, this::blockchainSizes)
+                .addControl("Analyze", KEY_ANALYZE_SEGMENTS, this::analyze)
+                .addControl("Compact", KEY_COMPACT, this::compact)
                 .addControl("Prune", KEY_PRUNE_COLUMNS, this::prune);
     }
 
+    @Override
+    public void close() {
+        compactionExecutor.shutdownNow();
+        analysisExecutor.shutdownNow();
+    }
+
     @Override
     public Panel createMainPanel() {
 
         Panel panel = new Panel(new LinearLayout());
         columnCheckBoxes.forEach(panel::addComponent);
+        panel.addComponent(compactionLabel);
 
 
         return panel;
@@ -172,7 +157,6 @@ public class SegmentManipulationWindow extends AbstractBelaWindow {
         try {
             final ArrayList<SegmentIdentifier> listOfSegments = new ArrayList<>(selected);
             final StorageProvider provider = storageProviderFactory.createProvider(listOfSegments);
-            provider.close();
 
 
             final List<String> segmentInfos = Arrays.stream(KeyValueSegmentIdentifier.values())
@@ -203,6 +187,8 @@ public class SegmentManipulationWindow extends AbstractBelaWindow {
                 final KeyValueStorage storageBySegmentIdentifier = provider.getStorageBySegmentIdentifier(segmentIdentifier);
                 remove(storageBySegmentIdentifier);
             }
+            // the shared provider still has handles on the dropped column families
+            storageProviderFactory.close();
             detect();
         } catch (Exception e) {
             BelaDialog.showException(gui, e);
@@ -248,96 +234,161 @@ public class SegmentManipulationWindow extends AbstractBelaWindow {
     }
 
     private void detect() {
-        if (preferences.getBoolean(READ_ONLY_DB, true)) {
-            detectReadOnly();
-        } else {
-            detectReadWrite();
+        final List<SegmentIdentifier> detectedSegments;
+        try {
+            detectedSegments = storageProviderFactory.detect();
+        } catch (Exception e) {
+            BelaDialog.showException(gui, e);
+            return;
         }
-    }
-
-    private void detectReadOnly() {
-        final List<SegmentIdentifier> listOfSegments = Arrays.asList(KeyValueSegmentIdentifier.values());
-        final ProgressBarPopup progress = ProgressBarPopup.showPopup(gui, "Detecting", listOfSegments.size());
-
-        columnCheckBoxes.forEach(checkBox -> checkBox.setChecked(false));
+        final List<KeyValueSegmentIdentifier> listOfSegments = Arrays.asList(KeyValueSegmentIdentifier.values());
         selected.clear();
-
-        for (SegmentIdentifier segment : listOfSegments) {
-            try {
-                final StorageProvider provider = storageProviderFactory.createProvider(Collections.singletonList(segment), true);
-                provider.close();
-//                accessLongPropertyForSegment(provider, segment, LongRocksDbProperty.LIVE_SST_FILES_SIZE);
-                selected.add(segment);
-                columnCheckBoxes.get(listOfSegments.indexOf(segment)).setChecked(true);
-            } catch (Exception e) {
-                //ignore on purpouse
-            } finally {
-                progress.increment();
+        for (int i = 0; i < listOfSegments.size(); i++) {
+            final boolean detected = detectedSegments.contains(listOfSegments.get(i));
+            columnCheckBoxes.get(i).setChecked(detected);
+            if (detected) {
+                selected.add(listOfSegments.get(i));
             }
         }
-        progress.close();
     }
 
-    private void detectReadWrite() {
+    private void compact() {
+        if (compaction != null && !compaction.isDone()) {
+            BelaDialog.showMessage(gui, "Compaction", "A compaction is already running");
+            return;
+        }
+        // the database is not reopened read-write behind the user's back, every other window would then write through it
+        if (preferences.getBoolean(READ_ONLY_DB, true)) {
+            BelaDialog.showMessage(gui, "Compaction",
+                    "Compaction writes to the database, turn off read only database access in the settings first");
+            return;
+        }
+        final List<SegmentIdentifier> segments = Arrays.stream(KeyValueSegmentIdentifier.values())
+                .filter(selected::contains)
+                .collect(Collectors.toList());
+        BelaDialog.showDelegateListDialog(gui, "Select a segment to compact", segments, SegmentIdentifier::getName,
+                this::compact);
+    }
+
+    private void compact(final SegmentIdentifier segment) {
         try {
-            final StorageProvider provider = storageProviderFactory.createProvider(new ArrayList<>(), false);
-        } catch (Exception e) {
-            final List<Byte> columns;
+            final String from = TextInputDialog.showDialog(gui, "Compaction of " + segment.getName(),
+                    "First key in hex, empty for the first key of the segment", "");
+            if (from == null) {
+                return;
+            }
+            final String to = TextInputDialog.showDialog(gui, "Compaction of " + segment.getName(),
+                    "Key to stop before in hex, empty for the last key of the segment", "");
+            if (to == null) {
+                return;
+            }
+            final String subcompactions = TextInputDialog.showDialog(gui, "Compaction of " + segment.getName(),
+                    "Subcompactions", String.valueOf(Runtime.getRuntime().availableProcessors()));
+            if (subcompactions == null) {
+                return;
+            }
+            final boolean forceBottommost = MessageDialog.showMessageDialog(gui, "Compaction of " + segment.getName(),
+                    "Force the compaction of the bottommost level?", MessageDialogButton.Yes, MessageDialogButton.No)
+                    == MessageDialogButton.Yes;
+            final byte[] fromKey = from.isBlank() ? null : Bytes.fromHexString(from.trim()).toArrayUnsafe();
+            final byte[] toKey = to.isBlank() ? null : Bytes.fromHexString(to.trim()).toArrayUnsafe();
+            final int threads = Integer.parseInt(subcompactions.trim());
+
+            storageProviderFactory.createProvider(List.of(segment));
+            // held until the compaction is done, nothing can close the database while it runs in rocksdb
+            final StorageProviderFactory.Lease lease = storageProviderFactory.lease();
+            final StorageProvider provider = lease.getProvider();
+            final KeyValueStorage storage = provider.getStorageBySegmentIdentifier(segment);
+            final long sizeBefore;
             try {
-                columns = parseColumns(e);
-                columnCheckBoxes.forEach(checkBox -> checkBox.setChecked(false));
-                selected.clear();
-                columns.forEach(column -> {
-                    CheckBox box = columnCheckBoxes.get(column - 1);
-                    box.setChecked(true);
-                    selected.add(KeyValueSegmentIdentifier.values()[column - 1]);
-                });
-            } catch (Exception ex) {
-                BelaDialog.showException(gui, e);
+                sizeBefore = accessLongPropertyForSegment(provider, segment, LongRocksDbProperty.LIVE_SST_FILES_SIZE);
+            } catch (RuntimeException e) {
+                lease.close();
+                throw e;
             }
+            compaction = compactionExecutor.submit(() -> {
+                final ScheduledExecutorService poller = Executors.newSingleThreadScheduledExecutor();
+                poller.scheduleAtFixedRate(() -> showCompactionProgress(provider, segment), 0, 2, TimeUnit.SECONDS);
+                try {
+                    RocksDBStorageAccess.compactRange(storage, fromKey, toKey, forceBottommost, threads);
+                    final long sizeAfter = accessLongPropertyForSegment(provider, segment, LongRocksDbProperty.LIVE_SST_FILES_SIZE);
+                    compactionLabel.setText(String.format("Compacted %s: %s -> %s", segment.getName(),
+                            LongRocksDbProperty.LIVE_SST_FILES_SIZE.format(sizeBefore),
+                            LongRocksDbProperty.LIVE_SST_FILES_SIZE.format(sizeAfter)));
+                } catch (Exception e) {
+                    log.error("Compaction of {} failed", segment.getName(), e);
+                    compactionLabel.setText("Compaction of " + segment.getName() + " failed: " + e.getMessage());
+                } finally {
+                    poller.shutdownNow();
+                    try {
+                        // the progress poller reads the database too
+                        poller.awaitTermination(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    lease.close();
+                }
+            });
+        } catch (Exception e) {
+            BelaDialog.showException(gui, e);
         }
     }
 
-    @NotNull
-    private List<Byte> parseColumns(@Nonnull final Exception e) throws Exception {
-        Throwable cause = e;
-        while (cause != null && !(cause instanceof RocksDBException)) {
-            cause = cause.getCause();
-        }
-        if (cause == null || cause.getMessage() == null || !cause.getMessage()
-                .startsWith("Column families not opened: ")) {
-            throw e;
-        }
-        byte[] bytes = cause.getMessage().getBytes();
-        List<Byte> columns = new ArrayList<>();
-        for (int i = 28 /*Column families not opened: */; i < bytes.length; i += 3 /* ,*/) {
-            columns.add(bytes[i]);
+    private void showCompactionProgress(final StorageProvider provider, final SegmentIdentifier segment) {
+        if (compaction != null && compaction.isDone()) {
+            return;
         }
-        log.info("Columns: {}", columns);
-        return columns;
+        final String properties = Stream.of(LongRocksDbProperty.COMPACTION_PENDING, LongRocksDbProperty.NUM_RUNNING_COMPACTIONS,
+                        LongRocksDbProperty.ESTIMATE_PENDING_COMPACTION_BYTES, LongRocksDbProperty.LIVE_SST_FILES_SIZE)
+                .map(property -> property.getName() + ": " + property.format(accessLongPropertyForSegment(provider, segment, property)))
+                .collect(Collectors.joining(", "));
+        compactionLabel.setText("Compacting " + segment.getName() + "... " + properties);
     }
 
-    enum BlockchainPrefix {
-        VARIABLES,
-        BLOCK_HEADER,
-        BLOCK_BODY,
-        TRANSACTION_RECEIPTS,
-        BLOCK_HASH,
-        TOTAL_DIFFICULTY,
-        TRANSACTION_LOCATION;
-
-        private static final Map<Bytes, BlockchainPrefix> PREFIX_MAPPING = Map.of(
-            Bytes.of(1), VARIABLES,
-            Bytes.of(2), BLOCK_HEADER,
-            Bytes.of(3), BLOCK_BODY,
-            Bytes.of(4), TRANSACTION_RECEIPTS,
-            Bytes.of(5), BLOCK_HASH,
-            Bytes.of(6), TOTAL_DIFFICULTY,
-            Bytes.of(7), TRANSACTION_LOCATION
-        );
-
-        public static Optional<BlockchainPrefix> fromBytes(final Bytes prefix) {
-            return Optional.ofNullable(PREFIX_MAPPING.get(prefix));
+    private void analyze() {
+        if (analysis != null && !analysis.isDone()) {
+            BelaDialog.showMessage(gui, "Analytics", "An analysis is already running");
+            return;
+        }
+        try {
+            final List<SegmentIdentifier> segments = Arrays.stream(KeyValueSegmentIdentifier.values())
+                    .filter(selected::contains)
+                    .collect(Collectors.toList());
+            storageProviderFactory.createProvider(segments);
+            // held until the scans are done, nothing can close the database while they read it
+            final StorageProviderFactory.Lease lease = storageProviderFactory.lease();
+            final SegmentAnalytics analytics = new SegmentAnalytics(
+                    Runtime.getRuntime().availableProcessors(), SegmentAnalytics.DEFAULT_TOP_N);
+            final Path file = storageProviderFactory.getDataPath().resolve("bela-analytics.json");
+            final ProgressBarPopup progress = ProgressBarPopup.showPopup(gui, "Analyzing", segments.size());
+            analysis = analysisExecutor.submit(() -> {
+                try (lease) {
+                    final List<SegmentAnalytics.Report> reports = new ArrayList<>();
+                    final List<String> segmentInfos = new ArrayList<>();
+                    for (SegmentIdentifier segment : segments) {
+                        final SegmentAnalytics.Report report = analytics.analyze(
+                                segment, lease.getStorage(segment), KeyClassifier.forSegment(segment));
+                        reports.add(report);
+                        segmentInfos.add(String.format("%s: %,d keys, %s of values", segment.getName(),
+                                report.total().getCount(), FileUtils.byteCountToDisplaySize(report.total().getValueBytes())));
+                        gui.getGUIThread().invokeLater(progress::increment);
+                    }
+                    SegmentAnalytics.writeReport(file, reports);
+                    segmentInfos.add("Report written to " + file);
+                    gui.getGUIThread().invokeLater(() -> {
+                        progress.close();
+                        BelaDialog.showListDialog(gui, "Segment analytics", segmentInfos);
+                    });
+                } catch (Exception e) {
+                    log.error("Analysis of the segments failed", e);
+                    gui.getGUIThread().invokeLater(() -> {
+                        progress.close();
+                        BelaDialog.showException(gui, e);
+                    });
+                }
+            });
+        } catch (Exception e) {
+            BelaDialog.showException(gui, e);
         }
     }
 
@@ -352,17 +403,13 @@ public class SegmentManipulationWindow extends AbstractBelaWindow {
 
         final ProgressBarPopup progress = ProgressBarPopup.showPopup(gui, "Calculating Sizes",
             (int) estimate);
-        final Map<BlockchainPrefix, Long> blockchainSizes = new HashMap<>();
+        Map<BlockchainPrefix, Long> blockchainSizes = new HashMap<>();
 
         try {
-            blockChainStorage.streamKeys().forEach(key -> {
-                final byte[] value = blockChainStorage.get(key).orElse(new byte[]{});
-                final Bytes prefix = Bytes.wrap(key, 0, 1);
-                final Optional<BlockchainPrefix> blockchainPrefix = BlockchainPrefix.fromBytes(
-                    prefix);
-                blockchainPrefix.ifPresent(
-                    p -> blockchainSizes.merge(p, (long) value.length, Long::sum));
-                progress.increment();
+            blockchainSizes = blockchainSizes(blockChainStorage, () -> {
+                synchronized (progress) {
+                    progress.increment();
+                }
             });
         } catch (Exception e) {
             BelaDialog.showException(gui, e);
@@ -376,4 +423,30 @@ public class SegmentManipulationWindow extends AbstractBelaWindow {
 
         BelaDialog.showListDialog(gui, "Blockchain segment information", segmentInfos);
     }
+
+    /**
+     * Sums the size of the values of the blockchain segment by key prefix, scanning the key range of every prefix in
+     * parallel. Keys with an unknown prefix are not read.
+     *
+     * @param onKey called for every key read, from the scanning threads, to report progress
+     */
+    public static Map<BlockchainPrefix, Long> blockchainSizes(final KeyValueStorage blockChainStorage, final Runnable onKey) {
+        final Map<BlockchainPrefix, Long> blockchainSizes = new ConcurrentHashMap<>();
+        Arrays.stream(BlockchainPrefix.values()).parallel().forEach(prefix -> {
+            long size = 0;
+            long keys = 0;
+            try (Stream<Pair<byte[], byte[]>> entries = RocksDBStorageAccess.scan(blockChainStorage,
+                    ScanOptions.range(prefix.getPrefix().toArrayUnsafe(), prefix.getEnd().toArrayUnsafe()))) {
+                for (Pair<byte[], byte[]> entry : (Iterable<Pair<byte[], byte[]>>) entries::iterator) {
+                    size += entry.getValue().length;
+                    keys++;
+                    onKey.run();
+                }
+            }
+            if (keys > 0) {
+                blockchainSizes.put(prefix, size);
+            }
+        });
+        return blockchainSizes;
+    }
 }
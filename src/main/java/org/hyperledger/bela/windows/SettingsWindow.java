@@ -18,8 +18,10 @@ import org.hyperledger.bela.components.KeyControls;
 import org.hyperledger.bela.components.ThemePicker;
 import org.hyperledger.bela.components.settings.BelaSetting;
 import org.hyperledger.bela.components.settings.CheckBoxSetting;
+import org.hyperledger.bela.components.settings.NumberSetting;
 import org.hyperledger.bela.components.settings.PathSetting;
 import org.hyperledger.bela.config.BelaConfigurationImpl;
+import org.hyperledger.bela.config.RocksDBTuning;
 
 import static org.hyperledger.bela.windows.Constants.DATA_PATH;
 import static org.hyperledger.bela.windows.Constants.DATA_PATH_DEFAULT;
@@ -32,6 +34,12 @@ import static org.hyperledger.bela.windows.Constants.KEY_APPLY;
 import static org.hyperledger.bela.windows.Constants.KEY_RESET;
 import static org.hyperledger.bela.windows.Constants.OVERRIDE_STORAGE_PATH;
 import static org.hyperledger.bela.windows.Constants.READ_ONLY_DB;
+import static org.hyperledger.bela.windows.Constants.ROCKSDB_BLOCK_CACHE_MB;
+import static org.hyperledger.bela.windows.Constants.ROCKSDB_BLOOM_FILTER;
+import static org.hyperledger.bela.windows.Constants.ROCKSDB_DIRECT_READS;
+import static org.hyperledger.bela.windows.Constants.ROCKSDB_MAX_OPEN_FILES;
+import static org.hyperledger.bela.windows.Constants.ROCKSDB_POINT_LOOKUP_TRIES;
+import static org.hyperledger.bela.windows.Constants.ROCKSDB_READAHEAD_KB;
 import static org.hyperledger.bela.windows.Constants.STORAGE_PATH;
 import static org.hyperledger.bela.windows.Constants.STORAGE_PATH_DEFAULT;
 import static org.hyperledger.bela.windows.Constants.THEME_KEY;
@@ -62,6 +70,13 @@ public class SettingsWindow extends AbstractBelaWindow {
         settings.put(DETECT_COLUMNS, new CheckBoxSetting(this.gui, "Auto detect columns in rocksdb", DETECT_COLUMNS, true));
         settings.put(FULL_SCREEN_WINDOWS, new CheckBoxSetting(this.gui, "open windows in full screen", FULL_SCREEN_WINDOWS, true));
 
+        settings.put(ROCKSDB_BLOCK_CACHE_MB, new NumberSetting("RocksDB shared block cache (MiB)", ROCKSDB_BLOCK_CACHE_MB, RocksDBTuning.DEFAULT_BLOCK_CACHE_MB));
+        settings.put(ROCKSDB_READAHEAD_KB, new NumberSetting("RocksDB scan readahead (KiB)", ROCKSDB_READAHEAD_KB, RocksDBTuning.DEFAULT_READAHEAD_KB));
+        settings.put(ROCKSDB_MAX_OPEN_FILES, new NumberSetting("RocksDB max open files (-1 for all)", ROCKSDB_MAX_OPEN_FILES, RocksDBTuning.DEFAULT_MAX_OPEN_FILES));
+        settings.put(ROCKSDB_BLOOM_FILTER, new CheckBoxSetting(this.gui, "RocksDB bloom filters", ROCKSDB_BLOOM_FILTER, RocksDBTuning.DEFAULT.isBloomFilter()));
+        settings.put(ROCKSDB_DIRECT_READS, new CheckBoxSetting(this.gui, "RocksDB direct I/O reads", ROCKSDB_DIRECT_READS, RocksDBTuning.DEFAULT.isDirectReads()));
+        settings.put(ROCKSDB_POINT_LOOKUP_TRIES, new CheckBoxSetting(this.gui, "RocksDB point lookup tuning for trie segments", ROCKSDB_POINT_LOOKUP_TRIES, false));
+
         themePickerMenu = new ThemePicker(gui, preferences.get(THEME_KEY, DEFAULT_THEME));
     }
 
@@ -14,20 +14,28 @@
  */
 package org.hyperledger.besu.plugin.services.storage.rocksdb.segmented;
 
+import javax.annotation.Nullable;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import com.google.common.collect.ImmutableMap;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.tuweni.bytes.Bytes;
+import org.hyperledger.bela.config.RocksDBTuning;
+import org.hyperledger.bela.utils.hacks.GuardedMetricsSystem;
 import org.hyperledger.bela.utils.hacks.ReadOnlyDatabaseDecider;
+import org.hyperledger.bela.utils.hacks.RocksDBTuningDecider;
+import org.hyperledger.bela.utils.hacks.ScanOptions;
 import org.hyperledger.besu.plugin.services.MetricsSystem;
 import org.hyperledger.besu.plugin.services.exception.StorageException;
 import org.hyperledger.besu.plugin.services.metrics.OperationTimer;
@@ -38,20 +46,28 @@ import org.hyperledger.besu.plugin.services.storage.rocksdb.configuration.RocksD
 import org.hyperledger.besu.services.kvstore.SegmentedKeyValueStorage;
 import org.hyperledger.besu.services.kvstore.SegmentedKeyValueStorageTransactionTransitionValidatorDecorator;
 import org.rocksdb.BlockBasedTableConfig;
+import org.rocksdb.BloomFilter;
 import org.rocksdb.ColumnFamilyDescriptor;
 import org.rocksdb.ColumnFamilyHandle;
 import org.rocksdb.ColumnFamilyOptions;
+import org.rocksdb.CompactRangeOptions;
 import org.rocksdb.CompressionType;
+import org.rocksdb.DataBlockIndexType;
 import org.rocksdb.DBOptions;
 import org.rocksdb.Env;
+import org.rocksdb.IngestExternalFileOptions;
 import org.rocksdb.LRUCache;
+import org.rocksdb.ReadOptions;
 import org.rocksdb.RocksDB;
 import org.rocksdb.RocksDBException;
 import org.rocksdb.RocksIterator;
+import org.rocksdb.Slice;
+import org.rocksdb.Snapshot;
 import org.rocksdb.Statistics;
 import org.rocksdb.Status;
 import org.rocksdb.TransactionDB;
 import org.rocksdb.TransactionDBOptions;
+import org.rocksdb.WriteBatch;
 import org.rocksdb.WriteOptions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -61,7 +77,6 @@ import static java.util.stream.Collectors.toUnmodifiableSet;
 
 public class RocksDBColumnarKeyValueStorage
         implements SegmentedKeyValueStorage<RocksDbSegmentIdentifier> {
-    public static final OperationTimer OPERATION_TIMER = () -> null;
 
     private static final Logger LOG = LoggerFactory.getLogger(RocksDBColumnarKeyValueStorage.class);
     private static final String DEFAULT_COLUMN = "default";
@@ -70,6 +85,7 @@ public class RocksDBColumnarKeyValueStorage
     private static final long ROCKSDB_BLOCK_SIZE = 32768;
     private static final long ROCKSDB_BLOCKCACHE_SIZE_HIGH_SPEC = 1_073_741_824L;
     private static final long ROCKSDB_MEMTABLE_SIZE_HIGH_SPEC = 1_073_741_824L;
+    private static final double BLOOM_FILTER_BITS_PER_KEY = 10;
 
     static {
         RocksDbUtil.loadNativeLibrary();
@@ -78,9 +94,16 @@ public class RocksDBColumnarKeyValueStorage
     private final DBOptions options;
     private final TransactionDBOptions txOptions;
     private final RocksDB db;
+    private final Path databaseDir;
     private final AtomicBoolean closed = new AtomicBoolean(false);
     private final Map<String, RocksDbSegmentIdentifier> columnHandlesByName;
     private final RocksDBMetrics metrics;
+    private final GuardedMetricsSystem guardedMetricsSystem;
+    private final LRUCache blockCache;
+    @Nullable
+    private final BloomFilter bloomFilter;
+    private final long readaheadSize;
+    private final Statistics stats;
     private final WriteOptions tryDeleteOptions =
             new WriteOptions().setNoSlowdown(true).setIgnoreMissingColumnFamilies(true);
 
@@ -91,6 +114,14 @@ public class RocksDBColumnarKeyValueStorage
             final RocksDBMetricsFactory rocksDBMetricsFactory)
             throws StorageException {
 
+        databaseDir = configuration.getDatabaseDir();
+        final RocksDBTuning tuning = RocksDBTuningDecider.getInstance().getTuning();
+        readaheadSize = tuning.getReadaheadSize();
+        // one cache for all the column families, a cache per column family would multiply the configured capacity
+        blockCache = new LRUCache(configuration.isHighSpec()
+                ? Math.max(ROCKSDB_BLOCKCACHE_SIZE_HIGH_SPEC, configuration.getCacheCapacity())
+                : configuration.getCacheCapacity());
+        bloomFilter = tuning.isBloomFilter() ? new BloomFilter(BLOOM_FILTER_BITS_PER_KEY, false) : null;
         try (final ColumnFamilyOptions columnFamilyOptions = new ColumnFamilyOptions()) {
             final List<ColumnFamilyDescriptor> columnDescriptors =
                     segments.stream()
@@ -98,20 +129,14 @@ public class RocksDBColumnarKeyValueStorage
                                     segment ->
                                             new ColumnFamilyDescriptor(
                                                     segment.getId(),
-                                                    new ColumnFamilyOptions()
-                                                            .setTtl(0)
-                                                            .setCompressionType(CompressionType.LZ4_COMPRESSION)
-                                                            .setTableFormatConfig(createBlockBasedTableConfig(configuration))))
+                                                    configureColumnFamily(new ColumnFamilyOptions(), tuning.isPointLookup(segment))))
                             .collect(Collectors.toList());
             columnDescriptors.add(
                     new ColumnFamilyDescriptor(
                             DEFAULT_COLUMN.getBytes(StandardCharsets.UTF_8),
-                            columnFamilyOptions
-                                    .setTtl(0)
-                                    .setCompressionType(CompressionType.LZ4_COMPRESSION)
-                                    .setTableFormatConfig(createBlockBasedTableConfig(configuration))));
+                            configureColumnFamily(columnFamilyOptions, false)));
 
-            final Statistics stats = new Statistics();
+            stats = new Statistics();
             if (configuration.isHighSpec()) {
                 options =
                         new DBOptions()
@@ -121,6 +146,7 @@ public class RocksDBColumnarKeyValueStorage
                                 .setMaxBackgroundCompactions(configuration.getMaxBackgroundCompactions())
                                 .setStatistics(stats)
                                 .setCreateMissingColumnFamilies(true)
+                                .setUseDirectReads(tuning.isDirectReads())
                                 .setEnv(
                                         Env.getDefault()
                                                 .setBackgroundThreads(configuration.getBackgroundThreadCount()));
@@ -132,6 +158,7 @@ public class RocksDBColumnarKeyValueStorage
                                 .setMaxBackgroundCompactions(configuration.getMaxBackgroundCompactions())
                                 .setStatistics(stats)
                                 .setCreateMissingColumnFamilies(true)
+                                .setUseDirectReads(tuning.isDirectReads())
                                 .setEnv(
                                         Env.getDefault()
                                                 .setBackgroundThreads(configuration.getBackgroundThreadCount()));
@@ -156,7 +183,8 @@ public class RocksDBColumnarKeyValueStorage
                         columnDescriptors,
                         columnHandles);
             }
-            metrics = new RocksDBMetrics(OPERATION_TIMER, OPERATION_TIMER, OPERATION_TIMER, OPERATION_TIMER, new NoOpCounter());
+            guardedMetricsSystem = new GuardedMetricsSystem(metricsSystem);
+            metrics = rocksDBMetricsFactory.create(guardedMetricsSystem, configuration, db, stats);
 
             final Map<Bytes, String> segmentsById =
                     segments.stream()
@@ -179,30 +207,32 @@ public class RocksDBColumnarKeyValueStorage
         }
     }
 
-    private BlockBasedTableConfig createBlockBasedTableConfig(final RocksDBConfiguration config) {
-        if (config.isHighSpec()) return createBlockBasedTableConfigHighSpec();
-        else return createBlockBasedTableConfigDefault(config);
-    }
-
-    private BlockBasedTableConfig createBlockBasedTableConfigHighSpec() {
-        final LRUCache cache = new LRUCache(ROCKSDB_BLOCKCACHE_SIZE_HIGH_SPEC);
-        return new BlockBasedTableConfig()
-                .setBlockCache(cache)
-                .setFormatVersion(ROCKSDB_FORMAT_VERSION)
-                .setOptimizeFiltersForMemory(true)
-                .setCacheIndexAndFilterBlocks(true)
-                .setBlockSize(ROCKSDB_BLOCK_SIZE);
+    private ColumnFamilyOptions configureColumnFamily(
+            final ColumnFamilyOptions columnFamilyOptions, final boolean pointLookup) {
+        columnFamilyOptions
+                .setTtl(0)
+                .setCompressionType(CompressionType.LZ4_COMPRESSION);
+        if (pointLookup) {
+            // for the memtable filters, the table config and the cache it sets up are replaced by the shared ones below
+            columnFamilyOptions.optimizeForPointLookup(1);
+        }
+        return columnFamilyOptions.setTableFormatConfig(createBlockBasedTableConfig(pointLookup));
     }
 
-    private BlockBasedTableConfig createBlockBasedTableConfigDefault(
-            final RocksDBConfiguration config) {
-        final LRUCache cache = new LRUCache(config.getCacheCapacity());
-        return new BlockBasedTableConfig()
-                .setBlockCache(cache)
+    private BlockBasedTableConfig createBlockBasedTableConfig(final boolean pointLookup) {
+        final BlockBasedTableConfig config = new BlockBasedTableConfig()
+                .setBlockCache(blockCache)
                 .setFormatVersion(ROCKSDB_FORMAT_VERSION)
                 .setOptimizeFiltersForMemory(true)
                 .setCacheIndexAndFilterBlocks(true)
                 .setBlockSize(ROCKSDB_BLOCK_SIZE);
+        if (bloomFilter != null) {
+            config.setFilterPolicy(bloomFilter);
+        }
+        if (pointLookup) {
+            config.setDataBlockIndexType(DataBlockIndexType.kDataBlockBinaryAndHash);
+        }
+        return config;
     }
 
     @Override
@@ -222,6 +252,102 @@ public class RocksDBColumnarKeyValueStorage
         }
     }
 
+    /**
+     * Reads all the keys of a segment in a single native call, the result is in the same order as the keys.
+     */
+    public List<Optional<byte[]>> multiGet(final RocksDbSegmentIdentifier segment, final List<byte[]> keys)
+            throws StorageException {
+        throwIfClosed();
+        if (keys.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        try (final OperationTimer.TimingContext ignored = metrics.getReadLatency().startTimer()) {
+            return db.multiGetAsList(Collections.nCopies(keys.size(), segment.get()), keys).stream()
+                    .map(Optional::ofNullable)
+                    .collect(Collectors.toList());
+        } catch (final RocksDBException e) {
+            throw new StorageException(e);
+        }
+    }
+
+    /**
+     * Writes all the entries to a segment in a single write batch, without the locking of a pessimistic transaction.
+     */
+    public void putAll(final RocksDbSegmentIdentifier segment, final List<Pair<byte[], byte[]>> entries)
+            throws StorageException {
+        throwIfClosed();
+        try (final WriteBatch batch = new WriteBatch();
+             final WriteOptions writeOptions = new WriteOptions().setIgnoreMissingColumnFamilies(true)) {
+            for (Pair<byte[], byte[]> entry : entries) {
+                batch.put(segment.get(), entry.getKey(), entry.getValue());
+            }
+            db.write(writeOptions, batch);
+        } catch (final RocksDBException e) {
+            throw new StorageException(e);
+        }
+    }
+
+    /**
+     * Moves externally built sst files into a segment, bypassing the write-ahead log and the memtable. The files have
+     * to be sorted with the default bytewise comparator and are removed from their location on success.
+     */
+    public void ingestExternalFiles(final RocksDbSegmentIdentifier segment, final List<Path> files)
+            throws StorageException {
+        throwIfClosed();
+        if (files.isEmpty()) {
+            return;
+        }
+        try (final IngestExternalFileOptions ingestOptions = new IngestExternalFileOptions()
+                .setMoveFiles(true)
+                .setSnapshotConsistency(false)) {
+            db.ingestExternalFile(segment.get(),
+                    files.stream().map(Path::toString).collect(Collectors.toList()), ingestOptions);
+        } catch (final RocksDBException e) {
+            throw new StorageException(e);
+        }
+    }
+
+    /**
+     * Compacts the keys of a segment between fromKey and the exclusive toKey, which drops the deleted entries and
+     * reclaims their space. Blocks until the compaction is done.
+     *
+     * @param fromKey         null compacts from the first key
+     * @param toKey           null compacts to the last key
+     * @param forceBottommost rewrites the bottommost level too, where most of the data is
+     * @param subcompactions  threads splitting each compaction
+     */
+    public void compactRange(
+            final RocksDbSegmentIdentifier segment, @Nullable final byte[] fromKey, @Nullable final byte[] toKey,
+            final boolean forceBottommost, final int subcompactions) {
+        throwIfClosed();
+        if (!(db instanceof TransactionDB)) {
+            throw new IllegalStateException("The database is opened read only, it cannot be compacted");
+        }
+        try (final CompactRangeOptions compactRangeOptions = new CompactRangeOptions()
+                .setBottommostLevelCompaction(forceBottommost
+                        ? CompactRangeOptions.BottommostLevelCompaction.kForce
+                        : CompactRangeOptions.BottommostLevelCompaction.kIfHaveCompactionFilter)
+                .setMaxSubcompactions(subcompactions)
+                .setExclusiveManualCompaction(false)) {
+            db.compactRange(segment.get(), fromKey, toKey, compactRangeOptions);
+        } catch (final RocksDBException e) {
+            throw new StorageException(e);
+        }
+    }
+
+    /**
+     * Tickers and histograms of the whole database, since it was opened.
+     */
+    public Statistics getStatistics() {
+        throwIfClosed();
+        return stats;
+    }
+
+    public Path getDatabaseDir() {
+        return databaseDir;
+    }
+
     @Override
     public Transaction<RocksDbSegmentIdentifier> startTransaction() throws StorageException {
         if (db instanceof TransactionDB tdb) {
@@ -243,6 +369,71 @@ public class RocksDBColumnarKeyValueStorage
         return RocksDbIterator.create(rocksIterator).toStream();
     }
 
+    /**
+     * Streams the entries of a segment in key order, starting at fromKey and stopping before toKey.
+     *
+     * @param toKey exclusive upper bound, null streams to the end of the segment
+     */
+    public Stream<Pair<byte[], byte[]>> stream(
+            final RocksDbSegmentIdentifier segmentHandle, final byte[] fromKey, @Nullable final byte[] toKey) {
+        return scan(segmentHandle, ScanOptions.range(fromKey, toKey));
+    }
+
+    /**
+     * Streams the entries of a segment in key order for a bulk scan: the iterator reads ahead, bounds the range on the
+     * rocksdb side and only fills the block cache when asked to. The stream has to be closed.
+     */
+    public Stream<Pair<byte[], byte[]>> scan(final RocksDbSegmentIdentifier segmentHandle, final ScanOptions scanOptions) {
+        return scan(segmentHandle, scanOptions, RocksDbIterator::toStream);
+    }
+
+    public Stream<byte[]> scanKeys(final RocksDbSegmentIdentifier segmentHandle, final ScanOptions scanOptions) {
+        return scan(segmentHandle, scanOptions, RocksDbIterator::toStreamKeys);
+    }
+
+    private <T> Stream<T> scan(
+            final RocksDbSegmentIdentifier segmentHandle, final ScanOptions scanOptions,
+            final Function<RocksDbIterator, Stream<T>> toStream) {
+        throwIfClosed();
+        final ReadOptions readOptions = new ReadOptions()
+                .setFillCache(scanOptions.isFillCache())
+                .setTailing(false);
+        if (readaheadSize > 0) {
+            readOptions.setReadaheadSize(readaheadSize);
+        }
+        final Slice lowerBound = scanOptions.getFromKey() == null ? null : new Slice(scanOptions.getFromKey());
+        if (lowerBound != null) {
+            readOptions.setIterateLowerBound(lowerBound);
+        }
+        final Slice upperBound = scanOptions.getToKey() == null ? null : new Slice(scanOptions.getToKey());
+        if (upperBound != null) {
+            readOptions.setIterateUpperBound(upperBound);
+        }
+        final Snapshot snapshot = scanOptions.isSnapshot() ? db.getSnapshot() : null;
+        if (snapshot != null) {
+            readOptions.setSnapshot(snapshot);
+        }
+        final RocksIterator rocksIterator = db.newIterator(segmentHandle.get(), readOptions);
+        if (scanOptions.getFromKey() == null) {
+            rocksIterator.seekToFirst();
+        } else {
+            rocksIterator.seek(scanOptions.getFromKey());
+        }
+        // the options, bounds and snapshot have to outlive the iterator, they are released after it is closed
+        return toStream.apply(RocksDbIterator.create(rocksIterator)).onClose(() -> {
+            readOptions.close();
+            if (lowerBound != null) {
+                lowerBound.close();
+            }
+            if (upperBound != null) {
+                upperBound.close();
+            }
+            if (snapshot != null) {
+                db.releaseSnapshot(snapshot);
+            }
+        });
+    }
+
     @Override
     public Stream<byte[]> streamKeys(final RocksDbSegmentIdentifier segmentHandle) {
         final RocksIterator rocksIterator = db.newIterator(segmentHandle.get());
@@ -291,6 +482,7 @@ public class RocksDBColumnarKeyValueStorage
     @Override
     public void close() {
         if (closed.compareAndSet(false, true)) {
+            guardedMetricsSystem.close();
             txOptions.close();
             options.close();
             tryDeleteOptions.close();
@@ -298,6 +490,11 @@ public class RocksDBColumnarKeyValueStorage
                     .map(RocksDbSegmentIdentifier::get)
                     .forEach(ColumnFamilyHandle::close);
             db.close();
+            stats.close();
+            blockCache.close();
+            if (bloomFilter != null) {
+                bloomFilter.close();
+            }
         }
     }
 
@@ -0,0 +1,33 @@
+package org.hyperledger.bela.analytics;
+
+import java.nio.charset.StandardCharsets;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class KeyClassifierTest {
+
+    @Test
+    void trieNodesAreClassifiedByTrieAndDepth() {
+        assertThat(KeyClassifier.TRIE_DEPTH.classify(new byte[0])).isEqualTo("account depth 0");
+        assertThat(KeyClassifier.TRIE_DEPTH.classify(new byte[]{0x0f, 0x00, 0x0a})).isEqualTo("account depth 3");
+        final Bytes storageNode = Bytes.concatenate(Bytes32.fromHexStringLenient("0xff"), Bytes.of(1, 2));
+        assertThat(KeyClassifier.TRIE_DEPTH.classify(storageNode.toArrayUnsafe())).isEqualTo("storage depth 2");
+    }
+
+    @Test
+    void metadataKeysAreNotTrieNodes() {
+        assertThat(KeyClassifier.TRIE_DEPTH.classify("worldRoot".getBytes(StandardCharsets.UTF_8))).isEqualTo("worldRoot");
+        assertThat(KeyClassifier.TRIE_DEPTH.classify("worldBlockHash".getBytes(StandardCharsets.UTF_8)))
+                .isEqualTo("worldBlockHash");
+        assertThat(KeyClassifier.TRIE_DEPTH.classify("other".getBytes(StandardCharsets.UTF_8))).isEqualTo("UNKNOWN");
+    }
+
+    @Test
+    void blockchainKeysAreClassifiedByPrefix() {
+        assertThat(KeyClassifier.BLOCKCHAIN_PREFIX.classify(new byte[]{2, 0x12})).isEqualTo("BLOCK_HEADER");
+        assertThat(KeyClassifier.BLOCKCHAIN_PREFIX.classify(new byte[]{42})).isEqualTo("UNKNOWN");
+    }
+}
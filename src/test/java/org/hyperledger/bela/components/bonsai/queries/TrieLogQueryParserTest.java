@@ -0,0 +1,109 @@
+package org.hyperledger.bela.components.bonsai.queries;
+
+import org.apache.tuweni.units.bigints.UInt256;
+import org.hyperledger.besu.datatypes.Address;
+import org.hyperledger.besu.datatypes.Hash;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TrieLogQueryParserTest {
+    private static final String ADDRESS = "0x00000000000000000000000000000000000000aa";
+    private static final String SLOT = "0x00000000000000000000000000000000000000000000000000000000000000bb";
+    // the blockchain is only loaded when a predicate is evaluated
+    private final TrieQueryContext context = TrieQueryContext.forProvider(null, null);
+
+    private String parse(final String query) {
+        return TrieLogQueryParser.parse(query, context).toString();
+    }
+
+    @Test
+    void andBindsTighterThanOr() {
+        assertThat(parse("balance() or code() and nonce()")).isEqualTo("(balance() or (code() and nonce()))");
+        assertThat(parse("balance() and code() or nonce()")).isEqualTo("(nonce() or (balance() and code()))");
+    }
+
+    @Test
+    void parenthesesOverridePrecedence() {
+        assertThat(parse("(balance() or code()) and nonce()")).isEqualTo("(nonce() and (balance() or code()))");
+    }
+
+    @Test
+    void notBindsTighterThanAnd() {
+        assertThat(parse("not balance() and code()")).isEqualTo("(not balance() and code())");
+        assertThat(parse("not (balance() or code())")).isEqualTo("not (balance() or code())");
+        assertThat(parse("not not code()")).isEqualTo("not not code()");
+    }
+
+    @Test
+    void symbolsAndKeywordsAreInterchangeable() {
+        assertThat(parse("!BALANCE() && Code() || nonce()")).isEqualTo(parse("not balance() and code() or nonce()"));
+    }
+
+    @Test
+    void cheapestPredicatesComeFirst() {
+        assertThat(parse("code() and blocks(1, 0x10) and size(0, 100)"))
+                .isEqualTo("(size(0, 100) and blocks(1, 16) and code())");
+    }
+
+    @Test
+    void accountsAreGivenByAddressOrAccountHash() {
+        final Hash accountHash = Hash.hash(Address.fromHexString(ADDRESS));
+        assertThat(parse("account(" + ADDRESS + ")")).isEqualTo("account(" + accountHash.toHexString() + ")");
+        assertThat(parse("account(" + accountHash.toHexString() + ")")).isEqualTo("account(" + accountHash.toHexString() + ")");
+    }
+
+    @Test
+    void slotValuesCanBeDecimal() {
+        final Hash accountHash = Hash.hash(Address.fromHexString(ADDRESS));
+        assertThat(parse("value(" + ADDRESS + ", " + SLOT + ", 10)")).isEqualTo("value(" + accountHash.toHexString()
+                + ", " + SLOT + ", " + UInt256.valueOf(10).toHexString() + ")");
+    }
+
+    @Test
+    void rejectsUnknownPredicates() {
+        assertThatThrownBy(() -> parse("storage()"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Unknown predicate storage");
+    }
+
+    @Test
+    void rejectsWrongArgumentCounts() {
+        assertThatThrownBy(() -> parse("account()"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("account takes 1 arguments, got 0");
+        assertThatThrownBy(() -> parse("slot(" + ADDRESS + ", " + SLOT + ", 1)"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("slot takes 1 to 2 arguments, got 3");
+    }
+
+    @Test
+    void rejectsIncompleteQueries() {
+        assertThatThrownBy(() -> parse(""))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Expected a predicate but got the end of the query");
+        assertThatThrownBy(() -> parse("balance("))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Expected an argument but got the end of the query");
+        assertThatThrownBy(() -> parse("(balance() or code()"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Expected ')' but got the end of the query");
+        assertThatThrownBy(() -> parse("balance() and"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Expected a predicate but got the end of the query");
+    }
+
+    @Test
+    void rejectsTrailingAndUnknownTokens() {
+        assertThatThrownBy(() -> parse("balance())"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Unexpected ')' in query");
+        assertThatThrownBy(() -> parse("balance() code()"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Unexpected 'code' in query");
+        assertThatThrownBy(() -> parse("balance() $ code()"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Unexpected '$ code()' in query");
+    }
+}
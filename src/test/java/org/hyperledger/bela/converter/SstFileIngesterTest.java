@@ -0,0 +1,100 @@
+package org.hyperledger.bela.converter;
+
+import java.nio.file.Path;
+import java.util.List;
+import org.apache.tuweni.bytes.Bytes;
+import org.hyperledger.bela.utils.hacks.ReadOnlyDatabaseDecider;
+import org.hyperledger.besu.ethereum.storage.keyvalue.KeyValueSegmentIdentifier;
+import org.hyperledger.besu.metrics.noop.NoOpMetricsSystem;
+import org.hyperledger.besu.plugin.services.storage.KeyValueStorage;
+import org.hyperledger.besu.plugin.services.storage.rocksdb.RocksDBMetricsFactory;
+import org.hyperledger.besu.plugin.services.storage.rocksdb.configuration.RocksDBConfigurationBuilder;
+import org.hyperledger.besu.plugin.services.storage.rocksdb.segmented.RocksDBColumnarKeyValueStorage;
+import org.hyperledger.besu.services.kvstore.SegmentedKeyValueStorageAdapter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SstFileIngesterTest {
+    private static final KeyValueSegmentIdentifier SEGMENT = KeyValueSegmentIdentifier.ACCOUNT_INFO_STATE;
+    // every put is spilled to a run of its own
+    private static final long ONE_ENTRY_RUNS = 1;
+
+    @TempDir
+    Path dataDir;
+    private RocksDBColumnarKeyValueStorage columnar;
+    private KeyValueStorage storage;
+
+    @BeforeEach
+    void openDatabase() {
+        ReadOnlyDatabaseDecider.getInstance().setReadOnly(false);
+        columnar = new RocksDBColumnarKeyValueStorage(
+                new RocksDBConfigurationBuilder().databaseDir(dataDir.resolve("database")).build(),
+                List.of(SEGMENT), new NoOpMetricsSystem(), RocksDBMetricsFactory.PUBLIC_ROCKS_DB_METRICS);
+        storage = new SegmentedKeyValueStorageAdapter<>(SEGMENT, columnar);
+    }
+
+    @AfterEach
+    void closeDatabase() {
+        columnar.close();
+        ReadOnlyDatabaseDecider.getInstance().setReadOnly(true);
+    }
+
+    @Test
+    void mergedRunsKeepTheLastPutOfAKey() {
+        // more runs than are merged at once, so the runs are merged in several passes
+        try (SstFileIngester ingester = new SstFileIngester(ONE_ENTRY_RUNS, false, List.of(storage))) {
+            for (int put = 0; put < 200; put++) {
+                ingester.put(storage, key(put % 50), value(put));
+            }
+        }
+        for (int key = 0; key < 50; key++) {
+            final byte[] expected = value(150 + key);
+            assertThat(storage.get(key(key))).hasValueSatisfying(value -> assertThat(value).isEqualTo(expected));
+        }
+        assertThat(dataDir.resolve("database").resolve("bela-ingest")).doesNotExist();
+    }
+
+    @Test
+    void resumedIngestionIngestsTheRunsOfTheInterruptedOne() {
+        final SstFileIngester interrupted = new SstFileIngester(ONE_ENTRY_RUNS, false, List.of(storage));
+        for (int key = 0; key < 10; key++) {
+            interrupted.put(storage, key(key), value(key));
+        }
+        interrupted.flush();
+
+        try (SstFileIngester resumed = new SstFileIngester(ONE_ENTRY_RUNS, true, List.of(storage))) {
+            resumed.put(storage, key(0), value(100));
+        }
+        assertThat(storage.get(key(0))).hasValueSatisfying(value -> assertThat(value).isEqualTo(value(100)));
+        for (int key = 1; key < 10; key++) {
+            final byte[] expected = value(key);
+            assertThat(storage.get(key(key))).hasValueSatisfying(value -> assertThat(value).isEqualTo(expected));
+        }
+    }
+
+    @Test
+    void resumedIngestionIngestsSegmentsWithoutNewPuts() {
+        final SstFileIngester interrupted = new SstFileIngester(ONE_ENTRY_RUNS, false, List.of(storage));
+        interrupted.put(storage, key(1), value(1));
+        interrupted.put(storage, key(2), value(2));
+        interrupted.flush();
+
+        new SstFileIngester(ONE_ENTRY_RUNS, true, List.of(storage)).close();
+
+        assertThat(storage.get(key(1))).hasValueSatisfying(value -> assertThat(value).isEqualTo(value(1)));
+        assertThat(storage.get(key(2))).hasValueSatisfying(value -> assertThat(value).isEqualTo(value(2)));
+        assertThat(dataDir.resolve("database").resolve("bela-ingest")).doesNotExist();
+    }
+
+    private static byte[] key(final int key) {
+        return Bytes.ofUnsignedInt(key).toArrayUnsafe();
+    }
+
+    private static byte[] value(final int value) {
+        return Bytes.ofUnsignedLong(value).toArrayUnsafe();
+    }
+}
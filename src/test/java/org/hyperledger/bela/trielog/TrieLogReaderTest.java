@@ -0,0 +1,203 @@
+package org.hyperledger.bela.trielog;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.units.bigints.UInt256;
+import org.hyperledger.besu.datatypes.Address;
+import org.hyperledger.besu.datatypes.Hash;
+import org.hyperledger.besu.datatypes.Wei;
+import org.hyperledger.besu.ethereum.rlp.BytesValueRLPOutput;
+import org.hyperledger.besu.ethereum.rlp.RLPOutput;
+import org.hyperledger.besu.ethereum.worldstate.StateTrieAccountValue;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The reader must see the same changes as besu's decoding, whose encoding it reads without besu.
+ */
+class TrieLogReaderTest {
+    private static final Address CREATED = Address.fromHexString("0x00000000000000000000000000000000000000aa");
+    private static final Address UPDATED = Address.fromHexString("0x00000000000000000000000000000000000000bb");
+    private static final Address STORAGE_ONLY = Address.fromHexString("0x00000000000000000000000000000000000000cc");
+    private static final Bytes CODE = Bytes.fromHexString("0x6001600101");
+    private static final StateTrieAccountValue CREATED_ACCOUNT =
+            new StateTrieAccountValue(1, Wei.of(100), Hash.EMPTY_TRIE_HASH, Hash.hash(CODE));
+    private static final StateTrieAccountValue PRIOR_ACCOUNT =
+            new StateTrieAccountValue(7, Wei.of(5000), Hash.hash(Bytes.of(1)), Hash.EMPTY);
+    private static final StateTrieAccountValue UPDATED_ACCOUNT =
+            new StateTrieAccountValue(8, Wei.of(4000), Hash.hash(Bytes.of(2)), Hash.EMPTY);
+
+    private final byte[] encoded = encodeTrieLog();
+
+    @Test
+    void readsTheSameChangesAsTheDecodedLayer() {
+        final List<String> changes = read(encoded, TrieLogReader.ALL_SECTIONS);
+        assertThat(changes).hasSize(8);
+        assertThat(changes).containsExactlyInAnyOrderElementsOf(readDecoded(TrieLogReader.ALL_SECTIONS));
+    }
+
+    @Test
+    void readsOnlyTheSectionsAskedFor() {
+        for (TrieLogReader.Section section : TrieLogReader.Section.values()) {
+            final Set<TrieLogReader.Section> sections = EnumSet.of(section);
+            final List<String> changes = read(encoded, sections);
+            assertThat(changes).isNotEmpty().allMatch(change -> change.startsWith(section.name()));
+            assertThat(changes).containsExactlyInAnyOrderElementsOf(readDecoded(sections));
+        }
+    }
+
+    @Test
+    void skipsTheAddressesTheVisitorDoesNotWant() {
+        final List<String> changes = new ArrayList<>();
+        final TrieLogReader.Visitor visitor = new RecordingVisitor(changes) {
+            @Override
+            public boolean visitAddress(final Address address) {
+                return address.equals(UPDATED);
+            }
+        };
+        assertThat(TrieLogReader.read(encoded, TrieLogReader.ALL_SECTIONS, visitor)).isFalse();
+        assertThat(changes).containsExactlyInAnyOrder(
+                "ACCOUNT " + UPDATED + " " + account(PRIOR_ACCOUNT) + " " + account(UPDATED_ACCOUNT),
+                "STORAGE " + UPDATED + " " + slotHash(3) + " " + UInt256.valueOf(5) + " null");
+    }
+
+    @Test
+    void stopsAtTheChangeTheVisitorStopsAt() {
+        final List<String> changes = new ArrayList<>();
+        final TrieLogReader.Visitor visitor = new RecordingVisitor(changes) {
+            @Override
+            public boolean visitSlot(final Address address, final Hash slotHash, final UInt256 prior, final UInt256 updated) {
+                super.visitSlot(address, slotHash, prior, updated);
+                return true;
+            }
+        };
+        assertThat(TrieLogReader.read(encoded, EnumSet.of(TrieLogReader.Section.STORAGE), visitor)).isTrue();
+        assertThat(changes).containsExactly("STORAGE " + CREATED + " " + slotHash(1) + " null " + UInt256.valueOf(1));
+    }
+
+    private List<String> readDecoded(final Set<TrieLogReader.Section> sections) {
+        final List<String> changes = new ArrayList<>();
+        assertThat(TrieLogReader.read(TrieLogCodec.decode(encoded), sections, new RecordingVisitor(changes))).isFalse();
+        return changes;
+    }
+
+    private static List<String> read(final byte[] encoded, final Set<TrieLogReader.Section> sections) {
+        final List<String> changes = new ArrayList<>();
+        assertThat(TrieLogReader.read(encoded, sections, new RecordingVisitor(changes))).isFalse();
+        return changes;
+    }
+
+    /**
+     * A trie log in besu's layout: the block hash, then per address its code, account and storage changes.
+     */
+    private static byte[] encodeTrieLog() {
+        final BytesValueRLPOutput output = new BytesValueRLPOutput();
+        output.startList();
+        output.writeBytes(Hash.hash(Bytes.of(42)));
+
+        output.startList();
+        output.writeBytes(CREATED);
+        writeChange(output, null, CODE);
+        output.startList();
+        output.writeNull();
+        CREATED_ACCOUNT.writeTo(output);
+        output.endList();
+        output.startList();
+        writeSlot(output, slotHash(1), null, UInt256.valueOf(1));
+        writeSlot(output, slotHash(2), UInt256.valueOf(1), UInt256.valueOf(2));
+        output.endList();
+        output.endList();
+
+        output.startList();
+        output.writeBytes(UPDATED);
+        output.writeNull();
+        output.startList();
+        PRIOR_ACCOUNT.writeTo(output);
+        UPDATED_ACCOUNT.writeTo(output);
+        output.endList();
+        output.startList();
+        writeSlot(output, slotHash(3), UInt256.valueOf(5), null);
+        output.endList();
+        output.endList();
+
+        output.startList();
+        output.writeBytes(STORAGE_ONLY);
+        output.writeNull();
+        output.writeNull();
+        output.startList();
+        writeSlot(output, slotHash(4), UInt256.valueOf(10), UInt256.valueOf(11));
+        writeSlot(output, slotHash(5), null, UInt256.valueOf(12));
+        output.endList();
+        output.endList();
+
+        output.endList();
+        return output.encoded().toArrayUnsafe();
+    }
+
+    private static void writeChange(final RLPOutput output, final Bytes prior, final Bytes updated) {
+        output.startList();
+        writeNullable(output, prior);
+        writeNullable(output, updated);
+        output.endList();
+    }
+
+    private static void writeNullable(final RLPOutput output, final Bytes value) {
+        if (value == null) {
+            output.writeNull();
+        } else {
+            output.writeBytes(value);
+        }
+    }
+
+    private static void writeSlot(final RLPOutput output, final Hash slotHash, final UInt256 prior, final UInt256 updated) {
+        output.startList();
+        output.writeBytes(slotHash);
+        for (UInt256 value : new UInt256[]{prior, updated}) {
+            if (value == null) {
+                output.writeNull();
+            } else {
+                output.writeUInt256Scalar(value);
+            }
+        }
+        output.endList();
+    }
+
+    private static Hash slotHash(final int slot) {
+        return Hash.hash(UInt256.valueOf(slot));
+    }
+
+    private static String account(final StateTrieAccountValue value) {
+        return value == null ? "null" : value.getNonce() + "/" + value.getBalance().toShortHexString() + "/"
+                + value.getStorageRoot() + "/" + value.getCodeHash();
+    }
+
+    private static class RecordingVisitor implements TrieLogReader.Visitor {
+        private final List<String> changes;
+
+        RecordingVisitor(final List<String> changes) {
+            this.changes = changes;
+        }
+
+        @Override
+        public boolean visitCode(final Address address, final Bytes prior, final Bytes updated) {
+            changes.add("CODE " + address + " " + prior + " " + updated);
+            return false;
+        }
+
+        @Override
+        public boolean visitAccount(final Address address, final StateTrieAccountValue prior, final StateTrieAccountValue updated) {
+            changes.add("ACCOUNT " + address + " " + account(prior) + " " + account(updated));
+            return false;
+        }
+
+        @Override
+        public boolean visitSlot(final Address address, final Hash slotHash, final UInt256 prior, final UInt256 updated) {
+            changes.add("STORAGE " + address + " " + slotHash + " " + prior + " " + updated);
+            return false;
+        }
+    }
+}